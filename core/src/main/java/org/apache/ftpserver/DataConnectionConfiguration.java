@@ -55,6 +55,15 @@ public interface DataConnectionConfiguration {
      */
     String getActiveLocalAddress();
 
+    /**
+     * Get the resolved active data connection local host, without waiting
+     * for the name service.
+     * @return The {@link InetAddress} for active connections, null if not
+     *         set in the configuration
+     * @throws DataConnectionException If the address could not be resolved
+     */
+    InetAddress getActiveLocalInetAddress() throws DataConnectionException;
+
     /**
      * Get the active data connection local port.
      * @return The active data connection local port
@@ -67,6 +76,15 @@ public interface DataConnectionConfiguration {
      */
     String getPassiveAddress();
 
+    /**
+     * Get the resolved passive server address, without waiting for the name
+     * service.
+     * @return The {@link InetAddress} used for passive connections, null if
+     *         not set in the configuration
+     * @throws DataConnectionException If the address could not be resolved
+     */
+    InetAddress getPassiveInetAddress() throws DataConnectionException;
+
     /**
      * Get the passive address that will be returned to clients on the PASV
      * command.
@@ -76,6 +94,16 @@ public interface DataConnectionConfiguration {
      */
     String getPassiveExernalAddress();
 
+    /**
+     * Get the resolved passive address returned to clients on the PASV
+     * command, without waiting for the name service.
+     * 
+     * @return The passive address to be returned to clients, null if not
+     *         configured.
+     * @throws DataConnectionException If the address could not be resolved
+     */
+    InetAddress getPassiveExternalInetAddress() throws DataConnectionException;
+
     /**
      * Get the passive ports to be used for data connections. Ports can be
      * defined as single ports, closed or open ranges. Multiple definitions can
@@ -94,8 +122,9 @@ public interface DataConnectionConfiguration {
     String getPassivePorts();
 
     /**
-     * Request a passive port. Will block until a port is available
-     * @return A free passive part
+     * Request a passive port. Will block until a port is available or the
+     * passive port wait timeout has passed
+     * @return A free passive part, -1 if no port is available
      */
     int requestPassivePort();
 
@@ -115,4 +144,105 @@ public interface DataConnectionConfiguration {
      * @return True if SSL is mandatory for the data channel
      */
     boolean isImplicitSsl();
+
+    /**
+     * Are data connections non-blocking, with reads and writes driven by a
+     * selector rather than blocking in the socket?
+     * @return true if data connections are non-blocking
+     */
+    boolean isNonBlocking();
+
+    /**
+     * Get the number of bytes a rate limited transfer may send at full speed
+     * before being throttled to the maximum transfer rate of the user.
+     * @return The burst size in bytes, 0 if no burst is allowed
+     */
+    int getTransferRateBurst();
+
+    /**
+     * Get the size of the buffers used for data transfers.
+     * @return The buffer size in bytes
+     */
+    int getTransferBufferSize();
+
+    /**
+     * Get the occupancy of the pool of buffers used for data transfers.
+     * @return The statistics of the transfer buffer pool
+     */
+    TransferBufferPoolStatistics getTransferBufferPoolStatistics();
+
+    /**
+     * Get the SO_SNDBUF size for data sockets.
+     * @return The send buffer size in bytes, 0 to use the system default
+     */
+    int getSendBufferSize();
+
+    /**
+     * Get the SO_RCVBUF size for data sockets.
+     * @return The receive buffer size in bytes, 0 to use the system default
+     */
+    int getReceiveBufferSize();
+
+    /**
+     * Should TCP_NODELAY be enabled on data sockets?
+     * @return true if Nagle's algorithm is disabled for data sockets
+     */
+    boolean isTcpNoDelay();
+
+    /**
+     * Get the traffic class (IP_TOS) for data sockets.
+     * @return The traffic class, 0 to use the system default
+     */
+    int getTrafficClass();
+
+    /**
+     * Get the SO_LINGER timeout for data sockets.
+     * @return The linger timeout in seconds, -1 to use the system default
+     */
+    int getSoLinger();
+
+    /**
+     * Get the bandwidth used to size the send and receive buffers of data
+     * sockets from the measured round trip time.
+     * @return The bandwidth in bytes per second, 0 if buffer auto-tuning is
+     *         disabled
+     */
+    int getAutoTuneBandwidth();
+
+    /**
+     * Get the maximum time to wait for a passive port to be released when
+     * all passive ports are in use.
+     * @return The timeout in milliseconds, 0 for not waiting
+     */
+    int getPassivePortWaitTimeout();
+
+    /**
+     * Get the number of times a passive port was requested while all passive
+     * ports were in use.
+     * @return The number of times the passive ports were exhausted
+     */
+    long getPassivePortExhaustedCount();
+
+    /**
+     * Get the number of passive port requests that failed as no port was
+     * released within the wait timeout.
+     * @return The number of timed out passive port requests
+     */
+    long getPassivePortTimeoutCount();
+
+    /**
+     * Get the ports of the passive listening sockets shared by the data
+     * connections of all sessions.
+     * @return The shared ports, empty if passive listening sockets are not
+     *         shared
+     */
+    int[] getSharedPassivePorts();
+
+    /**
+     * Should data connections be accepted or connected in the background as
+     * soon as PORT, EPRT, PASV or EPSV completes, rather than when the
+     * transfer command is received?
+     * @return true if data connections are established speculatively
+     */
+    boolean isSpeculativeConnect();
 }
@@ -22,6 +22,7 @@ package org.apache.ftpserver;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
+import org.apache.ftpserver.impl.CachedInetAddress;
 import org.apache.ftpserver.impl.DefaultDataConnectionConfiguration;
 import org.apache.ftpserver.impl.PassivePorts;
 import org.apache.ftpserver.ssl.SslConfiguration;
@@ -47,6 +48,19 @@ public class DataConnectionConfigurationFactory {
     private String passiveExternalAddress;
     private PassivePorts passivePorts = new PassivePorts(new int[] { 0 });
     private boolean implicitSsl;
+    private boolean nonBlocking = false;
+    private int transferRateBurst = 0;
+    private int transferBufferSize = 16 * 1024;
+    private int transferBufferPoolSize = 64;
+    private int sendBufferSize = 0;
+    private int receiveBufferSize = 0;
+    private boolean tcpNoDelay = false;
+    private int trafficClass = 0;
+    private int soLinger = -1;
+    private int autoTuneBandwidth = 0;
+    private int passivePortWaitTimeout = 10000;
+    private String sharedPassivePorts;
+    private boolean speculativeConnect = false;
 
     /**
      * Create a {@link DataConnectionConfiguration} instance based on the 
@@ -59,7 +73,13 @@ public class DataConnectionConfigurationFactory {
                 ssl, activeEnabled, activeIpCheck,
                 activeLocalAddress, activeLocalPort,
                 passiveAddress, passivePorts,
-                passiveExternalAddress, implicitSsl);
+                passiveExternalAddress, implicitSsl, nonBlocking,
+                transferRateBurst, transferBufferSize, transferBufferPoolSize,
+                sendBufferSize, receiveBufferSize, tcpNoDelay, trafficClass,
+                soLinger, autoTuneBandwidth, passivePortWaitTimeout,
+                sharedPassivePorts != null ? PassivePorts
+                        .parse(sharedPassivePorts) : new int[0],
+                CachedInetAddress.DNS, speculativeConnect);
     }
     /*
      * (Non-Javadoc)
@@ -198,26 +218,8 @@ public class DataConnectionConfigurationFactory {
      * port will be used.
      * @return A passive port to use
      */
-    public synchronized int requestPassivePort() {
-        int dataPort = -1;
-        int loopTimes = 2;
-        Thread currThread = Thread.currentThread();
-
-        while ((dataPort == -1) && (--loopTimes >= 0)
-                && (!currThread.isInterrupted())) {
-
-            // search for a free port
-            dataPort = passivePorts.reserveNextPort();
-
-            // no available free port - wait for the release notification
-            if (dataPort == -1) {
-                try {
-                    wait();
-                } catch (InterruptedException ex) {
-                }
-            }
-        }
-        return dataPort;
+    public int requestPassivePort() {
+        return passivePorts.reservePort(passivePortWaitTimeout);
     }
 
     /**
@@ -240,12 +242,15 @@ public class DataConnectionConfigurationFactory {
      * <li>2300, 2305, 2400- : use 2300 or 2305 or any port larger than 2400</li>
      * </ul>
      * 
+     * Free ports are picked in random order, making the port of the next data
+     * connection hard to predict.
+     * 
      * Defaults to using any available port
      * 
      * @param passivePorts The passive ports string
      */
     public void setPassivePorts(String passivePorts) {
-        this.passivePorts = new PassivePorts(passivePorts);
+        this.passivePorts = new PassivePorts(passivePorts, true);
     }
 
     
@@ -253,10 +258,8 @@ public class DataConnectionConfigurationFactory {
      * Release data port
      * @param port The port to release
      */
-    public synchronized void releasePassivePort(final int port) {
+    public void releasePassivePort(final int port) {
         passivePorts.releasePort(port);
-
-        notify();
     }
 
     /**
@@ -289,4 +292,251 @@ public class DataConnectionConfigurationFactory {
     public void setImplicitSsl(boolean implicitSsl) {
         this.implicitSsl = implicitSsl;
     }
+
+    /**
+     * Are data connections non-blocking?
+     * @return true if data connections are non-blocking
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * Set whether data connections should be non-blocking, with reads and 
+     * writes driven by a selector rather than blocking in the socket. 
+     * Binary, unencrypted RETR and STOR transfers then run without holding a
+     * command thread, the reply being sent once the transfer has completed.
+     * Other transfers still use blocking data connections.
+     * Defaults to false, using blocking data connections.
+     * @param nonBlocking true if data connections should be non-blocking
+     */
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    /**
+     * Get the burst size for rate limited transfers
+     * @return The burst size in bytes
+     */
+    public int getTransferRateBurst() {
+        return transferRateBurst;
+    }
+
+    /**
+     * Set the number of bytes a rate limited transfer may send at full speed
+     * before being throttled to the maximum transfer rate of the user. 
+     * Defaults to 0, allowing no burst.
+     * @param transferRateBurst The burst size in bytes
+     */
+    public void setTransferRateBurst(int transferRateBurst) {
+        this.transferRateBurst = transferRateBurst;
+    }
+
+    /**
+     * Get the size of the buffers used for data transfers
+     * @return The buffer size in bytes
+     */
+    public int getTransferBufferSize() {
+        return transferBufferSize;
+    }
+
+    /**
+     * Set the size of the buffers used for data transfers. Larger buffers
+     * reduce the overhead per transfered byte on fast links. Defaults to 16 kB.
+     * @param transferBufferSize The buffer size in bytes
+     */
+    public void setTransferBufferSize(int transferBufferSize) {
+        this.transferBufferSize = transferBufferSize;
+    }
+
+    /**
+     * Get the maximum number of idle transfer buffers kept for reuse
+     * @return The maximum number of idle buffers
+     */
+    public int getTransferBufferPoolSize() {
+        return transferBufferPoolSize;
+    }
+
+    /**
+     * Set the maximum number of idle transfer buffers kept for reuse by
+     * later data transfers. Defaults to 64.
+     * @param transferBufferPoolSize The maximum number of idle buffers
+     */
+    public void setTransferBufferPoolSize(int transferBufferPoolSize) {
+        this.transferBufferPoolSize = transferBufferPoolSize;
+    }
+
+    /**
+     * Get the SO_SNDBUF size for data sockets
+     * @return The send buffer size in bytes
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Set the SO_SNDBUF size for data sockets. Larger buffers are required
+     * to fill links with a high bandwidth-delay product. Note that setting
+     * an explicit size disables the automatic buffer sizing done by some
+     * operating systems. Defaults to 0, using the system default.
+     * @param sendBufferSize The send buffer size in bytes
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * Get the SO_RCVBUF size for data sockets
+     * @return The receive buffer size in bytes
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Set the SO_RCVBUF size for data sockets. The size is set on passive
+     * server sockets before binding them, so that receive windows larger
+     * than 64 kB can be negotiated. Defaults to 0, using the system default.
+     * @param receiveBufferSize The receive buffer size in bytes
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Is TCP_NODELAY enabled on data sockets?
+     * @return true if Nagle's algorithm is disabled for data sockets
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Set whether TCP_NODELAY is enabled on data sockets. Defaults to false.
+     * @param tcpNoDelay true to disable Nagle's algorithm for data sockets
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Get the traffic class (IP_TOS) for data sockets
+     * @return The traffic class
+     */
+    public int getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * Set the traffic class (IP_TOS) for data sockets, for example 0x08 for
+     * maximum throughput. Defaults to 0, using the system default.
+     * @param trafficClass The traffic class, between 0 and 255
+     */
+    public void setTrafficClass(int trafficClass) {
+        this.trafficClass = trafficClass;
+    }
+
+    /**
+     * Get the SO_LINGER timeout for data sockets
+     * @return The linger timeout in seconds
+     */
+    public int getSoLinger() {
+        return soLinger;
+    }
+
+    /**
+     * Set the SO_LINGER timeout for data sockets. Defaults to -1, using the 
+     * system default.
+     * @param soLinger The linger timeout in seconds, -1 to use the system default
+     */
+    public void setSoLinger(int soLinger) {
+        this.soLinger = soLinger;
+    }
+
+    /**
+     * Get the bandwidth used for auto-tuning data socket buffers
+     * @return The bandwidth in bytes per second
+     */
+    public int getAutoTuneBandwidth() {
+        return autoTuneBandwidth;
+    }
+
+    /**
+     * Set the bandwidth used for auto-tuning data socket buffers. If set, the
+     * send and receive buffers of each data socket are sized to the 
+     * bandwidth-delay product, using the round trip time measured while 
+     * establishing the data connection. The configured send and receive buffer 
+     * sizes are used as lower bounds. Defaults to 0, disabling auto-tuning.
+     * @param autoTuneBandwidth The bandwidth in bytes per second
+     */
+    public void setAutoTuneBandwidth(int autoTuneBandwidth) {
+        this.autoTuneBandwidth = autoTuneBandwidth;
+    }
+
+    /**
+     * Get the maximum time to wait for a passive port when all passive ports
+     * are in use
+     * @return The timeout in milliseconds
+     */
+    public int getPassivePortWaitTimeout() {
+        return passivePortWaitTimeout;
+    }
+
+    /**
+     * Set the maximum time to wait for a passive port to be released when all
+     * passive ports are in use. If no port is released in time, the PASV
+     * command fails. Defaults to 10000 milliseconds.
+     * @param passivePortWaitTimeout The timeout in milliseconds, 0 for not 
+     *  waiting
+     */
+    public void setPassivePortWaitTimeout(int passivePortWaitTimeout) {
+        this.passivePortWaitTimeout = passivePortWaitTimeout;
+    }
+
+    /**
+     * Get the ports of the passive listening sockets shared by all sessions
+     * @return The shared ports string, null if not sharing passive sockets
+     */
+    public String getSharedPassivePorts() {
+        return sharedPassivePorts;
+    }
+
+    /**
+     * Set the ports of passive listening sockets to be shared by the data
+     * connections of all sessions, using the same syntax as 
+     * {@link #setPassivePorts(String)}. Instead of binding a new socket for
+     * each PASV or EPSV command, sessions wait on one of the shared sockets 
+     * for a data connection from their client address. If all shared sockets
+     * already have a session waiting for the same client address, a 
+     * dedicated passive port is used. Defaults to null, not sharing passive 
+     * sockets.
+     * @param sharedPassivePorts The shared ports string
+     */
+    public void setSharedPassivePorts(String sharedPassivePorts) {
+        this.sharedPassivePorts = sharedPassivePorts;
+    }
+
+    /**
+     * Are data connections established speculatively?
+     * @return true if data connections are accepted or connected in the 
+     *  background after PORT, EPRT, PASV or EPSV
+     */
+    public boolean isSpeculativeConnect() {
+        return speculativeConnect;
+    }
+
+    /**
+     * Set whether data connections should be accepted or connected in the
+     * background as soon as PORT, EPRT, PASV or EPSV completes, handing the
+     * ready socket to the next transfer command. This saves a round trip per
+     * transfer for clients opening the data connection early, at the cost
+     * of a thread waiting for each requested data connection. Sockets not 
+     * used within the idle time are closed. Defaults to false, establishing
+     * data connections when the transfer command is received.
+     * @param speculativeConnect true if data connections should be 
+     *  established speculatively
+     */
+    public void setSpeculativeConnect(boolean speculativeConnect) {
+        this.speculativeConnect = speculativeConnect;
+    }
 }
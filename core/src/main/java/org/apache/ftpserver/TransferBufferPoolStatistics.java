@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver;
+
+/**
+ * Occupancy of the pool of buffers used for data transfers.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public interface TransferBufferPoolStatistics {
+
+    /**
+     * Get the size of the buffers in the pool
+     * @return The buffer size in bytes
+     */
+    int getBufferSize();
+
+    /**
+     * Get the maximum number of idle buffers kept in the pool
+     * @return The maximum number of idle buffers
+     */
+    int getMaxIdleBuffers();
+
+    /**
+     * Get the number of idle buffers currently in the pool
+     * @return The number of idle buffers
+     */
+    int getIdleBuffers();
+
+    /**
+     * Get the number of buffers currently used by transfers
+     * @return The number of buffers in use
+     */
+    int getActiveBuffers();
+
+    /**
+     * Get the total number of buffers allocated by the pool
+     * @return The number of allocated buffers
+     */
+    long getAllocatedBuffers();
+}
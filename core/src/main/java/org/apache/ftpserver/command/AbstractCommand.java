@@ -19,6 +19,11 @@
 
 package org.apache.ftpserver.command;
 
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
 
 /**
  * Common base class recommended for {@link Command} implementations
@@ -28,4 +33,60 @@ package org.apache.ftpserver.command;
  */
 public abstract class AbstractCommand implements Command {
 
+    /**
+     * Get the code of the reply sent before a transfer: 125 if the data
+     * connection is already open, as when kept open in block mode, 150
+     * otherwise.
+     * 
+     * @param session
+     *            The session
+     * @return The reply code
+     */
+    protected int getOpeningReplyCode(final FtpIoSession session) {
+        return session.getDataConnection().isDataConnectionOpen() ? FtpReply.REPLY_125_DATA_CONNECTION_ALREADY_OPEN
+                : FtpReply.REPLY_150_FILE_STATUS_OKAY;
+    }
+
+    /**
+     * Get the reply sent before a transfer
+     * 
+     * @see #getOpeningReplyCode(FtpIoSession)
+     */
+    protected FtpReply getOpeningReply(final FtpIoSession session,
+            final FtpRequest request, final FtpServerContext context,
+            final String subId, final String basicMsg) {
+        return LocalizedFtpReply.translate(session, request, context,
+                getOpeningReplyCode(session), subId, basicMsg);
+    }
+
+    /**
+     * Get the reply sent once a transfer has completed: 226 if the data
+     * connection is closed, 250 if it is kept open in block mode, in which
+     * case the message is looked up with the "kept" suffix to the sub id.
+     * 
+     * @param session
+     *            The session
+     * @param request
+     *            The request of the transfer
+     * @param context
+     *            The server context
+     * @param subId
+     *            The sub id of the message
+     * @param basicMsg
+     *            The message argument
+     * @return The reply
+     */
+    protected FtpReply getCompletedReply(final FtpIoSession session,
+            final FtpRequest request, final FtpServerContext context,
+            final String subId, final String basicMsg) {
+        if (session.getDataConnection().isDataConnectionKept()) {
+            return LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, subId
+                            + ".kept", basicMsg);
+        } else {
+            return LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, subId,
+                    basicMsg);
+        }
+    }
 }
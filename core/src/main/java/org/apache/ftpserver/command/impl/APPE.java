@@ -34,6 +34,7 @@ import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
@@ -131,8 +132,8 @@ public class APPE extends AbstractCommand {
             }
 
             // get data connection
-            session.write(LocalizedFtpReply.translate(session, request, context,
-                    FtpReply.REPLY_150_FILE_STATUS_OKAY, "APPE", fileName));
+            session.write(getOpeningReply(session, request, context, "APPE",
+                    fileName));
 
             DataConnection dataConnection;
             try {
@@ -145,6 +146,11 @@ public class APPE extends AbstractCommand {
                 return;
             }
 
+            if (dataConnection instanceof IODataConnection) {
+                ((IODataConnection) dataConnection).setTransferFile(fileName,
+                        -1);
+            }
+
             // get data from client
             boolean failure = false;
             OutputStream os = null;
@@ -198,9 +204,8 @@ public class APPE extends AbstractCommand {
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
-                        fileName));
+                session.write(getCompletedReply(session, request,
+                        context, "APPE", fileName));
             }
         } finally {
             session.getDataConnection().closeDataConnection();
@@ -55,7 +55,11 @@ public class DefaultCommandFactory implements CommandFactory {
         if (cmdName == null || cmdName.equals("")) {
             return null;
         }
-        String upperCaseCmdName = cmdName.toUpperCase();
-        return commandMap.get(upperCaseCmdName);
+        // commands decoded from requests are already upper case
+        Command command = commandMap.get(cmdName);
+        if (command == null) {
+            command = commandMap.get(cmdName.toUpperCase());
+        }
+        return command;
     }
 }
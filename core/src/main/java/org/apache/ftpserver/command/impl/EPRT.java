@@ -22,7 +22,6 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 
 import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.command.AbstractCommand;
@@ -31,6 +30,7 @@ import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.util.InetAddressParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,10 +79,12 @@ public class EPRT extends AbstractCommand {
         }
 
         // parse argument
+        String protocol = null;
         String host = null;
         String port = null;
         try {
             char delim = arg.charAt(0);
+            protocol = arg.substring(1, 2);
             int lastDelimIdx = arg.indexOf(delim, 3);
             host = arg.substring(3, lastDelimIdx);
             port = arg.substring(lastDelimIdx + 1, arg.length() - 1);
@@ -93,20 +95,24 @@ public class EPRT extends AbstractCommand {
             return;
         }
 
-        // get data server
-        InetAddress dataAddr = null;
-        try {
-            dataAddr = InetAddress.getByName(host);
-        } catch (UnknownHostException ex) {
-            LOG.debug("Unknown host: " + host, ex);
-            session
-                    .write(LocalizedFtpReply
-                            .translate(
-                                    session,
-                                    request,
-                                    context,
-                                    FtpReply.REPLY_553_REQUESTED_ACTION_NOT_TAKEN_FILE_NAME_NOT_ALLOWED,
-                                    "EPRT.host", null));
+        // get data server, only literal addresses are allowed by RFC 2428,
+        // they are parsed strictly so that the name service is never
+        // consulted
+        InetAddress dataAddr;
+        if ("1".equals(protocol)) {
+            dataAddr = InetAddressParser.parseIpv4(host);
+        } else if ("2".equals(protocol)) {
+            dataAddr = InetAddressParser.parseIpv6(host);
+        } else {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    522, "EPRT.protocol", null));
+            return;
+        }
+        if (dataAddr == null) {
+            LOG.debug("Not a literal address: {}", host);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "EPRT.host", null));
             return;
         }
 
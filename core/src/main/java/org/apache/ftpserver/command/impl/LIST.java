@@ -107,8 +107,8 @@ public class LIST extends AbstractCommand {
             }
 
             // get data connection
-            session.write(LocalizedFtpReply.translate(session, request, context,
-                    FtpReply.REPLY_150_FILE_STATUS_OKAY, "LIST", null));
+            session.write(getOpeningReply(session, request, context, "LIST",
+                    null));
 
             DataConnection dataConnection;
             try {
@@ -160,9 +160,8 @@ public class LIST extends AbstractCommand {
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "LIST",
-                        null));
+                session.write(getCompletedReply(session, request,
+                        context, "LIST", null));
             }
         } finally {
             session.getDataConnection().closeDataConnection();
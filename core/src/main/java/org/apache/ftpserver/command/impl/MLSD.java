@@ -88,8 +88,8 @@ public class MLSD extends AbstractCommand {
             }
 
             // get data connection
-            session.write(LocalizedFtpReply.translate(session, request, context,
-                    FtpReply.REPLY_150_FILE_STATUS_OKAY, "MLSD", null));
+            session.write(getOpeningReply(session, request, context, "MLSD",
+                    null));
 
             // print listing data
             DataConnection dataConnection;
@@ -148,9 +148,8 @@ public class MLSD extends AbstractCommand {
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "MLSD",
-                        null));
+                session.write(getCompletedReply(session, request,
+                        context, "MLSD", null));
             }
         } finally {
             session.getDataConnection().closeDataConnection();
@@ -64,12 +64,20 @@ public class MODE extends AbstractCommand {
         md = Character.toUpperCase(md);
         if (md == 'S') {
             session.getDataConnection().setZipMode(false);
+            session.getDataConnection().setBlockMode(false);
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "S"));
         } else if (md == 'Z') {
+            session.getDataConnection().setBlockMode(false);
             session.getDataConnection().setZipMode(true);
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "Z"));
+        } else if (md == 'B') {
+            // the data connection is kept open between transfers
+            session.getDataConnection().setZipMode(false);
+            session.getDataConnection().setBlockMode(true);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "B"));
         } else {
             session
                     .write(LocalizedFtpReply
@@ -93,8 +93,8 @@ public class NLST extends AbstractCommand {
             }
 
             // get data connection
-            session.write(LocalizedFtpReply.translate(session, request, context,
-                    FtpReply.REPLY_150_FILE_STATUS_OKAY, "NLST", null));
+            session.write(getOpeningReply(session, request, context, "NLST",
+                    null));
 
             // print listing data
             DataConnection dataConnection;
@@ -157,9 +157,8 @@ public class NLST extends AbstractCommand {
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "NLST",
-                        null));
+                session.write(getCompletedReply(session, request,
+                        context, "NLST", null));
             }
         } finally {
             session.getDataConnection().closeDataConnection();
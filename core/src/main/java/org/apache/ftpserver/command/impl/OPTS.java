@@ -102,6 +102,8 @@ public class OPTS extends AbstractCommand {
     static {
         COMMAND_MAP.put("OPTS_MLST",
                 new org.apache.ftpserver.command.impl.OPTS_MLST());
+        COMMAND_MAP.put("OPTS_MODE",
+                new org.apache.ftpserver.command.impl.OPTS_MODE());
         COMMAND_MAP.put("OPTS_UTF8",
                 new org.apache.ftpserver.command.impl.OPTS_UTF8());
     }
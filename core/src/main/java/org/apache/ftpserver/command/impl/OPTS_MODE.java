@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>OPTS MODE Z LEVEL &lt;level&gt;</code><br>
+ * 
+ * Set the compression level, between 0 (no compression) and 9, used for data
+ * sent in <code>MODE Z</code>.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class OPTS_MODE extends AbstractCommand {
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException, FtpException {
+
+        // reset state
+        session.resetState();
+
+        // expect MODE Z LEVEL <level>
+        StringTokenizer st = new StringTokenizer(request.getArgument(), " ");
+        String[] tokens = new String[st.countTokens()];
+        for (int i = 0; i < tokens.length; ++i) {
+            tokens[i] = st.nextToken();
+        }
+
+        int level = -1;
+        if (tokens.length == 4 && tokens[1].equalsIgnoreCase("Z")
+                && tokens[2].equalsIgnoreCase("LEVEL")) {
+            try {
+                level = Integer.parseInt(tokens[3]);
+            } catch (NumberFormatException e) {
+                level = -1;
+            }
+        }
+
+        if (level < 0 || level > 9) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "OPTS.MODE", null));
+            return;
+        }
+
+        session.getDataConnection().setZipLevel(level);
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_200_COMMAND_OKAY, "OPTS.MODE", Integer
+                        .toString(level)));
+    }
+}
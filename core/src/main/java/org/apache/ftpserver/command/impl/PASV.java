@@ -22,7 +22,6 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 
 import org.apache.ftpserver.DataConnectionException;
 import org.apache.ftpserver.command.AbstractCommand;
@@ -66,10 +65,11 @@ public class PASV extends AbstractCommand {
 
         // set data connection
          ServerDataConnectionFactory dataCon = session.getDataConnection();
-         String externalPassiveAddress = session.getListener()
-         .getDataConnectionConfiguration().getPassiveExernalAddress(); 
         
         try {
+        	// resolved by the configuration, not waiting for the name service
+        	InetAddress externalPassiveAddress = session.getListener()
+        	.getDataConnectionConfiguration().getPassiveExternalInetAddress();
         	
         	InetSocketAddress dataConAddress = dataCon
                     .initPassiveDataConnection();
@@ -77,7 +77,7 @@ public class PASV extends AbstractCommand {
             // get connection info
             InetAddress servAddr;
             if (externalPassiveAddress != null) {
-                servAddr = resolveAddress(externalPassiveAddress);
+                servAddr = externalPassiveAddress;
             } else {
                 servAddr = dataConAddress.getAddress();
             }
@@ -100,15 +100,4 @@ public class PASV extends AbstractCommand {
         }
 
     }
-    /*
-     *  (non-Javadoc)
-     *   Returns an InetAddress object from a hostname or IP address.
-     */
-    private InetAddress resolveAddress(String host) throws DataConnectionException{
-    	try{
-    		return InetAddress.getByName(host);
-    	}catch(UnknownHostException ex){
-    		throw new DataConnectionException(ex.getLocalizedMessage(),ex);
-    	}
-    }
 }
@@ -34,10 +34,15 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.CommandCompletion;
+import org.apache.ftpserver.impl.Compressibility;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.NioDataConnectionFactory;
+import org.apache.ftpserver.impl.NioTransfer;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -67,6 +72,7 @@ public class RETR extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean completing = false;
         try {
 
             // get state variable
@@ -140,8 +146,18 @@ public class RETR extends AbstractCommand {
             }
 
             // get data connection
-            session.write(LocalizedFtpReply.translate(session, request, context,
-                    FtpReply.REPLY_150_FILE_STATUS_OKAY, "RETR", null));
+            session.write(getOpeningReply(session, request, context, "RETR",
+                    null));
+
+            // send the file without holding this thread if the transfer can
+            // be driven by the selector of non-blocking data connections
+            if (connFactory instanceof NioDataConnectionFactory
+                    && ((NioDataConnectionFactory) connFactory)
+                            .isNonBlockingTransferPossible()) {
+                completing = transferNonBlocking(session, context, request,
+                        (NioDataConnectionFactory) connFactory, file, skipLen);
+                return;
+            }
 
             // send file data to client
             boolean failure = false;
@@ -158,6 +174,19 @@ public class RETR extends AbstractCommand {
                 return;
             }
 
+            if (dataConnection instanceof IODataConnection) {
+                IODataConnection ioDataConnection = (IODataConnection) dataConnection;
+                ioDataConnection.setTransferFile(fileName, Math.max(0, file
+                        .getSize()
+                        - skipLen));
+
+                // files in compressed formats are not worth compressing again
+                // in zip mode
+                if (Compressibility.isCompressedFileName(fileName)) {
+                    ioDataConnection.setIncompressible(true);
+                }
+            }
+
             try {
 
                 // open streams
@@ -204,17 +233,107 @@ public class RETR extends AbstractCommand {
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
-                        fileName));
+                session.write(getCompletedReply(session, request,
+                        context, "RETR", fileName));
 
             }
         } finally {
-            session.resetState();
-            session.getDataConnection().closeDataConnection();
+            if (!completing) {
+                session.resetState();
+                session.getDataConnection().closeDataConnection();
+            }
         }
     }
 
+    /**
+     * Start sending the file over a non-blocking data connection, completing
+     * the command once the transfer has ended.
+     * 
+     * @return true if the transfer has been started, false if the file could
+     *         not be opened
+     */
+    private boolean transferNonBlocking(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final NioDataConnectionFactory connFactory, final FtpFile file,
+            final long skipLen) {
+        final String fileName = file.getAbsolutePath();
+
+        final InputStream is;
+        try {
+            is = openInputStream(session, file, skipLen);
+        } catch (IOException ex) {
+            LOG.debug("IOException during data transfer", ex);
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context,
+                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                    "RETR", fileName));
+            return false;
+        }
+
+        final CommandCompletion completion = new CommandCompletion();
+        session.setCommandCompletion(completion);
+
+        connFactory.transferToClient(is, fileName, Math.max(0, file.getSize()
+                - skipLen), new NioTransfer.Listener() {
+            public void notOpened(final Exception e) {
+                LOG.debug("Exception getting the output data stream", e);
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context, FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION,
+                        "RETR", null));
+                completed();
+            }
+
+            public void transferred(final long size) {
+                try {
+                    LOG.info("File downloaded {}", fileName);
+
+                    // notify the statistics component
+                    ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                            .getFtpStatistics();
+                    if (ftpStat != null) {
+                        ftpStat.setDownload(session, file, size);
+                    }
+
+                    // attempt to close the input stream so that errors in
+                    // closing it will return an error to the client
+                    is.close();
+
+                    session.write(getCompletedReply(session, request,
+                            context, "RETR", fileName));
+                } catch (IOException ex) {
+                    failed(ex);
+                    return;
+                }
+                completed();
+            }
+
+            public void failed(final IOException ex) {
+                if (ex instanceof SocketException) {
+                    LOG.debug("Socket exception during data transfer", ex);
+                    session.write(LocalizedFtpReply.translate(session,
+                            request, context,
+                            FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                            "RETR", fileName));
+                } else {
+                    LOG.debug("IOException during data transfer", ex);
+                    session.write(LocalizedFtpReply.translate(session,
+                            request, context,
+                            FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                            "RETR", fileName));
+                }
+                completed();
+            }
+
+            private void completed() {
+                IoUtils.close(is);
+                session.resetState();
+                connFactory.closeDataConnection();
+                completion.complete();
+            }
+        });
+        return true;
+    }
+
     /**
      * Skip length and open input stream.
      */
@@ -29,11 +29,13 @@ import org.apache.ftpserver.ftplet.DefaultFtpReply;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.TransferStatus;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.TransferAccounting;
 import org.apache.ftpserver.util.DateUtils;
 import org.apache.ftpserver.util.StringUtils;
 import org.apache.mina.core.session.IoSession;
@@ -96,6 +98,11 @@ public class SITE_WHO extends AbstractCommand {
                     .getLoginTime().getTime()), ' ', true, 20));
             sb.append(StringUtils.pad(DateUtils.getISO8601Date(managedSession
                     .getLastAccessTime().getTime()), ' ', true, 20));
+
+            TransferStatus transfer = managedSession.getCurrentTransfer();
+            if (transfer != null) {
+                sb.append(TransferAccounting.toString(transfer));
+            }
             sb.append('\n');
         }
         sb.append('\n');
@@ -24,9 +24,11 @@ import java.io.IOException;
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.TransferStatus;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.TransferAccounting;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -48,12 +50,23 @@ public class STAT extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException {
 
-        // reset state variables
-        session.resetState();
+        // reset state variables, unless executed out of band while a
+        // transfer is in progress as the transfer still uses them
+        TransferStatus transfer = session.getCurrentTransfer();
+        if (transfer == null
+                && !session.getDataConnection().isDataConnectionInUse()) {
+            session.resetState();
+        }
 
-        // write the status info
-        session.write(LocalizedFtpReply.translate(session, request, context,
-                FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, "STAT", null));
+        // write the status info, including the running transfer if any
+        if (transfer != null) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, "STAT.transfer",
+                    TransferAccounting.toString(transfer)));
+        } else {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, "STAT", null));
+        }
     }
 
 }
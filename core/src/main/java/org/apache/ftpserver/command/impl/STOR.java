@@ -32,10 +32,14 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.CommandCompletion;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.NioDataConnectionFactory;
+import org.apache.ftpserver.impl.NioTransfer;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
 import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
@@ -66,6 +70,7 @@ public class STOR extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean completing = false;
         try {
 
             // get state variable
@@ -124,10 +129,19 @@ public class STOR extends AbstractCommand {
 
             // get data connection
             session.write(
-                    LocalizedFtpReply.translate(session, request, context,
-                            FtpReply.REPLY_150_FILE_STATUS_OKAY, "STOR",
+                    getOpeningReply(session, request, context, "STOR",
                             fileName)).awaitUninterruptibly(10000);
 
+            // receive the file without holding this thread if the transfer
+            // can be driven by the selector of non-blocking data connections
+            if (connFactory instanceof NioDataConnectionFactory
+                    && ((NioDataConnectionFactory) connFactory)
+                            .isNonBlockingTransferPossible()) {
+                completing = transferNonBlocking(session, context, request,
+                        (NioDataConnectionFactory) connFactory, file, skipLen);
+                return;
+            }
+
             DataConnection dataConnection;
             try {
                 dataConnection = session.getDataConnection().openConnection();
@@ -139,6 +153,11 @@ public class STOR extends AbstractCommand {
                 return;
             }
 
+            if (dataConnection instanceof IODataConnection) {
+                ((IODataConnection) dataConnection).setTransferFile(fileName,
+                        -1);
+            }
+
             // transfer data
             boolean failure = false;
             OutputStream outStream = null;
@@ -182,14 +201,104 @@ public class STOR extends AbstractCommand {
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
-                        fileName));
+                session.write(getCompletedReply(session, request,
+                        context, "STOR", fileName));
 
             }
         } finally {
-            session.resetState();
-            session.getDataConnection().closeDataConnection();
+            if (!completing) {
+                session.resetState();
+                session.getDataConnection().closeDataConnection();
+            }
         }
     }
+
+    /**
+     * Start receiving the file over a non-blocking data connection,
+     * completing the command once the transfer has ended.
+     * 
+     * @return true if the transfer has been started, false if the file could
+     *         not be opened
+     */
+    private boolean transferNonBlocking(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final NioDataConnectionFactory connFactory, final FtpFile file,
+            final long skipLen) {
+        final String fileName = file.getAbsolutePath();
+
+        final OutputStream outStream;
+        try {
+            outStream = file.createOutputStream(skipLen);
+        } catch (IOException ex) {
+            LOG.debug("IOException during data transfer", ex);
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context,
+                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                    "STOR", fileName));
+            return false;
+        }
+
+        final CommandCompletion completion = new CommandCompletion();
+        session.setCommandCompletion(completion);
+
+        connFactory.transferFromClient(outStream, fileName,
+                new NioTransfer.Listener() {
+                    public void notOpened(final Exception e) {
+                        LOG.debug("Exception getting the input data stream", e);
+                        session.write(LocalizedFtpReply.translate(session,
+                                request, context,
+                                FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION,
+                                "STOR", fileName));
+                        completed();
+                    }
+
+                    public void transferred(final long size) {
+                        try {
+                            LOG.info("File uploaded {}", fileName);
+
+                            // notify the statistics component
+                            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                                    .getFtpStatistics();
+                            ftpStat.setUpload(session, file, size);
+
+                            // attempt to close the output stream so that
+                            // errors in closing it will return an error to
+                            // the client
+                            outStream.close();
+
+                            session.write(getCompletedReply(session, request,
+                                    context, "STOR", fileName));
+                        } catch (IOException ex) {
+                            failed(ex);
+                            return;
+                        }
+                        completed();
+                    }
+
+                    public void failed(final IOException ex) {
+                        if (ex instanceof SocketException) {
+                            LOG.debug("Socket exception during data transfer", ex);
+                            session.write(LocalizedFtpReply.translate(session,
+                                    request, context,
+                                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                                    "STOR", fileName));
+                        } else {
+                            LOG.debug("IOException during data transfer", ex);
+                            session.write(LocalizedFtpReply.translate(session,
+                                    request, context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "STOR", fileName));
+                        }
+                        completed();
+                    }
+
+                    private void completed() {
+                        IoUtils.close(outStream);
+                        session.resetState();
+                        connFactory.closeDataConnection();
+                        completion.complete();
+                    }
+                });
+        return true;
+    }
 }
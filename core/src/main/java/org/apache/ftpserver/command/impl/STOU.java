@@ -35,6 +35,7 @@ import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
@@ -128,7 +129,7 @@ public class STOU extends AbstractCommand {
 
             // get data connection
             session.write(new DefaultFtpReply(
-                    FtpReply.REPLY_150_FILE_STATUS_OKAY, "FILE: " + fileName));
+                    getOpeningReplyCode(session), "FILE: " + fileName));
 
             // get data from client
             boolean failure = false;
@@ -145,6 +146,11 @@ public class STOU extends AbstractCommand {
                 return;
             }
 
+            if (dataConnection instanceof IODataConnection) {
+                ((IODataConnection) dataConnection).setTransferFile(fileName,
+                        -1);
+            }
+
             try {
 
                 // open streams
@@ -191,9 +197,8 @@ public class STOU extends AbstractCommand {
 
             // if data transfer ok - send transfer complete message
             if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOU",
-                        fileName));
+                session.write(getCompletedReply(session, request,
+                        context, "STOU", fileName));
 
             }
         } finally {
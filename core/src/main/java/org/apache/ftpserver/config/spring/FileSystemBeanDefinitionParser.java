@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.config.spring;
 
+import org.apache.ftpserver.filesystem.nativefs.DurabilityPolicy;
 import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
@@ -60,5 +61,17 @@ public class FileSystemBeanDefinitionParser extends
             builder.addPropertyValue("createHome", Boolean
                     .parseBoolean(element.getAttribute("create-home")));
         }
+        if (StringUtils.hasText(element.getAttribute("mapped-read-threshold"))) {
+            builder.addPropertyValue("mappedReadThreshold", Long
+                    .parseLong(element.getAttribute("mapped-read-threshold")));
+        }
+        if (StringUtils.hasText(element.getAttribute("durability"))) {
+            builder.addPropertyValue("durabilityPolicy", DurabilityPolicy
+                    .parse(element.getAttribute("durability")));
+        }
+        if (StringUtils.hasText(element.getAttribute("sync-interval"))) {
+            builder.addPropertyValue("syncInterval", Long
+                    .parseLong(element.getAttribute("sync-interval")));
+        }
     }
 }
@@ -137,6 +137,84 @@ public class ListenerBeanDefinitionParser extends
         factoryBuilder.addPropertyValue("implicitSsl", SpringUtil.parseBoolean(
                 element, "implicit-ssl", false));
 
+        if (StringUtils.hasText(element.getAttribute("io-processors"))) {
+            factoryBuilder.addPropertyValue("ioProcessorCount", SpringUtil
+                    .parseInt(element, "io-processors"));
+        }
+        if (StringUtils.hasText(element.getAttribute("backlog"))) {
+            factoryBuilder.addPropertyValue("backlog", SpringUtil.parseInt(
+                    element, "backlog"));
+        }
+        if (StringUtils.hasText(element.getAttribute("read-buffer-size"))) {
+            factoryBuilder.addPropertyValue("readBufferSize", SpringUtil
+                    .parseInt(element, "read-buffer-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("min-read-buffer-size"))) {
+            factoryBuilder.addPropertyValue("minReadBufferSize", SpringUtil
+                    .parseInt(element, "min-read-buffer-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-read-buffer-size"))) {
+            factoryBuilder.addPropertyValue("maxReadBufferSize", SpringUtil
+                    .parseInt(element, "max-read-buffer-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("receive-buffer-size"))) {
+            factoryBuilder.addPropertyValue("receiveBufferSize", SpringUtil
+                    .parseInt(element, "receive-buffer-size"));
+        }
+        factoryBuilder.addPropertyValue("tcpNoDelay", SpringUtil.parseBoolean(
+                element, "tcp-no-delay", false));
+
+        if (StringUtils.hasText(element.getAttribute("command-pool-core-size"))) {
+            factoryBuilder.addPropertyValue("commandPoolCoreSize", SpringUtil
+                    .parseInt(element, "command-pool-core-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("command-pool-max-size"))) {
+            factoryBuilder.addPropertyValue("commandPoolMaxSize", SpringUtil
+                    .parseInt(element, "command-pool-max-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("command-queue-threshold"))) {
+            factoryBuilder.addPropertyValue("commandQueueThreshold", SpringUtil
+                    .parseInt(element, "command-queue-threshold"));
+        }
+        factoryBuilder.addPropertyValue("threadPerSession", SpringUtil
+                .parseBoolean(element, "thread-per-session", false));
+
+        if (StringUtils.hasText(element.getAttribute("transfer-pool-size"))) {
+            factoryBuilder.addPropertyValue("transferPoolSize", SpringUtil
+                    .parseInt(element, "transfer-pool-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("transfer-queue-size"))) {
+            factoryBuilder.addPropertyValue("transferQueueSize", SpringUtil
+                    .parseInt(element, "transfer-queue-size"));
+        }
+
+        if (StringUtils.hasText(element.getAttribute("max-connections"))) {
+            factoryBuilder.addPropertyValue("maxConnections", SpringUtil
+                    .parseInt(element, "max-connections"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-connections-per-ip"))) {
+            factoryBuilder.addPropertyValue("maxConnectionsPerIp", SpringUtil
+                    .parseInt(element, "max-connections-per-ip"));
+        }
+        if (StringUtils.hasText(element
+                .getAttribute("max-connection-rate-per-ip"))) {
+            factoryBuilder.addPropertyValue("maxConnectionRatePerIp",
+                    SpringUtil.parseInt(element, "max-connection-rate-per-ip"));
+        }
+
+        if (StringUtils.hasText(element.getAttribute("overload-queue-depth"))) {
+            factoryBuilder.addPropertyValue("overloadQueueDepth", SpringUtil
+                    .parseInt(element, "overload-queue-depth"));
+        }
+        if (StringUtils.hasText(element.getAttribute("overload-latency"))) {
+            factoryBuilder.addPropertyValue("overloadLatency", SpringUtil
+                    .parseInt(element, "overload-latency"));
+        }
+        if (StringUtils.hasText(element.getAttribute("overload-idle-timeout"))) {
+            factoryBuilder.addPropertyValue("overloadIdleTimeout", SpringUtil
+                    .parseInt(element, "overload-idle-timeout"));
+        }
+
         Element blacklistElm = SpringUtil.getChildElement(element,
                 FtpServerNamespaceHandler.FTPSERVER_NS, "blacklist");
         if (blacklistElm != null
@@ -263,6 +341,17 @@ public class ListenerBeanDefinitionParser extends
             }
 
             dc.setIdleTime(SpringUtil.parseInt(element, "idle-timeout", dc.getIdleTime()));
+            dc.setNonBlocking(SpringUtil.parseBoolean(element, "non-blocking", false));
+            dc.setTransferRateBurst(SpringUtil.parseInt(element, "transfer-rate-burst", 0));
+            dc.setTransferBufferSize(SpringUtil.parseInt(element, "transfer-buffer-size", dc.getTransferBufferSize()));
+            dc.setTransferBufferPoolSize(SpringUtil.parseInt(element, "transfer-buffer-pool-size", dc.getTransferBufferPoolSize()));
+            dc.setSendBufferSize(SpringUtil.parseInt(element, "send-buffer-size", 0));
+            dc.setReceiveBufferSize(SpringUtil.parseInt(element, "receive-buffer-size", 0));
+            dc.setTcpNoDelay(SpringUtil.parseBoolean(element, "tcp-no-delay", false));
+            dc.setTrafficClass(SpringUtil.parseInt(element, "traffic-class", 0));
+            dc.setSoLinger(SpringUtil.parseInt(element, "so-linger", -1));
+            dc.setAutoTuneBandwidth(SpringUtil.parseInt(element, "auto-tune-bandwidth", 0));
+            dc.setSpeculativeConnect(SpringUtil.parseBoolean(element, "speculative-connect", false));
 
             Element activeElm = SpringUtil.getChildElement(element,
                     FtpServerNamespaceHandler.FTPSERVER_NS, "active");
@@ -296,10 +385,19 @@ public class ListenerBeanDefinitionParser extends
                     dc.setPassiveExternalAddress(externalAddress);
                 }
 
+                dc.setPassivePortWaitTimeout(SpringUtil.parseInt(passiveElm,
+                        "port-wait-timeout", dc.getPassivePortWaitTimeout()));
+
                 String ports = SpringUtil.parseString(passiveElm, "ports");
                 if (ports != null) {
                     dc.setPassivePorts(ports);
                 }
+
+                String sharedPorts = SpringUtil.parseString(passiveElm,
+                        "shared-ports");
+                if (sharedPorts != null) {
+                    dc.setSharedPassivePorts(sharedPorts);
+                }
             }
         } else {
             // no data conn config element, do we still have SSL config from the
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs;
+
+/**
+ * Enumeration of the policies for making uploaded files durable, that is
+ * forcing them from the operating system cache to the storage device.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public enum DurabilityPolicy {
+
+    /**
+     * Files are never synced, leaving writing them to the operating system
+     * (write-behind). Gives the highest throughput.
+     */
+    NONE,
+
+    /**
+     * Files are synced when closed, before the transfer is reported as
+     * completed
+     */
+    SYNC_ON_CLOSE,
+
+    /**
+     * Files are synced every time the configured sync interval has been
+     * written, as well as when closed. Limits the amount of unsynced data and
+     * the time spent syncing on close.
+     */
+    PERIODIC_SYNC,
+
+    /**
+     * Files are synced when closed, by a single thread syncing the files
+     * closed by all sessions in batches. Avoids concurrent syncs, which 
+     * benefits storage performing poorly under concurrent flushes, at the
+     * cost of latency on storage that handles them well.
+     */
+    GROUP_COMMIT;
+
+    /**
+     * Parse a policy from its configuration name, e.g. "sync-on-close"
+     * 
+     * @param name
+     *            The name of the policy, case insensitive
+     * @return The policy
+     * @throws IllegalArgumentException
+     *             If the name is not a known policy
+     */
+    public static DurabilityPolicy parse(final String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
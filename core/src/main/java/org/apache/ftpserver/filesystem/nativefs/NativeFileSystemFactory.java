@@ -21,6 +21,8 @@ package org.apache.ftpserver.filesystem.nativefs;
 
 import java.io.File;
 
+import org.apache.ftpserver.filesystem.nativefs.impl.FileSyncer;
+import org.apache.ftpserver.filesystem.nativefs.impl.GroupCommitter;
 import org.apache.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.apache.ftpserver.ftplet.FileSystemView;
@@ -44,6 +46,14 @@ public class NativeFileSystemFactory implements FileSystemFactory {
 
     private boolean caseInsensitive;
 
+    private long mappedReadThreshold = 0;
+
+    private DurabilityPolicy durabilityPolicy = DurabilityPolicy.NONE;
+
+    private long syncInterval = 8 * 1024 * 1024;
+
+    private GroupCommitter groupCommitter;
+
     /**
      * Should the home directories be created automatically
      * @return true if the file system will create the home directory if not available
@@ -79,6 +89,87 @@ public class NativeFileSystemFactory implements FileSystemFactory {
         this.caseInsensitive = caseInsensitive;
     }
 
+    /**
+     * Get the file size from which files are read from memory mapped windows
+     * @return The threshold in bytes, 0 if memory mapped reads are disabled
+     */
+    public long getMappedReadThreshold() {
+        return mappedReadThreshold;
+    }
+
+    /**
+     * Set the file size from which files are read from memory mapped windows
+     * rather than using read calls. This benefits large downloads that can not
+     * be sent directly from the file system cache, like transfers over secure
+     * data connections or in compressed mode. Files with less than 1 MB left
+     * to read are never mapped, whatever the threshold. Defaults to 0,
+     * disabling memory mapped reads.
+     * @param mappedReadThreshold The threshold in bytes, 0 to disable memory
+     *            mapped reads
+     */
+    public void setMappedReadThreshold(long mappedReadThreshold) {
+        this.mappedReadThreshold = mappedReadThreshold;
+    }
+
+    /**
+     * Get the policy for making uploaded files durable
+     * @return The durability policy
+     */
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    /**
+     * Set the policy for making uploaded files durable. Syncing files 
+     * ensures that completed uploads survive a crash of the operating system,
+     * at the cost of upload throughput. Defaults to
+     * {@link DurabilityPolicy#NONE}, leaving writing files to the operating
+     * system.
+     * @param durabilityPolicy The durability policy
+     */
+    public void setDurabilityPolicy(DurabilityPolicy durabilityPolicy) {
+        if (durabilityPolicy == null) {
+            throw new IllegalArgumentException("durabilityPolicy can not be null");
+        }
+        this.durabilityPolicy = durabilityPolicy;
+    }
+
+    /**
+     * Get the number of bytes written between syncs for
+     * {@link DurabilityPolicy#PERIODIC_SYNC}
+     * @return The sync interval in bytes
+     */
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * Set the number of bytes written between syncs for
+     * {@link DurabilityPolicy#PERIODIC_SYNC}. Defaults to 8 MB.
+     * @param syncInterval The sync interval in bytes
+     */
+    public void setSyncInterval(long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Get the durability policy for files uploaded by a user. Returns the 
+     * durability policy configured for the file system, override to use
+     * different policies for different users.
+     * @param user The user
+     * @return The durability policy for the user
+     */
+    protected DurabilityPolicy getDurabilityPolicy(User user) {
+        return durabilityPolicy;
+    }
+
+    private synchronized GroupCommitter getGroupCommitter() {
+        if (groupCommitter == null) {
+            groupCommitter = new GroupCommitter();
+        }
+        return groupCommitter;
+    }
+
     /**
      * Create the appropriate user file system view.
      */
@@ -99,8 +190,15 @@ public class NativeFileSystemFactory implements FileSystemFactory {
                 }
             }
 
+            DurabilityPolicy policy = getDurabilityPolicy(user);
+            GroupCommitter committer = null;
+            if (policy == DurabilityPolicy.GROUP_COMMIT) {
+                committer = getGroupCommitter();
+            }
+
             FileSystemView fsView = new NativeFileSystemView(user,
-                    caseInsensitive);
+                    caseInsensitive, mappedReadThreshold, new FileSyncer(
+                            policy, syncInterval, committer));
             return fsView;
         }
     }
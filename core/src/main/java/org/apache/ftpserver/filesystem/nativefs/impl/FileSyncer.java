@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.apache.ftpserver.filesystem.nativefs.DurabilityPolicy;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Syncs written files according to a {@link DurabilityPolicy}.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class FileSyncer {
+
+    private final DurabilityPolicy policy;
+
+    private final long syncInterval;
+
+    private final GroupCommitter groupCommitter;
+
+    /**
+     * Constructor - internal do not use directly, use
+     * {@link org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory}
+     * instead
+     * 
+     * @param policy
+     *            The durability policy
+     * @param syncInterval
+     *            The number of bytes written between syncs for
+     *            {@link DurabilityPolicy#PERIODIC_SYNC}
+     * @param groupCommitter
+     *            The group committer shared by all sessions, required for
+     *            {@link DurabilityPolicy#GROUP_COMMIT}
+     */
+    public FileSyncer(final DurabilityPolicy policy, final long syncInterval,
+            final GroupCommitter groupCommitter) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy can not be null");
+        }
+        if (policy == DurabilityPolicy.GROUP_COMMIT && groupCommitter == null) {
+            throw new IllegalArgumentException(
+                    "groupCommitter required for group commit");
+        }
+        this.policy = policy;
+        this.syncInterval = syncInterval;
+        this.groupCommitter = groupCommitter;
+    }
+
+    /**
+     * Get the durability policy
+     * 
+     * @return The durability policy
+     */
+    public DurabilityPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get the number of bytes written between syncs
+     * 
+     * @return The sync interval in bytes, only used for
+     *         {@link DurabilityPolicy#PERIODIC_SYNC}
+     */
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * Should the file be synced after writing the provided number of bytes
+     * since the last sync?
+     */
+    boolean isSyncDue(final long unsyncedBytes) {
+        return policy == DurabilityPolicy.PERIODIC_SYNC && syncInterval > 0
+                && unsyncedBytes >= syncInterval;
+    }
+
+    /**
+     * Sync file data while the file is being written
+     */
+    void sync(final FileChannel channel) throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Sync a file being closed, including its meta data
+     */
+    void syncOnClose(final FileChannel channel) throws IOException {
+        switch (policy) {
+        case SYNC_ON_CLOSE:
+        case PERIODIC_SYNC:
+            channel.force(true);
+            break;
+        case GROUP_COMMIT:
+            groupCommitter.commit(channel);
+            break;
+        default:
+            // nothing to do
+        }
+    }
+}
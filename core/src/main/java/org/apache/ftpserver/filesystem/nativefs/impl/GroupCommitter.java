@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Syncs files closed by all sessions of a file system in batches. Files
+ * closed while a batch is being synced are synced in the next batch. Each
+ * file of a batch is synced once, however many sessions are waiting for it,
+ * and the files are spread over a bounded number of sync workers so that a
+ * slow sync does not hold up the whole batch. The commit thread and the sync
+ * workers are started on demand and stop after being idle for a while.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class GroupCommitter {
+
+    /**
+     * Time in milliseconds the commit thread will stay alive without any
+     * files to sync
+     */
+    private static final long MAX_IDLE_TIME = 30000;
+
+    /**
+     * The default maximum number of files synced concurrently
+     */
+    public static final int DEFAULT_SYNC_WORKERS = 4;
+
+    private final Logger LOG = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final BlockingQueue<Commit> pending = new LinkedBlockingQueue<Commit>();
+
+    private final AtomicLong commitCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final int syncWorkers;
+
+    private final ThreadPoolExecutor syncExecutor;
+
+    private boolean running = false;
+
+    /**
+     * Create a committer syncing up to {@link #DEFAULT_SYNC_WORKERS} files
+     * concurrently
+     */
+    public GroupCommitter() {
+        this(DEFAULT_SYNC_WORKERS);
+    }
+
+    /**
+     * Create a committer syncing up to the provided number of files
+     * concurrently
+     * 
+     * @param syncWorkers
+     *            The maximum number of files synced concurrently, must be
+     *            larger than 0
+     */
+    public GroupCommitter(final int syncWorkers) {
+        if (syncWorkers <= 0) {
+            throw new IllegalArgumentException(
+                    "Number of sync workers must be larger than 0");
+        }
+        this.syncWorkers = syncWorkers;
+
+        // the commit thread syncs a share of the batch itself, so it only
+        // needs workers for the others. Rejected shares are synced by the
+        // commit thread as well.
+        final AtomicInteger workerCount = new AtomicInteger();
+        syncExecutor = new ThreadPoolExecutor(0, Math.max(1, syncWorkers - 1),
+                MAX_IDLE_TIME, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r,
+                                "FtpServer-GroupCommitter-Sync-"
+                                        + workerCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Sync the file, waiting until it has been synced as part of a batch
+     * 
+     * @param channel
+     *            The channel of the file to sync
+     * @throws IOException
+     *             If syncing the file failed or the waiting thread was
+     *             interrupted
+     */
+    public void commit(final FileChannel channel) throws IOException {
+        Commit commit = new Commit(channel);
+        pending.add(commit);
+
+        start();
+
+        try {
+            commit.latch.await();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for file to be synced");
+        }
+
+        if (commit.failure != null) {
+            IOException e = new IOException("Failed to sync file: "
+                    + commit.failure.getMessage());
+            e.initCause(commit.failure);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of files synced
+     * 
+     * @return The number of files synced
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * Get the number of batches in which files have been synced
+     * 
+     * @return The number of batches
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Start the commit thread if not running
+     */
+    private synchronized void start() {
+        if (!running) {
+            running = true;
+
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    commitBatches();
+                }
+            }, "FtpServer-GroupCommitter");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the commit thread, unless new files are waiting to be synced
+     * 
+     * @return true if the commit thread was stopped
+     */
+    private synchronized boolean stopIfIdle() {
+        if (!pending.isEmpty()) {
+            return false;
+        }
+        running = false;
+        return true;
+    }
+
+    private void commitBatches() {
+        List<Commit> batch = new ArrayList<Commit>();
+
+        while (true) {
+            Commit first;
+            try {
+                first = pending.poll(MAX_IDLE_TIME, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+
+            if (first == null) {
+                if (stopIfIdle()) {
+                    LOG.debug("Group committer idle, stopping");
+                    return;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            pending.drainTo(batch);
+
+            syncBatch(batch);
+
+            // count the batch before releasing the waiting sessions, so that
+            // the counts include their commits when they return
+            commitCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+
+            for (Commit commit : batch) {
+                commit.latch.countDown();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Sync every file of the batch once, spreading the files over the sync
+     * workers, and wait until all have been synced
+     */
+    private void syncBatch(final List<Commit> batch) {
+        // sessions closing the same file share a single sync
+        Map<FileChannel, List<Commit>> files = new IdentityHashMap<FileChannel, List<Commit>>();
+        for (Commit commit : batch) {
+            List<Commit> commits = files.get(commit.channel);
+            if (commits == null) {
+                commits = new ArrayList<Commit>(1);
+                files.put(commit.channel, commits);
+            }
+            commits.add(commit);
+        }
+
+        int shareCount = Math.min(syncWorkers, files.size());
+        List<List<List<Commit>>> shares = new ArrayList<List<List<Commit>>>(
+                shareCount);
+        for (int i = 0; i < shareCount; i++) {
+            shares.add(new ArrayList<List<Commit>>());
+        }
+        int next = 0;
+        for (List<Commit> commits : files.values()) {
+            shares.get(next).add(commits);
+            next = (next + 1) % shareCount;
+        }
+
+        final CountDownLatch synced = new CountDownLatch(shareCount - 1);
+        for (int i = 1; i < shareCount; i++) {
+            final List<List<Commit>> share = shares.get(i);
+            syncExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        sync(share);
+                    } finally {
+                        synced.countDown();
+                    }
+                }
+            });
+        }
+        sync(shares.get(0));
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                synced.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sync(final List<List<Commit>> share) {
+        for (List<Commit> commits : share) {
+            IOException failure = null;
+            try {
+                commits.get(0).channel.force(true);
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e.getMessage());
+            }
+            for (Commit commit : commits) {
+                commit.failure = failure;
+            }
+        }
+    }
+
+    private static class Commit {
+        private final FileChannel channel;
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private volatile IOException failure;
+
+        public Commit(final FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
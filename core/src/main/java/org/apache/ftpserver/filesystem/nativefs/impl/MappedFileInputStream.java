@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Input stream reading a file from memory mapped windows rather than with
+ * read calls. The stream is still a {@link FileInputStream} on the underlying
+ * file, whose channel is positioned at the start offset, so data connections
+ * able to send the file directly from its channel will do so.
+ * 
+ * The size of the file is checked before every read from a window, so that a
+ * file truncated while being read ends the stream like it would for read
+ * calls, rather than accessing the window beyond the end of the file which
+ * raises a fault. Should the file still be truncated during a read, the
+ * fault is reported as an {@link IOException} if raised within the read.
+ * Mapped windows are only unmapped once garbage collected, so only large
+ * files should be read this way, see {@link #MIN_MAPPED_SIZE}.
+ * 
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class MappedFileInputStream extends FileInputStream {
+
+    /**
+     * The default size of the windows mapped into memory
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The smallest remaining file size read from memory mapped windows,
+     * smaller files are cheaper to read with read calls than to map
+     */
+    public static final long MIN_MAPPED_SIZE = 1024 * 1024;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private long size;
+
+    private final int windowSize;
+
+    private long position;
+
+    private MappedByteBuffer window;
+
+    /**
+     * Create a stream reading the file from the provided offset. The stream
+     * takes ownership of the file and closes it when closed.
+     */
+    public MappedFileInputStream(final RandomAccessFile raf, final long offset)
+            throws IOException {
+        this(raf, offset, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create a stream reading the file from the provided offset, mapping 
+     * windows of the provided size. The stream takes ownership of the file and
+     * closes it when closed.
+     */
+    public MappedFileInputStream(final RandomAccessFile raf,
+            final long offset, final int windowSize) throws IOException {
+        super(raf.getFD());
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Window size must be larger than 0");
+        }
+        this.windowSize = windowSize;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.size = channel.size();
+        this.position = offset;
+    }
+
+    /**
+     * Get the window to read from, mapping the next window if the current
+     * one has been read.
+     * 
+     * @return The window, null at the end of the file
+     */
+    private MappedByteBuffer getWindow() throws IOException {
+        // the file might have been truncated since the last read
+        size = channel.size();
+        if (position >= size) {
+            window = null;
+            return null;
+        }
+
+        if (window == null || !window.hasRemaining()) {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(windowSize, size - position));
+        } else if (window.remaining() > size - position) {
+            window.limit(window.position() + (int) (size - position));
+        }
+        return window;
+    }
+
+    public int read() throws IOException {
+        MappedByteBuffer buffer = getWindow();
+        if (buffer == null) {
+            return -1;
+        }
+        try {
+            int b = buffer.get() & 0xFF;
+            position++;
+            return b;
+        } catch (InternalError e) {
+            throw truncated(e);
+        }
+    }
+
+    public int read(final byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        MappedByteBuffer buffer = getWindow();
+        if (buffer == null) {
+            return -1;
+        }
+
+        int count = Math.min(len, buffer.remaining());
+        try {
+            buffer.get(b, off, count);
+        } catch (InternalError e) {
+            throw truncated(e);
+        }
+        position += count;
+        return count;
+    }
+
+    /**
+     * Accessing a mapped window beyond the end of a file truncated after
+     * mapping the window raises a fault, surfacing as an
+     * {@link InternalError}.
+     */
+    private IOException truncated(final InternalError e) {
+        window = null;
+        IOException ioe = new IOException(
+                "File truncated while being read at position " + position);
+        ioe.initCause(e);
+        return ioe;
+    }
+
+    public long skip(final long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        long skipped = Math.min(n, Math.max(0, size - position));
+        position += skipped;
+        window = null;
+        return skipped;
+    }
+
+    public int available() throws IOException {
+        return (int) Math.min(Math.max(0, size - position), Integer.MAX_VALUE);
+    }
+
+    public void close() throws IOException {
+        // the mapping is released once the buffer is garbage collected
+        window = null;
+        try {
+            super.close();
+        } finally {
+            raf.close();
+        }
+    }
+}
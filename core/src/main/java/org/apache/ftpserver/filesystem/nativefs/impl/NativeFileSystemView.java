@@ -58,6 +58,10 @@ public class NativeFileSystemView implements FileSystemView {
 
     private boolean caseInsensitive = false;
 
+    private long mappedReadThreshold = 0;
+
+    private FileSyncer fileSyncer;
+
     /**
      * Constructor - internal do not use directly, use {@link NativeFileSystemFactory} instead
      */
@@ -70,6 +74,23 @@ public class NativeFileSystemView implements FileSystemView {
      */
     public NativeFileSystemView(User user, boolean caseInsensitive)
             throws FtpException {
+        this(user, caseInsensitive, 0);
+    }
+
+    /**
+     * Constructor - internal do not use directly, use {@link NativeFileSystemFactory} instead
+     */
+    public NativeFileSystemView(User user, boolean caseInsensitive,
+            long mappedReadThreshold) throws FtpException {
+        this(user, caseInsensitive, mappedReadThreshold, null);
+    }
+
+    /**
+     * Constructor - internal do not use directly, use {@link NativeFileSystemFactory} instead
+     */
+    public NativeFileSystemView(User user, boolean caseInsensitive,
+            long mappedReadThreshold, FileSyncer fileSyncer)
+            throws FtpException {
         if (user == null) {
             throw new IllegalArgumentException("user can not be null");
         }
@@ -79,6 +100,8 @@ public class NativeFileSystemView implements FileSystemView {
         }
 
         this.caseInsensitive = caseInsensitive;
+        this.mappedReadThreshold = mappedReadThreshold;
+        this.fileSyncer = fileSyncer;
 
         // add last '/' if necessary
         String rootDir = user.getHomeDirectory();
@@ -101,7 +124,8 @@ public class NativeFileSystemView implements FileSystemView {
      * user.
      */
     public FtpFile getHomeDirectory() {
-        return new NativeFtpFile("/", new File(rootDir), user);
+        return new NativeFtpFile("/", new File(rootDir), user,
+                mappedReadThreshold, fileSyncer);
     }
 
     /**
@@ -110,10 +134,12 @@ public class NativeFileSystemView implements FileSystemView {
     public FtpFile getWorkingDirectory() {
         FtpFile fileObj = null;
         if (currDir.equals("/")) {
-            fileObj = new NativeFtpFile("/", new File(rootDir), user);
+            fileObj = new NativeFtpFile("/", new File(rootDir), user,
+                mappedReadThreshold, fileSyncer);
         } else {
             File file = new File(rootDir, currDir.substring(1));
-            fileObj = new NativeFtpFile(currDir, file, user);
+            fileObj = new NativeFtpFile(currDir, file, user,
+                    mappedReadThreshold, fileSyncer);
 
         }
         return fileObj;
@@ -131,7 +157,8 @@ public class NativeFileSystemView implements FileSystemView {
 
         // strip the root directory and return
         String userFileName = physicalName.substring(rootDir.length() - 1);
-        return new NativeFtpFile(userFileName, fileObj, user);
+        return new NativeFtpFile(userFileName, fileObj, user,
+                mappedReadThreshold, fileSyncer);
     }
 
     /**
@@ -32,6 +32,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import org.apache.ftpserver.filesystem.nativefs.DurabilityPolicy;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.usermanager.impl.WriteRequest;
@@ -59,11 +60,32 @@ public class NativeFtpFile implements FtpFile {
 
     private User user;
 
+    private long mappedReadThreshold;
+
+    private FileSyncer fileSyncer;
+
     /**
      * Constructor, internal do not use directly.
      */
     protected NativeFtpFile(final String fileName, final File file,
             final User user) {
+        this(fileName, file, user, 0);
+    }
+
+    /**
+     * Constructor, internal do not use directly.
+     */
+    protected NativeFtpFile(final String fileName, final File file,
+            final User user, final long mappedReadThreshold) {
+        this(fileName, file, user, mappedReadThreshold, null);
+    }
+
+    /**
+     * Constructor, internal do not use directly.
+     */
+    protected NativeFtpFile(final String fileName, final File file,
+            final User user, final long mappedReadThreshold,
+            final FileSyncer fileSyncer) {
         if (fileName == null) {
             throw new IllegalArgumentException("fileName can not be null");
         }
@@ -81,6 +103,8 @@ public class NativeFtpFile implements FtpFile {
         this.fileName = fileName;
         this.file = file;
         this.user = user;
+        this.mappedReadThreshold = mappedReadThreshold;
+        this.fileSyncer = fileSyncer;
     }
 
     /**
@@ -339,7 +363,8 @@ public class NativeFtpFile implements FtpFile {
         for (int i = 0; i < files.length; ++i) {
             File fileObj = files[i];
             String fileName = virtualFileStr + fileObj.getName();
-            virtualFiles[i] = new NativeFtpFile(fileName, fileObj, user);
+            virtualFiles[i] = new NativeFtpFile(fileName, fileObj, user,
+                    mappedReadThreshold, fileSyncer);
         }
 
         return Collections.unmodifiableList(Arrays.asList(virtualFiles));
@@ -361,6 +386,11 @@ public class NativeFtpFile implements FtpFile {
         raf.setLength(offset);
         raf.seek(offset);
 
+        if (fileSyncer != null
+                && fileSyncer.getPolicy() != DurabilityPolicy.NONE) {
+            return new SyncingFileOutputStream(raf, fileSyncer);
+        }
+
         // The IBM jre needs to have both the stream and the random access file
         // objects closed to actually close the file
         return new FileOutputStream(raf.getFD()) {
@@ -385,6 +415,13 @@ public class NativeFtpFile implements FtpFile {
         final RandomAccessFile raf = new RandomAccessFile(file, "r");
         raf.seek(offset);
 
+        // large files are read from memory mapped windows
+        if (mappedReadThreshold > 0
+                && raf.length() - offset >= Math.max(mappedReadThreshold,
+                        MappedFileInputStream.MIN_MAPPED_SIZE)) {
+            return new MappedFileInputStream(raf, offset);
+        }
+
         // The IBM jre needs to have both the stream and the random access file
         // objects closed to actually close the file
         return new FileInputStream(raf.getFD()) {
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Output stream syncing the written file as required by a {@link FileSyncer}.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class SyncingFileOutputStream extends FileOutputStream {
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private final FileSyncer syncer;
+
+    private long unsyncedBytes = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Create a stream writing to the current position of the file. The stream
+     * takes ownership of the file and closes it when closed.
+     */
+    public SyncingFileOutputStream(final RandomAccessFile raf,
+            final FileSyncer syncer) throws IOException {
+        super(raf.getFD());
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.syncer = syncer;
+    }
+
+    public void write(final int b) throws IOException {
+        super.write(b);
+        written(1);
+    }
+
+    public void write(final byte[] b) throws IOException {
+        super.write(b);
+        written(b.length);
+    }
+
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        super.write(b, off, len);
+        written(len);
+    }
+
+    private void written(final int len) throws IOException {
+        unsyncedBytes += len;
+        if (syncer.isSyncDue(unsyncedBytes)) {
+            syncer.sync(channel);
+            unsyncedBytes = 0;
+        }
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            syncer.syncOnClose(channel);
+        } finally {
+            try {
+                super.close();
+            } finally {
+                raf.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Converts line endings for ASCII transfers. Buffers are scanned for line
+ * endings and the runs of bytes in between are written in bulk, rather than
+ * byte by byte. The converter keeps the state needed to handle line endings
+ * spanning buffer boundaries and should therefore be used for one transfer
+ * only.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class AsciiLineConverter {
+
+    private final boolean toClient;
+
+    private final byte[] eol;
+
+    private byte lastByte = 0;
+
+    /**
+     * @param toClient
+     *            true if converting data sent to the client, where \n is
+     *            replaced by \r\n. If false, converting data received from the
+     *            client, where \r\n is replaced by the local line ending.
+     * @param eol
+     *            The local line ending
+     */
+    public AsciiLineConverter(final boolean toClient, final byte[] eol) {
+        this.toClient = toClient;
+        this.eol = eol;
+    }
+
+    /**
+     * Convert the line endings of the provided data and write it to the
+     * output stream.
+     */
+    public void convert(final byte[] buff, final int off, final int len,
+            final OutputStream out) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+
+        if (toClient) {
+            convertToClient(buff, off, len, out);
+        } else {
+            convertFromClient(buff, off, len, out);
+        }
+
+        // store the last byte so that we can detect line endings spanning
+        // buffers
+        lastByte = buff[off + len - 1];
+    }
+
+    /**
+     * Replace \n by \r\n, unless already preceded by \r
+     */
+    private void convertToClient(final byte[] buff, final int off,
+            final int len, final OutputStream out) throws IOException {
+        int end = off + len;
+        int start = off;
+        byte prev = lastByte;
+        for (int i = off; i < end; i++) {
+            byte b = buff[i];
+            if (b == '\n' && prev != '\r') {
+                out.write(buff, start, i - start);
+                out.write('\r');
+
+                // the \n will be written with the next run
+                start = i;
+            }
+            prev = b;
+        }
+        out.write(buff, start, end - start);
+    }
+
+    /**
+     * For reads, we should always get \r\n so what we do here is to ignore \n
+     * bytes and on \r dump the system local line ending
+     */
+    private void convertFromClient(final byte[] buff, final int off,
+            final int len, final OutputStream out) throws IOException {
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            byte b = buff[i];
+            if (b == '\n') {
+                out.write(buff, start, i - start);
+                start = i + 1;
+            } else if (b == '\r') {
+                out.write(buff, start, i - start);
+                out.write(eol);
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            out.write(buff, start, end - start);
+        }
+    }
+}
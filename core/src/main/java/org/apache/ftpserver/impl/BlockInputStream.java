@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Reads the data of a file received in <code>MODE B</code>, as framed by
+ * {@link BlockOutputStream}. The stream ends after the block marking the end
+ * of the file, leaving any further data on the data connection for the next
+ * transfer. Restart markers are passed to {@link #restartMarker(String, long)}.
+ * Record boundaries are ignored since only the file structure is supported.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class BlockInputStream extends FilterInputStream {
+
+    private int remaining = 0;
+
+    private boolean lastBlock = false;
+
+    private long position = 0;
+
+    public BlockInputStream(final InputStream in) {
+        super(in);
+    }
+
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Data connection closed within a block");
+        }
+        remaining--;
+        position++;
+        return b;
+    }
+
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+
+        int count = in.read(b, off, Math.min(len, remaining));
+        if (count == -1) {
+            throw new EOFException("Data connection closed within a block");
+        }
+        remaining -= count;
+        position += count;
+        return count;
+    }
+
+    public long skip(final long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    public int available() throws IOException {
+        return Math.min(remaining, in.available());
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Has the whole file been read, up to and including the block marking
+     * the end of the file?
+     */
+    public boolean isEndOfFile() {
+        return lastBlock && remaining == 0;
+    }
+
+    /**
+     * Does not close the data connection.
+     */
+    public void close() throws IOException {
+        // do nothing
+    }
+
+    /**
+     * Called for each restart marker received. Does nothing by default.
+     * 
+     * @param marker
+     *            The marker as sent by the client
+     * @param position
+     *            The number of data bytes read before the marker
+     */
+    protected void restartMarker(final String marker, final long position)
+            throws IOException {
+        // do nothing
+    }
+
+    /**
+     * Read block headers until data is available.
+     * 
+     * @return false if the end of the file has been reached
+     */
+    private boolean nextBlock() throws IOException {
+        while (remaining == 0) {
+            if (lastBlock) {
+                return false;
+            }
+
+            int descriptor = readHeaderByte();
+            int count = (readHeaderByte() << 8) | readHeaderByte();
+
+            if ((descriptor & BlockOutputStream.DESCRIPTOR_RESTART_MARKER) != 0) {
+                byte[] marker = new byte[count];
+                int length = 0;
+                while (length < count) {
+                    int read = in.read(marker, length, count - length);
+                    if (read == -1) {
+                        throw new EOFException(
+                                "Data connection closed within a restart marker");
+                    }
+                    length += read;
+                }
+                restartMarker(new String(marker, "US-ASCII"), position);
+            } else {
+                remaining = count;
+            }
+
+            if ((descriptor & BlockOutputStream.DESCRIPTOR_EOF) != 0) {
+                lastBlock = true;
+            }
+        }
+        return true;
+    }
+
+    private int readHeaderByte() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException(
+                    "Data connection closed before the end of the file");
+        }
+        return b;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Frames data sent in <code>MODE B</code> as described in RFC 959, section
+ * 3.4.2. Each block starts with a descriptor byte and a two byte count
+ * followed by the data. Small writes are collected into blocks of up to the
+ * configured size. The end of a file is marked by {@link #finish()}, closing
+ * the stream leaves the data connection open for further transfers.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class BlockOutputStream extends FilterOutputStream {
+
+    /**
+     * Descriptor flag for the last block of a record
+     */
+    public static final int DESCRIPTOR_EOR = 128;
+
+    /**
+     * Descriptor flag for the last block of a file
+     */
+    public static final int DESCRIPTOR_EOF = 64;
+
+    /**
+     * Descriptor flag for a block containing suspected errors
+     */
+    public static final int DESCRIPTOR_ERRORS = 32;
+
+    /**
+     * Descriptor flag for a block containing a restart marker
+     */
+    public static final int DESCRIPTOR_RESTART_MARKER = 16;
+
+    /**
+     * The largest number of data bytes in a block
+     */
+    public static final int MAX_BLOCK_SIZE = 65535;
+
+    private static final int HEADER_SIZE = 3;
+
+    private final byte[] block;
+
+    private int count = 0;
+
+    private boolean finished = false;
+
+    /**
+     * @param out
+     *            The stream of the data connection
+     * @param blockSize
+     *            The maximum number of data bytes per block, at most
+     *            {@link #MAX_BLOCK_SIZE}
+     */
+    public BlockOutputStream(final OutputStream out, final int blockSize) {
+        super(out);
+
+        if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid block size: "
+                    + blockSize);
+        }
+        block = new byte[HEADER_SIZE + blockSize];
+    }
+
+    public void write(final int b) throws IOException {
+        checkNotFinished();
+
+        block[HEADER_SIZE + count++] = (byte) b;
+        if (HEADER_SIZE + count == block.length) {
+            writeBlock(0);
+        }
+    }
+
+    public void write(final byte[] b, int off, int len) throws IOException {
+        checkNotFinished();
+
+        while (len > 0) {
+            int length = Math.min(len, block.length - HEADER_SIZE - count);
+            System.arraycopy(b, off, block, HEADER_SIZE + count, length);
+            count += length;
+            off += length;
+            len -= length;
+
+            if (HEADER_SIZE + count == block.length) {
+                writeBlock(0);
+            }
+        }
+    }
+
+    /**
+     * Send the collected data as a block and flush the data connection.
+     */
+    public void flush() throws IOException {
+        if (count > 0) {
+            writeBlock(0);
+        }
+        out.flush();
+    }
+
+    /**
+     * Send a restart marker after the data written so far. The marker is
+     * sent in its own block.
+     * 
+     * @param marker
+     *            The marker, made of printable ASCII characters
+     */
+    public void writeRestartMarker(final String marker) throws IOException {
+        checkNotFinished();
+
+        if (count > 0) {
+            writeBlock(0);
+        }
+
+        byte[] markerBytes = marker.getBytes("US-ASCII");
+        System.arraycopy(markerBytes, 0, block, HEADER_SIZE,
+                markerBytes.length);
+        count = markerBytes.length;
+        writeBlock(DESCRIPTOR_RESTART_MARKER);
+    }
+
+    /**
+     * Send the remaining data in a block marking the end of the file and
+     * flush the data connection. No more data can be written afterwards.
+     */
+    public void finish() throws IOException {
+        checkNotFinished();
+
+        writeBlock(DESCRIPTOR_EOF);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Has the end of the file been sent?
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Does not close the data connection, and does not mark the end of the
+     * file. Data written since the last block was sent is discarded.
+     */
+    public void close() throws IOException {
+        count = 0;
+    }
+
+    private void writeBlock(final int descriptor) throws IOException {
+        block[0] = (byte) descriptor;
+        block[1] = (byte) (count >> 8);
+        block[2] = (byte) count;
+        out.write(block, 0, HEADER_SIZE + count);
+        count = 0;
+    }
+
+    private void checkNotFinished() throws IOException {
+        if (finished) {
+            throw new IOException("End of file already sent");
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ftpserver.DataConnectionException;
+import org.apache.ftpserver.util.InetAddressParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A configured host name or address, resolved when created and then
+ * refreshed in the background once the resolved address is older than the
+ * time to live. Getting the address never waits for the name service, so
+ * that slow DNS does not stall data connections. Until a refresh completes,
+ * the previously resolved address is used. Literal addresses are never
+ * refreshed, and all addresses are refreshed by a single shared thread.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class CachedInetAddress {
+
+    /**
+     * Resolves host names to addresses
+     */
+    public static interface Resolver {
+
+        /**
+         * Resolve the host name or literal address
+         * 
+         * @param host
+         *            The host name or literal address
+         * @return The address
+         * @throws UnknownHostException
+         *             If the host name can not be resolved
+         */
+        InetAddress resolve(String host) throws UnknownHostException;
+    }
+
+    /**
+     * Resolves using {@link InetAddress#getByName(String)}
+     */
+    public static final Resolver DNS = new Resolver() {
+        public InetAddress resolve(final String host)
+                throws UnknownHostException {
+            return InetAddress.getByName(host);
+        }
+    };
+
+    /**
+     * The default time in milliseconds after which a resolved address is
+     * refreshed
+     */
+    public static final long DEFAULT_TTL = 60000;
+
+    /**
+     * Refreshes the addresses of all instances in the background
+     */
+    private static final ExecutorService REFRESHER = new ThreadPoolExecutor(1,
+            1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "FtpServer-AddressResolver");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Logger LOG = LoggerFactory.getLogger(CachedInetAddress.class);
+
+    private final String host;
+
+    private final long ttl;
+
+    private final Resolver resolver;
+
+    private final boolean literal;
+
+    private volatile InetAddress address;
+
+    private volatile UnknownHostException failure;
+
+    private volatile long resolveTime;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    /**
+     * Create the address, resolving the host name on the calling thread.
+     * 
+     * @param host
+     *            The host name or literal address
+     * @param ttl
+     *            The time in milliseconds after which the address is
+     *            refreshed, 0 to never refresh it
+     * @param resolver
+     *            The resolver used for resolving the host name
+     */
+    public CachedInetAddress(final String host, final long ttl,
+            final Resolver resolver) {
+        this.host = host;
+        this.ttl = ttl;
+        this.resolver = resolver;
+        this.literal = InetAddressParser.parseLiteral(host) != null;
+
+        resolve();
+    }
+
+    /**
+     * Get the host name or literal address as configured
+     * 
+     * @return The host name or address
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Get the last resolved address, starting a refresh in the background if
+     * it is older than the time to live. Does not wait for the name service.
+     * 
+     * @return The address
+     * @throws DataConnectionException
+     *             If the host name has never been resolved successfully
+     */
+    public InetAddress getAddress() throws DataConnectionException {
+        InetAddress current = address;
+
+        // retry right away if never resolved, still in the background
+        if (current == null
+                || (ttl > 0 && !literal && System.currentTimeMillis()
+                        - resolveTime >= ttl)) {
+            refresh();
+        }
+
+        if (current == null) {
+            throw new DataConnectionException("Failed to resolve address "
+                    + host, failure);
+        }
+        return current;
+    }
+
+    /**
+     * Resolve the host name on the shared background thread, unless already
+     * doing so.
+     */
+    private void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        REFRESHER.execute(new Runnable() {
+            public void run() {
+                try {
+                    resolve();
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+        });
+    }
+
+    private void resolve() {
+        try {
+            address = resolver.resolve(host);
+            failure = null;
+        } catch (UnknownHostException e) {
+            // keep using the previously resolved address, if any
+            LOG.warn("Failed to resolve address " + host, e);
+            failure = e;
+        }
+        resolveTime = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * The completion of a command which continues after returning from
+ * {@link org.apache.ftpserver.command.Command#execute(FtpIoSession, FtpServerContext, org.apache.ftpserver.ftplet.FtpRequest)},
+ * such as a transfer driven by the {@link NioDataConnectionSelector}. The
+ * command registers the completion with
+ * {@link FtpIoSession#setCommandCompletion(CommandCompletion)} and completes
+ * it once it has sent its final reply. Until then, the ftplets are not
+ * notified of the command having been executed and the following commands of
+ * the session are not run.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class CommandCompletion {
+
+    private Runnable listener;
+
+    private boolean completed = false;
+
+    /**
+     * Mark the command as completed, running the listener if any on the
+     * calling thread.
+     */
+    public void complete() {
+        Runnable completedListener;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            completedListener = listener;
+            listener = null;
+        }
+
+        if (completedListener != null) {
+            completedListener.run();
+        }
+    }
+
+    /**
+     * Run the listener once the command has completed, or right away on the
+     * calling thread if it already has.
+     * 
+     * @param listener
+     *            The listener
+     */
+    public void whenCompleted(final Runnable listener) {
+        synchronized (this) {
+            if (!completed) {
+                this.listener = listener;
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Has the command completed?
+     * 
+     * @return true if completed
+     */
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+}
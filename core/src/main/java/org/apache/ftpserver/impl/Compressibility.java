@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Detects files that will not get any smaller by compressing them in 
+ * <code>MODE Z</code>, either by their file name extension or by the entropy
+ * of a sample of their contents.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class Compressibility {
+
+    /**
+     * The number of bytes sampled to estimate the entropy of a file
+     */
+    public static final int SAMPLE_SIZE = 4096;
+
+    /**
+     * Entropy in bits per byte from which a sample is considered incompressible
+     */
+    public static final double MAX_COMPRESSIBLE_ENTROPY = 7.5;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>();
+
+    static {
+        String[] extensions = new String[] { "7z", "aac", "apk", "avi", "bz2",
+                "cab", "deb", "docx", "ear", "flac", "gif", "gz", "jar",
+                "jpeg", "jpg", "lz", "lzma", "m4a", "mkv", "mov", "mp3", "mp4",
+                "mpeg", "mpg", "odp", "ods", "odt", "ogg", "png", "pptx",
+                "rar", "rpm", "tbz2", "tgz", "txz", "war", "webm", "webp",
+                "xlsx", "xz", "z", "zip", "zst" };
+        for (int i = 0; i < extensions.length; i++) {
+            COMPRESSED_EXTENSIONS.add(extensions[i]);
+        }
+    }
+
+    private Compressibility() {
+        // no instances
+    }
+
+    /**
+     * Does the file name have the extension of a compressed file format?
+     * 
+     * @param fileName
+     *            The file name, may be null
+     * @return true if the file name has a known compressed extension
+     */
+    public static boolean isCompressedFileName(final String fileName) {
+        if (fileName == null) {
+            return false;
+        }
+
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex == -1 || dotIndex < fileName.lastIndexOf('/')) {
+            return false;
+        }
+
+        return COMPRESSED_EXTENSIONS.contains(fileName.substring(dotIndex + 1)
+                .toLowerCase());
+    }
+
+    /**
+     * Estimate the Shannon entropy of a sample.
+     * 
+     * @return The entropy in bits per byte, between 0 and 8
+     */
+    public static double getEntropy(final byte[] sample, final int off,
+            final int len) {
+        if (len == 0) {
+            return 0;
+        }
+
+        int[] counts = new int[256];
+        for (int i = off; i < off + len; i++) {
+            counts[sample[i] & 0xFF]++;
+        }
+
+        double entropy = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                double p = (double) counts[i] / len;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * Is the sample too random to be worth compressing? Samples shorter than
+     * 256 bytes are always considered compressible, as their entropy estimate
+     * is too low to be meaningful.
+     */
+    public static boolean isIncompressible(final byte[] sample, final int off,
+            final int len) {
+        return len >= 256
+                && getEntropy(sample, off, len) >= MAX_COMPRESSIBLE_ENTROPY;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Applies the socket options configured in the
+ * {@link DataConnectionConfiguration} to data sockets. If buffer auto-tuning
+ * is enabled, the send and receive buffers are sized to the bandwidth-delay
+ * product of the configured bandwidth and the measured round trip time.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class DataSocketOptions {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(DataSocketOptions.class);
+
+    /**
+     * The smallest buffer size chosen by auto-tuning
+     */
+    public static final int MIN_AUTO_TUNED_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The largest buffer size chosen by auto-tuning
+     */
+    public static final int MAX_AUTO_TUNED_BUFFER_SIZE = 16 * 1024 * 1024;
+
+    private DataSocketOptions() {
+        // no instances
+    }
+
+    /**
+     * Configure a passive server socket. Must be called before binding the
+     * socket for receive buffers larger than 64 kB to take effect on the
+     * accepted sockets.
+     */
+    public static void configure(final ServerSocket socket,
+            final DataConnectionConfiguration config) throws SocketException {
+        if (config.getReceiveBufferSize() > 0) {
+            socket.setReceiveBufferSize(config.getReceiveBufferSize());
+        }
+    }
+
+    /**
+     * Configure a data socket, before connecting it or right after accepting
+     * it.
+     */
+    public static void configure(final Socket socket,
+            final DataConnectionConfiguration config) throws SocketException {
+        if (config.getSendBufferSize() > 0) {
+            socket.setSendBufferSize(config.getSendBufferSize());
+        }
+        if (config.getReceiveBufferSize() > 0) {
+            socket.setReceiveBufferSize(config.getReceiveBufferSize());
+        }
+        if (config.isTcpNoDelay()) {
+            socket.setTcpNoDelay(true);
+        }
+        if (config.getSoLinger() >= 0) {
+            socket.setSoLinger(true, config.getSoLinger());
+        }
+        if (config.getTrafficClass() > 0) {
+            try {
+                socket.setTrafficClass(config.getTrafficClass());
+            } catch (SocketException e) {
+                // the traffic class is only a hint, not all platforms 
+                // support setting it
+                LOG.debug("Failed to set traffic class on data socket", e);
+            }
+        }
+    }
+
+    /**
+     * Size the receive buffer of a passive server socket from the round trip
+     * time last measured for the session, if auto-tuning is enabled. Must be
+     * called before binding the socket, as the TCP window scale of the
+     * accepted sockets is negotiated from it during the handshake.
+     * 
+     * @param roundTripTime
+     *            The measured round trip time in nanoseconds, or -1 if not
+     *            known
+     */
+    public static void autoTune(final ServerSocket socket,
+            final DataConnectionConfiguration config, final long roundTripTime)
+            throws SocketException {
+        if (config.getAutoTuneBandwidth() <= 0 || roundTripTime < 0) {
+            return;
+        }
+
+        int receiveBufferSize = getAutoTunedBufferSize(config
+                .getAutoTuneBandwidth(), roundTripTime, config
+                .getReceiveBufferSize());
+
+        LOG.debug("Auto-tuned passive data socket receive buffer to {} bytes",
+                receiveBufferSize);
+        socket.setReceiveBufferSize(receiveBufferSize);
+    }
+
+    /**
+     * Size the send and receive buffers of a data socket from the round trip
+     * time last measured for the session, if auto-tuning is enabled. Must be
+     * called before connecting the socket for the receive buffer to take
+     * effect.
+     * 
+     * @param roundTripTime
+     *            The measured round trip time in nanoseconds, or -1 if not
+     *            known
+     */
+    public static void autoTune(final Socket socket,
+            final DataConnectionConfiguration config, final long roundTripTime)
+            throws SocketException {
+        if (config.getAutoTuneBandwidth() <= 0 || roundTripTime < 0) {
+            return;
+        }
+
+        int sendBufferSize = getAutoTunedBufferSize(config
+                .getAutoTuneBandwidth(), roundTripTime, config
+                .getSendBufferSize());
+        int receiveBufferSize = getAutoTunedBufferSize(config
+                .getAutoTuneBandwidth(), roundTripTime, config
+                .getReceiveBufferSize());
+
+        LOG.debug("Auto-tuned data socket buffers to {}/{} bytes",
+                sendBufferSize, receiveBufferSize);
+        socket.setSendBufferSize(sendBufferSize);
+        socket.setReceiveBufferSize(receiveBufferSize);
+    }
+
+    /**
+     * Size the send buffer of a connected or accepted data socket from the
+     * round trip time, if auto-tuning is enabled. Unlike the receive buffer,
+     * the send buffer can still grow after the handshake, so this applies the
+     * round trip time measured for the connection itself.
+     * 
+     * @param roundTripTime
+     *            The measured round trip time in nanoseconds, or -1 if not
+     *            known
+     */
+    public static void autoTuneSendBuffer(final Socket socket,
+            final DataConnectionConfiguration config, final long roundTripTime)
+            throws SocketException {
+        if (config.getAutoTuneBandwidth() <= 0 || roundTripTime < 0) {
+            return;
+        }
+
+        int sendBufferSize = getAutoTunedBufferSize(config
+                .getAutoTuneBandwidth(), roundTripTime, config
+                .getSendBufferSize());
+
+        LOG.debug("Auto-tuned data socket send buffer to {} bytes",
+                sendBufferSize);
+        socket.setSendBufferSize(sendBufferSize);
+    }
+
+    /**
+     * Calculate the buffer size needed to keep a link with the provided
+     * bandwidth and round trip time filled.
+     * 
+     * @param bandwidth
+     *            The bandwidth in bytes per second
+     * @param roundTripTime
+     *            The round trip time in nanoseconds
+     * @param minSize
+     *            The smallest buffer size to return, 0 if not set
+     * @return The buffer size in bytes
+     */
+    public static int getAutoTunedBufferSize(final int bandwidth,
+            final long roundTripTime, final int minSize) {
+        long size = (long) ((double) bandwidth * roundTripTime / 1000000000L);
+
+        size = Math.max(size, Math.max(minSize, MIN_AUTO_TUNED_BUFFER_SIZE));
+        return (int) Math.min(size, Math.max(minSize,
+                MAX_AUTO_TUNED_BUFFER_SIZE));
+    }
+}
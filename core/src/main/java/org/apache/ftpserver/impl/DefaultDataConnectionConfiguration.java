@@ -19,8 +19,12 @@
 
 package org.apache.ftpserver.impl;
 
+import java.net.InetAddress;
+
 import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.DataConnectionException;
+import org.apache.ftpserver.TransferBufferPoolStatistics;
 import org.apache.ftpserver.ssl.SslConfiguration;
 
 /**
@@ -49,6 +53,37 @@ public class DefaultDataConnectionConfiguration implements
     
     private final boolean implicitSsl;
 
+    private final boolean nonBlocking;
+
+    private final int transferRateBurst;
+
+    private final TransferBufferPool transferBufferPool;
+
+    private final int sendBufferSize;
+
+    private final int receiveBufferSize;
+
+    private final boolean tcpNoDelay;
+
+    private final int trafficClass;
+
+    private final int soLinger;
+
+    private final int autoTuneBandwidth;
+
+    private final int passivePortWaitTimeout;
+
+    private final int[] sharedPassivePorts;
+
+    private final boolean speculativeConnect;
+
+    // the addresses resolved when created and refreshed in the background
+    private final CachedInetAddress activeLocalInetAddress;
+
+    private final CachedInetAddress passiveInetAddress;
+
+    private final CachedInetAddress passiveExternalInetAddress;
+
     /**
      * Internal constructor, do not use directly. Use {@link DataConnectionConfigurationFactory} instead.
      */
@@ -56,7 +91,14 @@ public class DefaultDataConnectionConfiguration implements
             SslConfiguration ssl, boolean activeEnabled, boolean activeIpCheck,
             String activeLocalAddress, int activeLocalPort,
             String passiveAddress, PassivePorts passivePorts,
-            String passiveExternalAddress, boolean implicitSsl) {
+            String passiveExternalAddress, boolean implicitSsl,
+            boolean nonBlocking, int transferRateBurst,
+            int transferBufferSize, int transferBufferPoolSize,
+            int sendBufferSize, int receiveBufferSize, boolean tcpNoDelay,
+            int trafficClass, int soLinger, int autoTuneBandwidth,
+            int passivePortWaitTimeout, int[] sharedPassivePorts,
+            CachedInetAddress.Resolver addressResolver,
+            boolean speculativeConnect) {
         this.idleTime = idleTime;
         this.ssl = ssl;
         this.activeEnabled = activeEnabled;
@@ -67,6 +109,42 @@ public class DefaultDataConnectionConfiguration implements
         this.passivePorts = passivePorts;
         this.passiveExternalAddress = passiveExternalAddress;
         this.implicitSsl = implicitSsl;
+        this.nonBlocking = nonBlocking;
+        this.transferRateBurst = transferRateBurst;
+        this.transferBufferPool = new TransferBufferPool(transferBufferSize,
+                transferBufferPoolSize);
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.trafficClass = trafficClass;
+        this.soLinger = soLinger;
+        this.autoTuneBandwidth = autoTuneBandwidth;
+        this.passivePortWaitTimeout = passivePortWaitTimeout;
+        this.sharedPassivePorts = sharedPassivePorts.clone();
+        this.speculativeConnect = speculativeConnect;
+        this.activeLocalInetAddress = createAddress(activeLocalAddress,
+                addressResolver);
+        this.passiveInetAddress = createAddress(passiveAddress,
+                addressResolver);
+        this.passiveExternalInetAddress = createAddress(
+                passiveExternalAddress, addressResolver);
+    }
+
+    private static CachedInetAddress createAddress(final String host,
+            final CachedInetAddress.Resolver resolver) {
+        if (host == null) {
+            return null;
+        }
+        return new CachedInetAddress(host, CachedInetAddress.DEFAULT_TTL,
+                resolver);
+    }
+
+    private static InetAddress getAddress(final CachedInetAddress address)
+            throws DataConnectionException {
+        if (address == null) {
+            return null;
+        }
+        return address.getAddress();
     }
 
     /**
@@ -97,6 +175,14 @@ public class DefaultDataConnectionConfiguration implements
         return activeLocalAddress;
     }
 
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getActiveLocalInetAddress()
+     */
+    public InetAddress getActiveLocalInetAddress()
+            throws DataConnectionException {
+        return getAddress(activeLocalInetAddress);
+    }
+
     /**
      * Get the active local port number.
      */
@@ -111,6 +197,13 @@ public class DefaultDataConnectionConfiguration implements
         return passiveAddress;
     }
 
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getPassiveInetAddress()
+     */
+    public InetAddress getPassiveInetAddress() throws DataConnectionException {
+        return getAddress(passiveInetAddress);
+    }
+
     /**
      * Get external passive host.
      */
@@ -118,30 +211,20 @@ public class DefaultDataConnectionConfiguration implements
     	return passiveExternalAddress;
     	}
 
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getPassiveExternalInetAddress()
+     */
+    public InetAddress getPassiveExternalInetAddress()
+            throws DataConnectionException {
+        return getAddress(passiveExternalInetAddress);
+    }
+
     /**
      * Get passive data port. Data port number zero (0) means that any available
      * port will be used.
      */
-    public synchronized int requestPassivePort() {
-        int dataPort = -1;
-        int loopTimes = 2;
-        Thread currThread = Thread.currentThread();
-
-        while ((dataPort == -1) && (--loopTimes >= 0)
-                && (!currThread.isInterrupted())) {
-
-            // search for a free port
-            dataPort = passivePorts.reserveNextPort();
-
-            // no available free port - wait for the release notification
-            if (dataPort == -1) {
-                try {
-                    wait();
-                } catch (InterruptedException ex) {
-                }
-            }
-        }
-        return dataPort;
+    public int requestPassivePort() {
+        return passivePorts.reservePort(passivePortWaitTimeout);
     }
 
     /**
@@ -156,10 +239,8 @@ public class DefaultDataConnectionConfiguration implements
     /**
      * Release data port
      */
-    public synchronized void releasePassivePort(final int port) {
+    public void releasePassivePort(final int port) {
         passivePorts.releasePort(port);
-
-        notify();
     }
 
     /**
@@ -175,4 +256,125 @@ public class DefaultDataConnectionConfiguration implements
     public boolean isImplicitSsl() {
         return implicitSsl;
     }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#isNonBlocking()
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getTransferRateBurst()
+     */
+    public int getTransferRateBurst() {
+        return transferRateBurst;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getTransferBufferSize()
+     */
+    public int getTransferBufferSize() {
+        return transferBufferPool.getBufferSize();
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getTransferBufferPoolStatistics()
+     */
+    public TransferBufferPoolStatistics getTransferBufferPoolStatistics() {
+        return transferBufferPool;
+    }
+
+    /**
+     * Get a buffer for a data transfer, reusing a previously released buffer
+     * if available.
+     */
+    byte[] acquireTransferBuffer() {
+        return transferBufferPool.acquire();
+    }
+
+    /**
+     * Release a buffer acquired using {@link #acquireTransferBuffer()} so that
+     * it can be reused by other data transfers.
+     */
+    void releaseTransferBuffer(final byte[] buffer) {
+        transferBufferPool.release(buffer);
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getSendBufferSize()
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getReceiveBufferSize()
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#isTcpNoDelay()
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getTrafficClass()
+     */
+    public int getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getSoLinger()
+     */
+    public int getSoLinger() {
+        return soLinger;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getAutoTuneBandwidth()
+     */
+    public int getAutoTuneBandwidth() {
+        return autoTuneBandwidth;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getPassivePortWaitTimeout()
+     */
+    public int getPassivePortWaitTimeout() {
+        return passivePortWaitTimeout;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getPassivePortExhaustedCount()
+     */
+    public long getPassivePortExhaustedCount() {
+        return passivePorts.getExhaustedCount();
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getPassivePortTimeoutCount()
+     */
+    public long getPassivePortTimeoutCount() {
+        return passivePorts.getTimeoutCount();
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getSharedPassivePorts()
+     */
+    public int[] getSharedPassivePorts() {
+        return sharedPassivePorts.clone();
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#isSpeculativeConnect()
+     */
+    public boolean isSpeculativeConnect() {
+        return speculativeConnect;
+    }
 }
@@ -20,9 +20,13 @@
 package org.apache.ftpserver.impl;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.ftpserver.command.Command;
 import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.impl.listing.ListArgumentParser;
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
@@ -30,6 +34,8 @@ import org.apache.ftpserver.ftplet.FtpletResult;
 import org.apache.ftpserver.ftpletcontainer.FtpletContainer;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
 import org.apache.mina.core.write.WriteToClosedSessionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,18 +51,74 @@ public class DefaultFtpHandler implements FtpHandler {
 
     private final Logger LOG = LoggerFactory.getLogger(DefaultFtpHandler.class);
 
+    private static final String ATTRIBUTE_COMMAND_SEQUENCER = FtpIoSession.ATTRIBUTE_PREFIX
+            + "command-sequencer";
+
     private final static String[] NON_AUTHENTICATED_COMMANDS = new String[] {
             "USER", "PASS", "AUTH", "QUIT", "PROT", "PBSZ" };
 
+    private final static String[] EXPENSIVE_COMMANDS = new String[] { "MD5",
+            "MMD5" };
+
+    private final static String[] LISTING_COMMANDS = new String[] { "LIST",
+            "NLST" };
+
+    private final static String[] TRANSFER_COMMANDS = new String[] { "APPE",
+            "LIST", "MLSD", "NLST", "RETR", "STOR", "STOU" };
+
     private FtpServerContext context;
 
     private Listener listener;
 
+    private LoadMonitor loadMonitor;
+
+    private Executor commandExecutor;
+
+    private Executor transferExecutor;
+
     public void init(final FtpServerContext context, final Listener listener) {
         this.context = context;
         this.listener = listener;
     }
 
+    /**
+     * Set the monitor telling when to shed load, rejecting new sessions and
+     * expensive commands
+     * 
+     * @param loadMonitor
+     *            The load monitor, null to never shed load
+     */
+    public void setLoadMonitor(final LoadMonitor loadMonitor) {
+        this.loadMonitor = loadMonitor;
+    }
+
+    /**
+     * Set the executor running the commands of a session which were queued
+     * while another command of the session was running. It is handed
+     * {@link IoEvent}s of the session, so that an executor keeping the events
+     * of each session in order can be used.
+     * 
+     * @param commandExecutor
+     *            The command executor, null to run the queued commands on the
+     *            thread completing the previous one
+     */
+    public void setCommandExecutor(final Executor commandExecutor) {
+        this.commandExecutor = commandExecutor;
+    }
+
+    /**
+     * Set the executor running the commands transferring data, so that long
+     * transfers do not hold the threads running the commands of other
+     * sessions.
+     * 
+     * @param transferExecutor
+     *            The executor rejecting a transfer if it can not be admitted,
+     *            null to run the transfers as any other command
+     */
+    public void setTransferExecutor(final Executor transferExecutor) {
+        this.transferExecutor = transferExecutor;
+    }
+
     public void sessionCreated(final FtpIoSession session) throws Exception {
         session.setListener(listener);
         
@@ -72,12 +134,22 @@ public class DefaultFtpHandler implements FtpHandler {
         context.getFtpletContainer().onConnect(session.getFtpletSession());
 
         session.updateLastAccessTime();
+
+        if (loadMonitor != null && loadMonitor.isOverloaded()) {
+            session.write(LocalizedFtpReply.translate(session, null, context,
+                    FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                    "overload", null));
+            session.close(false);
+            return;
+        }
         
         session.write(LocalizedFtpReply.translate(session, null, context,
                 FtpReply.REPLY_220_SERVICE_READY, null, null));
     }
 
     public void sessionClosed(final FtpIoSession session) throws Exception {
+        getCommandSequencer(session).clear();
+
         try {
             context.getFtpletContainer().onDisconnect(
                     session.getFtpletSession());
@@ -120,6 +192,25 @@ public class DefaultFtpHandler implements FtpHandler {
         session.close(false).awaitUninterruptibly(10000);
     }
 
+    /**
+     * Is the command expensive enough to be refused when overloaded?
+     */
+    private boolean isExpensiveCommand(FtpRequest request) {
+        String command = request.getCommand();
+        for (String expensive : EXPENSIVE_COMMANDS) {
+            if (expensive.equals(command)) {
+                return true;
+            }
+        }
+        for (String listing : LISTING_COMMANDS) {
+            if (listing.equals(command)) {
+                return ListArgumentParser.parse(request.getArgument())
+                        .hasOption('R');
+            }
+        }
+        return false;
+    }
+
     private boolean isCommandOkWithoutAuthentication(String command) {
         boolean okay = false;
         for (String allowed : NON_AUTHENTICATED_COMMANDS) {
@@ -133,6 +224,92 @@ public class DefaultFtpHandler implements FtpHandler {
 
     public void messageReceived(final FtpIoSession session,
             final FtpRequest request) throws Exception {
+        // the commands received while another command of the session runs
+        // are run in order once it has completed
+        CommandSequencer sequencer = getCommandSequencer(session);
+        if (sequencer.offer(request)) {
+            dispatch(session, request, sequencer);
+        }
+    }
+
+    /**
+     * Execute a command right away, even while another command of the
+     * session is running. Used for reporting the status of a running
+     * transfer.
+     */
+    public void messageReceivedOutOfBand(final FtpIoSession session,
+            final FtpRequest request) throws Exception {
+        handle(session, request, null);
+    }
+
+    /**
+     * Run a command taken from the sequencer, on the transfer executor if it
+     * transfers data
+     */
+    private void dispatch(final FtpIoSession session,
+            final FtpRequest request, final CommandSequencer sequencer)
+            throws Exception {
+        if (transferExecutor == null
+                || !isTransferCommand(request.getCommand())) {
+            run(session, request, sequencer);
+            return;
+        }
+
+        try {
+            transferExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        DefaultFtpHandler.this.run(session, request, sequencer);
+                    } catch (Throwable t) {
+                        try {
+                            exceptionCaught(session, t);
+                        } catch (Exception e) {
+                            LOG.warn("Exception handling failed transfer", e);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Transfer limit reached, refusing {}", request
+                    .getCommand());
+
+            try {
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context, FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION,
+                        "transfer.limit", null));
+            } finally {
+                session.resetState();
+                session.getDataConnection().closeDataConnection();
+                commandDone(session, sequencer);
+            }
+        }
+    }
+
+    /**
+     * Run a command, moving on to the next command of the session once it
+     * has completed
+     */
+    private void run(final FtpIoSession session, final FtpRequest request,
+            final CommandSequencer sequencer) throws Exception {
+        boolean continues = false;
+        try {
+            continues = handle(session, request, sequencer);
+        } finally {
+            if (!continues) {
+                commandDone(session, sequencer);
+            }
+        }
+    }
+
+    /**
+     * Handle a command
+     * 
+     * @return true if the command continues after returning, in which case
+     *         the next command is run once it has completed
+     */
+    private boolean handle(final FtpIoSession session,
+            final FtpRequest request, final CommandSequencer sequencer)
+            throws Exception {
         try {
             session.updateLastAccessTime();
             
@@ -146,7 +323,17 @@ public class DefaultFtpHandler implements FtpHandler {
                 session.write(LocalizedFtpReply.translate(session, request,
                         context, FtpReply.REPLY_530_NOT_LOGGED_IN,
                         "permission", null));
-                return;
+                return false;
+            }
+
+            // refuse expensive commands until the load drops
+            if (loadMonitor != null && isExpensiveCommand(request)
+                    && loadMonitor.isOverloaded()) {
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context,
+                        FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN,
+                        "overload", null));
+                return false;
             }
 
             FtpletContainer ftplets = context.getFtpletContainer();
@@ -161,7 +348,7 @@ public class DefaultFtpHandler implements FtpHandler {
             }
             if (ftpletRet == FtpletResult.DISCONNECT) {
                 session.close(false).awaitUninterruptibly(10000);
-                return;
+                return false;
             } else if (ftpletRet != FtpletResult.SKIP) {
 
                 if (command != null) {
@@ -175,18 +362,20 @@ public class DefaultFtpHandler implements FtpHandler {
                             "not.implemented", null));
                 }
 
-                try {
-                    ftpletRet = ftplets.afterCommand(
-                            session.getFtpletSession(), request, session
-                                    .getLastReply());
-                } catch (Exception e) {
-                    LOG.debug("Ftplet container threw exception", e);
-                    ftpletRet = FtpletResult.DISCONNECT;
-                }
-                if (ftpletRet == FtpletResult.DISCONNECT) {
-                    session.close(false).awaitUninterruptibly(10000);
-                    return;
+                // the ftplets are notified once a command continuing after
+                // returning, such as a non-blocking transfer, has completed
+                CommandCompletion completion = session.takeCommandCompletion();
+                if (completion != null && sequencer != null) {
+                    completion.whenCompleted(new Runnable() {
+                        public void run() {
+                            resume(new ResumedCommands(session, sequencer,
+                                    request, null));
+                        }
+                    });
+                    return true;
                 }
+
+                afterCommand(session, request);
             }
 
         } catch (Exception ex) {
@@ -205,7 +394,84 @@ public class DefaultFtpHandler implements FtpHandler {
                 LOG.warn("RequestHandler.service()", ex);
             }
         }
+        return false;
+    }
+
+    /**
+     * Notify the ftplets of the command having been executed, closing the
+     * session if they say so.
+     */
+    private void afterCommand(final FtpIoSession session,
+            final FtpRequest request) {
+        FtpletResult ftpletRet;
+        try {
+            ftpletRet = context.getFtpletContainer().afterCommand(
+                    session.getFtpletSession(), request,
+                    session.getLastReply());
+        } catch (Exception e) {
+            LOG.debug("Ftplet container threw exception", e);
+            ftpletRet = FtpletResult.DISCONNECT;
+        }
+        if (ftpletRet == FtpletResult.DISCONNECT) {
+            session.close(false).awaitUninterruptibly(10000);
+        }
+    }
+
+    /**
+     * Move on to the next command of the session, if any was queued
+     */
+    private void commandDone(final FtpIoSession session,
+            final CommandSequencer sequencer) {
+        FtpRequest next = sequencer.poll();
+        if (next != null) {
+            resume(new ResumedCommands(session, sequencer, null, next));
+        }
+    }
+
+    /**
+     * Hand the queued commands back to the command executor, never running
+     * them on the thread which completed the previous command, such as a
+     * transfer thread or a worker of the {@link NioDataConnectionSelector}
+     */
+    private void resume(final ResumedCommands resumed) {
+        if (commandExecutor == null) {
+            resumed.fire();
+            return;
+        }
+
+        try {
+            commandExecutor.execute(resumed);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Command executor shut down, dropping queued commands");
+            resumed.sequencer.clear();
+        }
+    }
+
+    private CommandSequencer getCommandSequencer(final FtpIoSession session) {
+        CommandSequencer sequencer = (CommandSequencer) session
+                .getAttribute(ATTRIBUTE_COMMAND_SEQUENCER);
+        if (sequencer == null) {
+            sequencer = new CommandSequencer();
+            CommandSequencer existing = (CommandSequencer) session
+                    .setAttributeIfAbsent(ATTRIBUTE_COMMAND_SEQUENCER,
+                            sequencer);
+            if (existing != null) {
+                sequencer = existing;
+            }
+        }
+        return sequencer;
+    }
 
+    /**
+     * Is the command one that transfers data over the data connection?
+     */
+    public static boolean isTransferCommand(String command) {
+        for (String transferCommand : TRANSFER_COMMANDS) {
+            if (transferCommand.equals(command)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public void sessionIdle(final FtpIoSession session, final IdleStatus status)
@@ -219,4 +485,94 @@ public class DefaultFtpHandler implements FtpHandler {
         // do nothing
 
     }
+
+    /**
+     * Runs the commands of a session one at a time, queueing the commands
+     * received while a command runs, be it on a transfer thread or
+     * continuing after returning
+     */
+    private static class CommandSequencer {
+
+        private final LinkedList<FtpRequest> requests = new LinkedList<FtpRequest>();
+
+        private boolean running = false;
+
+        /**
+         * Offer a received command
+         * 
+         * @return true if it is to be run now, false if it was queued
+         */
+        public synchronized boolean offer(final FtpRequest request) {
+            if (running) {
+                requests.add(request);
+                return false;
+            }
+            running = true;
+            return true;
+        }
+
+        /**
+         * Take the next command to run, once the running one has completed
+         * 
+         * @return the next command, null if none is queued
+         */
+        public synchronized FtpRequest poll() {
+            FtpRequest next = requests.poll();
+            if (next == null) {
+                running = false;
+            }
+            return next;
+        }
+
+        public synchronized void clear() {
+            requests.clear();
+        }
+    }
+
+    /**
+     * Finishes a command which continued after returning and runs the next
+     * command of the session, as an event of the session so that the command
+     * executor keeps it in order with the other events of the session
+     */
+    private class ResumedCommands extends IoEvent {
+
+        private final FtpIoSession session;
+
+        private final CommandSequencer sequencer;
+
+        private final FtpRequest completed;
+
+        private final FtpRequest next;
+
+        public ResumedCommands(final FtpIoSession session,
+                final CommandSequencer sequencer, final FtpRequest completed,
+                final FtpRequest next) {
+            super(IoEventType.MESSAGE_RECEIVED, session, next != null ? next
+                    : completed);
+            this.session = session;
+            this.sequencer = sequencer;
+            this.completed = completed;
+            this.next = next;
+        }
+
+        @Override
+        public void fire() {
+            try {
+                if (completed != null) {
+                    afterCommand(session, completed);
+                }
+
+                FtpRequest request = next != null ? next : sequencer.poll();
+                if (request != null) {
+                    dispatch(session, request, sequencer);
+                }
+            } catch (Throwable t) {
+                try {
+                    exceptionCaught(session, t);
+                } catch (Exception e) {
+                    LOG.warn("Exception handling failed command", e);
+                }
+            }
+        }
+    }
 }
@@ -44,6 +44,23 @@ public class DefaultFtpRequest implements FtpRequest {
         parse(requestLine);
     }
 
+    /**
+     * Create a request already parsed, e.g. by the command decoder.
+     * 
+     * @param line
+     *            The trimmed request line
+     * @param command
+     *            The upper case command, without any X prefix
+     * @param argument
+     *            The argument, null if none
+     */
+    public DefaultFtpRequest(final String line, final String command,
+            final String argument) {
+        this.line = line;
+        this.command = command;
+        this.argument = argument;
+    }
+
     /**
      * Parse the ftp command line.
      */
@@ -32,6 +32,7 @@ import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.ftplet.Structure;
+import org.apache.ftpserver.ftplet.TransferStatus;
 import org.apache.ftpserver.ftplet.User;
 
 /**
@@ -246,5 +247,12 @@ public class DefaultFtpSession implements FtpSession {
         return ioSession.getSessionId();
     }
 
+    /**
+     * @see FtpSession#getCurrentTransfer()
+     */
+    public TransferStatus getCurrentTransfer() {
+        return ioSession.getCurrentTransfer();
+    }
+
     
 }
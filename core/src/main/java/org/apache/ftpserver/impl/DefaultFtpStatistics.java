@@ -77,6 +77,10 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
     private AtomicLong bytesDownload = new AtomicLong(0L);
 
+    private AtomicInteger expiredDataConnections = new AtomicInteger(0);
+
+    private AtomicInteger releasedPassivePorts = new AtomicInteger(0);
+
     private static class UserLogins {
         private Map<InetAddress, AtomicInteger> perAddress = new ConcurrentHashMap<InetAddress, AtomicInteger>();
 
@@ -230,6 +234,20 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
         return currAnonLogins.get();
     }
 
+    /**
+     * Get total number of expired data connections.
+     */
+    public int getTotalExpiredDataConnectionNumber() {
+        return expiredDataConnections.get();
+    }
+
+    /**
+     * Get total number of passive ports released by expired data connections.
+     */
+    public int getTotalReleasedPassivePortNumber() {
+        return releasedPassivePorts.get();
+    }
+
     /**
      * Get the login number for the specific user
      */
@@ -410,6 +428,17 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
         notifyLogout(session);
     }
 
+    /**
+     * Pending data connection expired.
+     */
+    public void setDataConnectionExpired(final FtpIoSession session,
+            final boolean passivePortReleased) {
+        expiredDataConnections.incrementAndGet();
+        if (passivePortReleased) {
+            releasedPassivePorts.incrementAndGet();
+        }
+    }
+
     // //////////////////////////////////////////////////////////
     // /////////////// all observer methods ////////////////////
     /**
@@ -578,5 +607,8 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
         bytesUpload.set(0);
         bytesDownload.set(0);
+
+        expiredDataConnections.set(0);
+        releasedPassivePorts.set(0);
     }
 }
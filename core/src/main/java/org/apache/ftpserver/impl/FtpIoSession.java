@@ -35,6 +35,7 @@ import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.ftplet.Structure;
+import org.apache.ftpserver.ftplet.TransferStatus;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.mina.core.filterchain.IoFilterChain;
@@ -113,6 +114,12 @@ public class FtpIoSession implements IoSession {
     private static final String ATTRIBUTE_CACHED_REMOTE_ADDRESS = ATTRIBUTE_PREFIX
             + "cached-remote-address";
 
+    private static final String ATTRIBUTE_CURRENT_TRANSFER = ATTRIBUTE_PREFIX
+            + "current-transfer";
+
+    private static final String ATTRIBUTE_COMMAND_COMPLETION = ATTRIBUTE_PREFIX
+            + "command-completion";
+
     private IoSession wrappedSession;
 
     private FtpServerContext context;
@@ -550,8 +557,12 @@ public class FtpIoSession implements IoSession {
         if (containsAttribute(ATTRIBUTE_DATA_CONNECTION)) {
             return (ServerDataConnectionFactory) getAttribute(ATTRIBUTE_DATA_CONNECTION);
         } else {
-            IODataConnectionFactory dataCon = new IODataConnectionFactory(
-                    context, this);
+            IODataConnectionFactory dataCon;
+            if (getListener().getDataConnectionConfiguration().isNonBlocking()) {
+                dataCon = new NioDataConnectionFactory(context, this);
+            } else {
+                dataCon = new IODataConnectionFactory(context, this);
+            }
             dataCon
                     .setServerControlAddress(((InetSocketAddress) getLocalAddress())
                             .getAddress());
@@ -668,6 +679,38 @@ public class FtpIoSession implements IoSession {
         return (Long) getAttribute(ATTRIBUTE_FILE_OFFSET, 0L);
     }
 
+    /**
+     * Get the status of the data transfer currently running
+     * 
+     * @return The {@link TransferStatus}, or null if no transfer is running
+     */
+    public TransferStatus getCurrentTransfer() {
+        return (TransferStatus) getAttribute(ATTRIBUTE_CURRENT_TRANSFER);
+    }
+
+    public void setCurrentTransfer(TransferStatus transfer) {
+        if (transfer != null) {
+            setAttribute(ATTRIBUTE_CURRENT_TRANSFER, transfer);
+        } else {
+            removeAttribute(ATTRIBUTE_CURRENT_TRANSFER);
+        }
+    }
+
+    /**
+     * Get the completion of the command continuing after having returned
+     * from executing, removing it from the session
+     * 
+     * @return The {@link CommandCompletion}, or null if the last executed
+     *         command has completed when returning
+     */
+    public CommandCompletion takeCommandCompletion() {
+        return (CommandCompletion) removeAttribute(ATTRIBUTE_COMMAND_COMPLETION);
+    }
+
+    public void setCommandCompletion(CommandCompletion completion) {
+        setAttribute(ATTRIBUTE_COMMAND_COMPLETION, completion);
+    }
+
     public void setStructure(Structure structure) {
         setAttribute(ATTRIBUTE_STRUCTURE, structure);
     }
@@ -19,19 +19,27 @@
 
 package org.apache.ftpserver.impl;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.PushbackInputStream;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
+import javax.net.ssl.SSLSocket;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
 import org.apache.ftpserver.util.IoUtils;
@@ -48,6 +56,16 @@ import org.apache.ftpserver.util.IoUtils;
 public class IODataConnection implements DataConnection {
 
     private static final byte[] EOL = System.getProperty("line.separator").getBytes();
+
+    /**
+     * The maximum number of bytes handed to the OS per zero-copy call
+     */
+    private static final long ZERO_COPY_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * The number of bytes sent between restart markers in block mode
+     */
+    private static final long RESTART_MARKER_INTERVAL = 1024 * 1024;
     
     private FtpIoSession session;
 
@@ -55,6 +73,12 @@ public class IODataConnection implements DataConnection {
 
     private ServerDataConnectionFactory factory;
 
+    private boolean incompressible = false;
+
+    private String transferFileName;
+
+    private long expectedSize = -1;
+
     public IODataConnection(final Socket socket, final FtpIoSession session,
             final ServerDataConnectionFactory factory) {
         this.session = session;
@@ -77,7 +101,29 @@ public class IODataConnection implements DataConnection {
             // create input stream
             InputStream is = dataSoc.getInputStream();
             if (factory.isZipMode()) {
-                is = new InflaterInputStream(is);
+                final Inflater inflater = new Inflater();
+                is = new InflaterInputStream(is, inflater, getZipBufferSize()) {
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            } else if (factory.isBlockMode()) {
+                // tell the client where the transfer can be restarted from,
+                // as the number of bytes stored including the REST offset
+                final long fileOffset = session.getFileOffset();
+                is = new BlockInputStream(is) {
+                    protected void restartMarker(final String marker,
+                            final long position) {
+                        session.write(new DefaultFtpReply(
+                                FtpReply.REPLY_110_RESTART_MARKER_REPLY,
+                                "MARK " + marker + " = "
+                                        + (fileOffset + position)));
+                    }
+                };
             }
             return is;
         } catch (IOException ex) {
@@ -90,6 +136,15 @@ public class IODataConnection implements DataConnection {
      * Get data output stream. The return value will never be null.
      */
     private OutputStream getDataOutputStream() throws IOException {
+        return getDataOutputStream(factory.getZipLevel());
+    }
+
+    /**
+     * Get data output stream, compressing using the provided level in zip
+     * mode. The return value will never be null.
+     */
+    private OutputStream getDataOutputStream(final int zipLevel)
+            throws IOException {
         try {
 
             // get data socket
@@ -101,7 +156,19 @@ public class IODataConnection implements DataConnection {
             // create output stream
             OutputStream os = dataSoc.getOutputStream();
             if (factory.isZipMode()) {
-                os = new DeflaterOutputStream(os);
+                final Deflater deflater = new Deflater(zipLevel);
+                os = new DeflaterOutputStream(os, deflater, getZipBufferSize()) {
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            deflater.end();
+                        }
+                    }
+                };
+            } else if (factory.isBlockMode()) {
+                os = new BlockOutputStream(os, Math.min(getZipBufferSize(),
+                        BlockOutputStream.MAX_BLOCK_SIZE));
             }
             return os;
         } catch (IOException ex) {
@@ -110,6 +177,86 @@ public class IODataConnection implements DataConnection {
         }
     }
 
+    /**
+     * Get the size of the buffers used by the deflater and inflater in zip
+     * mode, and of the blocks in block mode, the same as for the transfer
+     * buffers so that a full transfer buffer is handled in one go.
+     */
+    private int getZipBufferSize() {
+        return session.getListener().getDataConnectionConfiguration()
+                .getTransferBufferSize();
+    }
+
+    /**
+     * Hint that the data transferred to the client will not get any smaller
+     * by compressing it, for example because the file is in a compressed
+     * format. Such data is sent without compression in zip mode.
+     */
+    public void setIncompressible(final boolean incompressible) {
+        this.incompressible = incompressible;
+    }
+
+    /**
+     * Set the name and expected size of the file being transferred, used for
+     * reporting the status of the transfer.
+     * 
+     * @param fileName
+     *            The file name
+     * @param expectedSize
+     *            The number of bytes expected to be transferred, -1 if not
+     *            known
+     */
+    public void setTransferFile(final String fileName, final long expectedSize) {
+        this.transferFileName = fileName;
+        this.expectedSize = expectedSize;
+    }
+
+    /**
+     * Report a failure caused by the data connection being closed during the
+     * transfer, as done by ABOR, as a socket failure. Channels report closing
+     * with other exceptions than sockets.
+     */
+    private IOException toSocketException(final IOException e) {
+        if (socket.isClosed() && !(e instanceof SocketException)) {
+            SocketException closed = new SocketException(
+                    "Data connection closed");
+            closed.initCause(e);
+            return closed;
+        }
+        return e;
+    }
+
+    /**
+     * Start accounting for a transfer, making its status available from the
+     * session while it is running.
+     */
+    private TransferAccounting startAccounting(final boolean upload,
+            final String fileName, final long expectedBytes) {
+        TransferAccounting accounting = new TransferAccounting(session, upload,
+                fileName, expectedBytes);
+        session.setCurrentTransfer(accounting);
+        return accounting;
+    }
+
+    /**
+     * Publish the final transfer status and remove it from the session.
+     */
+    private void endAccounting(final TransferAccounting accounting) {
+        accounting.complete();
+        session.setCurrentTransfer(null);
+    }
+
+    /**
+     * Mark the end of the file sent in block mode, keeping the data
+     * connection open for the next transfer.
+     */
+    private void endOfFile(final OutputStream out) throws IOException {
+        if (out instanceof BlockOutputStream) {
+            ((BlockOutputStream) out).finish();
+            factory.keepDataConnection();
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -126,11 +273,25 @@ public class IODataConnection implements DataConnection {
             maxRate = transferRateRequest.getMaxUploadRate();
         }
 
+        TransferAccounting accounting = startAccounting(true,
+                transferFileName, expectedSize);
         InputStream is = getDataInputStream();
         try {
-            return transfer(session, false, is, out, maxRate);
+            long transferredSize = transfer(session, false, is, out,
+                    createRateLimiter(maxRate), accounting);
+
+            // the data connection can be used for the next transfer once the
+            // whole file has been received in block mode
+            if (is instanceof BlockInputStream
+                    && ((BlockInputStream) is).isEndOfFile()) {
+                factory.keepDataConnection();
+            }
+            return transferredSize;
+        } catch (IOException e) {
+            throw toSocketException(e);
         } finally {
             IoUtils.close(is);
+            endAccounting(accounting);
         }
     }
 
@@ -151,14 +312,162 @@ public class IODataConnection implements DataConnection {
             maxRate = transferRateRequest.getMaxDownloadRate();
         }
 
-        OutputStream out = getDataOutputStream();
+        TransferAccounting accounting = startAccounting(false,
+                transferFileName, expectedSize);
+        try {
+            // binary transfers of plain files can be handed to the OS
+            // directly, avoiding copying the file content through our buffers
+            if (isZeroCopyPossible(session, in)) {
+                return transferZeroCopy(((FileInputStream) in).getChannel(),
+                        socket.getChannel(), createRateLimiter(maxRate),
+                        accounting);
+            }
+
+            return transferStreamToClient(session, in, createRateLimiter(maxRate),
+                    accounting);
+        } catch (IOException e) {
+            throw toSocketException(e);
+        } finally {
+            endAccounting(accounting);
+        }
+    }
+
+    /**
+     * Transfer the stream to the client through the transfer buffers,
+     * compressing the data in zip mode.
+     */
+    private long transferStreamToClient(final FtpSession session,
+            final InputStream in, final TransferRateLimiter rateLimiter,
+            final TransferAccounting accounting) throws IOException {
+
+        InputStream source = in;
+        int zipLevel = factory.getZipLevel();
+        if (factory.isZipMode() && zipLevel != 0) {
+            // don't waste CPU on compressing data that will not get smaller,
+            // detected by the file name or by sampling the data
+            if (incompressible) {
+                zipLevel = 0;
+            } else {
+                PushbackInputStream sampled = new PushbackInputStream(in,
+                        Compressibility.SAMPLE_SIZE);
+                byte[] sample = new byte[Compressibility.SAMPLE_SIZE];
+                int sampleLength = readSample(sampled, sample);
+                sampled.unread(sample, 0, sampleLength);
+                source = sampled;
+
+                if (Compressibility.isIncompressible(sample, 0, sampleLength)) {
+                    zipLevel = 0;
+                }
+            }
+        }
+
+        OutputStream out = getDataOutputStream(zipLevel);
         try {
-            return transfer(session, true, in, out, maxRate);
+            long transferredSize = transfer(session, true, source, out,
+                    rateLimiter, accounting);
+            endOfFile(out);
+            return transferredSize;
         } finally {
             IoUtils.close(out);
         }
     }
 
+    /**
+     * Read as much of the sample as available from the stream.
+     * 
+     * @return The number of bytes read
+     */
+    private int readSample(final InputStream in, final byte[] sample)
+            throws IOException {
+        int length = 0;
+        while (length < sample.length) {
+            int count = in.read(sample, length, sample.length - length);
+            if (count == -1) {
+                break;
+            }
+            length += count;
+        }
+        return length;
+    }
+
+    /**
+     * Create the rate limiter for a transfer, null if the transfer rate is not
+     * limited.
+     */
+    private TransferRateLimiter createRateLimiter(final int maxRate) {
+        if (maxRate > 0) {
+            return new TransferRateLimiter(maxRate, session.getListener()
+                    .getDataConnectionConfiguration().getTransferRateBurst());
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Zero-copy is only possible for binary transfers from a file to a plain
+     * socket channel. ASCII conversion, compression, block framing and
+     * SSL/TLS all require the data to pass through the stream based transfer.
+     */
+    private boolean isZeroCopyPossible(final FtpSession session,
+            final InputStream in) {
+        return session.getDataType() == DataType.BINARY
+                && !factory.isZipMode() && !factory.isBlockMode()
+                && socket != null
+                && !(socket instanceof SSLSocket)
+                && socket.getChannel() != null
+                && in instanceof FileInputStream;
+    }
+
+    /**
+     * Transfer a file to the client using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * letting the OS send the file without copying it into user space.
+     */
+    private final long transferZeroCopy(final FileChannel in,
+            final SocketChannel out, final TransferRateLimiter rateLimiter,
+            final TransferAccounting accounting) throws IOException {
+        long transferredSize = 0L;
+
+        long position = in.position();
+
+        // keep the chunks small enough for the rate limiter to shape the
+        // transfer smoothly, about ten chunks per second
+        long chunkSize = ZERO_COPY_CHUNK_SIZE;
+        if (rateLimiter != null) {
+            chunkSize = Math.max(1, Math.min(chunkSize, rateLimiter
+                    .getMaxRate() / 10));
+        }
+
+        while (true) {
+
+            long count = in.transferTo(position, chunkSize, out);
+
+            if (count <= 0) {
+                // transferTo does not signal end of file, check the size
+                if (position >= in.size()) {
+                    break;
+                }
+                continue;
+            }
+
+            // spend tokens for the transferred data, sleeping if the max
+            // rate has been exceeded
+            if (rateLimiter != null) {
+                try {
+                    rateLimiter.acquire(count);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+            }
+
+            position += count;
+            transferredSize += count;
+
+            accounting.add(count);
+        }
+
+        return transferredSize;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -168,125 +477,107 @@ public class IODataConnection implements DataConnection {
      */
     public final void transferToClient(FtpSession session, final String str)
             throws IOException {
+        byte[] bytes = str.getBytes("UTF-8");
+        TransferAccounting accounting = startAccounting(false, null,
+                bytes.length);
         OutputStream out = getDataOutputStream();
-        Writer writer = null;
         try {
-            writer = new OutputStreamWriter(out, "UTF-8");
-            writer.write(str);
-
-            // update session
-            if (session instanceof DefaultFtpSession) {
-                ((DefaultFtpSession) session).increaseWrittenDataBytes(str
-                        .getBytes("UTF-8").length);
-            }
+            out.write(bytes);
+            accounting.add(bytes.length);
+            endOfFile(out);
+        } catch (IOException e) {
+            throw toSocketException(e);
         } finally {
-            if (writer != null) {
-                writer.flush();
+            try {
+                out.flush();
+            } finally {
+                IoUtils.close(out);
+                endAccounting(accounting);
             }
-            IoUtils.close(writer);
         }
 
     }
 
     private final long transfer(FtpSession session, boolean isWrite,
-            final InputStream in, final OutputStream out, final int maxRate)
-            throws IOException {
+            final InputStream in, final OutputStream out,
+            final TransferRateLimiter rateLimiter,
+            final TransferAccounting accounting) throws IOException {
         long transferredSize = 0L;
 
         boolean isAscii = session.getDataType() == DataType.ASCII;
-        long startTime = System.currentTimeMillis();
-        byte[] buff = new byte[4096];
 
-        BufferedInputStream bis = null;
-        BufferedOutputStream bos = null;
+        DataConnectionConfiguration dataConfig = this.session.getListener()
+                .getDataConnectionConfiguration();
+        byte[] buff = acquireTransferBuffer(dataConfig);
+
+        // the data is read and written in chunks of the transfer buffer size,
+        // only ascii transfers need additional buffering as the line endings
+        // are written separately
+        OutputStream bos = out;
+
+        // in block mode, restart markers are sent as the file offset the
+        // client can restart the transfer from using REST
+        BlockOutputStream blockOut = null;
+        long markerOffset = 0;
+        long nextMarker = RESTART_MARKER_INTERVAL;
+        if (out instanceof BlockOutputStream) {
+            blockOut = (BlockOutputStream) out;
+            markerOffset = this.session.getFileOffset();
+        }
         try {
-            bis = IoUtils.getBufferedInputStream(in);
-
-            bos = IoUtils.getBufferedOutputStream(out);
+            if (isAscii) {
+                bos = IoUtils.getBufferedOutputStream(out);
+            }
 
-            DefaultFtpSession defaultFtpSession = null;
-            if (session instanceof DefaultFtpSession) {
-                defaultFtpSession = (DefaultFtpSession) session;
+            AsciiLineConverter asciiConverter = null;
+            if (isAscii) {
+                asciiConverter = new AsciiLineConverter(isWrite, EOL);
             }
 
-            byte lastByte = 0;
             while (true) {
 
-                // if current rate exceeds the max rate, sleep for 50ms
-                // and again check the current transfer rate
-                if (maxRate > 0) {
-
-                    // prevent "divide by zero" exception
-                    long interval = System.currentTimeMillis() - startTime;
-                    if (interval == 0) {
-                        interval = 1;
-                    }
-
-                    // check current rate
-                    long currRate = (transferredSize * 1000L) / interval;
-                    if (currRate > maxRate) {
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException ex) {
-                            break;
-                        }
-                        continue;
-                    }
-                }
-
                 // read data
-                int count = bis.read(buff);
+                int count = in.read(buff);
 
                 if (count == -1) {
                     break;
                 }
 
-                // update MINA session
-                if (defaultFtpSession != null) {
-                    if (isWrite) {
-                        defaultFtpSession.increaseWrittenDataBytes(count);
-                    } else {
-                        defaultFtpSession.increaseReadDataBytes(count);
+                // spend tokens for the read data, sleeping if the max rate
+                // has been exceeded
+                if (rateLimiter != null) {
+                    try {
+                        rateLimiter.acquire(count);
+                    } catch (InterruptedException ex) {
+                        break;
                     }
                 }
 
                 // write data
-                // if ascii, replace \n by \r\n
+                // if ascii, convert the line endings
                 if (isAscii) {
-                    for (int i = 0; i < count; ++i) {
-                        byte b = buff[i];
-                        if(isWrite) {
-                            if (b == '\n' && lastByte != '\r') {
-                                bos.write('\r');
-                            }
-    
-                            bos.write(b);
-                        } else {
-                            if(b == '\n') {
-                                // for reads, we should always get \r\n
-                                // so what we do here is to ignore \n bytes 
-                                // and on \r dump the system local line ending
-                            } else if(b == '\r') {
-                                bos.write(EOL);
-                            } else {
-                                // not a line ending, just output
-                                bos.write(b);
-                            }
-                        }
-                        // store this byte so that we can compare it for line endings
-                        lastByte = b;
-                    }
+                    asciiConverter.convert(buff, 0, count, bos);
                 } else {
                     bos.write(buff, 0, count);
                 }
 
                 transferredSize += count;
 
-                notifyObserver();
+                // the session is updated by the accounting at a low rate
+                accounting.add(count);
+
+                if (blockOut != null && transferredSize >= nextMarker) {
+                    bos.flush();
+                    blockOut.writeRestartMarker(String.valueOf(markerOffset
+                            + transferredSize));
+                    nextMarker = transferredSize + RESTART_MARKER_INTERVAL;
+                }
             }
         } finally {
-            if (bos != null) {
+            try {
                 bos.flush();
+            } finally {
+                releaseTransferBuffer(dataConfig, buff);
             }
         }
 
@@ -294,13 +585,24 @@ public class IODataConnection implements DataConnection {
     }
 
     /**
-     * Notify connection manager observer.
+     * Get a transfer buffer from the pool of the configuration, or a new one
+     * if the configuration does not pool its buffers.
      */
-    protected void notifyObserver() {
-        session.updateLastAccessTime();
+    static byte[] acquireTransferBuffer(
+            final DataConnectionConfiguration dataConfig) {
+        if (dataConfig instanceof DefaultDataConnectionConfiguration) {
+            return ((DefaultDataConnectionConfiguration) dataConfig)
+                    .acquireTransferBuffer();
+        } else {
+            return new byte[dataConfig.getTransferBufferSize()];
+        }
+    }
 
-        // TODO this has been moved from AbstractConnection, do we need to keep
-        // it?
-        // serverContext.getConnectionManager().updateConnection(this);
+    static void releaseTransferBuffer(
+            final DataConnectionConfiguration dataConfig, final byte[] buffer) {
+        if (dataConfig instanceof DefaultDataConnectionConfiguration) {
+            ((DefaultDataConnectionConfiguration) dataConfig)
+                    .releaseTransferBuffer(buffer);
+        }
     }
 }
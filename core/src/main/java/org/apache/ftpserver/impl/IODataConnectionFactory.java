@@ -19,12 +19,21 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
-import java.net.UnknownHostException;
+import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
@@ -36,6 +45,7 @@ import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ssl.ClientAuth;
 import org.apache.ftpserver.ssl.SslConfiguration;
+import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,11 +63,46 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     private final Logger LOG = LoggerFactory
             .getLogger(IODataConnectionFactory.class);
 
+    /**
+     * Times out the data connections requested by PORT or PASV of all
+     * sessions, with a tick of 100 ms
+     */
+    private static final TimerWheel PENDING_TIMER = new TimerWheel(
+            "FtpServer-DataConnectionTimer", 100, 512);
+
+    /**
+     * Closes the aborted data sockets whose close might block, such as SSL
+     * sockets sending their close notification, away from the threads
+     * handling the control connections and the transfers
+     */
+    private static final ExecutorService CLOSER = new ThreadPoolExecutor(1,
+            1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "FtpServer-DataConnectionCloser");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     private FtpServerContext serverContext;
 
-    private Socket dataSoc;
+    volatile Socket dataSoc;
 
-    ServerSocket servSoc;
+    volatile ServerSocket servSoc;
+
+    /**
+     * The registration on a shared passive listener, if waiting for a passive
+     * data connection on a shared port
+     */
+    volatile SharedPassiveListener.Registration sharedRegistration;
+
+    /**
+     * The data connection being accepted or connected in the background, if
+     * data connections are established speculatively
+     */
+    volatile SpeculativeDataConnection speculativeConnection;
 
     InetAddress address;
 
@@ -65,12 +110,46 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     long requestTime = 0L;
 
+    /**
+     * The timeout of the data connection requested by PORT or PASV, until
+     * the data connection is opened
+     */
+    private TimerWheel.Timeout pendingTimeout;
+
     boolean passive = false;
 
     boolean secure = false;
 
+    /**
+     * The round trip time in nanoseconds measured when last connecting a data
+     * socket in this session, -1 if not known
+     */
+    long roundTripTime = -1L;
+
     private boolean isZip = false;
 
+    private int zipLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private boolean isBlock = false;
+
+    /**
+     * Keep the data socket open when closing the data connection after the
+     * current transfer in block mode
+     */
+    private boolean keepDataSoc = false;
+
+    /**
+     * Is the data socket kept open in block mode waiting for the next
+     * transfer, timing out like a requested data connection?
+     */
+    private boolean dataSocIdle = false;
+
+    /**
+     * Is a transfer using the data connection, from opening it until closing
+     * it? Read without locking by {@link #isDataConnectionInUse()}.
+     */
+    private volatile boolean inUse = false;
+
     InetAddress serverControlAddress;
 
     FtpIoSession session;
@@ -90,16 +169,25 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
      */
     public synchronized void closeDataConnection() {
 
-        // close client socket if any
-        if (dataSoc != null) {
-            try {
-                dataSoc.close();
-            } catch (Exception ex) {
-                LOG.warn("FtpDataConnection.closeDataSocket()", ex);
-            }
-            dataSoc = null;
+        // stop establishing the data connection in the background if any
+        if (speculativeConnection != null) {
+            speculativeConnection.cancel();
+            speculativeConnection = null;
         }
 
+        // close client socket if any, unless the file has been completely
+        // transferred in block mode and the socket can be used for the next
+        // transfer
+        boolean kept = keepDataSoc && isBlock && dataSoc != null
+                && !dataSoc.isClosed();
+        if (kept) {
+            LOG.debug("Keeping data connection open in block mode");
+        } else {
+            closeDataSocket();
+        }
+        keepDataSoc = false;
+        inUse = false;
+
         // close server socket if any
         if (servSoc != null) {
             try {
@@ -121,8 +209,113 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
             servSoc = null;
         }
 
+        // stop waiting on the shared passive listener if any
+        if (sharedRegistration != null) {
+            sharedRegistration.cancel();
+            sharedRegistration = null;
+        }
+
+        cancelPendingTimeout();
+
         // reset request time
         requestTime = 0L;
+
+        // the kept data socket is closed if not used by a transfer within
+        // the idle time
+        if (kept) {
+            dataSocIdle = true;
+            requestTime = System.currentTimeMillis();
+            schedulePendingTimeout();
+        }
+    }
+
+    /**
+     * Start timing out the requested data connection, closing it if not
+     * opened within the idle time.
+     */
+    private void schedulePendingTimeout() {
+        int idleTime = session.getListener().getDataConnectionConfiguration()
+                .getIdleTime();
+        if (idleTime > 0) {
+            pendingTimeout = PENDING_TIMER.newTimeout(new TimerWheel.Task() {
+                public void expired(final TimerWheel.Timeout timeout) {
+                    expire(timeout);
+                }
+            }, idleTime * 1000L);
+        }
+    }
+
+    /**
+     * Stop timing out the requested data connection.
+     * 
+     * @return false if the requested data connection has expired
+     */
+    boolean cancelPendingTimeout() {
+        boolean cancelled = true;
+        if (pendingTimeout != null) {
+            cancelled = pendingTimeout.cancel();
+            pendingTimeout = null;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Close the requested data connection if it has not been opened or
+     * requested again since the timeout was scheduled.
+     */
+    private synchronized void expire(final TimerWheel.Timeout timeout) {
+        if (timeout != pendingTimeout) {
+            return;
+        }
+        pendingTimeout = null;
+
+        LOG.debug("Data connection not opened within the idle time, closing");
+        boolean passivePortReleased = servSoc != null;
+        closeDataConnection();
+
+        // forget the request, a new PORT or PASV is required
+        passive = false;
+        address = null;
+        port = 0;
+
+        ServerFtpStatistics ftpStat = (ServerFtpStatistics) serverContext
+                .getFtpStatistics();
+        if (ftpStat != null) {
+            ftpStat.setDataConnectionExpired(session, passivePortReleased);
+        }
+    }
+
+    /**
+     * Stop timing out the requested data connection as it is being opened.
+     */
+    void openingDataConnection() throws DataConnectionException {
+        inUse = true;
+        if (!cancelPendingTimeout()) {
+            throw new DataConnectionException(
+                    "Data connection not opened within the idle time");
+        }
+    }
+
+    /**
+     * Close the data socket, if any.
+     */
+    private void closeDataSocket() {
+        dataSocIdle = false;
+        if (dataSoc != null) {
+            try {
+                dataSoc.close();
+            } catch (Exception ex) {
+                LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+            }
+            dataSoc = null;
+        }
+    }
+
+    /**
+     * Is a data socket kept open after the last transfer in block mode?
+     */
+    synchronized boolean isDataSocketKept() {
+        return isBlock && dataSoc != null && !dataSoc.isClosed();
     }
 
     /**
@@ -139,6 +332,9 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         this.address = address.getAddress();
         port = address.getPort();
         requestTime = System.currentTimeMillis();
+
+        schedulePendingTimeout();
+        startSpeculativeConnection();
     }
 
     private SslConfiguration getSslConfiguration() {
@@ -165,6 +361,16 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         // close old sockets if any
         closeDataConnection();
 
+        // prefer waiting on a shared passive listener if configured
+        DataConnectionConfiguration dataConfig = session.getListener()
+                .getDataConnectionConfiguration();
+        if (dataConfig.getSharedPassivePorts().length > 0) {
+            InetSocketAddress sharedAddress = initSharedPassiveDataConnection(dataConfig);
+            if (sharedAddress != null) {
+                return sharedAddress;
+            }
+        }
+
         // get the passive port
         int passivePort = session.getListener()
                 .getDataConnectionConfiguration().requestPassivePort();
@@ -179,13 +385,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
             DataConnectionConfiguration dataCfg = session.getListener()
                     .getDataConnectionConfiguration();
 
-            String passiveAddress = dataCfg.getPassiveAddress();
-
-            if (passiveAddress == null) {
-                address = serverControlAddress;
-            } else {
-                address = resolveAddress(dataCfg.getPassiveAddress());
-            }
+            address = getPassiveBindAddress(dataCfg);
 
             if (secure) {
                 LOG
@@ -202,7 +402,15 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 // (https://issues.apache.org/jira/browse/FTPSERVER-241).
                 // Instead, it creates a regular
                 // ServerSocket that will be wrapped as a SSL socket in createDataSocket()
-                servSoc = new ServerSocket(passivePort, 0, address);
+                servSoc = new ServerSocket();
+                try {
+                    DataSocketOptions.configure(servSoc, dataCfg);
+                    DataSocketOptions.autoTune(servSoc, dataCfg, roundTripTime);
+                    servSoc.bind(new InetSocketAddress(address, passivePort), 0);
+                } catch (IOException ex) {
+                    servSoc.close();
+                    throw ex;
+                }
                 LOG
                         .debug(
                                 "SSL Passive data connection created on address \"{}\" and port {}",
@@ -212,7 +420,20 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                         .debug(
                                 "Opening passive data connection on address \"{}\" and port {}",
                                 address, passivePort);
-                servSoc = new ServerSocket(passivePort, 0, address);
+                // back the server socket by a channel so that accepted
+                // sockets can be used for zero-copy transfers
+                ServerSocketChannel servChannel = ServerSocketChannel.open();
+                try {
+                    DataSocketOptions.configure(servChannel.socket(), dataCfg);
+                    DataSocketOptions.autoTune(servChannel.socket(), dataCfg,
+                            roundTripTime);
+                    servChannel.socket().bind(
+                            new InetSocketAddress(address, passivePort), 0);
+                } catch (IOException ex) {
+                    servChannel.close();
+                    throw ex;
+                }
+                servSoc = servChannel.socket();
                 LOG
                         .debug(
                                 "Passive data connection created on address \"{}\" and port {}",
@@ -225,6 +446,9 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
             passive = true;
             requestTime = System.currentTimeMillis();
 
+            schedulePendingTimeout();
+            startSpeculativeConnection();
+
             return new InetSocketAddress(address, port);
         } catch (Exception ex) {
             servSoc = null;
@@ -235,6 +459,166 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         }
     }
 
+    /**
+     * Register for a data connection from the client on one of the shared
+     * passive listeners, starting with a different listener for each session.
+     * 
+     * @return The address of the shared listener, or null if all shared
+     *         listeners already have a session waiting for the same client
+     *         address and a dedicated port must be used
+     */
+    private InetSocketAddress initSharedPassiveDataConnection(
+            final DataConnectionConfiguration dataCfg)
+            throws DataConnectionException {
+        InetAddress bindAddress = getPassiveBindAddress(dataCfg);
+        InetAddress clientAddress = ((InetSocketAddress) session
+                .getRemoteAddress()).getAddress();
+
+        int[] sharedPorts = dataCfg.getSharedPassivePorts();
+        int start = (int) (session.getId() % sharedPorts.length);
+        for (int i = 0; i < sharedPorts.length; i++) {
+            int sharedPort = sharedPorts[(start + i) % sharedPorts.length];
+
+            SharedPassiveListener.Registration registration;
+            try {
+                registration = SharedPassiveListener.register(
+                        new InetSocketAddress(bindAddress, sharedPort),
+                        clientAddress, dataCfg);
+            } catch (IOException ex) {
+                LOG.warn("Failed to open shared passive listener on port "
+                        + sharedPort, ex);
+                continue;
+            }
+
+            if (registration != null) {
+                LOG.debug("Waiting for passive data connection on shared port {}",
+                        sharedPort);
+                sharedRegistration = registration;
+                address = bindAddress;
+                port = sharedPort;
+                passive = true;
+                requestTime = System.currentTimeMillis();
+
+                schedulePendingTimeout();
+                startSpeculativeConnection();
+
+                return new InetSocketAddress(address, port);
+            }
+        }
+
+        LOG.debug("No shared passive port available for {}, using a dedicated port",
+                clientAddress);
+        return null;
+    }
+
+    /**
+     * Get the address passive server sockets should be bound to.
+     */
+    private InetAddress getPassiveBindAddress(
+            final DataConnectionConfiguration dataCfg)
+            throws DataConnectionException {
+        InetAddress passiveAddress = dataCfg.getPassiveInetAddress();
+
+        if (passiveAddress == null) {
+            return serverControlAddress;
+        } else {
+            return passiveAddress;
+        }
+    }
+
+    /**
+     * Start accepting or connecting the requested data connection in the
+     * background if configured, so that it is ready when the transfer command
+     * is received. If that can not be started, the data connection is
+     * established by the transfer command as usual.
+     */
+    private void startSpeculativeConnection() {
+        DataConnectionConfiguration dataCfg = session.getListener()
+                .getDataConnectionConfiguration();
+        if (!dataCfg.isSpeculativeConnect()) {
+            return;
+        }
+
+        if (passive) {
+            LOG.debug("Accepting passive data connection in the background");
+            if (sharedRegistration != null) {
+                speculativeConnection = SpeculativeDataConnection.accept(
+                        sharedRegistration, dataCfg.getIdleTime() * 1000L);
+            } else {
+                speculativeConnection = SpeculativeDataConnection
+                        .accept(servSoc);
+            }
+        } else {
+            LOG.debug("Connecting active data connection in the background");
+            Socket socket = null;
+            try {
+                // back the socket by a channel so that it can be used for
+                // zero-copy and non-blocking transfers
+                socket = SocketChannel.open().socket();
+                socket.setReuseAddress(true);
+                DataSocketOptions.configure(socket, dataCfg);
+                DataSocketOptions.autoTune(socket, dataCfg, roundTripTime);
+                socket.bind(getActiveLocalSocketAddress());
+            } catch (Exception ex) {
+                IoUtils.close(socket);
+                LOG.warn("Failed to connect active data connection in the background", ex);
+                return;
+            }
+            speculativeConnection = SpeculativeDataConnection.connect(socket,
+                    new InetSocketAddress(address, port),
+                    dataCfg.getIdleTime() * 1000);
+            if (speculativeConnection == null) {
+                IoUtils.close(socket);
+            }
+        }
+    }
+
+    /**
+     * Take over the data connection established in the background, waiting
+     * for it if not yet ready. The configured socket options are applied
+     * as if the data connection had been opened by the transfer command.
+     * 
+     * @return The data socket, null if not established in the background
+     */
+    Socket takeSpeculativeSocket() throws Exception {
+        SpeculativeDataConnection speculative = speculativeConnection;
+        if (speculative == null) {
+            return null;
+        }
+        speculativeConnection = null;
+
+        Socket socket = speculative.take();
+        try {
+            if (passive) {
+                configureAcceptedSocket(socket);
+            } else {
+                roundTripTime = speculative.getRoundTripTime();
+                DataSocketOptions.autoTuneSendBuffer(socket, session.getListener()
+                        .getDataConnectionConfiguration(), roundTripTime);
+            }
+        } catch (SocketException ex) {
+            IoUtils.close(socket);
+            throw ex;
+        }
+        LOG.debug("Using data connection established in the background");
+        return socket;
+    }
+
+    /**
+     * Accept the passive data connection, either from the dedicated server
+     * socket or handed over by the shared passive listener.
+     */
+    Socket acceptPassiveSocket() throws IOException {
+        if (sharedRegistration != null) {
+            return sharedRegistration.accept(session.getListener()
+                    .getDataConnectionConfiguration().getIdleTime() * 1000L);
+        } else if (servSoc != null) {
+            return servSoc.accept();
+        } else {
+            throw new SocketException("Passive data connection closed");
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -265,13 +649,27 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     /**
      * Get the data socket. In case of error returns null.
      */
-    private synchronized Socket createDataSocket() throws Exception {
+    synchronized Socket createDataSocket() throws Exception {
+
+        // use the data socket kept open after the last transfer in block mode
+        if (isDataSocketKept()) {
+            LOG.debug("Reusing data connection kept open in block mode");
+            cancelPendingTimeout();
+            dataSocIdle = false;
+            inUse = true;
+            return dataSoc;
+        }
 
         // get socket depending on the selection
         dataSoc = null;
         DataConnectionConfiguration dataConfig = session.getListener()
                 .getDataConnectionConfiguration();
         try {
+            openingDataConnection();
+
+            Socket speculated = takeSpeculativeSocket();
+            dataSoc = speculated;
+
             if (!passive) {
                 if (secure) {
                     LOG.debug("Opening secure active data connection");
@@ -285,8 +683,15 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     SSLContext ctx = ssl.getSSLContext();
                     SSLSocketFactory socFactory = ctx.getSocketFactory();
 
-                    // create socket
-                    SSLSocket ssoc = (SSLSocket) socFactory.createSocket();
+                    // create socket, layered over the socket connected in
+                    // the background if any
+                    SSLSocket ssoc;
+                    if (speculated != null) {
+                        ssoc = (SSLSocket) socFactory.createSocket(speculated,
+                                address.getHostAddress(), port, true);
+                    } else {
+                        ssoc = (SSLSocket) socFactory.createSocket();
+                    }
                     ssoc.setUseClientMode(false);
 
                     // initialize socket
@@ -294,27 +699,31 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                         ssoc.setEnabledCipherSuites(ssl.getEnabledCipherSuites());
                     }
                     dataSoc = ssoc;
-                } else {
+                } else if (speculated == null) {
                     LOG.debug("Opening active data connection");
-                    dataSoc = new Socket();
+                    // back the socket by a channel so that it can be used
+                    // for zero-copy transfers
+                    dataSoc = SocketChannel.open().socket();
                 }
 
-                dataSoc.setReuseAddress(true);
+                if (speculated == null) {
+                    dataSoc.setReuseAddress(true);
+                    DataSocketOptions.configure(dataSoc, dataConfig);
+                    DataSocketOptions.autoTune(dataSoc, dataConfig, roundTripTime);
 
-                InetAddress localAddr = resolveAddress(dataConfig
-                        .getActiveLocalAddress());
+                    SocketAddress localSocketAddress = getActiveLocalSocketAddress();
 
-                // if no local address has been configured, make sure we use the same as the client connects from
-                if(localAddr == null) {
-                    localAddr = ((InetSocketAddress)session.getLocalAddress()).getAddress();
-                }
-
-                SocketAddress localSocketAddress = new InetSocketAddress(localAddr, dataConfig.getActiveLocalPort());
+                    LOG.debug("Binding active data connection to {}", localSocketAddress);
+                    dataSoc.bind(localSocketAddress);
 
-                LOG.debug("Binding active data connection to {}", localSocketAddress);
-                dataSoc.bind(localSocketAddress);
+                    // the time taken by the TCP handshake gives the round trip time
+                    long connectTime = System.nanoTime();
+                    dataSoc.connect(new InetSocketAddress(address, port));
+                    roundTripTime = System.nanoTime() - connectTime;
 
-                dataSoc.connect(new InetSocketAddress(address, port));
+                    DataSocketOptions.autoTuneSendBuffer(dataSoc, dataConfig,
+                            roundTripTime);
+                }
             } else {
 
                 if (secure) {
@@ -334,11 +743,17 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     SSLContext ctx = ssl.getSSLContext();
                     SSLSocketFactory ssocketFactory = ctx.getSocketFactory();
 
-                    Socket serverSocket = servSoc.accept();
+                    Socket serverSocket = speculated;
+                    if (serverSocket == null) {
+                        serverSocket = acceptPassiveSocket();
+                        configureAcceptedSocket(serverSocket);
+                    }
 
+                    // use the literal address as the peer host, looking up
+                    // the host name would block on reverse DNS
                     SSLSocket sslSocket = (SSLSocket) ssocketFactory
                             .createSocket(serverSocket, serverSocket
-                                    .getInetAddress().getHostName(),
+                                    .getInetAddress().getHostAddress(),
                                     serverSocket.getPort(), true);
                     sslSocket.setUseClientMode(false);
 
@@ -356,9 +771,12 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
                     dataSoc = sslSocket;
                 } else {
-                    LOG.debug("Opening passive data connection");
+                    if (speculated == null) {
+                        LOG.debug("Opening passive data connection");
 
-                    dataSoc = servSoc.accept();
+                        dataSoc = acceptPassiveSocket();
+                        configureAcceptedSocket(dataSoc);
+                    }
                 }
                 LOG.debug("Passive data connection opened");
             }
@@ -379,21 +797,37 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         return dataSoc;
     }
 
-    /*
-     *  (non-Javadoc)
-     *   Returns an InetAddress object from a hostname or IP address.
+    /**
+     * Apply the configured socket options to an accepted passive data socket.
+     * The round trip time can not be measured for accepted sockets, so the
+     * send buffer is auto-tuned using the round trip time last measured for
+     * this session, if any. The receive buffer has been sized on the server
+     * socket before binding it.
+     */
+    void configureAcceptedSocket(final Socket socket) throws SocketException {
+        DataConnectionConfiguration dataConfig = session.getListener()
+                .getDataConnectionConfiguration();
+
+        DataSocketOptions.configure(socket, dataConfig);
+        DataSocketOptions.autoTuneSendBuffer(socket, dataConfig, roundTripTime);
+    }
+
+    /**
+     * Get the local address active data connections should be bound to.
      */
-    private InetAddress resolveAddress(String host)
+    SocketAddress getActiveLocalSocketAddress()
             throws DataConnectionException {
-        if (host == null) {
-            return null;
-        } else {
-            try {
-                return InetAddress.getByName(host);
-            } catch (UnknownHostException ex) {
-                throw new DataConnectionException("Failed to resolve address", ex);
-            }
+        DataConnectionConfiguration dataConfig = session.getListener()
+                .getDataConnectionConfiguration();
+
+        InetAddress localAddr = dataConfig.getActiveLocalInetAddress();
+
+        // if no local address has been configured, make sure we use the same as the client connects from
+        if(localAddr == null) {
+            localAddr = ((InetSocketAddress)session.getLocalAddress()).getAddress();
         }
+
+        return new InetSocketAddress(localAddr, dataConfig.getActiveLocalPort());
     }
 
     /*
@@ -408,7 +842,11 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     /**
      * Set the security protocol.
      */
-    public void setSecure(final boolean secure) {
+    public synchronized void setSecure(final boolean secure) {
+        // a data connection kept open in block mode can not change protection
+        if (secure != this.secure && isDataSocketKept()) {
+            closeDataSocket();
+        }
         this.secure = secure;
     }
 
@@ -428,6 +866,153 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         isZip = zip;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#getZipLevel()
+     */
+    public int getZipLevel() {
+        return zipLevel;
+    }
+
+    /**
+     * Set the compression level used in zip mode.
+     */
+    public void setZipLevel(final int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION
+                || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: "
+                    + level);
+        }
+        zipLevel = level;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#isBlockMode()
+     */
+    public boolean isBlockMode() {
+        return isBlock;
+    }
+
+    /**
+     * Set block mode, closing any data connection kept open in block mode
+     * when leaving it.
+     */
+    public synchronized void setBlockMode(final boolean block) {
+        if (isBlock && !block && dataSoc != null) {
+            closeDataSocket();
+        }
+        isBlock = block;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#keepDataConnection()
+     */
+    public synchronized void keepDataConnection() {
+        keepDataSoc = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#isDataConnectionOpen()
+     */
+    public boolean isDataConnectionOpen() {
+        return isDataSocketKept();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#isDataConnectionKept()
+     */
+    public synchronized boolean isDataConnectionKept() {
+        return keepDataSoc && isDataSocketKept();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#isDataConnectionInUse()
+     */
+    public boolean isDataConnectionInUse() {
+        return inUse;
+    }
+
+    /**
+     * Abort the transfer without taking the lock of this factory, which is
+     * held by the transfer while opening the data connection. Closing the
+     * server socket and cancelling the registrations the transfer is waiting
+     * on does not block. The data socket is closed at once, unless it is an
+     * SSL socket or one lingering on close, which is closed on a dedicated
+     * thread as closing it may block.
+     * 
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#abortDataConnection()
+     */
+    public void abortDataConnection() {
+        if (!inUse) {
+            return;
+        }
+
+        SpeculativeDataConnection speculative = speculativeConnection;
+        if (speculative != null) {
+            speculative.cancel();
+        }
+
+        SharedPassiveListener.Registration registration = sharedRegistration;
+        if (registration != null) {
+            registration.cancel();
+        }
+
+        ServerSocket server = servSoc;
+        if (server != null) {
+            if (server.getChannel() != null) {
+                NioDataConnectionSelector.getInstance().close(
+                        server.getChannel());
+            } else {
+                try {
+                    server.close();
+                } catch (IOException ex) {
+                    LOG.warn("FtpDataConnection.abortDataConnection()", ex);
+                }
+            }
+        }
+
+        final Socket socket = dataSoc;
+        if (socket == null) {
+            return;
+        } else if (mightBlockOnClose(socket)) {
+            CLOSER.execute(new Runnable() {
+                public void run() {
+                    IoUtils.close(socket);
+                }
+            });
+        } else {
+            IoUtils.close(socket);
+        }
+    }
+
+    /**
+     * Might closing the socket block? An SSL socket sends its close
+     * notification and a lingering socket waits for its data to be sent,
+     * other sockets are closed at once.
+     */
+    private boolean mightBlockOnClose(final Socket socket) {
+        if (socket instanceof SSLSocket) {
+            return true;
+        }
+        try {
+            return socket.getSoLinger() > 0;
+        } catch (SocketException e) {
+            // already closed
+            return false;
+        }
+    }
+
     /**
      * Check the data connection idle status.
      */
@@ -439,7 +1024,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         }
 
         // data connection active - not a timeout
-        if (dataSoc != null) {
+        if (dataSoc != null && !dataSocIdle) {
             return false;
         }
 
@@ -461,7 +1046,8 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     /**
      * Dispose data connection - close all the sockets.
      */
-    public void dispose() {
+    public synchronized void dispose() {
+        keepDataSoc = false;
         closeDataConnection();
     }
 
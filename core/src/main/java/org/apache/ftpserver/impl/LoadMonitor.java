@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Detects when a listener is overloaded, from the number of events waiting
+ * for a free command thread and the 99th percentile of the time sessions
+ * wait for one. Events queued behind a running event of their own session,
+ * such as the commands received during a transfer, wait for that session
+ * rather than for the command threads and are not counted. The load is
+ * evaluated once per second. The listener
+ * becomes overloaded when the queue depth or the latency reaches its
+ * maximum, and only recovers once both are below half of their maximum, so
+ * that it does not flap around the limits.
+ * 
+ * Latencies are counted in buckets of powers of 2 milliseconds, the
+ * percentile is the upper bound of the bucket it falls in.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class LoadMonitor {
+
+    private final Logger LOG = LoggerFactory.getLogger(LoadMonitor.class);
+
+    /**
+     * The period over which the latency percentile is computed
+     */
+    private static final long EVALUATION_PERIOD = 1000L;
+
+    private static final int LATENCY_BUCKETS = 32;
+
+    private static final int PERCENTILE = 99;
+
+    private final int maxQueueDepth;
+
+    private final long maxLatency;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final AtomicIntegerArray latencies = new AtomicIntegerArray(
+            LATENCY_BUCKETS);
+
+    private volatile long lastEvaluation;
+
+    private volatile boolean overloaded = false;
+
+    private volatile long latencyPercentile = 0L;
+
+    /**
+     * Create a monitor with the given maximums, 0 for not limited
+     * 
+     * @param maxQueueDepth
+     *            The maximum number of events waiting for a free command
+     *            thread
+     * @param maxLatency
+     *            The maximum 99th percentile of the time in milliseconds
+     *            sessions wait for a free command thread
+     */
+    public LoadMonitor(int maxQueueDepth, long maxLatency) {
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxLatency = maxLatency;
+        this.lastEvaluation = System.currentTimeMillis();
+    }
+
+    /**
+     * Count an event starting to wait for a free command thread
+     */
+    public void eventQueued() {
+        queueDepth.incrementAndGet();
+        isOverloaded();
+    }
+
+    /**
+     * Count an event no longer waiting for a free command thread
+     */
+    public void eventPolled() {
+        eventsPolled(1);
+    }
+
+    /**
+     * Count events no longer waiting for a free command thread, either taken
+     * by one or now queued behind a running event of their session
+     * 
+     * @param count
+     *            The number of events
+     */
+    public void eventsPolled(int count) {
+        queueDepth.addAndGet(-count);
+    }
+
+    /**
+     * Record the time a session waited for a free command thread
+     * 
+     * @param latency
+     *            The time in milliseconds from queueing the first event of
+     *            the session to a command thread starting it
+     */
+    public void sessionStarted(long latency) {
+        latencies.incrementAndGet(getBucket(latency));
+    }
+
+    private static int getBucket(long latency) {
+        if (latency <= 0) {
+            return 0;
+        }
+        return Math.min(LATENCY_BUCKETS - 1, 64 - Long
+                .numberOfLeadingZeros(latency));
+    }
+
+    /**
+     * Get the number of events waiting for a free command thread
+     * 
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Get the 99th percentile of the time sessions wait for a free command
+     * thread, as of the last evaluation
+     * 
+     * @return The latency percentile in milliseconds
+     */
+    public long getLatencyPercentile() {
+        return latencyPercentile;
+    }
+
+    /**
+     * Is the listener overloaded? Evaluates the load if the evaluation
+     * period has passed.
+     * 
+     * @return true if overloaded
+     */
+    public boolean isOverloaded() {
+        return isOverloaded(System.currentTimeMillis());
+    }
+
+    boolean isOverloaded(long now) {
+        if (now - lastEvaluation >= EVALUATION_PERIOD) {
+            // notified without holding the lock, so that evaluating the load
+            // on other threads does not wait for the notification
+            Boolean changed = evaluate(now);
+            if (changed != null) {
+                overloadChanged(changed.booleanValue());
+            }
+        }
+        return overloaded;
+    }
+
+    /**
+     * Evaluate the load
+     * 
+     * @return The new overload state if changed, null otherwise
+     */
+    private synchronized Boolean evaluate(long now) {
+        if (now - lastEvaluation < EVALUATION_PERIOD) {
+            // evaluated by another thread meanwhile
+            return null;
+        }
+        lastEvaluation = now;
+
+        latencyPercentile = takeLatencyPercentile();
+        int depth = queueDepth.get();
+
+        // leaving the overloaded state requires the load to drop well below
+        // the maximums
+        int depthLimit = maxQueueDepth;
+        long latencyLimit = maxLatency;
+        if (overloaded) {
+            depthLimit = (depthLimit + 1) / 2;
+            latencyLimit = (latencyLimit + 1) / 2;
+        }
+
+        boolean over = (maxQueueDepth > 0 && depth >= depthLimit)
+                || (maxLatency > 0 && latencyPercentile >= latencyLimit);
+
+        if (over != overloaded) {
+            overloaded = over;
+            if (over) {
+                LOG.warn("Overloaded, {} events queued, {} ms latency",
+                        depth, latencyPercentile);
+            } else {
+                LOG.info("No longer overloaded, {} events queued, {} ms latency",
+                        depth, latencyPercentile);
+            }
+            return Boolean.valueOf(over);
+        }
+        return null;
+    }
+
+    /**
+     * Compute the latency percentile of the commands handled since the last
+     * evaluation, and start counting anew
+     */
+    private long takeLatencyPercentile() {
+        int[] counts = new int[LATENCY_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            counts[i] = latencies.getAndSet(i, 0);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+
+        long rank = (total * PERCENTILE + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (1L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Called when the listener becomes overloaded or recovers, on the thread
+     * evaluating the load. This may be an I/O processor thread, so it must
+     * not block. Does nothing by default.
+     * 
+     * @param overloaded
+     *            true if the listener became overloaded
+     */
+    protected void overloadChanged(boolean overloaded) {
+        // do nothing
+    }
+}
@@ -98,17 +98,19 @@ public class LocalizedFtpReply extends DefaultFtpReply {
 
     public static final String STAT_START_TIME = "stat.start.time";
 
+    private final String template;
+
     public static LocalizedFtpReply translate(FtpIoSession session, FtpRequest request,
             FtpServerContext context, int code, String subId, String basicMsg) {
-        String msg = translateMessage(session, request, context, code, subId,
-                basicMsg);
+        String template = getMessageTemplate(session, context, code, subId);
+        String msg = replaceVariables(session, request, context, code,
+                basicMsg, template);
 
-        return new LocalizedFtpReply(code, msg);
+        return new LocalizedFtpReply(code, msg, template);
     }
 
-    private static String translateMessage(FtpIoSession session,
-            FtpRequest request, FtpServerContext context, int code,
-            String subId, String basicMsg) {
+    private static String getMessageTemplate(FtpIoSession session,
+            FtpServerContext context, int code, String subId) {
         MessageResource resource = context.getMessageResource();
         String lang = session.getLanguage();
 
@@ -119,8 +121,6 @@ public class LocalizedFtpReply extends DefaultFtpReply {
         if (msg == null) {
             msg = "";
         }
-        msg = replaceVariables(session, request, context, code, basicMsg, msg);
-
         return msg;
     }
 
@@ -496,10 +496,31 @@ public class LocalizedFtpReply extends DefaultFtpReply {
     }
 
     /**
-     * Private constructor, only allow creating through factory method
+     * Private constructor, only allow creating through the
+     * {@link #translate(FtpIoSession, FtpRequest, FtpServerContext, int, String, String)}
+     * factory method
+     * 
+     * @param code
+     *            The reply code
+     * @param message
+     *            The reply message
+     * @param template
+     *            The message template, the same instance as the message if
+     *            it contains no variables
      */
-    private LocalizedFtpReply(int code, String message) {
+    private LocalizedFtpReply(int code, String message, String template) {
         super(code, message);
+        this.template = template;
+    }
+
+    /**
+     * Get the message template the reply message was translated from. The
+     * same template instance is used for all replies translated from it.
+     * 
+     * @return The message template
+     */
+    public String getTemplate() {
+        return template;
     }
 
     
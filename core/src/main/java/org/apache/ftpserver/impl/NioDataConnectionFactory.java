@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
+import org.apache.ftpserver.util.IoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Data connection factory creating non-blocking data connections. Binary
+ * transfers over plain data connections in stream mode are run as a
+ * {@link NioTransfer}, accepting or connecting the data socket and moving the
+ * data as driven by the shared {@link NioDataConnectionSelector}, without any
+ * thread waiting for the transfer. All other transfers, including secure
+ * ones, compressed ones and ones in block mode, are handled as blocking
+ * connections by {@link IODataConnectionFactory}.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class NioDataConnectionFactory extends IODataConnectionFactory {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NioDataConnectionFactory.class);
+
+    /**
+     * The transfer driven by the selector, if any
+     */
+    private volatile NioTransfer transfer;
+
+    public NioDataConnectionFactory(final FtpServerContext serverContext,
+            final FtpIoSession session) {
+        super(serverContext, session);
+    }
+
+    /**
+     * Can the next transfer be driven by the selector, rather than blocking
+     * the calling thread? Only binary transfers over plain data connections
+     * in stream mode can.
+     * 
+     * @return true if {@link #transferToClient(InputStream, String, long, NioTransfer.Listener)}
+     *         and {@link #transferFromClient(OutputStream, String, NioTransfer.Listener)}
+     *         can be used for the next transfer
+     */
+    public synchronized boolean isNonBlockingTransferPossible() {
+        if (secure || isZipMode() || isBlockMode() || isDataSocketKept()
+                || speculativeConnection != null
+                || session.getDataType() != DataType.BINARY) {
+            return false;
+        }
+
+        if (passive) {
+            return sharedRegistration != null
+                    || (servSoc != null && servSoc.getChannel() != null);
+        } else {
+            return address != null;
+        }
+    }
+
+    /**
+     * Start sending the stream to the client, opening the data connection
+     * and sending the data without blocking. The stream is not closed.
+     * 
+     * @param in
+     *            The stream to send
+     * @param fileName
+     *            The name of the file sent, for reporting the status of the
+     *            transfer
+     * @param expectedSize
+     *            The number of bytes expected to be sent, -1 if not known
+     * @param listener
+     *            The listener notified on a worker thread once the transfer
+     *            has ended
+     */
+    public synchronized void transferToClient(final InputStream in,
+            final String fileName, final long expectedSize,
+            final NioTransfer.Listener listener) {
+        TransferAccounting accounting = new TransferAccounting(session, false,
+                fileName, expectedSize);
+        try {
+            start(NioTransfer.toClient(this, session, in, accounting,
+                    createRateLimiter(false), getDataConfig(), getIdleTime(),
+                    listener));
+        } catch (IOException e) {
+            listener.notOpened(e);
+        }
+    }
+
+    /**
+     * Start receiving data from the client into the stream, opening the data
+     * connection and receiving the data without blocking. The stream is not
+     * closed.
+     * 
+     * @param out
+     *            The stream to write the data to
+     * @param fileName
+     *            The name of the file received, for reporting the status of
+     *            the transfer
+     * @param listener
+     *            The listener notified on a worker thread once the transfer
+     *            has ended
+     */
+    public synchronized void transferFromClient(final OutputStream out,
+            final String fileName, final NioTransfer.Listener listener) {
+        TransferAccounting accounting = new TransferAccounting(session, true,
+                fileName, -1);
+        try {
+            start(NioTransfer.fromClient(this, session, out, accounting,
+                    createRateLimiter(true), getDataConfig(), getIdleTime(),
+                    listener));
+        } catch (IOException e) {
+            listener.notOpened(e);
+        }
+    }
+
+    private void start(final NioTransfer started) {
+        transfer = started;
+
+        SocketChannel channel = null;
+        try {
+            openingDataConnection();
+
+            if (!passive) {
+                LOG.debug("Connecting non-blocking active data connection");
+                channel = SocketChannel.open();
+                Socket socket = channel.socket();
+                socket.setReuseAddress(true);
+                DataSocketOptions.configure(socket, getDataConfig());
+                DataSocketOptions.autoTune(socket, getDataConfig(),
+                        roundTripTime);
+                socket.bind(getActiveLocalSocketAddress());
+
+                started.connect(channel, new InetSocketAddress(address, port));
+            } else if (sharedRegistration != null) {
+                LOG.debug("Accepting non-blocking passive data connection on shared port");
+                started.accept(sharedRegistration);
+            } else {
+                LOG.debug("Accepting non-blocking passive data connection");
+                started.accept(servSoc.getChannel());
+            }
+        } catch (Exception ex) {
+            if (channel != null) {
+                IoUtils.close(channel.socket());
+            }
+            LOG.warn("Failed to open non-blocking data connection", ex);
+            transfer = null;
+            started.fail(ex);
+        }
+    }
+
+    /**
+     * Take the data socket opened by the transfer, applying the configured
+     * socket options.
+     * 
+     * @return false if the transfer has been aborted and the socket must be
+     *         closed
+     */
+    synchronized boolean dataSocketOpened(final NioTransfer opener,
+            final Socket socket, final long measuredRoundTripTime)
+            throws SocketException {
+        if (transfer != opener) {
+            return false;
+        }
+
+        dataSoc = socket;
+        if (passive) {
+            configureAcceptedSocket(socket);
+        } else {
+            roundTripTime = measuredRoundTripTime;
+            DataSocketOptions.autoTuneSendBuffer(socket, getDataConfig(),
+                    roundTripTime);
+        }
+        return true;
+    }
+
+    /**
+     * Close the data connection, aborting the transfer driven by the
+     * selector if still running.
+     */
+    public synchronized void closeDataConnection() {
+        if (transfer != null) {
+            NioTransfer aborted = transfer;
+            transfer = null;
+            aborted.abort();
+        }
+
+        super.closeDataConnection();
+    }
+
+    /**
+     * Abort the transfer driven by the selector as well, if still running.
+     */
+    public void abortDataConnection() {
+        NioTransfer running = transfer;
+        if (running != null) {
+            running.abort();
+        }
+
+        super.abortDataConnection();
+    }
+
+    /**
+     * Create the rate limiter for a transfer, null if the transfer rate of
+     * the user is not limited.
+     */
+    private TransferRateLimiter createRateLimiter(final boolean upload) {
+        TransferRateRequest transferRateRequest = new TransferRateRequest();
+        transferRateRequest = (TransferRateRequest) session.getUser()
+                .authorize(transferRateRequest);
+
+        int maxRate = 0;
+        if (transferRateRequest != null) {
+            maxRate = upload ? transferRateRequest.getMaxUploadRate()
+                    : transferRateRequest.getMaxDownloadRate();
+        }
+
+        if (maxRate > 0) {
+            return new TransferRateLimiter(maxRate, getDataConfig()
+                    .getTransferRateBurst());
+        } else {
+            return null;
+        }
+    }
+
+    private long getIdleTime() {
+        return getDataConfig().getIdleTime() * 1000L;
+    }
+
+    private DataConnectionConfiguration getDataConfig() {
+        return session.getListener().getDataConnectionConfiguration();
+    }
+}
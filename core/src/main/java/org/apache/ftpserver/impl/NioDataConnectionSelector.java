@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A single selector shared by all non-blocking data connections. Transfers
+ * register their interest in a channel becoming ready for accepting,
+ * connecting, reading or writing, and are called back on the selector thread
+ * once it is, continuing from where they stopped. No thread waits for a
+ * transfer in the meantime. The selector thread is started on demand and
+ * stops after being idle for a while.
+ * 
+ * Work that might block, such as reading and writing files or completing the
+ * command of a transfer, is run by a small fixed number of worker threads
+ * shared by all transfers.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class NioDataConnectionSelector {
+
+    /**
+     * Called back once a channel is ready
+     */
+    public static interface Handler {
+
+        /**
+         * Called on the selector thread when the channel is ready for the
+         * registered operations, or has been closed. Must not block, as it
+         * delays all other data connections.
+         */
+        void ready();
+    }
+
+    private static final NioDataConnectionSelector INSTANCE = new NioDataConnectionSelector();
+
+    /**
+     * Time in milliseconds the selector thread will stay alive without any
+     * registered interest
+     */
+    private static final long MAX_IDLE_TIME = 30000;
+
+    /**
+     * The number of worker threads
+     */
+    private static final int WORKER_COUNT = Math.max(4, 2 * Runtime
+            .getRuntime().availableProcessors());
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(NioDataConnectionSelector.class);
+
+    private final Queue<Registration> pending = new ConcurrentLinkedQueue<Registration>();
+
+    private Selector selector;
+
+    private volatile Thread selectorThread;
+
+    private ThreadPoolExecutor workers;
+
+    /**
+     * Get the selector shared by all non-blocking data connections
+     * 
+     * @return The shared selector
+     */
+    public static NioDataConnectionSelector getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Call the handler back once the channel is ready for any of the provided
+     * operations. Registering from the selector thread, while being called
+     * back, only updates the interest of the channel.
+     * 
+     * @param channel
+     *            The channel, must be in non-blocking mode
+     * @param ops
+     *            The operations, as defined by {@link SelectionKey}
+     * @param handler
+     *            The handler to call back
+     * @throws IOException
+     *             If the selector could not be opened, or the channel is
+     *             closed when registering from the selector thread
+     */
+    public void register(final SelectableChannel channel, final int ops,
+            final Handler handler) throws IOException {
+        if (Thread.currentThread() == selectorThread) {
+            Selector current;
+            synchronized (this) {
+                current = selector;
+            }
+            register(current, channel, ops, handler);
+            return;
+        }
+
+        pending.add(new Registration(channel, ops, handler));
+        wakeup();
+    }
+
+    /**
+     * Close a channel which might be registered. The selector is woken up so
+     * that the socket is released right away, rather than on the next
+     * selection.
+     * 
+     * @param channel
+     *            The channel
+     */
+    public void close(final SelectableChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close data connection channel", e);
+        }
+
+        synchronized (this) {
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Run a task which might block on one of the worker threads.
+     * 
+     * @param task
+     *            The task
+     */
+    public void execute(final Runnable task) {
+        getWorkers().execute(task);
+    }
+
+    private synchronized Executor getWorkers() {
+        if (workers == null) {
+            workers = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT,
+                    MAX_IDLE_TIME, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(final Runnable runnable) {
+                            Thread thread = new Thread(runnable,
+                                    "FtpServer-DataConnectionWorker-"
+                                            + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return workers;
+    }
+
+    /**
+     * Wake up the selector thread, starting it if not running
+     */
+    private synchronized void wakeup() throws IOException {
+        if (selector == null) {
+            selector = Selector.open();
+
+            final Selector started = selector;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    select(started);
+                }
+            }, "FtpServer-DataConnectionSelector");
+            thread.setDaemon(true);
+            selectorThread = thread;
+            thread.start();
+        } else {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Stop the selector thread, unless new interest has been registered
+     * 
+     * @return true if the selector thread was stopped
+     */
+    private synchronized boolean stopIfIdle() {
+        if (!pending.isEmpty()) {
+            return false;
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close data connection selector", e);
+        }
+        selector = null;
+        selectorThread = null;
+        return true;
+    }
+
+    private void select(final Selector selector) {
+        long lastActive = System.currentTimeMillis();
+        try {
+            while (true) {
+                // register new interest
+                Registration registration;
+                while ((registration = pending.poll()) != null) {
+                    try {
+                        register(selector, registration.channel,
+                                registration.ops, registration.handler);
+                    } catch (IOException e) {
+                        // let the handler find out that the channel is closed
+                        ready(registration.handler);
+                    }
+                    lastActive = System.currentTimeMillis();
+                }
+
+                int selected = selector.select(MAX_IDLE_TIME);
+
+                if (selected > 0) {
+                    lastActive = System.currentTimeMillis();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys()
+                            .iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (key.isValid()) {
+                            key.interestOps(0);
+                        }
+                        ready((Handler) key.attachment());
+                    }
+                } else if (System.currentTimeMillis() - lastActive >= MAX_IDLE_TIME
+                        && !hasInterest(selector) && stopIfIdle()) {
+                    LOG.debug("Data connection selector idle, stopping");
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Data connection selector failed", e);
+            synchronized (this) {
+                if (this.selector == selector) {
+                    this.selector = null;
+                    selectorThread = null;
+                }
+            }
+
+            // call back all handlers, they will find their channels not to be
+            // ready and register again with a new selector
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    ready((Handler) key.attachment());
+                }
+                selector.close();
+            } catch (Exception e1) {
+                // the selector is already broken, ignore
+            }
+        }
+    }
+
+    private void register(final Selector selector,
+            final SelectableChannel channel, final int ops,
+            final Handler handler) throws IOException {
+        SelectionKey key = channel.keyFor(selector);
+        try {
+            if (key == null) {
+                channel.register(selector, ops, handler);
+            } else {
+                key.attach(handler);
+                key.interestOps(ops);
+            }
+        } catch (RuntimeException e) {
+            // e.g. a cancelled key as the channel has been closed
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void ready(final Handler handler) {
+        if (handler == null) {
+            return;
+        }
+
+        try {
+            handler.ready();
+        } catch (RuntimeException e) {
+            LOG.warn("Data connection handler failed", e);
+        }
+    }
+
+    private boolean hasInterest(final Selector selector) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.interestOps() != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Registration {
+        private final SelectableChannel channel;
+
+        private final int ops;
+
+        private final Handler handler;
+
+        public Registration(final SelectableChannel channel, final int ops,
+                final Handler handler) {
+            this.channel = channel;
+            this.ops = ops;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,710 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A transfer over a non-blocking data connection, driven by the
+ * {@link NioDataConnectionSelector} rather than by a thread waiting for it.
+ * The transfer is a state machine, opening the data connection and then
+ * moving data for as long as the channel is ready, after which it registers
+ * its interest with the selector and returns. The selector calls it back to
+ * continue once the channel is ready again.
+ * 
+ * Files are sent using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * and other streams are read, and uploaded data is written, on the worker
+ * threads of the selector, as reading and writing the files might block. The
+ * selector thread only moves data held in memory. The listener is notified
+ * on a worker thread once the transfer has ended.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class NioTransfer implements NioDataConnectionSelector.Handler {
+
+    /**
+     * Notified once the transfer has ended, on a worker thread
+     */
+    public static interface Listener {
+
+        /**
+         * The data connection could not be opened
+         * 
+         * @param e
+         *            The failure
+         */
+        void notOpened(Exception e);
+
+        /**
+         * All data has been transferred
+         * 
+         * @param size
+         *            The number of bytes transferred
+         */
+        void transferred(long size);
+
+        /**
+         * The transfer failed after the data connection was opened
+         * 
+         * @param e
+         *            The failure, a {@link SocketException} if the data
+         *            connection was closed, as done by ABOR
+         */
+        void failed(IOException e);
+    }
+
+    /**
+     * The maximum number of bytes handed to the OS per zero-copy call
+     */
+    private static final long ZERO_COPY_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * The maximum number of chunks moved each time the channel is ready, so
+     * that a fast transfer does not keep the selector from the others
+     */
+    private static final int MAX_CHUNKS_PER_STEP = 16;
+
+    /**
+     * Times out idle transfers and delays rate limited transfers, with a tick
+     * of 10 ms
+     */
+    private static final TimerWheel TIMER = new TimerWheel(
+            "FtpServer-TransferTimer", 10, 512);
+
+    private static final int OPENING = 0;
+
+    private static final int TRANSFERRING = 1;
+
+    private static final int ENDED = 2;
+
+    private final NioDataConnectionFactory factory;
+
+    private final NioDataConnectionSelector selector;
+
+    private final FtpIoSession session;
+
+    private final boolean upload;
+
+    private final InputStream in;
+
+    private final FileChannel file;
+
+    private final OutputStream out;
+
+    private final DataConnectionConfiguration dataConfig;
+
+    private final ByteBuffer buffer;
+
+    private final TransferRateLimiter rateLimiter;
+
+    private final TransferAccounting accounting;
+
+    private final long chunkSize;
+
+    private final long idleTime;
+
+    private final Listener listener;
+
+    private ServerSocketChannel acceptChannel;
+
+    private SharedPassiveListener.Registration registration;
+
+    private SocketChannel connectChannel;
+
+    private long connectTime;
+
+    private SocketChannel channel;
+
+    private volatile int state = OPENING;
+
+    private long position;
+
+    private long transferredSize = 0;
+
+    private boolean endOfStream = false;
+
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    private TimerWheel.Timeout idleTimeout;
+
+    /**
+     * The number of threads using the buffer, which is returned to the pool
+     * once the transfer has ended and none uses it anymore
+     */
+    private int bufferUsers = 0;
+
+    private boolean bufferReleased = false;
+
+    private NioTransfer(final NioDataConnectionFactory factory,
+            final FtpIoSession session, final boolean upload,
+            final InputStream in, final OutputStream out,
+            final TransferAccounting accounting,
+            final TransferRateLimiter rateLimiter,
+            final DataConnectionConfiguration dataConfig, final long idleTime,
+            final Listener listener) throws IOException {
+        this.factory = factory;
+        this.selector = NioDataConnectionSelector.getInstance();
+        this.session = session;
+        this.upload = upload;
+        this.in = in;
+        this.out = out;
+        this.accounting = accounting;
+        this.rateLimiter = rateLimiter;
+        this.dataConfig = dataConfig;
+        this.idleTime = idleTime;
+        this.listener = listener;
+
+        // keep the chunks small enough for the rate limiter to shape the
+        // transfer smoothly, about ten chunks per second
+        long chunk = ZERO_COPY_CHUNK_SIZE;
+        if (rateLimiter != null) {
+            chunk = Math.max(1, Math.min(chunk, rateLimiter.getMaxRate() / 10));
+        }
+
+        // files are handed to the OS directly, other streams are copied
+        // through a buffer borrowed from the pool
+        if (in instanceof FileInputStream) {
+            file = ((FileInputStream) in).getChannel();
+            position = file.position();
+            buffer = null;
+        } else {
+            file = null;
+            buffer = ByteBuffer.wrap(IODataConnection
+                    .acquireTransferBuffer(dataConfig));
+            buffer.limit(0);
+            chunk = Math.min(chunk, buffer.capacity());
+        }
+        chunkSize = chunk;
+    }
+
+    /**
+     * Create a transfer sending the stream to the client
+     * 
+     * @param factory
+     *            The data connection factory of the session
+     * @param session
+     *            The session
+     * @param in
+     *            The stream to send
+     * @param accounting
+     *            The accounting for the transfer
+     * @param rateLimiter
+     *            The rate limiter, null if the rate is not limited
+     * @param dataConfig
+     *            The data connection configuration, pooling the buffers used
+     *            for streams other than files
+     * @param idleTime
+     *            The time in milliseconds after which the transfer fails if
+     *            no data could be transferred, 0 for no limit
+     * @param listener
+     *            The listener notified when the transfer ends
+     * @return The transfer, to be started by opening the data connection
+     */
+    public static NioTransfer toClient(final NioDataConnectionFactory factory,
+            final FtpIoSession session, final InputStream in,
+            final TransferAccounting accounting,
+            final TransferRateLimiter rateLimiter,
+            final DataConnectionConfiguration dataConfig, final long idleTime,
+            final Listener listener) throws IOException {
+        return new NioTransfer(factory, session, false, in, null, accounting,
+                rateLimiter, dataConfig, idleTime, listener);
+    }
+
+    /**
+     * Create a transfer receiving data from the client into the stream
+     * 
+     * @see #toClient(NioDataConnectionFactory, FtpIoSession, InputStream,
+     *      TransferAccounting, TransferRateLimiter,
+     *      DataConnectionConfiguration, long, Listener)
+     */
+    public static NioTransfer fromClient(
+            final NioDataConnectionFactory factory, final FtpIoSession session,
+            final OutputStream out, final TransferAccounting accounting,
+            final TransferRateLimiter rateLimiter,
+            final DataConnectionConfiguration dataConfig, final long idleTime,
+            final Listener listener) throws IOException {
+        return new NioTransfer(factory, session, true, null, out, accounting,
+                rateLimiter, dataConfig, idleTime, listener);
+    }
+
+    /**
+     * Open the data connection by accepting it on the passive server socket
+     * channel
+     */
+    void accept(final ServerSocketChannel serverChannel) {
+        acceptChannel = serverChannel;
+        scheduleIdleTimeout(idleTime);
+        try {
+            serverChannel.configureBlocking(false);
+            open();
+        } catch (Exception e) {
+            end(e);
+        }
+    }
+
+    /**
+     * Open the data connection handed over by a shared passive listener
+     */
+    void accept(final SharedPassiveListener.Registration registration) {
+        this.registration = registration;
+        scheduleIdleTimeout(idleTime);
+        registration.whenDone(new Runnable() {
+            public void run() {
+                ready();
+            }
+        });
+    }
+
+    /**
+     * Open the data connection by connecting the unconnected channel, bound
+     * to the local address, to the client
+     */
+    void connect(final SocketChannel socketChannel, final SocketAddress remote) {
+        connectChannel = socketChannel;
+        scheduleIdleTimeout(idleTime);
+        try {
+            socketChannel.configureBlocking(false);
+            connectTime = System.nanoTime();
+            if (socketChannel.connect(remote)) {
+                opened(socketChannel, System.nanoTime() - connectTime);
+            } else {
+                await(socketChannel, SelectionKey.OP_CONNECT);
+            }
+        } catch (Exception e) {
+            end(e);
+        }
+    }
+
+    /**
+     * Fail the transfer as the data connection could not be opened
+     */
+    void fail(final Exception e) {
+        end(e);
+    }
+
+    /**
+     * Abort the transfer as the data connection is being closed. The
+     * listener is notified of the transfer failing as if the data connection
+     * was closed by the client.
+     */
+    public void abort() {
+        end(new SocketException("Data connection closed"));
+    }
+
+    /**
+     * Continue the transfer, called back by the selector once the channel is
+     * ready.
+     */
+    public void ready() {
+        if (!useBuffer()) {
+            return;
+        }
+
+        try {
+            if (state == OPENING) {
+                open();
+            } else if (upload) {
+                receive();
+            } else {
+                send();
+            }
+        } catch (Exception e) {
+            end(e);
+        } finally {
+            unuseBuffer();
+        }
+    }
+
+    private void open() throws IOException {
+        if (acceptChannel != null) {
+            SocketChannel accepted = acceptChannel.accept();
+            if (accepted == null) {
+                await(acceptChannel, SelectionKey.OP_ACCEPT);
+            } else {
+                opened(accepted, -1L);
+            }
+        } else if (registration != null) {
+            opened(registration.accept(0).getChannel(), -1L);
+        } else if (connectChannel.finishConnect()) {
+            opened(connectChannel, System.nanoTime() - connectTime);
+        } else {
+            await(connectChannel, SelectionKey.OP_CONNECT);
+        }
+    }
+
+    private void opened(final SocketChannel opened, final long roundTripTime)
+            throws IOException {
+        opened.configureBlocking(false);
+        if (!factory.dataSocketOpened(this, opened.socket(), roundTripTime)) {
+            // aborted meanwhile
+            IoUtils.close(opened.socket());
+            return;
+        }
+
+        synchronized (this) {
+            if (state == ENDED) {
+                return;
+            }
+            channel = opened;
+            state = TRANSFERRING;
+        }
+        session.setCurrentTransfer(accounting);
+        lastActivity = System.currentTimeMillis();
+
+        await(channel, upload ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Send data to the client for as long as the channel accepts it
+     */
+    private void send() throws IOException {
+        if (file != null) {
+            sendFile();
+            return;
+        }
+
+        for (int i = 0; i < MAX_CHUNKS_PER_STEP; i++) {
+            if (!buffer.hasRemaining()) {
+                fill();
+                return;
+            }
+
+            int count = channel.write(buffer);
+            if (count == 0) {
+                await(channel, SelectionKey.OP_WRITE);
+                return;
+            }
+
+            if (transferred(count)) {
+                return;
+            }
+        }
+
+        // let the other data connections go first
+        await(channel, SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Send the file for as long as the channel accepts it on a worker
+     * thread, as reading the file might block. The channel being
+     * non-blocking, the worker only waits for the disk.
+     */
+    private void sendFile() {
+        selector.execute(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < MAX_CHUNKS_PER_STEP; i++) {
+                        long count = file.transferTo(position, chunkSize,
+                                channel);
+                        if (count == 0) {
+                            // transferTo does not signal end of file, check
+                            // the size
+                            if (position >= file.size()) {
+                                end(null);
+                            } else {
+                                await(channel, SelectionKey.OP_WRITE);
+                            }
+                            return;
+                        }
+                        position += count;
+
+                        if (transferred(count)) {
+                            return;
+                        }
+                    }
+
+                    // let the other data connections go first
+                    await(channel, SelectionKey.OP_WRITE);
+                } catch (Exception e) {
+                    end(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the next chunk of the stream on a worker thread, continuing to
+     * send it once read
+     */
+    private void fill() {
+        selector.execute(new Runnable() {
+            public void run() {
+                if (!useBuffer()) {
+                    return;
+                }
+
+                try {
+                    buffer.clear();
+                    int count = in.read(buffer.array(), 0, (int) chunkSize);
+                    if (count == -1) {
+                        end(null);
+                        return;
+                    }
+                    buffer.limit(count);
+                    lastActivity = System.currentTimeMillis();
+
+                    await(channel, SelectionKey.OP_WRITE);
+                } catch (Exception e) {
+                    end(e);
+                } finally {
+                    unuseBuffer();
+                }
+            }
+        });
+    }
+
+    /**
+     * Receive data from the client for as long as the channel has data
+     * available, writing it once the buffer is full
+     */
+    private void receive() throws IOException {
+        for (int i = 0; i < MAX_CHUNKS_PER_STEP; i++) {
+            buffer.limit((int) Math.min(buffer.capacity(), buffer.position()
+                    + chunkSize));
+            int count = channel.read(buffer);
+            if (count == -1) {
+                endOfStream = true;
+                drain();
+                return;
+            } else if (count == 0) {
+                await(channel, SelectionKey.OP_READ);
+                return;
+            }
+
+            if (buffer.position() == buffer.capacity()) {
+                if (!transferred(count)) {
+                    drain();
+                }
+                return;
+            } else if (transferred(count)) {
+                return;
+            }
+        }
+
+        // let the other data connections go first
+        await(channel, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Write the received data on a worker thread, continuing to receive once
+     * written
+     */
+    private void drain() {
+        selector.execute(new Runnable() {
+            public void run() {
+                if (!useBuffer()) {
+                    return;
+                }
+
+                try {
+                    buffer.flip();
+                    out.write(buffer.array(), 0, buffer.limit());
+                    buffer.clear();
+                    lastActivity = System.currentTimeMillis();
+
+                    if (endOfStream) {
+                        end(null);
+                    } else {
+                        await(channel, SelectionKey.OP_READ);
+                    }
+                } catch (Exception e) {
+                    end(e);
+                } finally {
+                    unuseBuffer();
+                }
+            }
+        });
+    }
+
+    /**
+     * Start using the buffer, unless the transfer has ended
+     * 
+     * @return true if the transfer continues, in which case
+     *         {@link #unuseBuffer()} must be called once done
+     */
+    private synchronized boolean useBuffer() {
+        if (state == ENDED) {
+            return false;
+        }
+        bufferUsers++;
+        return true;
+    }
+
+    /**
+     * Stop using the buffer, returning it to the pool if the transfer has
+     * ended meanwhile
+     */
+    private synchronized void unuseBuffer() {
+        bufferUsers--;
+        if (state == ENDED) {
+            releaseBuffer();
+        }
+    }
+
+    private synchronized void releaseBuffer() {
+        if (buffer != null && bufferUsers == 0 && !bufferReleased) {
+            bufferReleased = true;
+            IODataConnection.releaseTransferBuffer(dataConfig, buffer.array());
+        }
+    }
+
+    /**
+     * Account for a transferred chunk, delaying the transfer if the maximum
+     * rate has been exceeded
+     * 
+     * @return true if the transfer has been delayed
+     */
+    private boolean transferred(final long count) {
+        transferredSize += count;
+        accounting.add(count);
+        lastActivity = System.currentTimeMillis();
+
+        if (rateLimiter != null) {
+            long waitNanos = rateLimiter.reserve(count);
+            if (waitNanos > 0) {
+                delay(waitNanos);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Continue the transfer after the delay
+     */
+    private void delay(final long nanos) {
+        TIMER.newTimeout(new TimerWheel.Task() {
+            public void expired(final TimerWheel.Timeout timeout) {
+                if (upload && buffer.position() == buffer.capacity()) {
+                    drain();
+                } else {
+                    await(channel, upload ? SelectionKey.OP_READ
+                            : SelectionKey.OP_WRITE);
+                }
+            }
+        }, nanos / 1000000);
+    }
+
+    /**
+     * Continue once the channel is ready
+     */
+    private void await(final SelectableChannel selectable, final int ops) {
+        if (state == ENDED) {
+            return;
+        }
+
+        try {
+            selector.register(selectable, ops, this);
+        } catch (IOException e) {
+            end(e);
+        }
+    }
+
+    private synchronized void scheduleIdleTimeout(final long delay) {
+        if (idleTime <= 0 || state == ENDED) {
+            return;
+        }
+
+        idleTimeout = TIMER.newTimeout(new TimerWheel.Task() {
+            public void expired(final TimerWheel.Timeout timeout) {
+                long idle = System.currentTimeMillis() - lastActivity;
+                if (idle < idleTime) {
+                    scheduleIdleTimeout(idleTime - idle);
+                } else {
+                    end(new SocketTimeoutException("Data connection timed out"));
+                }
+            }
+        }, delay);
+    }
+
+    /**
+     * End the transfer, notifying the listener on a worker thread. Only the
+     * first call has any effect.
+     * 
+     * @param failure
+     *            The failure, null if all data has been transferred
+     */
+    private void end(final Exception failure) {
+        final boolean opened;
+        synchronized (this) {
+            if (state == ENDED) {
+                return;
+            }
+            opened = state == TRANSFERRING;
+            state = ENDED;
+
+            if (idleTimeout != null) {
+                idleTimeout.cancel();
+                idleTimeout = null;
+            }
+
+            // returned once the threads using it are done
+            releaseBuffer();
+        }
+
+        // stop waiting for the data connection, the channels are closed by
+        // the data connection factory
+        if (registration != null && !opened) {
+            registration.cancel();
+        }
+        if (failure != null && connectChannel != null && !opened) {
+            IoUtils.close(connectChannel.socket());
+        }
+
+        selector.execute(new Runnable() {
+            public void run() {
+                if (opened) {
+                    accounting.complete();
+                    session.setCurrentTransfer(null);
+                }
+
+                if (!opened) {
+                    listener.notOpened(failure);
+                } else if (failure == null) {
+                    listener.transferred(transferredSize);
+                } else if (failure instanceof IOException) {
+                    listener.failed((IOException) failure);
+                } else {
+                    IOException ioe = new IOException(failure.getMessage());
+                    ioe.initCause(failure);
+                    listener.failed(ioe);
+                }
+            }
+        });
+    }
+}
@@ -22,13 +22,20 @@ package org.apache.ftpserver.impl;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
  * Provides support for parsing a passive ports string as well as keeping track
  * of reserved passive ports.
+ * 
+ * Reserved ports are tracked in an atomic bitmap, one bit per port, so that
+ * ports can be reserved and released concurrently without locking. Only
+ * threads waiting for a port when all ports are in use synchronize.
  *
  * @author The Apache MINA Project (dev@mina.apache.org)
  * @version $Rev$, $Date$
@@ -39,10 +46,30 @@ public class PassivePorts {
 
     private int[] passivePorts;
 
-    private boolean[] reservedPorts;
+    /**
+     * The index of each passive port plus one, by port number
+     */
+    private int[] portIndexes;
+
+    /**
+     * One bit for each passive port, set if the port is reserved
+     */
+    private AtomicLongArray reservedPorts;
 
     private String passivePortsString;
 
+    private final boolean randomized;
+
+    private final Random random = new Random();
+
+    private final Object releaseLock = new Object();
+
+    private volatile int waiters = 0;
+
+    private final AtomicLong exhaustedCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
     /**
      * Parse a string containing passive ports
      * 
@@ -52,12 +79,12 @@ public class PassivePorts {
      *            123,124,125) or ranges of ports, including open ended ranges
      *            (e.g. 123-125, 30000-, -1023). Combinations for single ports
      *            and ranges is also supported.
-     * @return An instance of {@link PassivePorts} based on the parsed string
+     * @return The parsed ports, in the order given
      * @throws IllegalArgumentException
      *             If any of of the ports in the string is invalid (e.g. not an
      *             integer or too large for a port number)
      */
-    private static int[] parse(final String portsString) {
+    public static int[] parse(final String portsString) {
         List<Integer> passivePortsList = new ArrayList<Integer>();
 
         boolean inRange = false;
@@ -147,42 +174,200 @@ public class PassivePorts {
     }
 
     public PassivePorts(final String passivePorts) {
-        this(parse(passivePorts));
+        this(passivePorts, false);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param passivePorts
+     *            The passive ports string
+     * @param randomized
+     *            true if free ports are to be reserved in random order rather
+     *            than in the order given
+     */
+    public PassivePorts(final String passivePorts, final boolean randomized) {
+        this(parse(passivePorts), randomized);
 
         this.passivePortsString = passivePorts;
     }
 
     public PassivePorts(final int[] passivePorts) {
-        if (passivePorts != null) {
-            this.passivePorts = passivePorts.clone();
-        } else {
-            this.passivePorts = null;
+        this(passivePorts, false);
+    }
+
+    public PassivePorts(final int[] passivePorts, final boolean randomized) {
+        this.passivePorts = passivePorts.clone();
+        this.randomized = randomized;
+
+        int maxPort = 0;
+        for (int port : passivePorts) {
+            maxPort = Math.max(maxPort, port);
+        }
+        portIndexes = new int[maxPort + 1];
+        for (int i = passivePorts.length - 1; i >= 0; i--) {
+            portIndexes[passivePorts[i]] = i + 1;
         }
 
-        reservedPorts = new boolean[passivePorts.length];
+        reservedPorts = new AtomicLongArray((passivePorts.length + 63) / 64);
     }
 
+    /**
+     * Reserve a free port without waiting.
+     * 
+     * @return The reserved port, 0 if any available port can be used, -1 if
+     *         all ports are in use
+     */
     public int reserveNextPort() {
-        // search for a free port
-        for (int i = 0; i < passivePorts.length; i++) {
-            if (!reservedPorts[i]) {
-                if (passivePorts[i] != 0) {
-                    reservedPorts[i] = true;
+        int port = tryReserve();
+        if (port == -1) {
+            exhaustedCount.incrementAndGet();
+        }
+        return port;
+    }
+
+    /**
+     * Reserve a free port, waiting for a port to be released if all ports are
+     * in use.
+     * 
+     * @param timeout
+     *            The maximum time to wait in milliseconds, 0 for not waiting
+     * @return The reserved port, 0 if any available port can be used, -1 if no
+     *         port was released in time
+     */
+    public int reservePort(final long timeout) {
+        int port = reserveNextPort();
+        if (port != -1 || timeout <= 0) {
+            return port;
+        }
+
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (releaseLock) {
+            waiters++;
+            try {
+                while (true) {
+                    port = tryReserve();
+                    if (port != -1) {
+                        return port;
+                    }
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+                        return -1;
+                    }
+
+                    try {
+                        releaseLock.wait(remaining);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return -1;
+                    }
+                }
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    /**
+     * Reserve a free port by setting its bit, starting the search at a random
+     * position if randomized.
+     */
+    private int tryReserve() {
+        int words = reservedPorts.length();
+        if (words == 0) {
+            return -1;
+        }
+
+        int start = randomized ? random.nextInt(words) : 0;
+        for (int i = 0; i < words; i++) {
+            int word = (start + i) % words;
+
+            while (true) {
+                long reserved = reservedPorts.get(word);
+                long free = ~reserved & getValidBits(word);
+                if (free == 0) {
+                    break;
+                }
+
+                if (randomized) {
+                    long above = free & (-1L << random.nextInt(64));
+                    if (above != 0) {
+                        free = above;
+                    }
+                }
+                int bit = Long.numberOfTrailingZeros(free);
+                int index = word * 64 + bit;
+
+                if (passivePorts[index] == 0) {
+                    // any available port, never reserved
+                    return 0;
+                }
+
+                if (reservedPorts.compareAndSet(word, reserved, reserved
+                        | (1L << bit))) {
+                    return passivePorts[index];
                 }
-                return passivePorts[i];
             }
         }
 
         return -1;
     }
 
+    /**
+     * Get the bits of a word in the bitmap that represent ports
+     */
+    private long getValidBits(final int word) {
+        int bits = passivePorts.length - word * 64;
+        if (bits >= 64) {
+            return -1L;
+        } else {
+            return (1L << bits) - 1;
+        }
+    }
+
     public void releasePort(final int port) {
-        for (int i = 0; i < passivePorts.length; i++) {
-            if (passivePorts[i] == port) {
-                reservedPorts[i] = false;
+        if (port <= 0 || port >= portIndexes.length
+                || portIndexes[port] == 0) {
+            return;
+        }
+
+        int index = portIndexes[port] - 1;
+        int word = index / 64;
+        long bit = 1L << (index % 64);
+
+        while (true) {
+            long reserved = reservedPorts.get(word);
+            if (reservedPorts.compareAndSet(word, reserved, reserved & ~bit)) {
                 break;
             }
         }
+
+        if (waiters > 0) {
+            synchronized (releaseLock) {
+                releaseLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Get the number of times a port was requested while all ports were in
+     * use.
+     * 
+     * @return The number of times the ports were exhausted
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+
+    /**
+     * Get the number of times waiting for a port to be released timed out.
+     * 
+     * @return The number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
     }
 
     @Override
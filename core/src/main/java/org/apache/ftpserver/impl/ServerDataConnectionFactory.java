@@ -80,6 +80,66 @@ public interface ServerDataConnectionFactory extends DataConnectionFactory {
      */
     boolean isZipMode();
 
+    /**
+     * Set the compression level used for data sent in zip mode.
+     * @param level The level between 0 (no compression) and 9, or -1 for the
+     *            default level
+     */
+    void setZipLevel(int level);
+
+    /**
+     * Get the compression level used for data sent in zip mode.
+     * @return The level between 0 (no compression) and 9, or -1 for the
+     *         default level
+     */
+    int getZipLevel();
+
+    /**
+     * Set block mode. Leaving block mode closes a data connection kept open
+     * after the last transfer.
+     */
+    void setBlockMode(boolean block);
+
+    /**
+     * Is block mode?
+     */
+    boolean isBlockMode();
+
+    /**
+     * Keep the data connection open when the current transfer is closed,
+     * called when a file has been completely transferred in block mode.
+     */
+    void keepDataConnection();
+
+    /**
+     * Is the data connection already open, kept open in block mode after the
+     * last transfer? The next transfer is then started with a 125 reply
+     * rather than 150.
+     */
+    boolean isDataConnectionOpen();
+
+    /**
+     * Will the data connection be kept open in block mode when the current
+     * transfer is closed? The transfer is then completed with a 250 reply
+     * rather than 226, as the data connection is not closed.
+     */
+    boolean isDataConnectionKept();
+
+    /**
+     * Is a transfer using the data connection? This is the case from the
+     * time the transfer starts opening the data connection until it closes
+     * it.
+     */
+    boolean isDataConnectionInUse();
+
+    /**
+     * Abort the transfer using the data connection, if any, by closing the
+     * sockets it is waiting on. Does not block, so that it can be called on
+     * an I/O processor thread. The aborted transfer then fails and closes
+     * the data connection as usual.
+     */
+    void abortDataConnection();
+
     /**
      * Get client address.
      */
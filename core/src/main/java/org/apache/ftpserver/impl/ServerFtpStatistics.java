@@ -93,6 +93,12 @@ public interface ServerFtpStatistics extends FtpStatistics {
      */
     void setLogout(FtpIoSession session);
 
+    /**
+     * Pending data connection expired.
+     */
+    void setDataConnectionExpired(FtpIoSession session,
+            boolean passivePortReleased);
+
     /**
      * Reset all cumulative total counters. Do not reset current counters, like
      * current logins, otherwise these will become negative when someone
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.util.IoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A passive listening socket shared by the data connections of all sessions.
+ * Sessions register the client address they expect a data connection from,
+ * and accepted connections are handed to the session waiting for their
+ * address. Only one session can wait for a given client address on each
+ * shared listener, as connections from the same address can not be told
+ * apart. Connections that no session is waiting for are closed.
+ * 
+ * Listeners are opened on demand and closed after being idle for a while.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class SharedPassiveListener {
+
+    /**
+     * Time in milliseconds a listener will stay open without any registered
+     * session
+     */
+    private static final long MAX_IDLE_TIME = 30000;
+
+    /**
+     * Time in milliseconds accepting blocks before checking for being idle
+     */
+    private static final int ACCEPT_TIMEOUT = 1000;
+
+    private static final Map<InetSocketAddress, SharedPassiveListener> LISTENERS = new HashMap<InetSocketAddress, SharedPassiveListener>();
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(SharedPassiveListener.class);
+
+    private final InetSocketAddress address;
+
+    private final ServerSocket serverSocket;
+
+    private final Map<InetAddress, Registration> pending = new HashMap<InetAddress, Registration>();
+
+    private long lastUsedTime = System.currentTimeMillis();
+
+    /**
+     * Register a session waiting for a data connection from the client
+     * address on the shared listener bound to the provided address, opening
+     * the listener if not already open.
+     * 
+     * @param address
+     *            The address of the shared listener
+     * @param clientAddress
+     *            The address the data connection is expected from
+     * @param dataConfig
+     *            The configuration used when opening the listener
+     * @return The registration, or null if another session is already
+     *         waiting for a data connection from the same client address on
+     *         this listener
+     * @throws IOException
+     *             If the listener could not be opened
+     */
+    public static Registration register(final InetSocketAddress address,
+            final InetAddress clientAddress,
+            final DataConnectionConfiguration dataConfig) throws IOException {
+        synchronized (LISTENERS) {
+            SharedPassiveListener listener = LISTENERS.get(address);
+            if (listener == null) {
+                listener = new SharedPassiveListener(address, dataConfig);
+                LISTENERS.put(address, listener);
+                listener.start();
+            }
+
+            return listener.register(clientAddress);
+        }
+    }
+
+    private SharedPassiveListener(final InetSocketAddress address,
+            final DataConnectionConfiguration dataConfig) throws IOException {
+        this.address = address;
+
+        // back the server socket by a channel so that accepted sockets can be
+        // used for zero-copy and non-blocking transfers
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            DataSocketOptions.configure(channel.socket(), dataConfig);
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(address);
+            channel.socket().setSoTimeout(ACCEPT_TIMEOUT);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        serverSocket = channel.socket();
+    }
+
+    private void start() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "FtpServer-SharedPassiveListener-" + address.getPort());
+        thread.setDaemon(true);
+        thread.start();
+
+        LOG.debug("Shared passive listener opened on {}", address);
+    }
+
+    private synchronized Registration register(final InetAddress clientAddress) {
+        if (pending.containsKey(clientAddress)) {
+            return null;
+        }
+
+        Registration registration = new Registration(this, clientAddress);
+        pending.put(clientAddress, registration);
+        return registration;
+    }
+
+    private synchronized void unregister(final Registration registration) {
+        if (pending.get(registration.clientAddress) == registration) {
+            pending.remove(registration.clientAddress);
+        }
+        lastUsedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Hand the accepted socket to the session waiting for its client address
+     */
+    private void dispatch(final Socket socket) {
+        Registration registration;
+        synchronized (this) {
+            registration = pending.remove(socket.getInetAddress());
+            lastUsedTime = System.currentTimeMillis();
+        }
+
+        if (registration == null || !registration.deliver(socket)) {
+            LOG.debug("Closing unexpected data connection from {} on {}",
+                    socket.getRemoteSocketAddress(), address);
+            IoUtils.close(socket);
+        }
+    }
+
+    /**
+     * Close the listener, unless a session has registered or it has been in
+     * use recently
+     * 
+     * @return true if the listener was closed
+     */
+    private boolean closeIfIdle() {
+        synchronized (LISTENERS) {
+            synchronized (this) {
+                if (!pending.isEmpty()
+                        || System.currentTimeMillis() - lastUsedTime < MAX_IDLE_TIME) {
+                    return false;
+                }
+            }
+            LISTENERS.remove(address);
+        }
+
+        close();
+        return true;
+    }
+
+    private void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close shared passive listener", e);
+        }
+
+        LOG.debug("Shared passive listener closed on {}", address);
+    }
+
+    private void accept() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                if (closeIfIdle()) {
+                    return;
+                }
+                continue;
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                LOG.warn("Failed to accept data connection on " + address, e);
+                continue;
+            }
+
+            dispatch(socket);
+        }
+    }
+
+    /**
+     * A session waiting for a data connection on a shared listener
+     */
+    public static class Registration {
+
+        private final SharedPassiveListener listener;
+
+        private final InetAddress clientAddress;
+
+        private Socket socket;
+
+        private boolean done = false;
+
+        private Runnable doneListener;
+
+        private Registration(final SharedPassiveListener listener,
+                final InetAddress clientAddress) {
+            this.listener = listener;
+            this.clientAddress = clientAddress;
+        }
+
+        /**
+         * Get the port of the shared listener
+         * 
+         * @return The port
+         */
+        public int getPort() {
+            return listener.address.getPort();
+        }
+
+        private boolean deliver(final Socket socket) {
+            Runnable listener;
+            synchronized (this) {
+                if (done) {
+                    return false;
+                }
+                this.socket = socket;
+                notifyAll();
+                listener = doneListener;
+                doneListener = null;
+            }
+
+            if (listener != null) {
+                listener.run();
+            }
+            return true;
+        }
+
+        /**
+         * Run the listener once the data connection from the client has been
+         * accepted or the registration has been cancelled, after which
+         * {@link #accept(long)} returns without waiting. The listener runs on
+         * the accepting thread, or right away if already done.
+         * 
+         * @param listener
+         *            The listener
+         */
+        public void whenDone(final Runnable listener) {
+            synchronized (this) {
+                if (socket == null && !done) {
+                    doneListener = listener;
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        /**
+         * Wait for the data connection from the client.
+         * 
+         * @param timeout
+         *            The maximum time to wait in milliseconds, 0 means wait
+         *            forever
+         * @return The accepted socket
+         * @throws SocketTimeoutException
+         *             If no data connection was accepted in time
+         */
+        public synchronized Socket accept(final long timeout)
+                throws IOException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (socket == null) {
+                if (done) {
+                    throw new SocketTimeoutException(
+                            "Data connection cancelled");
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (timeout > 0 && remaining <= 0) {
+                    throw new SocketTimeoutException(
+                            "Timed out waiting for data connection");
+                }
+
+                try {
+                    wait(timeout > 0 ? remaining : 0);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException(
+                            "Interrupted while waiting for data connection");
+                }
+            }
+
+            Socket accepted = socket;
+            socket = null;
+            done = true;
+            return accepted;
+        }
+
+        /**
+         * Stop waiting for a data connection, closing it if it has been
+         * accepted but not yet taken
+         */
+        public void cancel() {
+            listener.unregister(this);
+
+            Socket unused;
+            Runnable listener;
+            synchronized (this) {
+                unused = socket;
+                socket = null;
+                done = true;
+                notifyAll();
+                listener = doneListener;
+                doneListener = null;
+            }
+            IoUtils.close(unused);
+
+            if (listener != null) {
+                listener.run();
+            }
+        }
+    }
+}
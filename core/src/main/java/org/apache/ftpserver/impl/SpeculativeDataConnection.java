@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A data connection accepted or connected in the background right after the
+ * PORT, EPRT, PASV or EPSV command, so that it is ready when the transfer
+ * command is received.
+ * 
+ * Passive data connections on a channel backed server socket are accepted by
+ * the shared {@link NioDataConnectionSelector}, and those handed over by a
+ * shared passive listener are taken when delivered, so no thread waits for
+ * them. Other data connections are established on one of a bounded number of
+ * threads. When all of these are busy, nothing is started and the data
+ * connection is established by the transfer command as usual.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public abstract class SpeculativeDataConnection {
+
+    /**
+     * The maximum number of threads waiting for data connections which can
+     * not be established without blocking
+     */
+    private static final int MAX_THREADS = 16;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            0, MAX_THREADS, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "FtpServer-SpeculativeDataConnection-"
+                                    + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final long timeout;
+
+    private Socket socket;
+
+    private Exception failure;
+
+    private long roundTripTime = -1L;
+
+    private boolean done = false;
+
+    private boolean taken = false;
+
+    private boolean cancelled = false;
+
+    /**
+     * @param timeout
+     *            The maximum time in milliseconds {@link #take()} waits for
+     *            the data socket, 0 means wait forever
+     */
+    private SpeculativeDataConnection(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Accept a passive data connection on a dedicated server socket in the
+     * background. The accept is aborted by closing the server socket.
+     * 
+     * @param serverSocket
+     *            The bound server socket, with the idle time as its timeout
+     * @return The started speculative data connection, null if it could not
+     *         be started
+     */
+    public static SpeculativeDataConnection accept(
+            final ServerSocket serverSocket) {
+        long timeout;
+        try {
+            timeout = serverSocket.getSoTimeout();
+        } catch (IOException e) {
+            return null;
+        }
+
+        final ServerSocketChannel channel = serverSocket.getChannel();
+        if (channel == null) {
+            return start(new Blocking(timeout) {
+                protected Socket establish() throws IOException {
+                    return serverSocket.accept();
+                }
+
+                protected void abort() {
+                    // the server socket is closed by the data connection
+                    // factory
+                }
+            });
+        }
+
+        final NioDataConnectionSelector selector = NioDataConnectionSelector
+                .getInstance();
+        final SpeculativeDataConnection connection = new SpeculativeDataConnection(
+                timeout) {
+            protected void abort() {
+                // release the port right away, the server socket is only
+                // closed once its registration on the selector is cancelled
+                selector.close(channel);
+            }
+        };
+
+        NioDataConnectionSelector.Handler handler = new NioDataConnectionSelector.Handler() {
+            public void ready() {
+                if (connection.isCancelled()) {
+                    return;
+                }
+
+                try {
+                    SocketChannel accepted = channel.accept();
+                    if (accepted == null) {
+                        selector.register(channel, SelectionKey.OP_ACCEPT, this);
+                        return;
+                    }
+
+                    // the transfer command uses the socket in blocking mode
+                    accepted.configureBlocking(true);
+                    connection.completed(accepted.socket(), null);
+                } catch (IOException e) {
+                    connection.completed(null, e);
+                }
+            }
+        };
+
+        try {
+            channel.configureBlocking(false);
+            selector.register(channel, SelectionKey.OP_ACCEPT, handler);
+        } catch (IOException e) {
+            return null;
+        }
+        return connection;
+    }
+
+    /**
+     * Accept a passive data connection handed over by a shared passive
+     * listener in the background.
+     * 
+     * @param registration
+     *            The registration on the shared passive listener
+     * @param timeout
+     *            The maximum time to wait in milliseconds, 0 means wait
+     *            forever
+     * @return The started speculative data connection
+     */
+    public static SpeculativeDataConnection accept(
+            final SharedPassiveListener.Registration registration,
+            final long timeout) {
+        final SpeculativeDataConnection connection = new SpeculativeDataConnection(
+                timeout) {
+            protected void abort() {
+                registration.cancel();
+            }
+        };
+
+        registration.whenDone(new Runnable() {
+            public void run() {
+                try {
+                    // does not wait, the data connection has been delivered
+                    // or the registration cancelled
+                    connection.completed(registration.accept(0), null);
+                } catch (IOException e) {
+                    connection.completed(null, e);
+                }
+            }
+        });
+        return connection;
+    }
+
+    /**
+     * Connect an active data connection in the background.
+     * 
+     * @param socket
+     *            The unconnected socket, already bound to the local address
+     * @param remote
+     *            The address the client is listening on
+     * @param timeout
+     *            The connect timeout in milliseconds, 0 means no timeout
+     * @return The started speculative data connection, null if it could not
+     *         be started
+     */
+    public static SpeculativeDataConnection connect(final Socket socket,
+            final SocketAddress remote, final int timeout) {
+        return start(new Blocking(0) {
+            protected Socket establish() throws IOException {
+                long connectTime = System.nanoTime();
+                socket.connect(remote, timeout);
+                setRoundTripTime(System.nanoTime() - connectTime);
+                return socket;
+            }
+
+            protected void abort() {
+                IoUtils.close(socket);
+            }
+        });
+    }
+
+    private static SpeculativeDataConnection start(final Blocking connection) {
+        try {
+            EXECUTOR.execute(connection);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        return connection;
+    }
+
+    /**
+     * Abort establishing the data socket, called when cancelled.
+     */
+    protected abstract void abort();
+
+    /**
+     * Set the round trip time measured while establishing the data socket.
+     */
+    protected synchronized void setRoundTripTime(final long roundTripTime) {
+        this.roundTripTime = roundTripTime;
+    }
+
+    private synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Hand over the established data socket, or the failure to establish
+     * it, to {@link #take()}. The socket is closed if already cancelled.
+     */
+    void completed(final Socket established, final Exception error) {
+        synchronized (this) {
+            if (!cancelled) {
+                socket = established;
+                failure = error;
+                done = true;
+                notifyAll();
+                return;
+            }
+        }
+        IoUtils.close(established);
+    }
+
+    /**
+     * Wait for the data socket to be established and take it over.
+     * 
+     * @return The established data socket
+     * @throws SocketTimeoutException
+     *             If the data socket was not established in time
+     * @throws Exception
+     *             If establishing the data socket failed or was cancelled
+     */
+    public Socket take() throws Exception {
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!done && !cancelled) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (timeout > 0 && remaining <= 0) {
+                    break;
+                }
+                wait(timeout > 0 ? remaining : 0);
+            }
+
+            if (done && !cancelled && !taken) {
+                if (failure != null) {
+                    throw failure;
+                }
+                taken = true;
+                return socket;
+            } else if (done || cancelled) {
+                throw new IOException("Data connection cancelled");
+            }
+        }
+
+        cancel();
+        throw new SocketTimeoutException("Timed out waiting for data connection");
+    }
+
+    /**
+     * Get the round trip time measured when connecting an active data socket.
+     * 
+     * @return The round trip time in nanoseconds, -1 if not known
+     */
+    public synchronized long getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     * Stop establishing the data socket, closing it if already established
+     * but not yet taken.
+     */
+    public void cancel() {
+        Socket unused;
+        synchronized (this) {
+            if (cancelled || taken) {
+                return;
+            }
+            cancelled = true;
+            unused = socket;
+            socket = null;
+            notifyAll();
+        }
+        abort();
+        IoUtils.close(unused);
+    }
+
+    /**
+     * A data connection established by blocking one of the bounded threads
+     */
+    private abstract static class Blocking extends SpeculativeDataConnection
+            implements Runnable {
+
+        public Blocking(final long timeout) {
+            super(timeout);
+        }
+
+        /**
+         * Block until the data socket has been established.
+         */
+        protected abstract Socket establish() throws IOException;
+
+        public void run() {
+            Socket established = null;
+            Exception error = null;
+            try {
+                established = establish();
+            } catch (Exception e) {
+                error = e;
+            }
+            completed(established, error);
+        }
+    }
+}
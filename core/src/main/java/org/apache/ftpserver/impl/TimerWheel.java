@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A hashed timer wheel for large numbers of timeouts which are mostly
+ * cancelled before they expire. Timeouts are hashed by their expiry tick into
+ * the buckets of the wheel, making scheduling and cancelling constant time
+ * operations. A single thread advances the wheel once per tick and expires
+ * the timeouts of the current bucket that are due, so timeouts expire up to
+ * one tick late. The thread is started on demand and stops after being idle
+ * for a while.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class TimerWheel {
+
+    /**
+     * Task run when a timeout expires
+     */
+    public static interface Task {
+
+        /**
+         * Called on the thread of the timer wheel when the timeout expires.
+         * Should return quickly, as it delays the expiry of other timeouts.
+         * 
+         * @param timeout
+         *            The expired timeout
+         */
+        void expired(Timeout timeout);
+    }
+
+    /**
+     * A scheduled timeout
+     */
+    public static class Timeout {
+        private final TimerWheel wheel;
+
+        private final Task task;
+
+        private final long expiryTick;
+
+        private Timeout previous;
+
+        private Timeout next;
+
+        private boolean scheduled = true;
+
+        private volatile boolean expired = false;
+
+        private Timeout(final TimerWheel wheel, final Task task,
+                final long expiryTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.expiryTick = expiryTick;
+        }
+
+        /**
+         * Cancel the timeout.
+         * 
+         * @return true if the timeout was cancelled before expiring, false if
+         *         it has expired or already been cancelled
+         */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+        /**
+         * Has the timeout expired?
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+    }
+
+    /**
+     * Time in milliseconds the thread will stay alive without any timeouts
+     */
+    private static final long MAX_IDLE_TIME = 30000;
+
+    private final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final String threadName;
+
+    private final long tickDuration;
+
+    private final Timeout[] buckets;
+
+    private long startTime;
+
+    private long currentTick = 0;
+
+    private int size = 0;
+
+    private boolean running = false;
+
+    /**
+     * @param threadName
+     *            The name of the thread advancing the wheel
+     * @param tickDuration
+     *            The duration of a tick in milliseconds
+     * @param wheelSize
+     *            The number of buckets
+     */
+    public TimerWheel(final String threadName, final long tickDuration,
+            final int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Invalid tick duration: "
+                    + tickDuration);
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("Invalid wheel size: "
+                    + wheelSize);
+        }
+        this.threadName = threadName;
+        this.tickDuration = tickDuration;
+        this.buckets = new Timeout[wheelSize];
+    }
+
+    /**
+     * Schedule a timeout
+     * 
+     * @param task
+     *            The task to run when the timeout expires
+     * @param delay
+     *            The delay in milliseconds after which the timeout expires
+     * @return The timeout, which can be cancelled
+     */
+    public synchronized Timeout newTimeout(final Task task, final long delay) {
+        start();
+
+        // expire the timeout on the first tick at or after the delay
+        long ticks = Math.max(1, (delay + tickDuration - 1) / tickDuration);
+        Timeout timeout = new Timeout(this, task, currentTick + ticks);
+
+        int bucket = (int) (timeout.expiryTick % buckets.length);
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        buckets[bucket] = timeout;
+        size++;
+
+        return timeout;
+    }
+
+    /**
+     * Get the number of scheduled timeouts
+     * 
+     * @return The number of timeouts neither expired nor cancelled
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized boolean cancel(final Timeout timeout) {
+        if (!timeout.scheduled) {
+            return false;
+        }
+        remove(timeout);
+        return true;
+    }
+
+    private void remove(final Timeout timeout) {
+        int bucket = (int) (timeout.expiryTick % buckets.length);
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.scheduled = false;
+        size--;
+    }
+
+    /**
+     * Start the thread if not running, continuing from the current tick
+     */
+    private void start() {
+        if (!running) {
+            running = true;
+            startTime = System.currentTimeMillis() - currentTick
+                    * tickDuration;
+
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    advance();
+                }
+            }, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the thread if idle for long enough
+     * 
+     * @return true if the thread was stopped
+     */
+    private synchronized boolean stopIfIdle(final long idleSince) {
+        if (size > 0 || System.currentTimeMillis() - idleSince < MAX_IDLE_TIME) {
+            return false;
+        }
+        running = false;
+        return true;
+    }
+
+    private void advance() {
+        List<Timeout> expired = new ArrayList<Timeout>();
+        long idleSince = System.currentTimeMillis();
+
+        while (true) {
+            long nextTickTime;
+            synchronized (this) {
+                nextTickTime = startTime + (currentTick + 1) * tickDuration;
+            }
+
+            long sleepTime = nextTickTime - System.currentTimeMillis();
+            if (sleepTime > 0) {
+                try {
+                    Thread.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    // continue
+                }
+                continue;
+            }
+
+            synchronized (this) {
+                currentTick++;
+                collectExpired(expired);
+
+                if (size > 0) {
+                    idleSince = System.currentTimeMillis();
+                }
+            }
+
+            // run the tasks without holding the lock, so that they can
+            // schedule or cancel timeouts
+            for (Timeout timeout : expired) {
+                try {
+                    timeout.task.expired(timeout);
+                } catch (RuntimeException e) {
+                    LOG.warn("Timeout task failed", e);
+                }
+            }
+            expired.clear();
+
+            if (stopIfIdle(idleSince)) {
+                LOG.debug("Timer wheel idle, stopping");
+                return;
+            }
+        }
+    }
+
+    private void collectExpired(final List<Timeout> expired) {
+        int bucket = (int) (currentTick % buckets.length);
+        Timeout timeout = buckets[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.expiryTick <= currentTick) {
+                remove(timeout);
+                timeout.expired = true;
+                expired.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+}
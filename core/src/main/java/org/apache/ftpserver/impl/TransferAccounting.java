@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import org.apache.ftpserver.ftplet.TransferStatus;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Keeps track of the bytes transferred by a single data transfer. The
+ * transfer thread updates plain fields for every chunk of data and only
+ * publishes them, along with the transfer rate, to readers and to the session
+ * every {@link #PUBLISH_INTERVAL} milliseconds.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class TransferAccounting implements TransferStatus {
+
+    /**
+     * Minimum time in milliseconds between publishing the transferred bytes
+     */
+    public static final long PUBLISH_INTERVAL = 200;
+
+    private final FtpIoSession session;
+
+    private final boolean upload;
+
+    private final String fileName;
+
+    private final long expectedBytes;
+
+    private final long startTime;
+
+    // only accessed by the transfer thread
+    private long bytes = 0;
+
+    private long publishedBytes = 0;
+
+    private long lastPublishTime;
+
+    // published for readers
+    private volatile long transferredBytes = 0;
+
+    private volatile long bytesPerSecond = 0;
+
+    /**
+     * Constructor
+     * 
+     * @param session
+     *            The session to update when publishing, may be null
+     * @param upload
+     *            true if data is transferred from the client
+     * @param fileName
+     *            The name of the file being transferred, may be null
+     * @param expectedBytes
+     *            The number of bytes expected to be transferred, -1 if not
+     *            known
+     */
+    public TransferAccounting(final FtpIoSession session, final boolean upload,
+            final String fileName, final long expectedBytes) {
+        this.session = session;
+        this.upload = upload;
+        this.fileName = fileName;
+        this.expectedBytes = expectedBytes;
+        this.startTime = currentTimeMillis();
+        this.lastPublishTime = startTime;
+    }
+
+    /**
+     * Account for transferred bytes, called by the transfer thread only.
+     */
+    public void add(final long count) {
+        bytes += count;
+
+        long now = currentTimeMillis();
+        if (now - lastPublishTime >= PUBLISH_INTERVAL) {
+            publish(now);
+        }
+    }
+
+    /**
+     * Publish the final count when the transfer has completed, called by the
+     * transfer thread only.
+     */
+    public void complete() {
+        publish(currentTimeMillis());
+    }
+
+    private void publish(final long now) {
+        long delta = bytes - publishedBytes;
+        long elapsed = now - lastPublishTime;
+
+        if (elapsed > 0) {
+            long rate = delta * 1000 / elapsed;
+
+            // smooth the rate over recent publish intervals
+            if (publishedBytes == 0) {
+                bytesPerSecond = rate;
+            } else {
+                bytesPerSecond = (bytesPerSecond + rate) / 2;
+            }
+        }
+        transferredBytes = bytes;
+
+        publishedBytes = bytes;
+        lastPublishTime = now;
+
+        if (session != null && delta > 0) {
+            // the session counters take int increments, a slow publish
+            // interval could have seen more than 2 GiB
+            while (delta > 0) {
+                int increment = (int) Math.min(delta, Integer.MAX_VALUE);
+                if (upload) {
+                    session.increaseReadDataBytes(increment);
+                } else {
+                    session.increaseWrittenDataBytes(increment);
+                }
+                delta -= increment;
+            }
+            session.updateLastAccessTime();
+        }
+    }
+
+    /**
+     * Get the current time in milliseconds, overridable for testing.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @see TransferStatus#isUpload()
+     */
+    public boolean isUpload() {
+        return upload;
+    }
+
+    /**
+     * @see TransferStatus#getFileName()
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @see TransferStatus#getStartTime()
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @see TransferStatus#getTransferredBytes()
+     */
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    /**
+     * @see TransferStatus#getExpectedBytes()
+     */
+    public long getExpectedBytes() {
+        return expectedBytes;
+    }
+
+    /**
+     * @see TransferStatus#getBytesPerSecond()
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @see TransferStatus#getProgress()
+     */
+    public int getProgress() {
+        if (expectedBytes < 0) {
+            return -1;
+        } else if (expectedBytes == 0) {
+            return 100;
+        }
+        return (int) Math.min(100, transferredBytes * 100 / expectedBytes);
+    }
+
+    /**
+     * @see TransferStatus#getEstimatedTimeRemaining()
+     */
+    public long getEstimatedTimeRemaining() {
+        if (expectedBytes < 0) {
+            return -1;
+        }
+
+        long remaining = Math.max(0, expectedBytes - transferredBytes);
+        if (remaining == 0) {
+            return 0;
+        }
+
+        long rate = bytesPerSecond;
+        if (rate <= 0) {
+            return -1;
+        }
+        return remaining * 1000 / rate;
+    }
+
+    /**
+     * Describe the status of a transfer in a single line, e.g. for status
+     * replies.
+     */
+    public static String toString(final TransferStatus status) {
+        StringBuffer sb = new StringBuffer();
+        if (status.isUpload()) {
+            sb.append("Receiving ");
+        } else {
+            sb.append("Sending ");
+        }
+        if (status.getFileName() != null) {
+            sb.append(status.getFileName()).append(' ');
+        }
+
+        sb.append(status.getTransferredBytes());
+        if (status.getExpectedBytes() >= 0) {
+            sb.append(" of ").append(status.getExpectedBytes());
+        }
+        sb.append(" bytes");
+        if (status.getProgress() >= 0) {
+            sb.append(" (").append(status.getProgress()).append("%)");
+        }
+        sb.append(", ").append(status.getBytesPerSecond()).append(" bytes/s");
+
+        long remaining = status.getEstimatedTimeRemaining();
+        if (remaining >= 0) {
+            sb.append(", ").append((remaining + 999) / 1000).append(
+                    " s remaining");
+        }
+        return sb.toString();
+    }
+
+    public String toString() {
+        return toString(this);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.TransferBufferPoolStatistics;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Pool of buffers used for data transfers. Buffers are reused between
+ * transfers rather than being allocated for each one. If the pool is empty, a
+ * new buffer is allocated. At most the configured number of idle buffers are
+ * kept, buffers released beyond that are left to the garbage collector.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class TransferBufferPool implements TransferBufferPoolStatistics {
+
+    private final int bufferSize;
+
+    private final int maxIdleBuffers;
+
+    private final Queue<byte[]> idleBuffers = new ConcurrentLinkedQueue<byte[]>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong allocatedCount = new AtomicLong();
+
+    /**
+     * @param bufferSize
+     *            The size of the buffers in bytes
+     * @param maxIdleBuffers
+     *            The maximum number of idle buffers kept in the pool
+     */
+    public TransferBufferPool(final int bufferSize, final int maxIdleBuffers) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxIdleBuffers = Math.max(0, maxIdleBuffers);
+    }
+
+    /**
+     * Get a buffer from the pool, allocating a new buffer if the pool is
+     * empty. The buffer must be returned using {@link #release(byte[])}.
+     * 
+     * @return A buffer of the configured size
+     */
+    public byte[] acquire() {
+        activeCount.incrementAndGet();
+
+        byte[] buffer = idleBuffers.poll();
+        if (buffer != null) {
+            idleCount.decrementAndGet();
+            return buffer;
+        } else {
+            allocatedCount.incrementAndGet();
+            return new byte[bufferSize];
+        }
+    }
+
+    /**
+     * Return a buffer to the pool.
+     * 
+     * @param buffer
+     *            The buffer, as returned by {@link #acquire()}
+     */
+    public void release(final byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        activeCount.decrementAndGet();
+
+        if (buffer.length == bufferSize
+                && idleCount.incrementAndGet() <= maxIdleBuffers) {
+            idleBuffers.offer(buffer);
+        } else if (buffer.length == bufferSize) {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Get the size of the buffers in the pool
+     * 
+     * @return The buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Get the maximum number of idle buffers kept in the pool
+     * 
+     * @return The maximum number of idle buffers
+     */
+    public int getMaxIdleBuffers() {
+        return maxIdleBuffers;
+    }
+
+    /**
+     * Get the number of idle buffers currently in the pool
+     * 
+     * @return The number of idle buffers
+     */
+    public int getIdleBuffers() {
+        return idleCount.get();
+    }
+
+    /**
+     * Get the number of buffers currently used by transfers
+     * 
+     * @return The number of buffers in use
+     */
+    public int getActiveBuffers() {
+        return activeCount.get();
+    }
+
+    /**
+     * Get the total number of buffers allocated by the pool
+     * 
+     * @return The number of allocated buffers
+     */
+    public long getAllocatedBuffers() {
+        return allocatedCount.get();
+    }
+}
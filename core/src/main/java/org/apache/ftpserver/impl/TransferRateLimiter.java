@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Token bucket used for limiting the transfer rate of a single data transfer.
+ * The bucket is filled with tokens (bytes) at the maximum rate, up to the
+ * burst size or the largest chunk transferred, whichever is larger. Every
+ * transferred chunk spends tokens, if the bucket runs dry the transferring
+ * thread sleeps exactly until enough tokens have been refilled,
+ * rather than polling the current rate.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class TransferRateLimiter {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final long maxRate;
+
+    private long capacity;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * @param maxRate
+     *            The maximum rate in bytes per second, must be larger than 0
+     * @param burst
+     *            The maximum number of bytes that can be transferred at full
+     *            speed after being idle. If 0 or smaller, no burst is allowed
+     *            beyond a single chunk.
+     */
+    public TransferRateLimiter(final int maxRate, final int burst) {
+        if (maxRate <= 0) {
+            throw new IllegalArgumentException("Max rate must be positive");
+        }
+        this.maxRate = maxRate;
+        capacity = Math.max(0, burst);
+        tokens = capacity;
+        lastRefill = nanoTime();
+    }
+
+    /**
+     * Get the maximum rate
+     * 
+     * @return The maximum rate in bytes per second
+     */
+    public long getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * Spend tokens for a transferred chunk, sleeping until the bucket is no
+     * longer in debt if it did not contain enough tokens.
+     * 
+     * @param bytes
+     *            The size of the chunk
+     * @throws InterruptedException
+     *             If the thread was interrupted while sleeping
+     */
+    public void acquire(final long bytes) throws InterruptedException {
+        long waitNanos = reserve(bytes);
+        if (waitNanos > 0) {
+            sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Spend tokens for a transferred chunk without sleeping, for transfers
+     * which are continued later rather than waiting.
+     * 
+     * @param bytes
+     *            The size of the chunk
+     * @return The time in nanoseconds until the bucket is no longer in debt,
+     *         0 if the transfer can continue right away
+     */
+    public long reserve(final long bytes) {
+        refill();
+
+        // the bucket must hold at least a whole chunk, otherwise the time
+        // spent transferring this chunk would be lost on the next refill and
+        // the transfer would run below the maximum rate
+        if (bytes > capacity) {
+            capacity = bytes;
+        }
+
+        tokens -= bytes;
+
+        if (tokens < 0) {
+            return (long) (-tokens * NANOS_PER_SECOND / maxRate);
+        } else {
+            return 0;
+        }
+    }
+
+    private void refill() {
+        long now = nanoTime();
+        tokens = Math.min(capacity, tokens + (double) (now - lastRefill)
+                * maxRate / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+
+    /**
+     * Get the current time in nanoseconds, can be overridden for testing.
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Sleep for the provided number of nanoseconds, can be overridden for
+     * testing.
+     */
+    protected void sleep(final long nanos) throws InterruptedException {
+        Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+    }
+}
@@ -56,6 +56,44 @@ public class ListenerFactory {
 
     private List<Subnet> blockedSubnets;
 
+    private int ioProcessorCount = 0;
+
+    private int backlog = 50;
+
+    private int readBufferSize = 2048;
+
+    private int minReadBufferSize = 64;
+
+    private int maxReadBufferSize = 65536;
+
+    private int receiveBufferSize = 512;
+
+    private boolean tcpNoDelay = false;
+
+    private int commandPoolCoreSize = 0;
+
+    private int commandPoolMaxSize = 16;
+
+    private int commandQueueThreshold = 0;
+
+    private boolean threadPerSession = false;
+
+    private int transferPoolSize = 0;
+
+    private int transferQueueSize = 0;
+
+    private int maxConnections = 0;
+
+    private int maxConnectionsPerIp = 0;
+
+    private int maxConnectionRatePerIp = 0;
+
+    private int overloadQueueDepth = 0;
+
+    private int overloadLatency = 0;
+
+    private int overloadIdleTimeout = 0;
+
     /**
      * Default constructor
      */
@@ -76,6 +114,29 @@ public class ListenerFactory {
         idleTimeout = listener.getIdleTimeout();
         blockedAddresses = listener.getBlockedAddresses();
         blockedSubnets = listener.getBlockedSubnets();
+
+        if (listener instanceof NioListener) {
+            NioListener nioListener = (NioListener) listener;
+            ioProcessorCount = nioListener.getIoProcessorCount();
+            backlog = nioListener.getBacklog();
+            readBufferSize = nioListener.getReadBufferSize();
+            minReadBufferSize = nioListener.getMinReadBufferSize();
+            maxReadBufferSize = nioListener.getMaxReadBufferSize();
+            receiveBufferSize = nioListener.getReceiveBufferSize();
+            tcpNoDelay = nioListener.isTcpNoDelay();
+            commandPoolCoreSize = nioListener.getCommandPoolCoreSize();
+            commandPoolMaxSize = nioListener.getCommandPoolMaxSize();
+            commandQueueThreshold = nioListener.getCommandQueueThreshold();
+            threadPerSession = nioListener.isThreadPerSession();
+            transferPoolSize = nioListener.getTransferPoolSize();
+            transferQueueSize = nioListener.getTransferQueueSize();
+            maxConnections = nioListener.getMaxConnections();
+            maxConnectionsPerIp = nioListener.getMaxConnectionsPerIp();
+            maxConnectionRatePerIp = nioListener.getMaxConnectionRatePerIp();
+            overloadQueueDepth = nioListener.getOverloadQueueDepth();
+            overloadLatency = nioListener.getOverloadLatency();
+            overloadIdleTimeout = nioListener.getOverloadIdleTimeout();
+        }
     }
 
     /**
@@ -88,9 +149,39 @@ public class ListenerFactory {
     	}catch(UnknownHostException e){
     		throw new FtpServerConfigurationException("Unknown host",e);
     	}
+        if (minReadBufferSize <= 0 || minReadBufferSize > readBufferSize
+                || readBufferSize > maxReadBufferSize) {
+            throw new FtpServerConfigurationException(
+                    "Read buffer sizes must satisfy 0 < min <= initial <= max");
+        }
+        if (commandPoolCoreSize < 0 || commandPoolMaxSize <= 0
+                || commandPoolCoreSize > commandPoolMaxSize) {
+            throw new FtpServerConfigurationException(
+                    "Command pool sizes must satisfy 0 <= core <= max, max > 0");
+        }
+        if (transferPoolSize < 0 || transferQueueSize < 0) {
+            throw new FtpServerConfigurationException(
+                    "Transfer pool and queue sizes must not be negative");
+        }
+        if (maxConnections < 0 || maxConnectionsPerIp < 0
+                || maxConnectionRatePerIp < 0) {
+            throw new FtpServerConfigurationException(
+                    "Connection limits must not be negative");
+        }
+        if (overloadQueueDepth < 0 || overloadLatency < 0
+                || overloadIdleTimeout < 0) {
+            throw new FtpServerConfigurationException(
+                    "Overload limits must not be negative");
+        }
         return new NioListener(serverAddress, port, implicitSsl, ssl,
                 dataConnectionConfig, idleTimeout, blockedAddresses,
-                blockedSubnets);
+                blockedSubnets, ioProcessorCount, backlog, readBufferSize,
+                minReadBufferSize, maxReadBufferSize, receiveBufferSize,
+                tcpNoDelay, commandPoolCoreSize, commandPoolMaxSize,
+                commandQueueThreshold, threadPerSession, transferPoolSize,
+                transferQueueSize, maxConnections, maxConnectionsPerIp,
+                maxConnectionRatePerIp, overloadQueueDepth, overloadLatency,
+                overloadIdleTimeout);
     }
 
     /**
@@ -253,4 +344,423 @@ public class ListenerFactory {
         this.blockedSubnets = blockedSubnets;
     }
 
+    /**
+     * Get the number of I/O processors handling the sessions of listeners
+     * created by this factory
+     * 
+     * @return The number of I/O processors, 0 for the number of available
+     *         processors
+     */
+    public int getIoProcessorCount() {
+        return ioProcessorCount;
+    }
+
+    /**
+     * Set the number of I/O processors, each with its own selector thread,
+     * handling the sessions of listeners created by this factory. Defaults
+     * to 0, using one I/O processor per available processor.
+     * 
+     * @param ioProcessorCount
+     *            The number of I/O processors
+     */
+    public void setIoProcessorCount(int ioProcessorCount) {
+        this.ioProcessorCount = ioProcessorCount;
+    }
+
+    /**
+     * Get the maximum number of pending connections to be accepted
+     * 
+     * @return The accept backlog
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Set the maximum number of connections queued by the operating system
+     * until accepted by the listener. Defaults to 50.
+     * 
+     * @param backlog
+     *            The accept backlog
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * Get the initial size of the buffer used for reading from a session
+     * 
+     * @return The read buffer size in bytes
+     */
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    /**
+     * Set the initial size of the buffer used for reading from a session.
+     * The buffer is grown or shrunk between the minimum and maximum read
+     * buffer size depending on the amount of data read. Defaults to 2048.
+     * 
+     * @param readBufferSize
+     *            The read buffer size in bytes
+     */
+    public void setReadBufferSize(int readBufferSize) {
+        this.readBufferSize = readBufferSize;
+    }
+
+    /**
+     * Get the size the read buffer of a session can shrink to
+     * 
+     * @return The minimum read buffer size in bytes
+     */
+    public int getMinReadBufferSize() {
+        return minReadBufferSize;
+    }
+
+    /**
+     * Set the size the read buffer of a session can shrink to when reading
+     * less than half the buffer. A small minimum keeps the memory used by
+     * mostly idle control connections low. Defaults to 64.
+     * 
+     * @param minReadBufferSize
+     *            The minimum read buffer size in bytes
+     */
+    public void setMinReadBufferSize(int minReadBufferSize) {
+        this.minReadBufferSize = minReadBufferSize;
+    }
+
+    /**
+     * Get the size the read buffer of a session can grow to
+     * 
+     * @return The maximum read buffer size in bytes
+     */
+    public int getMaxReadBufferSize() {
+        return maxReadBufferSize;
+    }
+
+    /**
+     * Set the size the read buffer of a session can grow to when filling
+     * the buffer. Set the minimum, initial and maximum size to the same value
+     * for read buffers of a fixed size. Defaults to 65536.
+     * 
+     * @param maxReadBufferSize
+     *            The maximum read buffer size in bytes
+     */
+    public void setMaxReadBufferSize(int maxReadBufferSize) {
+        this.maxReadBufferSize = maxReadBufferSize;
+    }
+
+    /**
+     * Get the SO_RCVBUF size for control connections
+     * 
+     * @return The receive buffer size in bytes, 0 for the system default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Set the SO_RCVBUF size for control connections. Defaults to 512, as
+     * clients send little data on the control connection.
+     * 
+     * @param receiveBufferSize
+     *            The receive buffer size in bytes, 0 for the system default
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Is TCP_NODELAY enabled on control connections?
+     * 
+     * @return true if Nagle's algorithm is disabled for control connections
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Set whether TCP_NODELAY is enabled on control connections, sending
+     * replies without waiting for the acknowledgement of earlier replies.
+     * Defaults to false.
+     * 
+     * @param tcpNoDelay
+     *            true to disable Nagle's algorithm for control connections
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Get the number of command threads kept even if idle
+     * 
+     * @return The core size of the command thread pool
+     */
+    public int getCommandPoolCoreSize() {
+        return commandPoolCoreSize;
+    }
+
+    /**
+     * Set the number of threads running commands that are kept even if 
+     * idle. Defaults to 0.
+     * 
+     * @param commandPoolCoreSize
+     *            The core size of the command thread pool
+     */
+    public void setCommandPoolCoreSize(int commandPoolCoreSize) {
+        this.commandPoolCoreSize = commandPoolCoreSize;
+    }
+
+    /**
+     * Get the maximum number of command threads
+     * 
+     * @return The maximum size of the command thread pool
+     */
+    public int getCommandPoolMaxSize() {
+        return commandPoolMaxSize;
+    }
+
+    /**
+     * Set the maximum number of threads running commands. The commands of a
+     * session run in order on one thread at a time, and a thread is busy 
+     * for the whole time a transfer command blocks. When all threads are
+     * busy, the commands of other sessions wait. Defaults to 16.
+     * 
+     * @param commandPoolMaxSize
+     *            The maximum size of the command thread pool
+     */
+    public void setCommandPoolMaxSize(int commandPoolMaxSize) {
+        this.commandPoolMaxSize = commandPoolMaxSize;
+    }
+
+    /**
+     * Get the size of the events of a session queued for the command threads
+     * above which reading from that session is suspended
+     * 
+     * @return The queue threshold in bytes, 0 for an unbounded queue
+     */
+    public int getCommandQueueThreshold() {
+        return commandQueueThreshold;
+    }
+
+    /**
+     * Set the estimated size of the events of a session queued for the
+     * command threads above which reading from that session is suspended
+     * until its events have been handled. Other sessions are not affected.
+     * Defaults to 0, queueing events without bound.
+     * 
+     * @param commandQueueThreshold
+     *            The queue threshold in bytes, 0 for an unbounded queue
+     */
+    public void setCommandQueueThreshold(int commandQueueThreshold) {
+        this.commandQueueThreshold = commandQueueThreshold;
+    }
+
+    /**
+     * Are the commands of each session with pending events run on a thread
+     * of its own?
+     * 
+     * @return true if the command thread pool is unbounded
+     */
+    public boolean isThreadPerSession() {
+        return threadPerSession;
+    }
+
+    /**
+     * Set whether the commands of each session with pending events should
+     * run on a thread of its own, ignoring the maximum command pool size. 
+     * Blocking transfers then never delay the commands of other sessions,
+     * at the cost of one thread per busy session. Threads are discarded 
+     * after being idle for 30 seconds. Defaults to false.
+     * 
+     * @param threadPerSession
+     *            true if the command thread pool should be unbounded
+     */
+    public void setThreadPerSession(boolean threadPerSession) {
+        this.threadPerSession = threadPerSession;
+    }
+
+    /**
+     * Get the number of threads running transfer commands
+     * 
+     * @return The size of the transfer thread pool, 0 if transfers run on
+     *         the command threads
+     */
+    public int getTransferPoolSize() {
+        return transferPoolSize;
+    }
+
+    /**
+     * Set the number of threads running the commands transferring data 
+     * (APPE, LIST, MLSD, NLST, RETR, STOR and STOU), separate from the 
+     * command threads so that control commands of other sessions are 
+     * answered while transfers are in progress. Commands of a session 
+     * received during a transfer are run once the transfer is done. 
+     * Defaults to 0, running transfers on the command threads.
+     * 
+     * @param transferPoolSize
+     *            The size of the transfer thread pool
+     */
+    public void setTransferPoolSize(int transferPoolSize) {
+        this.transferPoolSize = transferPoolSize;
+    }
+
+    /**
+     * Get the number of transfers that may wait for a transfer thread
+     * 
+     * @return The size of the transfer queue, 0 for an unbounded queue
+     */
+    public int getTransferQueueSize() {
+        return transferQueueSize;
+    }
+
+    /**
+     * Set the number of transfers that may wait for a transfer thread when
+     * all are busy. Further transfers are refused with a 425 reply. 
+     * Defaults to 0, queueing transfers without bound.
+     * 
+     * @param transferQueueSize
+     *            The size of the transfer queue
+     */
+    public void setTransferQueueSize(int transferQueueSize) {
+        this.transferQueueSize = transferQueueSize;
+    }
+
+    /**
+     * Get the maximum number of concurrent connections to the listener
+     * 
+     * @return The maximum number of connections, 0 if not limited
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Set the maximum number of concurrent connections to the listener.
+     * Further connections are answered with a 421 reply and closed as soon
+     * as they are accepted. Defaults to 0, not limiting connections.
+     * 
+     * @param maxConnections
+     *            The maximum number of connections
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Get the maximum number of concurrent connections from a single IP
+     * address
+     * 
+     * @return The maximum number of connections per IP address, 0 if not
+     *         limited
+     */
+    public int getMaxConnectionsPerIp() {
+        return maxConnectionsPerIp;
+    }
+
+    /**
+     * Set the maximum number of concurrent connections from a single IP
+     * address. Defaults to 0, not limiting connections per address.
+     * 
+     * @param maxConnectionsPerIp
+     *            The maximum number of connections per IP address
+     */
+    public void setMaxConnectionsPerIp(int maxConnectionsPerIp) {
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+    }
+
+    /**
+     * Get the maximum number of connections per second from a single IP
+     * address
+     * 
+     * @return The maximum connection rate per IP address, 0 if not limited
+     */
+    public int getMaxConnectionRatePerIp() {
+        return maxConnectionRatePerIp;
+    }
+
+    /**
+     * Set the maximum number of connections a single IP address may open per
+     * second. Rejected attempts count towards the rate, so an address 
+     * connecting in a loop stays rejected. Defaults to 0, not limiting the 
+     * connection rate.
+     * 
+     * @param maxConnectionRatePerIp
+     *            The maximum connection rate per IP address
+     */
+    public void setMaxConnectionRatePerIp(int maxConnectionRatePerIp) {
+        this.maxConnectionRatePerIp = maxConnectionRatePerIp;
+    }
+
+    /**
+     * Get the number of events waiting for a free command thread at which
+     * the listener is overloaded
+     * 
+     * @return The overload queue depth, 0 if not monitored
+     */
+    public int getOverloadQueueDepth() {
+        return overloadQueueDepth;
+    }
+
+    /**
+     * Set the number of events waiting for a free command thread at which
+     * the listener is overloaded. Events queued behind a running command of
+     * their session, such as a transfer, are not counted. While overloaded, new sessions are answered 
+     * with 421 and closed, expensive commands (LIST -R, NLST -R, MD5 and 
+     * MMD5) are refused with 450, and idle timeouts are shortened to the 
+     * overload idle timeout. The listener recovers when both the queue depth
+     * and the latency drop below half of their overload values. Defaults to
+     * 0, not shedding load on the queue depth.
+     * 
+     * @param overloadQueueDepth
+     *            The overload queue depth
+     */
+    public void setOverloadQueueDepth(int overloadQueueDepth) {
+        this.overloadQueueDepth = overloadQueueDepth;
+    }
+
+    /**
+     * Get the 99th percentile of the time sessions wait for a free command
+     * thread at which the listener is overloaded
+     * 
+     * @return The overload latency in milliseconds, 0 if not monitored
+     */
+    public int getOverloadLatency() {
+        return overloadLatency;
+    }
+
+    /**
+     * Set the 99th percentile of the time sessions wait for a free command
+     * thread at which the listener is overloaded, measured each second. The
+     * time a command waits for an earlier command of its session, such as a
+     * transfer, is not included. Defaults to
+     * 0, not shedding load on the latency.
+     * 
+     * @param overloadLatency
+     *            The overload latency in milliseconds
+     */
+    public void setOverloadLatency(int overloadLatency) {
+        this.overloadLatency = overloadLatency;
+    }
+
+    /**
+     * Get the idle timeout of the sessions while overloaded
+     * 
+     * @return The overload idle timeout in seconds, 0 if not shortened
+     */
+    public int getOverloadIdleTimeout() {
+        return overloadIdleTimeout;
+    }
+
+    /**
+     * Set the idle timeout of the sessions while overloaded, if shorter than
+     * their own. Defaults to 0, keeping idle timeouts unchanged.
+     * 
+     * @param overloadIdleTimeout
+     *            The overload idle timeout in seconds
+     */
+    public void setOverloadIdleTimeout(int overloadIdleTimeout) {
+        this.overloadIdleTimeout = overloadIdleTimeout;
+    }
+
 }
\ No newline at end of file
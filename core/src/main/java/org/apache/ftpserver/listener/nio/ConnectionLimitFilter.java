@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Filter limiting the number of connections to the listener, the number of
+ * concurrent connections from a single IP address and the rate at which an
+ * IP address may connect. A connection over the limits is answered with a
+ * fixed 421 reply and closed, before any other filter or the handler sees
+ * it.
+ * 
+ * The connections per IP address are counted in a number of stripes, each
+ * guarded by its own lock, so that connections from different addresses
+ * rarely contend.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class ConnectionLimitFilter extends IoFilterAdapter {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(ConnectionLimitFilter.class);
+
+    private static final String ATTRIBUTE_COUNTED_ADDRESS = FtpIoSession.ATTRIBUTE_PREFIX
+            + "counted-address";
+
+    private static final String ATTRIBUTE_REJECTED = FtpIoSession.ATTRIBUTE_PREFIX
+            + "rejected";
+
+    private static final byte[] REPLY_MAX_CONNECTIONS = toBytes("421 Maximum number of connections has been reached.\r\n");
+
+    private static final byte[] REPLY_MAX_CONNECTIONS_PER_IP = toBytes("421 Too many connections from your IP address.\r\n");
+
+    private static final byte[] REPLY_MAX_CONNECTION_RATE = toBytes("421 Connecting too often from your IP address.\r\n");
+
+    /**
+     * Number of stripes of the per address counters, a power of 2
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * The length of the period in which the connection rate is counted
+     */
+    private static final long RATE_PERIOD = 1000L;
+
+    private final int maxConnections;
+
+    private final int maxConnectionsPerIp;
+
+    private final int maxConnectionRatePerIp;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Create a filter with the given limits, 0 for no limit
+     * 
+     * @param maxConnections
+     *            The maximum number of concurrent connections
+     * @param maxConnectionsPerIp
+     *            The maximum number of concurrent connections from a single
+     *            IP address
+     * @param maxConnectionRatePerIp
+     *            The maximum number of connections from a single IP address
+     *            per second
+     */
+    public ConnectionLimitFilter(int maxConnections, int maxConnectionsPerIp,
+            int maxConnectionRatePerIp) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+        this.maxConnectionRatePerIp = maxConnectionRatePerIp;
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private static byte[] toBytes(String reply) {
+        try {
+            return reply.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the number of connections currently counted
+     * 
+     * @return The number of connections
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    @Override
+    public void sessionCreated(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        byte[] rejection = admit(session);
+
+        if (rejection == null) {
+            nextFilter.sessionCreated(session);
+        } else {
+            LOG.debug("Rejecting connection from {}", session
+                    .getRemoteAddress());
+            session.setAttribute(ATTRIBUTE_REJECTED);
+
+            // the reply is written below the codec
+            nextFilter.filterWrite(session, new DefaultWriteRequest(IoBuffer
+                    .wrap(rejection)));
+            session.close(false);
+        }
+    }
+
+    /**
+     * Count the connection, unless it is over any of the limits
+     * 
+     * @return The reply to send when the connection is rejected, null if
+     *         admitted
+     */
+    private byte[] admit(IoSession session) {
+        int count = connections.incrementAndGet();
+        if (maxConnections > 0 && count > maxConnections) {
+            connections.decrementAndGet();
+            return REPLY_MAX_CONNECTIONS;
+        }
+
+        InetAddress address = getAddress(session);
+        if (address != null) {
+            Stripe stripe = getStripe(address);
+            byte[] rejection;
+            synchronized (stripe) {
+                rejection = stripe.admit(address, System.currentTimeMillis());
+            }
+
+            if (rejection != null) {
+                connections.decrementAndGet();
+                return rejection;
+            }
+        }
+
+        // the address is only counted when limited per address
+        if (address != null) {
+            session.setAttribute(ATTRIBUTE_COUNTED_ADDRESS, address);
+        } else {
+            session.setAttribute(ATTRIBUTE_COUNTED_ADDRESS, Boolean.TRUE);
+        }
+        return null;
+    }
+
+    private void release(IoSession session) {
+        Object address = session.removeAttribute(ATTRIBUTE_COUNTED_ADDRESS);
+        if (address == null) {
+            return;
+        }
+
+        connections.decrementAndGet();
+
+        if (address instanceof InetAddress) {
+            Stripe stripe = getStripe((InetAddress) address);
+            synchronized (stripe) {
+                stripe.release((InetAddress) address, System
+                        .currentTimeMillis());
+            }
+        }
+    }
+
+    private InetAddress getAddress(IoSession session) {
+        if (maxConnectionsPerIp <= 0 && maxConnectionRatePerIp <= 0) {
+            return null;
+        }
+
+        SocketAddress remoteAddress = session.getRemoteAddress();
+        if (remoteAddress instanceof InetSocketAddress) {
+            return ((InetSocketAddress) remoteAddress).getAddress();
+        } else {
+            return null;
+        }
+    }
+
+    private Stripe getStripe(InetAddress address) {
+        int hash = address.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[hash & (STRIPES - 1)];
+    }
+
+    private boolean isRejected(IoSession session) {
+        return session.containsAttribute(ATTRIBUTE_REJECTED);
+    }
+
+    @Override
+    public void sessionOpened(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.sessionOpened(session);
+        }
+    }
+
+    @Override
+    public void sessionClosed(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        if (!isRejected(session)) {
+            try {
+                release(session);
+            } finally {
+                nextFilter.sessionClosed(session);
+            }
+        }
+    }
+
+    @Override
+    public void sessionIdle(NextFilter nextFilter, IoSession session,
+            IdleStatus status) throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.sessionIdle(session, status);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(NextFilter nextFilter, IoSession session,
+            Throwable cause) throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.exceptionCaught(session, cause);
+        }
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session,
+            Object message) throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.messageReceived(session, message);
+        }
+    }
+
+    @Override
+    public void messageSent(NextFilter nextFilter, IoSession session,
+            WriteRequest writeRequest) throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.messageSent(session, writeRequest);
+        }
+    }
+
+    /**
+     * The connection counts of the addresses hashed to a stripe
+     */
+    private class Stripe {
+
+        private final Map<InetAddress, AddressCount> counts = new HashMap<InetAddress, AddressCount>();
+
+        private long lastPurge;
+
+        public byte[] admit(InetAddress address, long now) {
+            purge(now);
+
+            AddressCount count = counts.get(address);
+            if (count == null) {
+                count = new AddressCount();
+                counts.put(address, count);
+            }
+
+            // connection attempts over the rate are counted too, so that
+            // the address stays rejected while it keeps trying
+            if (now - count.periodStart >= RATE_PERIOD) {
+                count.periodStart = now;
+                count.attempts = 0;
+            }
+            count.attempts++;
+
+            if (maxConnectionRatePerIp > 0
+                    && count.attempts > maxConnectionRatePerIp) {
+                return REPLY_MAX_CONNECTION_RATE;
+            }
+            if (maxConnectionsPerIp > 0
+                    && count.connections >= maxConnectionsPerIp) {
+                return REPLY_MAX_CONNECTIONS_PER_IP;
+            }
+
+            count.connections++;
+            return null;
+        }
+
+        public void release(InetAddress address, long now) {
+            AddressCount count = counts.get(address);
+            if (count != null) {
+                count.connections--;
+                if (count.isUnused(now)) {
+                    counts.remove(address);
+                }
+            }
+        }
+
+        /**
+         * Remove the addresses without connections once their rate period
+         * has passed, at most once per period
+         */
+        private void purge(long now) {
+            if (now - lastPurge < RATE_PERIOD) {
+                return;
+            }
+            lastPurge = now;
+
+            Iterator<AddressCount> iter = counts.values().iterator();
+            while (iter.hasNext()) {
+                if (iter.next().isUnused(now)) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * The connections from a single address
+     */
+    private static class AddressCount {
+
+        private int connections;
+
+        private int attempts;
+
+        private long periodStart;
+
+        public boolean isUnused(long now) {
+            return connections <= 0 && now - periodStart >= RATE_PERIOD;
+        }
+    }
+}
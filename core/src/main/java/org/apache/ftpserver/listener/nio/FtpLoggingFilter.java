@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.listener.nio;
 
+import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.mina.core.session.IoEventType;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.logging.LogLevel;
@@ -70,20 +71,30 @@ public class FtpLoggingFilter extends LoggingFilter {
     @Override
     public void messageReceived(NextFilter nextFilter, IoSession session,
             Object message) throws Exception {
-        String request = (String) message;
-
         String logMessage;
-        if (maskPassword) {
-
-            request = request.trim().toUpperCase();
+        if (message instanceof FtpRequest) {
+            FtpRequest request = (FtpRequest) message;
 
-            if (request.startsWith("PASS ")) {
+            if (maskPassword && "PASS".equals(request.getCommand())) {
                 logMessage = "PASS *****";
             } else {
-                logMessage = request;
+                logMessage = request.getRequestLine();
             }
         } else {
-            logMessage = request;
+            String request = message.toString();
+
+            if (maskPassword) {
+
+                request = request.trim().toUpperCase();
+
+                if (request.startsWith("PASS ")) {
+                    logMessage = "PASS *****";
+                } else {
+                    logMessage = request;
+                }
+            } else {
+                logMessage = request;
+            }
         }
 
         logger.info("RECEIVED: {}", logMessage);
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.util.Arrays;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Decodes LF or CRLF terminated command lines into {@link FtpRequest}
+ * instances. The command verb is identified directly from the received bytes,
+ * so that known commands are mapped to their upper case name without any
+ * case conversion. Command lines longer than the maximum line length cause
+ * the session to be closed. Several pipelined commands received in one
+ * buffer are all decoded.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class FtpRequestDecoder extends CumulativeProtocolDecoder {
+
+    /**
+     * The default maximum command line length in bytes, excluding the line
+     * delimiter
+     */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 1024;
+
+    /**
+     * The commands identified without case conversion, unknown commands are
+     * parsed by {@link DefaultFtpRequest}
+     */
+    private static final String[] VERBS = new String[] { "ABOR", "ACCT",
+            "APPE", "AUTH", "CDUP", "CWD", "DELE", "EPRT", "EPSV", "FEAT",
+            "HELP", "LANG", "LIST", "MDTM", "MFMT", "MKD", "MLSD", "MLST",
+            "MODE", "NLST", "NOOP", "OPTS", "PASS", "PASV", "PBSZ", "PORT",
+            "PROT", "PWD", "QUIT", "REIN", "REST", "RETR", "RMD", "RNFR",
+            "RNTO", "SITE", "SIZE", "STAT", "STOR", "STOU", "STRU", "SYST",
+            "TYPE", "USER" };
+
+    // the verbs packed into an int, sorted for binary search
+    private static final int[] VERB_KEYS = new int[VERBS.length];
+
+    private static final String[] SORTED_VERBS = new String[VERBS.length];
+
+    static {
+        for (int i = 0; i < VERBS.length; i++) {
+            VERB_KEYS[i] = verbKey(VERBS[i]);
+        }
+        Arrays.sort(VERB_KEYS);
+        for (int i = 0; i < VERBS.length; i++) {
+            SORTED_VERBS[Arrays.binarySearch(VERB_KEYS, verbKey(VERBS[i]))] = VERBS[i];
+        }
+    }
+
+    private final int maxLineLength;
+
+    /**
+     * Create a decoder allowing command lines up to
+     * {@link #DEFAULT_MAX_LINE_LENGTH} bytes
+     */
+    public FtpRequestDecoder() {
+        this(DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Create a decoder
+     * 
+     * @param maxLineLength
+     *            The maximum command line length in bytes, excluding the line
+     *            delimiter
+     */
+    public FtpRequestDecoder(final int maxLineLength) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException(
+                    "Maximum line length must be positive");
+        }
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Get the maximum command line length
+     * 
+     * @return The maximum line length in bytes
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    protected boolean doDecode(final IoSession session, final IoBuffer in,
+            final ProtocolDecoderOutput out) throws Exception {
+        int start = in.position();
+        int limit = in.limit();
+
+        for (int i = start; i < limit; i++) {
+            if (in.get(i) == '\n') {
+                // skip the line, so that the following commands can still
+                // be decoded if the session is not closed
+                in.position(i + 1);
+                if (i - start > maxLineLength) {
+                    throw new ProtocolDecoderException("Command line too long: "
+                            + (i - start) + " bytes");
+                }
+
+                out.write(decode(in, start, i));
+                return true;
+            }
+        }
+
+        if (limit - start > maxLineLength) {
+            in.position(limit);
+            throw new ProtocolDecoderException("Command line too long: "
+                    + (limit - start) + " bytes");
+        }
+
+        // wait for the rest of the line
+        return false;
+    }
+
+    /**
+     * Decode a command line, trimmed like {@link String#trim()}
+     */
+    private FtpRequest decode(final IoBuffer in, int start, int end)
+            throws Exception {
+        while (start < end && (in.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (in.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+
+        String line = toString(in, start, end);
+
+        int verbEnd = start;
+        while (verbEnd < end && in.get(verbEnd) != ' ') {
+            verbEnd++;
+        }
+
+        // commands prefixed by X are handled as the command without it
+        int verbStart = start;
+        if (verbEnd > verbStart
+                && (in.get(verbStart) == 'X' || in.get(verbStart) == 'x')) {
+            verbStart++;
+        }
+
+        int index = Arrays.binarySearch(VERB_KEYS, verbKey(in, verbStart,
+                verbEnd));
+        if (index < 0) {
+            return new DefaultFtpRequest(line);
+        }
+
+        String argument = null;
+        if (verbEnd < end) {
+            argument = line.substring(line.indexOf(' ') + 1);
+        }
+        return new DefaultFtpRequest(line, SORTED_VERBS[index], argument);
+    }
+
+    private static String toString(final IoBuffer in, final int start,
+            final int end) throws Exception {
+        if (in.hasArray()) {
+            return new String(in.array(), in.arrayOffset() + start, end
+                    - start, "UTF-8");
+        }
+
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = in.get(start + i);
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Pack the upper case letters of a verb of up to four letters into an
+     * int
+     * 
+     * @return The packed verb, 0 if not a verb of up to four letters
+     */
+    private static int verbKey(final IoBuffer in, final int start,
+            final int end) {
+        if (end - start < 1 || end - start > 4) {
+            return 0;
+        }
+
+        int key = 0;
+        for (int i = start; i < end; i++) {
+            int b = in.get(i);
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            } else if (b < 'A' || b > 'Z') {
+                return 0;
+            }
+            key = (key << 8) | b;
+        }
+        return key;
+    }
+
+    private static int verbKey(final String verb) {
+        int key = 0;
+        for (int i = 0; i < verb.length(); i++) {
+            key = (key << 8) | verb.charAt(i);
+        }
+        return key;
+    }
+}
@@ -19,10 +19,12 @@
  */
 package org.apache.ftpserver.listener.nio;
 
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
@@ -32,24 +34,179 @@ import org.apache.mina.filter.codec.demux.MessageEncoder;
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
- * A {@link MessageEncoder} that encodes {@link FtpReply}.
+ * A {@link MessageEncoder} that encodes {@link FtpReply}. The encoder is
+ * stateless apart from a cache of encoded replies and can be shared by all
+ * I/O processor threads. Single-line replies translated from a message 
+ * template are encoded once per template: replies without variables are
+ * written from the cached bytes, replies with variables only encode the
+ * part following the cached text before the first variable. ASCII replies
+ * are encoded without a charset encoder.
  *
  * @author The Apache MINA Project (dev@mina.apache.org)
  * @version $Rev$, $Date$
  */
 public class FtpResponseEncoder extends ProtocolEncoderAdapter {
-    private static final CharsetEncoder ENCODER = Charset.forName("UTF-8")
-            .newEncoder();
+
+    /**
+     * The maximum number of message templates with cached encoded replies
+     */
+    private static final int MAX_CACHED_REPLIES = 512;
+
+    private static final byte[] CRLF = new byte[] { '\r', '\n' };
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ConcurrentMap<String, CachedReply> cache = new ConcurrentHashMap<String, CachedReply>();
 
     public void encode(IoSession session, Object message,
             ProtocolEncoderOutput out) throws Exception {
-        String value = message.toString();
+        byte[] encoded = null;
+        if (message instanceof LocalizedFtpReply) {
+            encoded = encodeCached((LocalizedFtpReply) message);
+        }
+        if (encoded == null) {
+            encoded = encode(EMPTY, message.toString(), 0, EMPTY);
+        }
+
+        out.write(IoBuffer.wrap(encoded));
+    }
+
+    /**
+     * Encode a single-line reply using the bytes cached for its template.
+     * 
+     * @return The encoded reply, null if it can not be encoded from the
+     *         cache
+     */
+    private byte[] encodeCached(final LocalizedFtpReply reply)
+            throws UnsupportedEncodingException {
+        String template = reply.getTemplate();
+        String message = reply.getMessage();
+        if (template == null || message == null
+                || message.indexOf('\n') != -1) {
+            return null;
+        }
+
+        CachedReply cached = cache.get(template);
+        if (cached == null) {
+            if (template.indexOf('\n') != -1 || cache.size() >= MAX_CACHED_REPLIES) {
+                return null;
+            }
+            cached = new CachedReply(reply.getCode(), template);
+            CachedReply previous = cache.putIfAbsent(template, cached);
+            if (previous != null) {
+                cached = previous;
+            }
+        }
+
+        // the same template may be used with different reply codes
+        if (cached.code != reply.getCode()) {
+            return null;
+        }
+
+        if (message == template) {
+            return cached.getReply();
+        } else {
+            byte[] prefix = cached.getPrefix();
+            if (prefix == null) {
+                return null;
+            }
+            return encode(prefix, message, cached.prefixLength, CRLF);
+        }
+    }
+
+    /**
+     * Encode part of a value following an already encoded prefix
+     * 
+     * @param prefix
+     *            The encoded prefix
+     * @param value
+     *            The value to encode
+     * @param start
+     *            The index of the first character of the value to encode
+     * @param suffix
+     *            The encoded suffix
+     * @return The prefix, the encoded part of the value and the suffix
+     */
+    static byte[] encode(final byte[] prefix, final String value,
+            final int start, final byte[] suffix)
+            throws UnsupportedEncodingException {
+        int length = value.length() - start;
+
+        // fast path for ASCII
+        byte[] encoded = new byte[prefix.length + length + suffix.length];
+        int pos = prefix.length;
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                encoded = null;
+                break;
+            }
+            encoded[pos++] = (byte) c;
+        }
+
+        if (encoded == null) {
+            byte[] bytes = value.substring(start).getBytes("UTF-8");
+            encoded = new byte[prefix.length + bytes.length + suffix.length];
+            System.arraycopy(bytes, 0, encoded, prefix.length, bytes.length);
+        }
+
+        System.arraycopy(prefix, 0, encoded, 0, prefix.length);
+        System.arraycopy(suffix, 0, encoded, encoded.length - suffix.length,
+                suffix.length);
+        return encoded;
+    }
+
+    /**
+     * The encoded forms of the single-line replies translated from a message
+     * template
+     */
+    private static class CachedReply {
+
+        private final int code;
+
+        private final String template;
+
+        // the length of the template text before the first variable
+        private final int prefixLength;
+
+        private volatile byte[] reply;
+
+        private volatile byte[] prefix;
+
+        public CachedReply(final int code, final String template) {
+            this.code = code;
+            this.template = template;
+            this.prefixLength = template.indexOf('{');
+        }
 
-        IoBuffer buf = IoBuffer.allocate(value.length()).setAutoExpand(true);
+        /**
+         * Get the encoded reply, for replies without variables
+         */
+        public byte[] getReply() throws UnsupportedEncodingException {
+            byte[] encoded = reply;
+            if (encoded == null) {
+                encoded = encode(EMPTY, code + " " + template, 0, CRLF);
+                reply = encoded;
+            }
+            return encoded;
+        }
 
-        buf.putString(value, ENCODER);
+        /**
+         * Get the encoded reply up to the first variable, null if the
+         * template has no variables
+         */
+        public byte[] getPrefix() throws UnsupportedEncodingException {
+            if (prefixLength == -1) {
+                return null;
+            }
 
-        buf.flip();
-        out.write(buf);
+            byte[] encoded = prefix;
+            if (encoded == null) {
+                encoded = encode(EMPTY, code + " "
+                        + template.substring(0, prefixLength), 0, EMPTY);
+                prefix = encoded;
+            }
+            return encoded;
+        }
     }
 }
@@ -19,13 +19,10 @@
  */
 package org.apache.ftpserver.listener.nio;
 
-import java.nio.charset.Charset;
-
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFactory;
 import org.apache.mina.filter.codec.ProtocolDecoder;
 import org.apache.mina.filter.codec.ProtocolEncoder;
-import org.apache.mina.filter.codec.textline.TextLineDecoder;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -36,8 +33,7 @@ import org.apache.mina.filter.codec.textline.TextLineDecoder;
  * @version $Rev$, $Date$
  */
 public class FtpServerProtocolCodecFactory implements ProtocolCodecFactory {
-    private ProtocolDecoder decoder = new TextLineDecoder(Charset
-            .forName("UTF-8"));
+    private ProtocolDecoder decoder = new FtpRequestDecoder();
 
     private ProtocolEncoder encoder = new FtpResponseEncoder();
 
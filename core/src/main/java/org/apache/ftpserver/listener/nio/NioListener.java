@@ -28,23 +28,35 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.impl.DefaultFtpHandler;
-import org.apache.ftpserver.impl.FtpHandler;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LoadMonitor;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.ftpserver.listener.ListenerFactory;
 import org.apache.ftpserver.ssl.ClientAuth;
 import org.apache.ftpserver.ssl.SslConfiguration;
 import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoEvent;
 import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.session.IoSessionConfig;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.executor.DefaultIoEventSizeEstimator;
 import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.filter.executor.IoEventQueueHandler;
+import org.apache.mina.filter.executor.IoEventSizeEstimator;
 import org.apache.mina.filter.executor.OrderedThreadPoolExecutor;
 import org.apache.mina.filter.firewall.BlacklistFilter;
 import org.apache.mina.filter.firewall.Subnet;
@@ -74,12 +86,72 @@ public class NioListener extends AbstractListener {
 
     boolean suspended = false;
 
-    private ExecutorService filterExecutor = new OrderedThreadPoolExecutor();
+    /**
+     * Time in seconds idle command threads are kept alive
+     */
+    private static final int COMMAND_THREAD_KEEP_ALIVE = 30;
+
+    private static final String ATTRIBUTE_NORMAL_IDLE_TIME = FtpIoSession.ATTRIBUTE_PREFIX
+            + "normal-idle-time";
+
+    private static final String ATTRIBUTE_QUEUED_EVENTS = FtpIoSession.ATTRIBUTE_PREFIX
+            + "queued-events";
+
+    private static final String ATTRIBUTE_WAITING_EVENTS = FtpIoSession.ATTRIBUTE_PREFIX
+            + "waiting-events";
+
+    private ExecutorService filterExecutor;
+
+    private ExecutorService transferExecutor;
+
+    private ExecutorService outOfBandExecutor;
+
+    private ExecutorService loadMonitorExecutor;
 
-    private FtpHandler handler = new DefaultFtpHandler();
+    private DefaultFtpHandler handler = new DefaultFtpHandler();
+
+    private LoadMonitor loadMonitor;
 
     private FtpServerContext context;
 
+    private final int ioProcessorCount;
+
+    private final int backlog;
+
+    private final int readBufferSize;
+
+    private final int minReadBufferSize;
+
+    private final int maxReadBufferSize;
+
+    private final int receiveBufferSize;
+
+    private final boolean tcpNoDelay;
+
+    private final int commandPoolCoreSize;
+
+    private final int commandPoolMaxSize;
+
+    private final int commandQueueThreshold;
+
+    private final boolean threadPerSession;
+
+    private final int transferPoolSize;
+
+    private final int transferQueueSize;
+
+    private final int maxConnections;
+
+    private final int maxConnectionsPerIp;
+
+    private final int maxConnectionRatePerIp;
+
+    private final int overloadQueueDepth;
+
+    private final int overloadLatency;
+
+    private final int overloadIdleTimeout;
+
     /**
      * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
      */
@@ -87,10 +159,39 @@ public class NioListener extends AbstractListener {
             boolean implicitSsl,
             SslConfiguration sslConfiguration,
             DataConnectionConfiguration dataConnectionConfig, 
-            int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets) {
+            int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets,
+            int ioProcessorCount, int backlog, int readBufferSize,
+            int minReadBufferSize, int maxReadBufferSize,
+            int receiveBufferSize, boolean tcpNoDelay,
+            int commandPoolCoreSize, int commandPoolMaxSize,
+            int commandQueueThreshold, boolean threadPerSession,
+            int transferPoolSize, int transferQueueSize, int maxConnections,
+            int maxConnectionsPerIp, int maxConnectionRatePerIp,
+            int overloadQueueDepth, int overloadLatency,
+            int overloadIdleTimeout) {
         super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, 
                 idleTimeout, blockedAddresses, blockedSubnets);   
         
+        this.ioProcessorCount = ioProcessorCount;
+        this.backlog = backlog;
+        this.readBufferSize = readBufferSize;
+        this.minReadBufferSize = minReadBufferSize;
+        this.maxReadBufferSize = maxReadBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.commandPoolCoreSize = commandPoolCoreSize;
+        this.commandPoolMaxSize = commandPoolMaxSize;
+        this.commandQueueThreshold = commandQueueThreshold;
+        this.threadPerSession = threadPerSession;
+        this.transferPoolSize = transferPoolSize;
+        this.transferQueueSize = transferQueueSize;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+        this.maxConnectionRatePerIp = maxConnectionRatePerIp;
+        this.overloadQueueDepth = overloadQueueDepth;
+        this.overloadLatency = overloadLatency;
+        this.overloadIdleTimeout = overloadIdleTimeout;
+
         updateBlacklistFilter();
     }
 
@@ -121,8 +222,11 @@ public class NioListener extends AbstractListener {
             
             this.context = context;
     
-            acceptor = new NioSocketAcceptor(Runtime.getRuntime()
-                    .availableProcessors());
+            int processors = ioProcessorCount;
+            if (processors <= 0) {
+                processors = Runtime.getRuntime().availableProcessors();
+            }
+            acceptor = new NioSocketAcceptor(processors);
     
             if (getServerAddress() != null) {
                 address = new InetSocketAddress(getServerAddress(), getPort());
@@ -131,25 +235,68 @@ public class NioListener extends AbstractListener {
             }
     
             acceptor.setReuseAddress(true);
-            acceptor.getSessionConfig().setReadBufferSize(2048);
-            acceptor.getSessionConfig().setIdleTime(IdleStatus.BOTH_IDLE,
-                    getIdleTimeout());
-            // Decrease the default receiver buffer size
-            ((SocketSessionConfig) acceptor.getSessionConfig())
-                    .setReceiveBufferSize(512);
-    
-            MdcInjectionFilter mdcFilter = new MdcInjectionFilter();
-    
-            acceptor.getFilterChain().addLast("mdcFilter", mdcFilter);
+            acceptor.setBacklog(backlog);
+
+            // the read buffer of each session starts at the read buffer
+            // size and is grown or shrunk within the min and max size
+            // depending on the amount of data read
+            SocketSessionConfig sessionConfig = acceptor.getSessionConfig();
+            sessionConfig.setMinReadBufferSize(minReadBufferSize);
+            sessionConfig.setMaxReadBufferSize(maxReadBufferSize);
+            sessionConfig.setReadBufferSize(readBufferSize);
+            sessionConfig.setIdleTime(IdleStatus.BOTH_IDLE, getIdleTimeout());
+            if (receiveBufferSize > 0) {
+                sessionConfig.setReceiveBufferSize(receiveBufferSize);
+            }
+            sessionConfig.setTcpNoDelay(tcpNoDelay);
     
             // add and update the blacklist filter
             acceptor.getFilterChain().addLast("ipFilter", new BlacklistFilter());
             updateBlacklistFilter();
+
+            // reject connections over the limits before any work is done
+            // for them
+            if (maxConnections > 0 || maxConnectionsPerIp > 0
+                    || maxConnectionRatePerIp > 0) {
+                acceptor.getFilterChain().addLast(
+                        "connectionLimit",
+                        new ConnectionLimitFilter(maxConnections,
+                                maxConnectionsPerIp, maxConnectionRatePerIp));
+            }
+
+            MdcInjectionFilter mdcFilter = new MdcInjectionFilter();
     
-            acceptor.getFilterChain().addLast("threadPool",
-                    new ExecutorFilter(filterExecutor));
+            acceptor.getFilterChain().addLast("mdcFilter", mdcFilter);
+    
+            // commands are decoded before being queued for the command
+            // threads, so that ABOR, QUIT and STAT can act during a transfer
             acceptor.getFilterChain().addLast("codec",
                     new ProtocolCodecFilter(new FtpServerProtocolCodecFactory()));
+            outOfBandExecutor = createSingleThreadExecutor("FtpServer-OutOfBand");
+            acceptor.getFilterChain().addLast("outOfBand",
+                    new OutOfBandCommandFilter(context, handler,
+                            outOfBandExecutor));
+
+            // shed load when the command threads can not keep up, updating
+            // the sessions off the I/O processor thread evaluating the load
+            if (overloadQueueDepth > 0 || overloadLatency > 0) {
+                loadMonitorExecutor = createSingleThreadExecutor("FtpServer-LoadMonitor");
+                loadMonitor = new LoadMonitor(overloadQueueDepth,
+                        overloadLatency) {
+                    protected void overloadChanged(final boolean overloaded) {
+                        loadMonitorExecutor.execute(new Runnable() {
+                            public void run() {
+                                updateIdleTimeouts(overloaded);
+                            }
+                        });
+                    }
+                };
+            }
+            handler.setLoadMonitor(loadMonitor);
+
+            filterExecutor = createCommandExecutor();
+            acceptor.getFilterChain().addLast("threadPool",
+                    new ExecutorFilter(filterExecutor));
             acceptor.getFilterChain().addLast("mdcFilter2", mdcFilter);
             acceptor.getFilterChain().addLast("logger", new FtpLoggingFilter());
     
@@ -175,6 +322,14 @@ public class NioListener extends AbstractListener {
                 acceptor.getFilterChain().addFirst("sslFilter", sslFilter);
             }
     
+            // the commands queued behind a running command are resumed on
+            // the command threads, transfers run on their own threads
+            handler.setCommandExecutor(filterExecutor);
+            if (transferPoolSize > 0) {
+                transferExecutor = createTransferExecutor();
+            }
+            handler.setTransferExecutor(transferExecutor);
+
             handler.init(context, this);
             acceptor.setHandler(new FtpHandlerAdapter(context, handler));
     
@@ -194,6 +349,113 @@ public class NioListener extends AbstractListener {
         }
     }
     
+    /**
+     * Create the executor running the commands of all sessions, keeping the
+     * events of each session in order
+     */
+    private ExecutorService createCommandExecutor() {
+        // a session waiting for a blocking command still holds its thread,
+        // so in thread per session mode threads are created for as many
+        // sessions as have pending events
+        int maxSize = threadPerSession ? Integer.MAX_VALUE : commandPoolMaxSize;
+
+        // throttle reading from sessions with too many queued events
+        IoEventQueueHandler queueHandler = null;
+        if (commandQueueThreshold > 0) {
+            queueHandler = new SessionReadThrottle(context,
+                    commandQueueThreshold);
+        }
+
+        // count the events waiting for a command thread for the load monitor
+        if (loadMonitor != null) {
+            return new MonitoredThreadPoolExecutor(commandPoolCoreSize,
+                    maxSize, COMMAND_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new MonitoringQueueHandler(loadMonitor, queueHandler));
+        }
+
+        return new OrderedThreadPoolExecutor(commandPoolCoreSize, maxSize,
+                COMMAND_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, queueHandler);
+    }
+
+    /**
+     * Create the executor running the transfer commands, rejecting
+     * transfers when all threads are busy and the queue is full
+     */
+    private ExecutorService createTransferExecutor() {
+        BlockingQueue<Runnable> queue;
+        if (transferQueueSize > 0) {
+            queue = new ArrayBlockingQueue<Runnable>(transferQueueSize);
+        } else {
+            queue = new LinkedBlockingQueue<Runnable>();
+        }
+
+        return new ThreadPoolExecutor(transferPoolSize, transferPoolSize,
+                COMMAND_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, queue,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "FtpServer-Transfer-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Create an executor running short tasks which must not run on the I/O
+     * processor threads, such as the commands received while a transfer is
+     * in progress. A single thread suffices as these tasks do not block.
+     */
+    private ExecutorService createSingleThreadExecutor(final String name) {
+        return new ThreadPoolExecutor(1, 1, COMMAND_THREAD_KEEP_ALIVE,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Shorten the idle timeout of all sessions while overloaded, restoring
+     * it once the load drops
+     */
+    private void updateIdleTimeouts(boolean overloaded) {
+        if (overloadIdleTimeout <= 0) {
+            return;
+        }
+
+        Set<FtpIoSession> sessions;
+        synchronized (this) {
+            if (acceptor == null) {
+                // stopped meanwhile
+                return;
+            }
+            sessions = getActiveSessions();
+        }
+
+        for (FtpIoSession session : sessions) {
+            IoSessionConfig config = session.getConfig();
+            if (overloaded) {
+                int idleTime = config.getBothIdleTime();
+                if (idleTime <= 0 || idleTime > overloadIdleTimeout) {
+                    session.setAttribute(ATTRIBUTE_NORMAL_IDLE_TIME, idleTime);
+                    config.setBothIdleTime(overloadIdleTimeout);
+                }
+            } else {
+                Integer idleTime = (Integer) session
+                        .removeAttribute(ATTRIBUTE_NORMAL_IDLE_TIME);
+                if (idleTime != null) {
+                    config.setBothIdleTime(idleTime);
+                }
+            }
+        }
+    }
+
     private void updatePort() {
         // update the port to the real port bound by the listener
         setPort(acceptor.getLocalAddress().getPort());
@@ -218,8 +480,35 @@ public class NioListener extends AbstractListener {
             } finally {
                 // TODO: how to handle?
             }
+            filterExecutor = null;
+        }
+
+        if (transferExecutor != null) {
+            transferExecutor.shutdown();
+            try {
+                transferExecutor.awaitTermination(5000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+            }
+            transferExecutor = null;
+        }
+
+        if (outOfBandExecutor != null) {
+            outOfBandExecutor.shutdown();
+            try {
+                outOfBandExecutor.awaitTermination(5000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+            }
+            outOfBandExecutor = null;
+        }
+
+        // not waiting for the executor, its task may be waiting for this
+        // listener
+        if (loadMonitorExecutor != null) {
+            loadMonitorExecutor.shutdown();
+            loadMonitorExecutor = null;
         }
         
+        loadMonitor = null;
         context = null;
     }
 
@@ -268,6 +557,197 @@ public class NioListener extends AbstractListener {
         }
     }
     
+    /**
+     * Get the number of I/O processors handling the sessions of this listener
+     * 
+     * @return The number of I/O processors, 0 for the number of available
+     *         processors
+     */
+    public int getIoProcessorCount() {
+        return ioProcessorCount;
+    }
+
+    /**
+     * Get the maximum number of pending connections to be accepted
+     * 
+     * @return The accept backlog
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Get the initial size of the buffer used for reading from a session
+     * 
+     * @return The read buffer size in bytes
+     */
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    /**
+     * Get the size the read buffer of an idle session can shrink to
+     * 
+     * @return The minimum read buffer size in bytes
+     */
+    public int getMinReadBufferSize() {
+        return minReadBufferSize;
+    }
+
+    /**
+     * Get the size the read buffer of a busy session can grow to
+     * 
+     * @return The maximum read buffer size in bytes
+     */
+    public int getMaxReadBufferSize() {
+        return maxReadBufferSize;
+    }
+
+    /**
+     * Get the SO_RCVBUF size for control connections
+     * 
+     * @return The receive buffer size in bytes, 0 for the system default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Is TCP_NODELAY enabled on control connections?
+     * 
+     * @return true if Nagle's algorithm is disabled for control connections
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Get the number of command threads kept even if idle
+     * 
+     * @return The core size of the command thread pool
+     */
+    public int getCommandPoolCoreSize() {
+        return commandPoolCoreSize;
+    }
+
+    /**
+     * Get the maximum number of command threads, unless running a thread
+     * per session
+     * 
+     * @return The maximum size of the command thread pool
+     */
+    public int getCommandPoolMaxSize() {
+        return commandPoolMaxSize;
+    }
+
+    /**
+     * Get the size of the events of a session queued for the command threads
+     * above which reading from that session is suspended
+     * 
+     * @return The queue threshold in bytes, 0 for an unbounded queue
+     */
+    public int getCommandQueueThreshold() {
+        return commandQueueThreshold;
+    }
+
+    /**
+     * Are the commands of each session with pending events run on a thread
+     * of its own?
+     * 
+     * @return true if the command thread pool is unbounded
+     */
+    public boolean isThreadPerSession() {
+        return threadPerSession;
+    }
+
+    /**
+     * Get the number of threads running transfer commands
+     * 
+     * @return The size of the transfer thread pool, 0 if transfers run on
+     *         the command threads
+     */
+    public int getTransferPoolSize() {
+        return transferPoolSize;
+    }
+
+    /**
+     * Get the number of transfers that may wait for a transfer thread
+     * 
+     * @return The size of the transfer queue, 0 for an unbounded queue
+     */
+    public int getTransferQueueSize() {
+        return transferQueueSize;
+    }
+
+    /**
+     * Get the maximum number of concurrent connections to the listener
+     * 
+     * @return The maximum number of connections, 0 if not limited
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Get the maximum number of concurrent connections from a single IP
+     * address
+     * 
+     * @return The maximum number of connections per IP address, 0 if not
+     *         limited
+     */
+    public int getMaxConnectionsPerIp() {
+        return maxConnectionsPerIp;
+    }
+
+    /**
+     * Get the maximum number of connections per second from a single IP
+     * address
+     * 
+     * @return The maximum connection rate per IP address, 0 if not limited
+     */
+    public int getMaxConnectionRatePerIp() {
+        return maxConnectionRatePerIp;
+    }
+
+    /**
+     * Get the number of events waiting for a free command thread at which
+     * the listener is overloaded
+     * 
+     * @return The overload queue depth, 0 if not monitored
+     */
+    public int getOverloadQueueDepth() {
+        return overloadQueueDepth;
+    }
+
+    /**
+     * Get the 99th percentile of the time sessions wait for a free command
+     * thread at which the listener is overloaded
+     * 
+     * @return The overload latency in milliseconds, 0 if not monitored
+     */
+    public int getOverloadLatency() {
+        return overloadLatency;
+    }
+
+    /**
+     * Get the idle timeout of the sessions while overloaded
+     * 
+     * @return The overload idle timeout in seconds, 0 if not shortened
+     */
+    public int getOverloadIdleTimeout() {
+        return overloadIdleTimeout;
+    }
+
+    /**
+     * Get the monitor of the load of the listener
+     * 
+     * @return The load monitor, null if the listener does not shed load or
+     *         is not started
+     */
+    public LoadMonitor getLoadMonitor() {
+        return loadMonitor;
+    }
+
     /**
      * @see Listener#getActiveSessions()
      */
@@ -280,4 +760,242 @@ public class NioListener extends AbstractListener {
         }
         return ftpSessions;
     }
+
+    /**
+     * Counts the events waiting for a free command thread and records the
+     * time sessions wait for one, delegating to another queue handler if
+     * any. The events of a session queued behind one of its events being
+     * run, such as a transfer, wait for that session rather than for a
+     * command thread and are not counted.
+     */
+    private static class MonitoringQueueHandler implements IoEventQueueHandler {
+
+        private final LoadMonitor monitor;
+
+        private final IoEventQueueHandler delegate;
+
+        public MonitoringQueueHandler(LoadMonitor monitor,
+                IoEventQueueHandler delegate) {
+            this.monitor = monitor;
+            this.delegate = delegate;
+        }
+
+        public boolean accept(Object source, IoEvent event) {
+            return delegate == null || delegate.accept(source, event);
+        }
+
+        public void offered(Object source, IoEvent event) {
+            WaitingEvents waiting = getWaitingEvents(event.getSession());
+            synchronized (waiting) {
+                if (!waiting.running) {
+                    waiting.count++;
+                    if (waiting.since == 0L) {
+                        waiting.since = System.currentTimeMillis();
+                    }
+                    monitor.eventQueued();
+                }
+            }
+
+            if (delegate != null) {
+                delegate.offered(source, event);
+            }
+        }
+
+        public void polled(Object source, IoEvent event) {
+            WaitingEvents waiting = getWaitingEvents(event.getSession());
+            synchronized (waiting) {
+                if (waiting.count > 0) {
+                    waiting.count--;
+                    monitor.eventPolled();
+                }
+            }
+
+            if (delegate != null) {
+                delegate.polled(source, event);
+            }
+        }
+
+        /**
+         * Called by a command thread before running an event. The other
+         * events of the session now wait for this one.
+         */
+        public void started(IoEvent event) {
+            WaitingEvents waiting = getWaitingEvents(event.getSession());
+            synchronized (waiting) {
+                waiting.running = true;
+                monitor.eventsPolled(waiting.count);
+                waiting.count = 0;
+
+                if (waiting.since != 0L) {
+                    monitor.sessionStarted(System.currentTimeMillis()
+                            - waiting.since);
+                    waiting.since = 0L;
+                }
+            }
+        }
+
+        /**
+         * Called by a command thread after running an event. The thread goes
+         * on with the next event of the session if any.
+         */
+        public void finished(IoEvent event) {
+            WaitingEvents waiting = getWaitingEvents(event.getSession());
+            synchronized (waiting) {
+                waiting.running = false;
+            }
+        }
+
+        private WaitingEvents getWaitingEvents(IoSession session) {
+            WaitingEvents waiting = (WaitingEvents) session
+                    .getAttribute(ATTRIBUTE_WAITING_EVENTS);
+            if (waiting == null) {
+                waiting = new WaitingEvents();
+                WaitingEvents existing = (WaitingEvents) session
+                        .setAttributeIfAbsent(ATTRIBUTE_WAITING_EVENTS, waiting);
+                if (existing != null) {
+                    waiting = existing;
+                }
+            }
+            return waiting;
+        }
+    }
+
+    /**
+     * The events of a session counted as waiting for a free command thread
+     */
+    private static class WaitingEvents {
+
+        private int count = 0;
+
+        /**
+         * The time the session started waiting, 0 if not waiting
+         */
+        private long since = 0L;
+
+        private boolean running = false;
+    }
+
+    /**
+     * Command thread pool notifying the load monitor when its threads start
+     * and finish running the events of a session
+     */
+    private static class MonitoredThreadPoolExecutor extends
+            OrderedThreadPoolExecutor {
+
+        private final MonitoringQueueHandler monitoring;
+
+        public MonitoredThreadPoolExecutor(int corePoolSize,
+                int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                MonitoringQueueHandler monitoring) {
+            super(corePoolSize, maximumPoolSize, keepAliveTime, unit,
+                    monitoring);
+            this.monitoring = monitoring;
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable task) {
+            monitoring.started((IoEvent) task);
+        }
+
+        @Override
+        protected void afterExecute(Runnable task, Throwable throwable) {
+            monitoring.finished((IoEvent) task);
+        }
+    }
+
+    /**
+     * Suspends reading from a session while the estimated size of its events
+     * queued for the command threads is above the threshold, resuming once
+     * the command threads have caught up. Unlike blocking the I/O processor
+     * thread offering the event, this leaves the other sessions served by
+     * the same I/O processor unaffected.
+     * 
+     * While reading is suspended ABOR, STAT and QUIT can not be received, so
+     * sessions are never suspended while running a command that may start a
+     * transfer or while a transfer is using the data connection, and are
+     * resumed before running such a command.
+     */
+    private static class SessionReadThrottle implements IoEventQueueHandler {
+
+        private final IoEventSizeEstimator estimator = new DefaultIoEventSizeEstimator();
+
+        private final FtpServerContext context;
+
+        private final int threshold;
+
+        public SessionReadThrottle(FtpServerContext context, int threshold) {
+            this.context = context;
+            this.threshold = threshold;
+        }
+
+        public boolean accept(Object source, IoEvent event) {
+            return true;
+        }
+
+        public void offered(Object source, IoEvent event) {
+            QueuedEvents queued = getQueuedEvents(event.getSession());
+            synchronized (queued) {
+                queued.size += estimator.estimateSize(event);
+                if (!queued.suspended && queued.size > threshold
+                        && !queued.transferCommand
+                        && !isTransferring(event.getSession())) {
+                    queued.suspended = true;
+                    event.getSession().suspendRead();
+                }
+            }
+        }
+
+        public void polled(Object source, IoEvent event) {
+            QueuedEvents queued = getQueuedEvents(event.getSession());
+            synchronized (queued) {
+                queued.size -= estimator.estimateSize(event);
+
+                // the events of a session run one at a time, this one next
+                queued.transferCommand = mayTransfer(event);
+                if (queued.suspended
+                        && (queued.size <= threshold || queued.transferCommand)) {
+                    queued.suspended = false;
+                    event.getSession().resumeRead();
+                }
+            }
+        }
+
+        private boolean isTransferring(IoSession session) {
+            return new FtpIoSession(session, context).getDataConnection()
+                    .isDataConnectionInUse();
+        }
+
+        private boolean mayTransfer(IoEvent event) {
+            Object message = event.getParameter();
+            return message instanceof FtpRequest
+                    && DefaultFtpHandler.isTransferCommand(((FtpRequest) message)
+                            .getCommand());
+        }
+
+        private QueuedEvents getQueuedEvents(IoSession session) {
+            QueuedEvents queued = (QueuedEvents) session
+                    .getAttribute(ATTRIBUTE_QUEUED_EVENTS);
+            if (queued == null) {
+                queued = new QueuedEvents();
+                QueuedEvents existing = (QueuedEvents) session
+                        .setAttributeIfAbsent(ATTRIBUTE_QUEUED_EVENTS, queued);
+                if (existing != null) {
+                    queued = existing;
+                }
+            }
+            return queued;
+        }
+    }
+
+    /**
+     * The events of a session queued for the command threads
+     */
+    private static class QueuedEvents {
+
+        private int size = 0;
+
+        private boolean suspended = false;
+
+        private boolean transferCommand = false;
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.util.concurrent.Executor;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpHandler;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Filter handling ABOR, QUIT and STAT as soon as they are received while a
+ * transfer is in progress, rather than after the transfer as all other
+ * commands of the session. It must be placed after the codec and before the
+ * executor of the listener.
+ * 
+ * A transfer is in progress from the time it starts opening the data
+ * connection, so that a transfer waiting for the client to connect can be
+ * aborted as well. ABOR and QUIT abort the transfer by closing its sockets
+ * without blocking the I/O processor thread, freeing the data socket and
+ * the file at once. They are then passed on and executed in order, so that
+ * the reply of the aborted transfer is sent first. STAT is executed right
+ * away on a separate thread, reporting the status of the running transfer.
+ * As it is not passed on, it is logged here rather than by the
+ * {@link FtpLoggingFilter}.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class OutOfBandCommandFilter extends IoFilterAdapter {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(OutOfBandCommandFilter.class);
+
+    /**
+     * Logs the requests not passed on to the {@link FtpLoggingFilter}, in
+     * the same log
+     */
+    private final Logger requestLog = LoggerFactory
+            .getLogger(FtpLoggingFilter.class);
+
+    private final FtpServerContext context;
+
+    private final DefaultFtpHandler handler;
+
+    private final Executor executor;
+
+    /**
+     * Create a filter executing STAT with the handler
+     * 
+     * @param context
+     *            The server context
+     * @param handler
+     *            The handler executing STAT immediately, it must not wait
+     *            for the running transfer
+     * @param executor
+     *            The executor running STAT, off the I/O processor thread
+     */
+    public OutOfBandCommandFilter(FtpServerContext context,
+            DefaultFtpHandler handler, Executor executor) {
+        this.context = context;
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session,
+            Object message) throws Exception {
+        if (message instanceof FtpRequest) {
+            final FtpRequest request = (FtpRequest) message;
+            String command = request.getCommand();
+
+            if ("ABOR".equals(command) || "QUIT".equals(command)
+                    || "STAT".equals(command)) {
+                final FtpIoSession ftpSession = new FtpIoSession(session,
+                        context);
+                ServerDataConnectionFactory dataConnection = ftpSession
+                        .getDataConnection();
+
+                if (dataConnection.isDataConnectionInUse()) {
+                    if ("STAT".equals(command)) {
+                        requestLog.info("RECEIVED: {}", request
+                                .getRequestLine());
+                        executor.execute(new Runnable() {
+                            public void run() {
+                                try {
+                                    handler.messageReceivedOutOfBand(
+                                            ftpSession, request);
+                                } catch (Exception e) {
+                                    LOG.warn("Failed to execute STAT", e);
+                                }
+                            }
+                        });
+                        return;
+                    }
+
+                    LOG.debug("Aborting transfer on {}", command);
+                    dataConnection.abortDataConnection();
+                }
+            }
+        }
+
+        nextFilter.messageReceived(session, message);
+    }
+}
@@ -20,6 +20,8 @@
 package org.apache.ftpserver.ssl.impl;
 
 import java.security.GeneralSecurityException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
@@ -38,6 +40,11 @@ import org.apache.ftpserver.util.ClassUtils;
  * Used to configure the SSL settings for the control channel or the data
  * channel.
  * 
+ * The {@link SSLContext} for each protocol is created once and shared by all
+ * connections using this configuration. Sharing the context also shares its
+ * session cache, allowing data connections to resume the TLS session of the
+ * control connection rather than performing a full handshake.
+ * 
  * <strong><strong>Internal class, do not use directly.</strong></strong>
  *
  * @author The Apache MINA Project (dev@mina.apache.org)
@@ -57,6 +64,8 @@ public class DefaultSslConfiguration implements SslConfiguration {
 
     private String[] enabledCipherSuites;
 
+    private final ConcurrentMap<String, SSLContext> sslContexts = new ConcurrentHashMap<String, SSLContext>();
+
     /**
      * Internal constructor, do not use directly. Instead, use {@link SslConfigurationFactory}
      */
@@ -83,6 +92,22 @@ public class DefaultSslConfiguration implements SslConfiguration {
             protocol = sslProtocol;
         }
 
+        SSLContext ctx = sslContexts.get(protocol);
+        if (ctx == null) {
+            ctx = createSSLContext(protocol);
+
+            // keep the first context if created concurrently
+            SSLContext existing = sslContexts.putIfAbsent(protocol, ctx);
+            if (existing != null) {
+                ctx = existing;
+            }
+        }
+
+        return ctx;
+    }
+
+    private SSLContext createSSLContext(final String protocol)
+            throws GeneralSecurityException {
         KeyManager[] keyManagers = keyManagerFactory.getKeyManagers();
 
         // wrap key managers to allow us to control their behavior
@@ -98,7 +123,6 @@ public class DefaultSslConfiguration implements SslConfiguration {
         }
 
         // create SSLContext
-        // TODO revisit if we need caching of contexts.
         SSLContext ctx = SSLContext.getInstance(protocol);
 
         ctx.init(keyManagers, trustManagerFactory.getTrustManagers(), null);
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Strictly parses literal IPv4 and IPv6 addresses, without ever consulting
+ * the name service. Anything else, such as a host name or an address with an
+ * octet out of range, is rejected.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class InetAddressParser {
+
+    /**
+     * Parse a literal IPv4 or IPv6 address
+     * 
+     * @param host
+     *            The literal address
+     * @return The address, null if not a valid literal address
+     */
+    public static InetAddress parseLiteral(final String host) {
+        if (host.indexOf(':') != -1) {
+            return parseIpv6(host);
+        } else {
+            return parseIpv4(host);
+        }
+    }
+
+    /**
+     * Parse a dotted-decimal IPv4 address, made of four octets from 0 to 255
+     * 
+     * @param host
+     *            The literal address
+     * @return The address, null if not a valid IPv4 address
+     */
+    public static InetAddress parseIpv4(final String host) {
+        return toAddress(parseIpv4Bytes(host));
+    }
+
+    /**
+     * Parse an IPv6 address, in full or compressed form and optionally ending
+     * with an IPv4 address. Zone ids are not accepted.
+     * 
+     * @param host
+     *            The literal address
+     * @return The address, null if not a valid IPv6 address
+     */
+    public static InetAddress parseIpv6(final String host) {
+        String hex = host;
+
+        // replace a trailing IPv4 address by the two groups it stands for
+        int lastColon = host.lastIndexOf(':');
+        if (lastColon != -1 && host.indexOf('.', lastColon) != -1) {
+            byte[] ipv4 = parseIpv4Bytes(host.substring(lastColon + 1));
+            if (ipv4 == null) {
+                return null;
+            }
+            hex = host.substring(0, lastColon + 1)
+                    + Integer.toHexString(((ipv4[0] & 0xff) << 8)
+                            | (ipv4[1] & 0xff)) + ':'
+                    + Integer.toHexString(((ipv4[2] & 0xff) << 8)
+                            | (ipv4[3] & 0xff));
+        }
+
+        int[] before;
+        int[] after;
+        int compressed = hex.indexOf("::");
+        if (compressed == -1) {
+            before = parseGroups(hex);
+            after = new int[0];
+            if (before == null || before.length != 8) {
+                return null;
+            }
+        } else {
+            if (hex.indexOf("::", compressed + 1) != -1) {
+                return null;
+            }
+            before = parseGroups(hex.substring(0, compressed));
+            after = parseGroups(hex.substring(compressed + 2));
+            if (before == null || after == null
+                    || before.length + after.length > 7) {
+                return null;
+            }
+        }
+
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < before.length; i++) {
+            bytes[2 * i] = (byte) (before[i] >> 8);
+            bytes[2 * i + 1] = (byte) before[i];
+        }
+        for (int i = 0; i < after.length; i++) {
+            int index = 8 - after.length + i;
+            bytes[2 * index] = (byte) (after[i] >> 8);
+            bytes[2 * index + 1] = (byte) after[i];
+        }
+        return toAddress(bytes);
+    }
+
+    private static byte[] parseIpv4Bytes(final String host) {
+        String[] parts = host.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            String part = parts[i];
+
+            // no empty octets, no leading zeros which might be read as octal
+            if (part.length() == 0 || part.length() > 3
+                    || (part.length() > 1 && part.charAt(0) == '0')) {
+                return null;
+            }
+
+            int value = 0;
+            for (int j = 0; j < part.length(); j++) {
+                char c = part.charAt(j);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (value > 255) {
+                return null;
+            }
+            bytes[i] = (byte) value;
+        }
+        return bytes;
+    }
+
+    /**
+     * Parse colon separated groups of one to four hex digits
+     * 
+     * @return The groups, empty if the string is empty, null if invalid
+     */
+    private static int[] parseGroups(final String groups) {
+        if (groups.length() == 0) {
+            return new int[0];
+        }
+
+        String[] parts = groups.split(":", -1);
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (part.length() == 0 || part.length() > 4) {
+                return null;
+            }
+
+            int value = 0;
+            for (int j = 0; j < part.length(); j++) {
+                char c = part.charAt(j);
+                int digit;
+                if (c >= '0' && c <= '9') {
+                    digit = c - '0';
+                } else if (c >= 'a' && c <= 'f') {
+                    digit = c - 'a' + 10;
+                } else if (c >= 'A' && c <= 'F') {
+                    digit = c - 'A' + 10;
+                } else {
+                    return null;
+                }
+                value = (value << 4) | digit;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static InetAddress toAddress(final byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            // never consults the name service
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
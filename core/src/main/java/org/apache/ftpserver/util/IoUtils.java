@@ -32,6 +32,7 @@ import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.net.Socket;
 import java.util.Random;
 
 /**
@@ -172,6 +173,18 @@ public class IoUtils {
         }
     }
 
+    /**
+     * No exception <code>java.net.Socket</code> close method.
+     */
+    public final static void close(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (Exception ex) {
+            }
+        }
+    }
+
     /**
      * Get exception stack trace.
      */
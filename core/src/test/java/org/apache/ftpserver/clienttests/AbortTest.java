@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Tests ABOR, QUIT and STAT sent while a transfer is in progress
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class AbortTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.ftpserver.clienttests.ClientTestTemplate#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    private OutputStream startStore() throws Exception {
+        OutputStream os = client.storeFileStream(TEST_FILENAME);
+        os.write(new byte[100]);
+        os.flush();
+
+        waitForTransfer();
+        return os;
+    }
+
+    private void waitForTransfer() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (getActiveSession().getCurrentTransfer() != null) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("Transfer not started");
+    }
+
+    public void testAbortStore() throws Exception {
+        OutputStream os = startStore();
+
+        assertEquals(426, client.sendCommand("ABOR"));
+        assertEquals(226, client.getReply());
+        assertNull(getActiveSession().getCurrentTransfer());
+
+        try {
+            os.close();
+        } catch (Exception e) {
+            // the data connection is closed
+        }
+
+        assertTrue(client.sendNoOp());
+    }
+
+    public void testAbortRetrieve() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, new byte[20 * 1024 * 1024]);
+
+        InputStream is = client.retrieveFileStream(TEST_FILENAME);
+        assertTrue(is.read() != -1);
+        waitForTransfer();
+
+        assertEquals(426, client.sendCommand("ABOR"));
+        assertEquals(226, client.getReply());
+        assertNull(getActiveSession().getCurrentTransfer());
+        is.close();
+
+        assertTrue(client.sendNoOp());
+    }
+
+    public void testAbortWhileOpening() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, new byte[100]);
+
+        // the client never connects to the passive port
+        assertEquals(227, client.sendCommand("PASV"));
+        assertEquals(150, client.sendCommand("RETR " + TEST_FILENAME));
+        for (int i = 0; i < 100
+                && !getActiveSession().getDataConnection()
+                        .isDataConnectionInUse(); i++) {
+            Thread.sleep(50);
+        }
+
+        // aborted at once rather than after the data connection timed out
+        long start = System.currentTimeMillis();
+        assertEquals(425, client.sendCommand("ABOR"));
+        assertEquals(226, client.getReply());
+        assertTrue(System.currentTimeMillis() - start < 10000);
+
+        assertTrue(client.sendNoOp());
+    }
+
+    public void testStatDuringTransfer() throws Exception {
+        OutputStream os = startStore();
+
+        assertEquals(211, client.sendCommand("STAT"));
+        assertTrue(client.getReplyString().indexOf("Receiving") != -1);
+
+        os.close();
+        assertTrue(client.completePendingCommand());
+        assertEquals(100, TEST_FILE.length());
+    }
+
+    public void testQuitDuringTransfer() throws Exception {
+        startStore();
+
+        assertEquals(426, client.sendCommand("QUIT"));
+        assertEquals(221, client.getReply());
+    }
+}
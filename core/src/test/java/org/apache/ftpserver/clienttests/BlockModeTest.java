@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Tests for transfers in <code>MODE B</code>, keeping the data connection open
+* between transfers
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class BlockModeTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private static final String TEST_FILENAME2 = "test2.txt";
+
+    private static final File TEST_FILE2 = new File(ROOT_DIR, TEST_FILENAME2);
+
+    private static final Pattern PASV_REPLY = Pattern
+            .compile("\\((\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)\\)");
+
+    private Socket dataSocket;
+
+    private List<String> restartMarkers = new ArrayList<String>();
+
+    private int transfers = 0;
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super.createDataConnectionConfigurationFactory();
+        factory.setIdleTime(1);
+        return factory;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertEquals(200, client.sendCommand("MODE B"));
+    }
+
+    protected void tearDown() throws Exception {
+        if (dataSocket != null) {
+            dataSocket.close();
+        }
+
+        super.tearDown();
+    }
+
+    private void openDataConnection() throws Exception {
+        assertEquals(227, client.sendCommand("PASV"));
+        Matcher matcher = PASV_REPLY.matcher(client.getReplyString());
+        assertTrue(matcher.find());
+
+        String host = matcher.group(1) + "." + matcher.group(2) + "."
+                + matcher.group(3) + "." + matcher.group(4);
+        int dataPort = Integer.parseInt(matcher.group(5)) * 256
+                + Integer.parseInt(matcher.group(6));
+        dataSocket = new Socket(host, dataPort);
+        dataSocket.setSoTimeout(10000);
+    }
+
+    private byte[] readFile() throws IOException {
+        DataInputStream in = new DataInputStream(dataSocket.getInputStream());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        while (true) {
+            int descriptor = in.readUnsignedByte();
+            byte[] block = new byte[in.readUnsignedShort()];
+            in.readFully(block);
+
+            if ((descriptor & 16) != 0) {
+                restartMarkers.add(new String(block, "US-ASCII") + "="
+                        + baos.size());
+            } else {
+                baos.write(block);
+            }
+
+            if ((descriptor & 64) != 0) {
+                return baos.toByteArray();
+            }
+        }
+    }
+
+    private void writeBlock(final int descriptor, final byte[] data)
+            throws IOException {
+        OutputStream out = dataSocket.getOutputStream();
+        out.write(descriptor);
+        out.write(data.length >> 8);
+        out.write(data.length & 0xff);
+        out.write(data);
+        out.flush();
+    }
+
+    /**
+     * Get the reply expected when starting a transfer, the first transfer
+     * opens the data connection while later ones reuse it
+     */
+    private int openingReply() {
+        return transfers++ == 0 ? 150 : 125;
+    }
+
+    private byte[] retrieve(final String fileName) throws Exception {
+        assertEquals(openingReply(), client.sendCommand("RETR " + fileName));
+        byte[] data = readFile();
+        assertEquals(250, client.getReply());
+        return data;
+    }
+
+    private void assertDataConnectionClosed() throws IOException {
+        InputStream in = dataSocket.getInputStream();
+        try {
+            assertEquals(-1, in.read());
+        } catch (IOException e) {
+            // connection reset, ok
+        }
+    }
+
+    public void testRetrieveOverOneConnection() throws Exception {
+        byte[] testData = "Foo bar".getBytes("UTF-8");
+        byte[] testData2 = "Second file".getBytes("UTF-8");
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+        TestUtil.writeDataToFile(TEST_FILE2, testData2);
+
+        openDataConnection();
+
+        TestUtil.assertArraysEqual(testData, retrieve(TEST_FILENAME));
+        TestUtil.assertArraysEqual(testData2, retrieve(TEST_FILENAME2));
+        TestUtil.assertArraysEqual(testData, retrieve(TEST_FILENAME));
+    }
+
+    public void testStoreOverOneConnection() throws Exception {
+        openDataConnection();
+
+        assertEquals(150, client.sendCommand("STOR " + TEST_FILENAME));
+        writeBlock(0, "Foo ".getBytes("UTF-8"));
+        writeBlock(64, "bar".getBytes("UTF-8"));
+        assertEquals(250, client.getReply());
+
+        assertEquals(125, client.sendCommand("STOR " + TEST_FILENAME2));
+        writeBlock(64, "Second file".getBytes("UTF-8"));
+        assertEquals(250, client.getReply());
+
+        TestUtil.assertFileEqual("Foo bar".getBytes("UTF-8"), TEST_FILE);
+        TestUtil.assertFileEqual("Second file".getBytes("UTF-8"), TEST_FILE2);
+    }
+
+    public void testStoreUniqueOverOneConnection() throws Exception {
+        openDataConnection();
+
+        assertEquals(150, client.sendCommand("STOU"));
+        writeBlock(64, "Foo bar".getBytes("UTF-8"));
+        assertEquals(250, client.getReply());
+        assertTrue(client.getReplyString(), client.getReplyString().indexOf(
+                "Transfer complete") != -1);
+
+        assertEquals(125, client.sendCommand("STOU"));
+        writeBlock(64, "Second file".getBytes("UTF-8"));
+        assertEquals(250, client.getReply());
+    }
+
+    public void testListThenRetrieve() throws Exception {
+        byte[] testData = "Foo bar".getBytes("UTF-8");
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        openDataConnection();
+
+        assertEquals(openingReply(), client.sendCommand("NLST"));
+        String listing = new String(readFile(), "UTF-8");
+        assertEquals(250, client.getReply());
+        assertTrue(listing.indexOf(TEST_FILENAME) != -1);
+
+        TestUtil.assertArraysEqual(testData, retrieve(TEST_FILENAME));
+    }
+
+    public void testRestartMarkersSent() throws Exception {
+        byte[] testData = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < testData.length; i++) {
+            testData[i] = (byte) i;
+        }
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        openDataConnection();
+
+        TestUtil.assertArraysEqual(testData, retrieve(TEST_FILENAME));
+
+        // markers are file offsets, equal to the data received before them
+        assertTrue(restartMarkers.size() >= 2);
+        for (int i = 0; i < restartMarkers.size(); i++) {
+            String[] marker = restartMarkers.get(i).split("=");
+            assertEquals(marker[1], marker[0]);
+        }
+    }
+
+    public void testRestartFromMarker() throws Exception {
+        byte[] testData = "Foo bar".getBytes("UTF-8");
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        openDataConnection();
+
+        assertEquals(350, client.sendCommand("REST 4"));
+        TestUtil.assertArraysEqual("bar".getBytes("UTF-8"),
+                retrieve(TEST_FILENAME));
+    }
+
+    public void testRestartMarkerReceived() throws Exception {
+        openDataConnection();
+
+        assertEquals(150, client.sendCommand("STOR " + TEST_FILENAME));
+        writeBlock(0, "Foo ".getBytes("UTF-8"));
+        writeBlock(16, "m1".getBytes("US-ASCII"));
+        writeBlock(64, "bar".getBytes("UTF-8"));
+
+        assertEquals(110, client.getReply());
+        assertTrue(client.getReplyString().startsWith("110 MARK m1 = 4"));
+        assertEquals(250, client.getReply());
+
+        TestUtil.assertFileEqual("Foo bar".getBytes("UTF-8"), TEST_FILE);
+    }
+
+    public void testStoreWithoutEndOfFile() throws Exception {
+        openDataConnection();
+
+        assertEquals(150, client.sendCommand("STOR " + TEST_FILENAME));
+        writeBlock(0, "Foo ".getBytes("UTF-8"));
+        dataSocket.shutdownOutput();
+
+        assertEquals(551, client.getReply());
+        assertDataConnectionClosed();
+    }
+
+    public void testModeStreamClosesConnection() throws Exception {
+        byte[] testData = "Foo bar".getBytes("UTF-8");
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        openDataConnection();
+        TestUtil.assertArraysEqual(testData, retrieve(TEST_FILENAME));
+
+        assertEquals(200, client.sendCommand("MODE S"));
+        assertDataConnectionClosed();
+    }
+
+    public void testAbortClosesConnection() throws Exception {
+        byte[] testData = "Foo bar".getBytes("UTF-8");
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        openDataConnection();
+        TestUtil.assertArraysEqual(testData, retrieve(TEST_FILENAME));
+
+        assertEquals(226, client.sendCommand("ABOR"));
+        assertDataConnectionClosed();
+    }
+
+    public void testKeptConnectionTimesOut() throws Exception {
+        byte[] testData = "Foo bar".getBytes("UTF-8");
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        openDataConnection();
+        TestUtil.assertArraysEqual(testData, retrieve(TEST_FILENAME));
+
+        // not used within the idle time of one second
+        Thread.sleep(2000);
+        assertDataConnectionClosed();
+
+        assertEquals(503, client.sendCommand("RETR " + TEST_FILENAME));
+    }
+
+    public void testFeat() throws Exception {
+        client.sendCommand("FEAT");
+        assertTrue(client.getReplyString().indexOf("\r\n MODE B\r\n") != -1);
+    }
+}
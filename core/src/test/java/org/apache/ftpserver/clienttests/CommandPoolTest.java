@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.OutputStream;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.listener.nio.NioListener;
+
+/**
+*
+* Tests the command thread pool settings of the listener
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class CommandPoolTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setCommandPoolMaxSize(1);
+        listenerFactory.setCommandQueueThreshold(65536);
+        listenerFactory.setThreadPerSession(true);
+
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        return serverFactory;
+    }
+
+    public void testBlockingTransferDoesNotDelayOtherSessions()
+            throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        // the STOR command keeps its thread until the upload is done
+        OutputStream os = client.storeFileStream(TEST_FILENAME);
+        os.write(1);
+        os.flush();
+
+        FTPClient other = new FTPClient();
+        other.setDefaultTimeout(5000);
+        try {
+            other.connect("localhost", port);
+            assertTrue(other.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            assertTrue(other.sendNoOp());
+        } finally {
+            other.disconnect();
+        }
+
+        os.close();
+        assertTrue(client.completePendingCommand());
+    }
+
+    public void testCopiedByListenerFactory() throws Exception {
+        NioListener listener = (NioListener) new ListenerFactory(server
+                .getListener("default")).createListener();
+
+        assertEquals(0, listener.getCommandPoolCoreSize());
+        assertEquals(1, listener.getCommandPoolMaxSize());
+        assertEquals(65536, listener.getCommandQueueThreshold());
+        assertTrue(listener.isThreadPerSession());
+    }
+
+    public void testInvalidCommandPoolSizes() throws Exception {
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setCommandPoolCoreSize(32);
+
+        try {
+            listenerFactory.createListener();
+            fail("Must throw FtpServerConfigurationException");
+        } catch (FtpServerConfigurationException e) {
+            // ok
+        }
+    }
+}
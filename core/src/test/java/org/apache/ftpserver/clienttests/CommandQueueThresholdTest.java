@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Tests that sessions with more queued commands than the command queue
+* threshold are throttled without stalling other sessions
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class CommandQueueThresholdTest extends ClientTestTemplate {
+
+    private static final int COMMAND_COUNT = 200;
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        // any queued event is above the threshold
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setCommandQueueThreshold(1);
+
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        return serverFactory;
+    }
+
+    public void testPipelinedCommandsAnswered() throws Exception {
+        Socket socket = new Socket("localhost", port);
+        try {
+            socket.setSoTimeout(10000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), "US-ASCII"));
+            assertTrue(in.readLine().startsWith("220"));
+
+            StringBuilder commands = new StringBuilder();
+            commands.append("USER " + ADMIN_USERNAME + "\r\n");
+            commands.append("PASS " + ADMIN_PASSWORD + "\r\n");
+            for (int i = 0; i < COMMAND_COUNT; i++) {
+                commands.append("NOOP\r\n");
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(commands.toString().getBytes("US-ASCII"));
+            out.flush();
+
+            assertTrue(in.readLine().startsWith("331"));
+            assertTrue(in.readLine().startsWith("230"));
+            for (int i = 0; i < COMMAND_COUNT; i++) {
+                assertTrue(in.readLine().startsWith("200"));
+
+                // other sessions are served while this one is throttled
+                if (i == COMMAND_COUNT / 2) {
+                    assertOtherSessionServed();
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testAbortWithCommandsQueuedDuringTransfer() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, new byte[20 * 1024 * 1024]);
+
+        Socket socket = new Socket("localhost", port);
+        Socket dataSocket = null;
+        try {
+            socket.setSoTimeout(10000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), "US-ASCII"));
+            OutputStream out = socket.getOutputStream();
+            assertTrue(in.readLine().startsWith("220"));
+
+            out.write(("USER " + ADMIN_USERNAME + "\r\nPASS "
+                    + ADMIN_PASSWORD + "\r\nPASV\r\n").getBytes("US-ASCII"));
+            out.flush();
+            assertTrue(in.readLine().startsWith("331"));
+            assertTrue(in.readLine().startsWith("230"));
+
+            String pasv = in.readLine();
+            assertTrue(pasv.startsWith("227"));
+            String[] address = pasv.substring(pasv.indexOf('(') + 1,
+                    pasv.indexOf(')')).split(",");
+            int dataPort = Integer.parseInt(address[4]) * 256
+                    + Integer.parseInt(address[5]);
+            dataSocket = new Socket("localhost", dataPort);
+
+            out.write(("RETR " + TEST_FILENAME + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+            assertTrue(in.readLine().startsWith("150"));
+
+            // the transfer stalls as the data is not read
+            InputStream dataIn = dataSocket.getInputStream();
+            assertTrue(dataIn.read() != -1);
+
+            // queued behind the transfer, above the threshold
+            StringBuilder commands = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                commands.append("NOOP\r\n");
+            }
+            commands.append("ABOR\r\n");
+            out.write(commands.toString().getBytes("US-ASCII"));
+            out.flush();
+
+            // ABOR is still read and aborts the transfer
+            assertTrue(in.readLine().startsWith("426"));
+            for (int i = 0; i < 10; i++) {
+                assertTrue(in.readLine().startsWith("200"));
+            }
+            assertTrue(in.readLine().startsWith("226"));
+        } finally {
+            if (dataSocket != null) {
+                dataSocket.close();
+            }
+            socket.close();
+        }
+    }
+
+    private void assertOtherSessionServed() throws Exception {
+        FTPClient other = new FTPClient();
+        other.setDefaultTimeout(5000);
+        try {
+            other.connect("localhost", port);
+            assertTrue(other.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            assertTrue(other.sendNoOp());
+        } finally {
+            other.disconnect();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Tests for transfers in <code>MODE Z</code>
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class CompressedTransferTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private byte[] textData;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < 5000; i++) {
+            baos.write(("Line number " + i + " of the test data\r\n")
+                    .getBytes("UTF-8"));
+        }
+        textData = baos.toByteArray();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertEquals(200, client.sendCommand("MODE Z"));
+    }
+
+    private byte[] retrieveCompressed(final String fileName) throws Exception {
+        InputStream in = client.retrieveFileStream(fileName);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            baos.write(buffer, 0, count);
+        }
+        in.close();
+        assertTrue(client.completePendingCommand());
+        return baos.toByteArray();
+    }
+
+    private byte[] inflate(final byte[] compressed) throws Exception {
+        InputStream in = new InflaterInputStream(new ByteArrayInputStream(
+                compressed));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            baos.write(buffer, 0, count);
+        }
+        return baos.toByteArray();
+    }
+
+    public void testRetrieve() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, textData);
+
+        byte[] compressed = retrieveCompressed(TEST_FILENAME);
+
+        assertTrue(compressed.length < textData.length / 4);
+        TestUtil.assertArraysEqual(textData, inflate(compressed));
+    }
+
+    public void testRetrieveWithLevel() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, textData);
+
+        assertEquals(200, client.sendCommand("OPTS MODE Z LEVEL 1"));
+        byte[] fast = retrieveCompressed(TEST_FILENAME);
+
+        assertEquals(200, client.sendCommand("OPTS MODE Z LEVEL 9"));
+        byte[] best = retrieveCompressed(TEST_FILENAME);
+
+        assertTrue(best.length < fast.length);
+        TestUtil.assertArraysEqual(textData, inflate(fast));
+        TestUtil.assertArraysEqual(textData, inflate(best));
+    }
+
+    public void testRetrieveWithLevelZero() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, textData);
+
+        assertEquals(200, client.sendCommand("OPTS MODE Z LEVEL 0"));
+        byte[] compressed = retrieveCompressed(TEST_FILENAME);
+
+        assertTrue(compressed.length > textData.length);
+        TestUtil.assertArraysEqual(textData, inflate(compressed));
+    }
+
+    public void testInvalidLevel() throws Exception {
+        assertEquals(501, client.sendCommand("OPTS MODE Z LEVEL 10"));
+        assertEquals(501, client.sendCommand("OPTS MODE Z LEVEL foo"));
+        assertEquals(501, client.sendCommand("OPTS MODE Z"));
+        assertEquals(501, client.sendCommand("OPTS MODE S LEVEL 1"));
+    }
+
+    public void testRetrieveCompressedExtension() throws Exception {
+        File zipFile = new File(ROOT_DIR, "test.zip");
+        TestUtil.writeDataToFile(zipFile, textData);
+
+        byte[] compressed = retrieveCompressed(zipFile.getName());
+
+        // sent without compression
+        assertTrue(compressed.length > textData.length);
+        TestUtil.assertArraysEqual(textData, inflate(compressed));
+    }
+
+    public void testRetrieveHighEntropy() throws Exception {
+        byte[] randomData = new byte[100000];
+        new Random().nextBytes(randomData);
+        TestUtil.writeDataToFile(TEST_FILE, randomData);
+
+        byte[] compressed = retrieveCompressed(TEST_FILENAME);
+
+        TestUtil.assertArraysEqual(randomData, inflate(compressed));
+    }
+
+    public void testStore() throws Exception {
+        OutputStream out = new DeflaterOutputStream(client
+                .storeFileStream(TEST_FILENAME));
+        out.write(textData);
+        out.close();
+        assertTrue(client.completePendingCommand());
+
+        TestUtil.assertFileEqual(textData, TEST_FILE);
+    }
+}
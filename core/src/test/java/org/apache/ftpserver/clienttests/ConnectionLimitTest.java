@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.listener.nio.NioListener;
+
+/**
+*
+* Tests the connection limits of the listener
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class ConnectionLimitTest extends ClientTestTemplate {
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setMaxConnections(10);
+        listenerFactory.setMaxConnectionsPerIp(2);
+
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        return serverFactory;
+    }
+
+    public void testMaxConnectionsPerIp() throws Exception {
+        FTPClient second = new FTPClient();
+        second.connect("localhost", port);
+        assertTrue(second.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        FTPClient third = new FTPClient();
+        try {
+            third.connect("localhost", port);
+            fail("Must be rejected");
+        } catch (FTPConnectionClosedException e) {
+            assertEquals(421, third.getReplyCode());
+        } finally {
+            third.disconnect();
+        }
+
+        second.logout();
+        second.disconnect();
+
+        // wait for the server to see the closed connection
+        for (int i = 0; i < 20; i++) {
+            if (server.getListener("default").getActiveSessions().size() == 1) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+
+        third.connect("localhost", port);
+        assertTrue(third.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        third.disconnect();
+    }
+
+    public void testCopiedByListenerFactory() throws Exception {
+        NioListener listener = (NioListener) new ListenerFactory(server
+                .getListener("default")).createListener();
+
+        assertEquals(10, listener.getMaxConnections());
+        assertEquals(2, listener.getMaxConnectionsPerIp());
+        assertEquals(0, listener.getMaxConnectionRatePerIp());
+    }
+
+    public void testInvalidConnectionLimit() throws Exception {
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setMaxConnectionsPerIp(-1);
+
+        try {
+            listenerFactory.createListener();
+            fail("Must throw FtpServerConfigurationException");
+        } catch (FtpServerConfigurationException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Tests that data connections requested by PORT or PASV are closed when not
+* opened within the idle time
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class DataConnectionExpiryTest extends ClientTestTemplate {
+
+    private static final Pattern PASV_REPLY = Pattern
+            .compile("\\(\\d+,\\d+,\\d+,\\d+,(\\d+),(\\d+)\\)");
+
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super
+                .createDataConnectionConfigurationFactory();
+        factory.setIdleTime(1);
+        return factory;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    protected FtpStatistics getStatistics() {
+        return server.getServerContext().getFtpStatistics();
+    }
+
+    protected void waitForExpired(final int count) throws Exception {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (getStatistics().getTotalExpiredDataConnectionNumber() < count
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+    }
+
+    public void testPassiveExpires() throws Exception {
+        assertEquals(227, client.sendCommand("PASV"));
+        Matcher matcher = PASV_REPLY.matcher(client.getReplyString());
+        assertTrue(matcher.find());
+        int dataPort = Integer.parseInt(matcher.group(1)) * 256
+                + Integer.parseInt(matcher.group(2));
+
+        waitForExpired(1);
+
+        assertEquals(1, getStatistics().getTotalExpiredDataConnectionNumber());
+        assertEquals(1, getStatistics().getTotalReleasedPassivePortNumber());
+
+        try {
+            new Socket("localhost", dataPort).close();
+            fail("Passive port must be closed");
+        } catch (ConnectException e) {
+            // ok
+        }
+
+        // a new PASV works
+        assertEquals(227, client.sendCommand("PASV"));
+    }
+
+    public void testTransferAfterPassiveExpired() throws Exception {
+        TestUtil.writeDataToFile(new File(ROOT_DIR, "test.txt"), new byte[100]);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        assertEquals(227, client.sendCommand("PASV"));
+        waitForExpired(1);
+
+        // the expired data connection must be requested again
+        assertEquals(503, client.sendCommand("RETR test.txt"));
+        assertEquals(503, client.sendCommand("LIST"));
+        assertTrue(client.sendNoOp());
+    }
+
+    public void testActiveExpires() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0);
+        try {
+            client.port(InetAddress.getByName("localhost"), serverSocket
+                    .getLocalPort());
+
+            waitForExpired(1);
+
+            assertEquals(1, getStatistics()
+                    .getTotalExpiredDataConnectionNumber());
+            assertEquals(0, getStatistics().getTotalReleasedPassivePortNumber());
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    public void testUsedDataConnectionNotExpired() throws Exception {
+        client.enterLocalPassiveMode();
+        assertNotNull(client.listFiles());
+        assertNotNull(client.listFiles());
+
+        Thread.sleep(1500);
+
+        assertEquals(0, getStatistics().getTotalExpiredDataConnectionNumber());
+        assertTrue(client.sendNoOp());
+    }
+
+    public void testReplacedDataConnectionNotExpired() throws Exception {
+        assertEquals(227, client.sendCommand("PASV"));
+        Thread.sleep(600);
+        assertEquals(227, client.sendCommand("PASV"));
+        Thread.sleep(600);
+
+        // only the second data connection expires
+        waitForExpired(1);
+        Thread.sleep(300);
+        assertEquals(1, getStatistics().getTotalExpiredDataConnectionNumber());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+/**
+*
+* Tests that EPRT only accepts valid literal addresses of the given network
+* protocol
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class EprtTest extends ClientTestTemplate {
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    public void testValidAddress() throws Exception {
+        assertEquals(200, client.sendCommand("EPRT", "|1|127.0.0.1|2121|"));
+    }
+
+    public void testInvalidAddress() throws Exception {
+        assertEquals(501, client.sendCommand("EPRT", "|1|999.1.1.1|2121|"));
+        assertEquals(501, client.sendCommand("EPRT", "|1|1..2|2121|"));
+        assertEquals(501, client.sendCommand("EPRT", "|1|....|2121|"));
+        assertEquals(501, client.sendCommand("EPRT", "|1|localhost|2121|"));
+        assertEquals(501, client.sendCommand("EPRT", "|2|1:::2|2121|"));
+        assertEquals(501, client.sendCommand("EPRT", "|2|127.0.0.1|2121|"));
+        assertEquals(501, client.sendCommand("EPRT", "|1|::1|2121|"));
+    }
+
+    public void testUnsupportedProtocol() throws Exception {
+        assertEquals(522, client.sendCommand("EPRT", "|3|127.0.0.1|2121|"));
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.filesystem.nativefs.DurabilityPolicy;
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+
+/**
+*
+* Runs the {@link StoreTest} syncing uploaded files using group commit
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class GroupCommitStoreTest extends StoreTest {
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        NativeFileSystemFactory fileSystemFactory = new NativeFileSystemFactory();
+        fileSystemFactory.setDurabilityPolicy(DurabilityPolicy.GROUP_COMMIT);
+        serverFactory.setFileSystem(fileSystemFactory);
+
+        return serverFactory;
+    }
+}
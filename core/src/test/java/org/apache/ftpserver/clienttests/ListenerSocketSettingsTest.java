@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.listener.nio.NioListener;
+import org.apache.mina.transport.socket.SocketSessionConfig;
+
+/**
+*
+* Tests the acceptor and socket settings of the listener
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class ListenerSocketSettingsTest extends ClientTestTemplate {
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setIoProcessorCount(1);
+        listenerFactory.setBacklog(10);
+        listenerFactory.setReadBufferSize(64);
+        listenerFactory.setMinReadBufferSize(16);
+        listenerFactory.setMaxReadBufferSize(256);
+        listenerFactory.setTcpNoDelay(true);
+
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        return serverFactory;
+    }
+
+    private SocketSessionConfig getSessionConfig() {
+        return (SocketSessionConfig) getActiveSession().getConfig();
+    }
+
+    public void testSessionConfig() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        assertTrue(getSessionConfig().isTcpNoDelay());
+        assertEquals(16, getSessionConfig().getMinReadBufferSize());
+        assertEquals(256, getSessionConfig().getMaxReadBufferSize());
+    }
+
+    public void testReadBufferShrinksForShortCommands() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(client.sendNoOp());
+        }
+
+        assertEquals(16, getSessionConfig().getReadBufferSize());
+    }
+
+    public void testCommandLongerThanReadBuffer() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        StringBuffer dir = new StringBuffer();
+        for (int i = 0; i < 50; i++) {
+            dir.append("dir");
+        }
+        assertTrue(client.makeDirectory(dir.toString()));
+        assertTrue(client.changeWorkingDirectory(dir.toString()));
+        assertEquals("/" + dir, client.printWorkingDirectory());
+    }
+
+    public void testCopiedByListenerFactory() throws Exception {
+        NioListener listener = (NioListener) new ListenerFactory(server
+                .getListener("default")).createListener();
+
+        assertEquals(1, listener.getIoProcessorCount());
+        assertEquals(10, listener.getBacklog());
+        assertEquals(64, listener.getReadBufferSize());
+        assertEquals(16, listener.getMinReadBufferSize());
+        assertEquals(256, listener.getMaxReadBufferSize());
+        assertEquals(512, listener.getReceiveBufferSize());
+        assertTrue(listener.isTcpNoDelay());
+    }
+
+    public void testInvalidReadBufferSizes() throws Exception {
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setMinReadBufferSize(4096);
+
+        try {
+            listenerFactory.createListener();
+            fail("Must throw FtpServerConfigurationException");
+        } catch (FtpServerConfigurationException e) {
+            // ok
+        }
+    }
+}
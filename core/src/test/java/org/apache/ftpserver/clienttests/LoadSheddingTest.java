@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.impl.LoadMonitor;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.listener.nio.NioListener;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Tests shedding load when the listener is overloaded
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class LoadSheddingTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setOverloadQueueDepth(1000);
+        listenerFactory.setOverloadLatency(100);
+        listenerFactory.setOverloadIdleTimeout(5);
+
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        return serverFactory;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    private LoadMonitor getLoadMonitor() {
+        return ((NioListener) server.getListener("default")).getLoadMonitor();
+    }
+
+    /**
+     * Record slow commands and wait for them to be evaluated
+     */
+    private void overload() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            getLoadMonitor().sessionStarted(5000);
+        }
+        Thread.sleep(1100);
+        assertTrue(getLoadMonitor().isOverloaded());
+    }
+
+    private void recover() throws Exception {
+        Thread.sleep(1100);
+        assertFalse(getLoadMonitor().isOverloaded());
+    }
+
+    public void testNotOverloaded() throws Exception {
+        assertFalse(getLoadMonitor().isOverloaded());
+        assertFalse(450 == client.sendCommand("MD5 foo"));
+    }
+
+    public void testNewSessionRejected() throws Exception {
+        overload();
+
+        FTPClient other = new FTPClient();
+        try {
+            other.connect("localhost", port);
+            fail("Must be rejected");
+        } catch (FTPConnectionClosedException e) {
+            assertEquals(421, other.getReplyCode());
+        } finally {
+            other.disconnect();
+        }
+
+        // existing sessions continue
+        assertTrue(client.sendNoOp());
+
+        recover();
+        other.connect("localhost", port);
+        assertTrue(other.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        other.disconnect();
+    }
+
+    public void testExpensiveCommandsRefused() throws Exception {
+        overload();
+
+        assertEquals(450, client.sendCommand("MD5 foo"));
+        assertEquals(450, client.sendCommand("MMD5 foo,bar"));
+        assertEquals(450, client.sendCommand("LIST -R"));
+        assertEquals(257, client.sendCommand("PWD"));
+
+        recover();
+        assertFalse(450 == client.sendCommand("MD5 foo"));
+    }
+
+    public void testIdleTimeoutShortened() throws Exception {
+        int idleTime = getActiveSession().getConfig().getBothIdleTime();
+
+        overload();
+        assertIdleTime(5);
+
+        recover();
+        assertIdleTime(idleTime);
+    }
+
+    /**
+     * Wait for the idle time to be updated, which is done in the background
+     */
+    private void assertIdleTime(int expected) throws Exception {
+        for (int i = 0; i < 50
+                && getActiveSession().getConfig().getBothIdleTime() != expected; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, getActiveSession().getConfig().getBothIdleTime());
+    }
+
+    public void testEventsBehindTransferNotCounted() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, new byte[4 * 1024 * 1024]);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        // the events of the session, such as sending the 150 reply, are
+        // queued behind the running transfer
+        InputStream is = client.retrieveFileStream(TEST_FILENAME);
+        assertTrue(is.read() != -1);
+        Thread.sleep(200);
+        assertEquals(0, getLoadMonitor().getQueueDepth());
+
+        while (is.read() != -1) {
+            // drain the rest of the file
+        }
+        is.close();
+        assertTrue(client.completePendingCommand());
+    }
+
+    public void testCopiedByListenerFactory() throws Exception {
+        NioListener listener = (NioListener) new ListenerFactory(server
+                .getListener("default")).createListener();
+
+        assertEquals(1000, listener.getOverloadQueueDepth());
+        assertEquals(100, listener.getOverloadLatency());
+        assertEquals(5, listener.getOverloadIdleTimeout());
+    }
+
+    public void testInvalidOverloadLimit() throws Exception {
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setOverloadLatency(-1);
+
+        try {
+            listenerFactory.createListener();
+            fail("Must throw FtpServerConfigurationException");
+        } catch (FtpServerConfigurationException e) {
+            // ok
+        }
+    }
+}
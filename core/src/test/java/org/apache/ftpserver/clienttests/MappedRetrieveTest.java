@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Runs the {@link RetrieveTest} reading all files from memory mapped windows
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class MappedRetrieveTest extends RetrieveTest {
+
+    private static final String TEST_FILENAME = "test.bin";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        NativeFileSystemFactory fileSystemFactory = new NativeFileSystemFactory();
+        fileSystemFactory.setMappedReadThreshold(1);
+        serverFactory.setFileSystem(fileSystemFactory);
+
+        return serverFactory;
+    }
+
+    public void testRetrieveCompressed() throws Exception {
+        byte[] binaryData = new byte[1024 * 1024 + 17];
+        new Random().nextBytes(binaryData);
+
+        TestUtil.writeDataToFile(TEST_FILE, binaryData);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertEquals(200, client.sendCommand("MODE Z"));
+
+        InputStream in = new InflaterInputStream(client
+                .retrieveFileStream(TEST_FILENAME));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            baos.write(buffer, 0, count);
+        }
+        in.close();
+        assertTrue(client.completePendingCommand());
+
+        TestUtil.assertArraysEqual(binaryData, baos.toByteArray());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Tests that non-blocking transfers do not hold a command thread while
+* they are in progress
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class NonBlockingCommandThreadTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private final Map<String, String> commandThreads = Collections
+            .synchronizedMap(new HashMap<String, String>());
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        // a single command thread and no transfer threads, a transfer
+        // holding a thread would stall every other session
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setCommandPoolMaxSize(1);
+
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        // records the threads running the commands, holding up the
+        // completion of STOR so that the following command is queued
+        Map<String, Ftplet> ftplets = new HashMap<String, Ftplet>();
+        ftplets.put("threads", new DefaultFtplet() {
+            public FtpletResult beforeCommand(FtpSession session,
+                    FtpRequest request) throws FtpException, IOException {
+                commandThreads.put(request.getCommand(), Thread
+                        .currentThread().getName());
+                return FtpletResult.DEFAULT;
+            }
+
+            public FtpletResult afterCommand(FtpSession session,
+                    FtpRequest request, FtpReply reply) throws FtpException,
+                    IOException {
+                if ("STOR".equals(request.getCommand())) {
+                    commandThreads.put("after STOR", Thread.currentThread()
+                            .getName());
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                return FtpletResult.DEFAULT;
+            }
+        });
+        serverFactory.setFtplets(ftplets);
+
+        return serverFactory;
+    }
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super.createDataConnectionConfigurationFactory();
+        factory.setNonBlocking(true);
+        return factory;
+    }
+
+    public void testStoreDoesNotHoldCommandThread() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        OutputStream os = client.storeFileStream(TEST_FILENAME);
+        os.write(1);
+        os.flush();
+
+        assertOtherSessionServed();
+
+        os.close();
+        assertTrue(client.completePendingCommand());
+        assertEquals(1, TEST_FILE.length());
+    }
+
+    public void testRetrieveDoesNotHoldCommandThread() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, new byte[4 * 1024 * 1024]);
+
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        // read only the first byte, leaving the server waiting to write
+        InputStream is = client.retrieveFileStream(TEST_FILENAME);
+        assertEquals(0, is.read());
+
+        assertOtherSessionServed();
+
+        while (is.read() != -1) {
+            // drain the rest of the file
+        }
+        is.close();
+        assertTrue(client.completePendingCommand());
+    }
+
+    public void testCommandsAfterTransfer() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(client.storeFile(TEST_FILENAME,
+                    new ByteArrayInputStream(new byte[] { 1, 2, 3 })));
+            assertTrue(client.sendNoOp());
+            assertEquals(1, client.listFiles().length);
+            assertTrue(client.deleteFile(TEST_FILENAME));
+        }
+    }
+
+    public void testQueuedCommandsRunOnCommandThread() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                new byte[] { 1, 2, 3 })));
+        assertTrue(client.sendNoOp());
+
+        assertCommandThread(commandThreads.get("after STOR"));
+        assertCommandThread(commandThreads.get("NOOP"));
+    }
+
+    private void assertCommandThread(String threadName) {
+        assertNotNull(threadName);
+        assertFalse(threadName, threadName
+                .startsWith("FtpServer-DataConnection"));
+    }
+
+    private void assertOtherSessionServed() throws Exception {
+        FTPClient other = new FTPClient();
+        other.setDefaultTimeout(5000);
+        try {
+            other.connect("localhost", port);
+            assertTrue(other.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            assertTrue(other.sendNoOp());
+            assertEquals("/", other.printWorkingDirectory());
+        } finally {
+            other.disconnect();
+        }
+    }
+}
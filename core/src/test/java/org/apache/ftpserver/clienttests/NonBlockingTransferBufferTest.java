@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.TransferBufferPoolStatistics;
+
+/**
+*
+* Tests that non-blocking transfers borrow their buffers from the transfer
+* buffer pool and return them once done
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class NonBlockingTransferBufferTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super.createDataConnectionConfigurationFactory();
+        factory.setNonBlocking(true);
+        return factory;
+    }
+
+    private TransferBufferPoolStatistics getPoolStatistics() {
+        return server.getListener("default").getDataConnectionConfiguration()
+                .getTransferBufferPoolStatistics();
+    }
+
+    /**
+     * Wait for the buffers to be returned, which may happen just after the
+     * reply has been sent
+     */
+    private void assertNoActiveBuffers() throws Exception {
+        for (int i = 0; i < 50 && getPoolStatistics().getActiveBuffers() != 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, getPoolStatistics().getActiveBuffers());
+    }
+
+    public void testStoreReusesBuffer() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(client.storeFile(TEST_FILENAME,
+                    new ByteArrayInputStream(new byte[] { 1, 2, 3 })));
+            assertNoActiveBuffers();
+        }
+
+        assertEquals(3, TEST_FILE.length());
+        assertEquals(1, getPoolStatistics().getAllocatedBuffers());
+        assertEquals(1, getPoolStatistics().getIdleBuffers());
+    }
+}
@@ -21,6 +21,9 @@ package org.apache.ftpserver.clienttests;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.Random;
+
+import org.apache.commons.net.ftp.FTP;
 
 import org.apache.ftpserver.test.TestUtil;
 
@@ -116,6 +119,42 @@ public class RetrieveTest extends ClientTestTemplate {
         TestUtil.assertArraysEqual(expected, baos.toByteArray());
     }
 
+    public void testRetrieveBinary() throws Exception {
+        // larger than a single zero-copy chunk
+        byte[] binaryData = new byte[1024 * 1024 + 17];
+        new Random().nextBytes(binaryData);
+
+        TestUtil.writeDataToFile(TEST_FILE, binaryData);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+
+        TestUtil.assertArraysEqual(binaryData, baos.toByteArray());
+    }
+
+    public void testRetrieveBinaryWithRestart() throws Exception {
+        int skipLen = 300 * 1024;
+
+        byte[] binaryData = new byte[1024 * 1024 + 17];
+        new Random().nextBytes(binaryData);
+
+        TestUtil.writeDataToFile(TEST_FILE, binaryData);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.setRestartOffset(skipLen);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+
+        int len = binaryData.length - skipLen;
+        byte[] expected = new byte[len];
+        System.arraycopy(binaryData, skipLen, expected, 0, len);
+
+        TestUtil.assertArraysEqual(expected, baos.toByteArray());
+    }
+
     public void testRetrieveWithPath() throws Exception {
         File dir = new File(ROOT_DIR, "foo/bar");
         dir.mkdirs();
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* Runs the {@link StorePassiveTest} with shared passive listening sockets
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class SharedPassiveStoreTest extends StorePassiveTest {
+
+    private static final byte[] DATA = "TESTDATA".getBytes();
+
+    private int sharedPort;
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super.createDataConnectionConfigurationFactory();
+        try {
+            sharedPort = TestUtil.findFreePort(12666);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        factory.setSharedPassivePorts(Integer.toString(sharedPort));
+        return factory;
+    }
+
+    public void testPassivePortShared() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(client.storeFile("shared" + i,
+                    new ByteArrayInputStream(DATA)));
+            assertEquals(sharedPort, client.getPassivePort());
+        }
+    }
+
+    public void testFallbackToDedicatedPort() throws Exception {
+        // a second session from the same client address can not share the
+        // port with the first one while it is waiting for a data connection
+        client.pasv();
+
+        FTPClient other = createFTPClient();
+        try {
+            other.connect("localhost", port);
+            other.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+            other.setRemoteVerificationEnabled(false);
+            other.enterLocalPassiveMode();
+
+            assertTrue(other.storeFile("other", new ByteArrayInputStream(
+                    DATA)));
+            assertTrue(other.getPassivePort() != sharedPort);
+        } finally {
+            other.disconnect();
+        }
+    }
+}
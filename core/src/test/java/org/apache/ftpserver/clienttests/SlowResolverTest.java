@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.impl.CachedInetAddress;
+import org.apache.ftpserver.impl.DefaultDataConnectionConfiguration;
+import org.apache.ftpserver.impl.PassivePorts;
+import org.apache.ftpserver.listener.ListenerFactory;
+
+/**
+*
+* Tests that data connections are set up without consulting the name service
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class SlowResolverTest extends ClientTestTemplate {
+
+    /**
+     * Counts the lookups, taking a long time for lookups once the server has
+     * been configured
+     */
+    private static class SlowResolver implements CachedInetAddress.Resolver {
+        private volatile int lookups = 0;
+
+        private volatile boolean slow = false;
+
+        public InetAddress resolve(final String host)
+                throws UnknownHostException {
+            lookups++;
+            if (slow) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    // continue
+                }
+            }
+            return InetAddress.getByName("127.0.0.1");
+        }
+    }
+
+    private SlowResolver resolver = new SlowResolver();
+
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        DataConnectionConfigurationFactory dccFactory = new DataConnectionConfigurationFactory();
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory
+                .setDataConnectionConfiguration(new DefaultDataConnectionConfiguration(
+                        dccFactory.getIdleTime(), null, true, false,
+                        "localhost", 0, "localhost", new PassivePorts(
+                                dccFactory.getPassivePorts(), true),
+                        "localhost", false, false, 0, dccFactory
+                                .getTransferBufferSize(), dccFactory
+                                .getTransferBufferPoolSize(), 0, 0, false, 0,
+                        -1, 0, dccFactory.getPassivePortWaitTimeout(),
+                        new int[0], resolver, false));
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        // any further lookup will stall
+        resolver.slow = true;
+
+        return serverFactory;
+    }
+
+    private void assertListFast() throws Exception {
+        long start = System.currentTimeMillis();
+        assertNotNull(client.listFiles());
+        assertTrue(System.currentTimeMillis() - start < 2500);
+    }
+
+    public void testPassive() throws Exception {
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.enterLocalPassiveMode();
+
+        for (int i = 0; i < 5; i++) {
+            assertListFast();
+        }
+
+        // each address was resolved once, when configured
+        assertEquals(3, resolver.lookups);
+    }
+
+    public void testActive() throws Exception {
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+
+        for (int i = 0; i < 5; i++) {
+            assertListFast();
+        }
+
+        assertEquals(3, resolver.lookups);
+    }
+}
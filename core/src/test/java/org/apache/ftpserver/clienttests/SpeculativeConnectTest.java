@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+
+/**
+*
+* Tests that data connections are established right after PORT or PASV when
+* speculative connects are enabled, and closed when no transfer command is
+* received within the idle time
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class SpeculativeConnectTest extends DataConnectionExpiryTest {
+
+    private static final Pattern PASV_REPLY = Pattern
+            .compile("\\(\\d+,\\d+,\\d+,\\d+,(\\d+),(\\d+)\\)");
+
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super
+                .createDataConnectionConfigurationFactory();
+        factory.setSpeculativeConnect(true);
+        return factory;
+    }
+
+    public void testActiveConnectedBeforeTransfer() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0);
+        try {
+            serverSocket.setSoTimeout(500);
+            client.port(InetAddress.getByName("localhost"), serverSocket
+                    .getLocalPort());
+
+            // the server connects without any transfer command
+            Socket dataSocket = serverSocket.accept();
+            try {
+                // and closes the data connection when not used in time
+                dataSocket.setSoTimeout(10000);
+                InputStream in = dataSocket.getInputStream();
+                assertEquals(-1, in.read());
+            } finally {
+                dataSocket.close();
+            }
+        } finally {
+            serverSocket.close();
+        }
+
+        assertTrue(client.sendNoOp());
+    }
+
+    public void testPassiveAcceptedClosedWhenExpired() throws Exception {
+        assertEquals(227, client.sendCommand("PASV"));
+        Matcher matcher = PASV_REPLY.matcher(client.getReplyString());
+        assertTrue(matcher.find());
+        int dataPort = Integer.parseInt(matcher.group(1)) * 256
+                + Integer.parseInt(matcher.group(2));
+
+        Socket dataSocket = new Socket("localhost", dataPort);
+        try {
+            dataSocket.setSoTimeout(10000);
+            InputStream in = dataSocket.getInputStream();
+            assertEquals(-1, in.read());
+        } finally {
+            dataSocket.close();
+        }
+
+        waitForExpired(1);
+        assertEquals(1, getStatistics().getTotalExpiredDataConnectionNumber());
+        assertTrue(client.sendNoOp());
+    }
+
+    public void testReplacedSpeculativeConnectionCancelled() throws Exception {
+        client.enterLocalPassiveMode();
+
+        // the data connection accepted for the first PASV is cancelled by
+        // the PASV sent for the listing
+        assertEquals(227, client.sendCommand("PASV"));
+        assertNotNull(client.listFiles());
+        assertNotNull(client.listFiles());
+
+        assertEquals(0, getStatistics().getTotalExpiredDataConnectionNumber());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.listener.nio.NioListener;
+
+/**
+*
+* Tests running transfers on a thread pool separate from the command threads
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class TransferPoolTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        // a single command thread, which would be held by any transfer
+        // running on it
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setCommandPoolMaxSize(1);
+        listenerFactory.setTransferPoolSize(1);
+        listenerFactory.setTransferQueueSize(1);
+
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        return serverFactory;
+    }
+
+    public void testTransferDoesNotDelayOtherSessions() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        OutputStream os = client.storeFileStream(TEST_FILENAME);
+        os.write(1);
+        os.flush();
+
+        FTPClient other = new FTPClient();
+        other.setDefaultTimeout(5000);
+        try {
+            other.connect("localhost", port);
+            assertTrue(other.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            assertTrue(other.sendNoOp());
+            assertEquals("/", other.printWorkingDirectory());
+        } finally {
+            other.disconnect();
+        }
+
+        os.close();
+        assertTrue(client.completePendingCommand());
+        assertEquals(1, TEST_FILE.length());
+    }
+
+    public void testCommandsAfterTransfer() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(client.storeFile(TEST_FILENAME,
+                    new ByteArrayInputStream(new byte[] { 1, 2, 3 })));
+            assertTrue(client.sendNoOp());
+            assertEquals(1, client.listFiles().length);
+            assertTrue(client.deleteFile(TEST_FILENAME));
+        }
+    }
+
+    public void testTransferRefusedWhenQueueIsFull() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        // takes the only transfer thread
+        OutputStream os = client.storeFileStream(TEST_FILENAME);
+        os.write(1);
+        os.flush();
+
+        // takes the only place in the queue
+        final FTPClient queued = new FTPClient();
+        queued.connect("localhost", port);
+        assertTrue(queued.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        queued.enterLocalPassiveMode();
+        final boolean[] stored = new boolean[1];
+        Thread queuedThread = new Thread() {
+            public void run() {
+                try {
+                    stored[0] = queued.storeFile("queued.txt",
+                            new ByteArrayInputStream(new byte[] { 1 }));
+                } catch (Exception e) {
+                    // stored is false
+                }
+            }
+        };
+        queuedThread.start();
+        Thread.sleep(500);
+
+        FTPClient refused = new FTPClient();
+        try {
+            refused.connect("localhost", port);
+            assertTrue(refused.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            refused.enterLocalPassiveMode();
+            assertNull(refused.storeFileStream("refused.txt"));
+            assertEquals(425, refused.getReplyCode());
+            assertTrue(refused.sendNoOp());
+        } finally {
+            refused.disconnect();
+        }
+
+        os.close();
+        assertTrue(client.completePendingCommand());
+
+        queuedThread.join(5000);
+        queued.disconnect();
+        assertTrue(stored[0]);
+        assertTrue(new File(ROOT_DIR, "queued.txt").exists());
+        assertFalse(new File(ROOT_DIR, "refused.txt").exists());
+    }
+
+    public void testCopiedByListenerFactory() throws Exception {
+        NioListener listener = (NioListener) new ListenerFactory(server
+                .getListener("default")).createListener();
+
+        assertEquals(1, listener.getTransferPoolSize());
+        assertEquals(1, listener.getTransferQueueSize());
+    }
+
+    public void testInvalidTransferPoolSize() throws Exception {
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setTransferPoolSize(-1);
+
+        try {
+            listenerFactory.createListener();
+            fail("Must throw FtpServerConfigurationException");
+        } catch (FtpServerConfigurationException e) {
+            // ok
+        }
+    }
+}
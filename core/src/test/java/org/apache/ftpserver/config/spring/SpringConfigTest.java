@@ -20,6 +20,7 @@
 package org.apache.ftpserver.config.spring;
 
 import java.net.InetAddress;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +29,7 @@ import junit.framework.TestCase;
 import org.apache.ftpserver.command.CommandFactory;
 import org.apache.ftpserver.command.impl.HELP;
 import org.apache.ftpserver.command.impl.STAT;
+import org.apache.ftpserver.filesystem.nativefs.DurabilityPolicy;
 import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
 import org.apache.ftpserver.impl.DefaultFtpServer;
 import org.apache.ftpserver.listener.Listener;
@@ -67,17 +69,51 @@ public class SpringConfigTest extends TestCase {
         assertEquals(2222, ((NioListener) listener).getPort());
         assertEquals(InetAddress.getByName("1.2.3.4"), InetAddress.getByName(((NioListener) listener)
                 .getServerAddress()));
+        assertEquals(3, ((NioListener) listener).getIoProcessorCount());
+        assertEquals(200, ((NioListener) listener).getBacklog());
+        assertEquals(1024, ((NioListener) listener).getReadBufferSize());
+        assertEquals(128, ((NioListener) listener).getMinReadBufferSize());
+        assertEquals(8192, ((NioListener) listener).getMaxReadBufferSize());
+        assertEquals(1024, ((NioListener) listener).getReceiveBufferSize());
+        assertTrue(((NioListener) listener).isTcpNoDelay());
+        assertEquals(2, ((NioListener) listener).getCommandPoolCoreSize());
+        assertEquals(32, ((NioListener) listener).getCommandPoolMaxSize());
+        assertEquals(65536, ((NioListener) listener).getCommandQueueThreshold());
+        assertTrue(((NioListener) listener).isThreadPerSession());
+        assertEquals(8, ((NioListener) listener).getTransferPoolSize());
+        assertEquals(100, ((NioListener) listener).getTransferQueueSize());
+        assertEquals(500, ((NioListener) listener).getMaxConnections());
+        assertEquals(20, ((NioListener) listener).getMaxConnectionsPerIp());
+        assertEquals(5, ((NioListener) listener).getMaxConnectionRatePerIp());
+        assertEquals(1000, ((NioListener) listener).getOverloadQueueDepth());
+        assertEquals(2000, ((NioListener) listener).getOverloadLatency());
+        assertEquals(30, ((NioListener) listener).getOverloadIdleTimeout());
         assertEquals(100, ((NioListener) listener)
                 .getDataConnectionConfiguration().getIdleTime());
         assertTrue(((NioListener) listener)
                 .getDataConnectionConfiguration().isActiveEnabled());
         assertTrue(((NioListener) listener)
                 .getDataConnectionConfiguration().isImplicitSsl());
+        assertTrue(((NioListener) listener)
+                .getDataConnectionConfiguration().isNonBlocking());
+        assertEquals(65536, ((NioListener) listener)
+                .getDataConnectionConfiguration().getTransferBufferSize());
+        assertEquals(131072, ((NioListener) listener)
+                .getDataConnectionConfiguration().getSendBufferSize());
+        assertTrue(((NioListener) listener)
+                .getDataConnectionConfiguration().isTcpNoDelay());
+        assertTrue(((NioListener) listener)
+                .getDataConnectionConfiguration().isSpeculativeConnect());
         
         assertEquals(InetAddress.getByName("1.2.3.4"), InetAddress.getByName(((NioListener) listener)
         		.getDataConnectionConfiguration().getActiveLocalAddress()) );
         assertEquals("123-125", ((NioListener) listener)
                 .getDataConnectionConfiguration().getPassivePorts());
+        assertEquals(5000, ((NioListener) listener)
+                .getDataConnectionConfiguration().getPassivePortWaitTimeout());
+        assertTrue(Arrays.equals(new int[] { 126, 127 },
+                ((NioListener) listener).getDataConnectionConfiguration()
+                        .getSharedPassivePorts()));
 
         List<Subnet> subnets = ((NioListener) listener).getBlockedSubnets();
         assertEquals(3, subnets.size());
@@ -112,6 +148,9 @@ public class SpringConfigTest extends TestCase {
         NativeFileSystemFactory fs = (NativeFileSystemFactory) server.getFileSystem();
         assertTrue(fs.isCreateHome());
         assertTrue(fs.isCaseInsensitive());
+        assertEquals(10485760, fs.getMappedReadThreshold());
+        assertEquals(DurabilityPolicy.PERIODIC_SYNC, fs.getDurabilityPolicy());
+        assertEquals(1048576, fs.getSyncInterval());
         
         assertEquals(2, server.getFtplets().size());
         assertEquals(123, ((TestFtplet)server.getFtplets().get("ftplet1")).getFoo());
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ftpserver.filesystem.nativefs.DurabilityPolicy;
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * Measures upload throughput for each {@link DurabilityPolicy}, with a number
+ * of concurrent sessions writing files through the native file system. Not run
+ * as part of the test suite, run it from the command line:
+ * 
+ * <pre>
+ * java org.apache.ftpserver.filesystem.nativefs.impl.DurabilityPolicyBenchmark [sessions] [files per session] [file size in kB]
+ * </pre>
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class DurabilityPolicyBenchmark {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File ROOT_DIR = new File(TEST_TMP_DIR, "benchmark");
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int fileSize = (args.length > 2 ? Integer.parseInt(args[2]) : 4096) * 1024;
+
+        System.out.println("Sessions: " + sessions + ", files per session: "
+                + files + ", file size: " + fileSize / 1024 + " kB");
+
+        for (DurabilityPolicy policy : DurabilityPolicy.values()) {
+            // warm up
+            run(policy, sessions, 2, fileSize);
+
+            long time = run(policy, sessions, files, fileSize);
+            double megabytes = (double) sessions * files * fileSize
+                    / (1024 * 1024);
+            System.out.println(policy + ": "
+                    + Math.round(megabytes * 1000 / time) + " MB/s, "
+                    + Math.round((double) sessions * files * 1000 / time)
+                    + " files/s");
+        }
+    }
+
+    private static long run(final DurabilityPolicy policy,
+            final int sessions, final int files, final int fileSize)
+            throws Exception {
+        IoUtils.delete(ROOT_DIR);
+        ROOT_DIR.mkdirs();
+
+        BaseUser user = new BaseUser();
+        user.setName("benchmark");
+        user.setHomeDirectory(ROOT_DIR.getAbsolutePath());
+        List<Authority> authorities = new ArrayList<Authority>();
+        authorities.add(new WritePermission());
+        user.setAuthorities(authorities);
+
+        NativeFileSystemFactory factory = new NativeFileSystemFactory();
+        factory.setDurabilityPolicy(policy);
+
+        final FileSystemView view = factory.createFileSystemView(user);
+        final byte[] buffer = new byte[64 * 1024];
+        final Exception[] failures = new Exception[sessions];
+
+        Thread[] threads = new Thread[sessions];
+        for (int i = 0; i < sessions; i++) {
+            final int session = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < files; j++) {
+                            OutputStream out = view.getFile(
+                                    "file-" + session + "-" + j)
+                                    .createOutputStream(0);
+                            try {
+                                for (int written = 0; written < fileSize; written += buffer.length) {
+                                    out.write(buffer, 0, Math.min(
+                                            buffer.length, fileSize - written));
+                                }
+                            } finally {
+                                out.close();
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures[session] = e;
+                    }
+                }
+            };
+        }
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < sessions; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < sessions; i++) {
+            threads[i].join();
+            if (failures[i] != null) {
+                throw failures[i];
+            }
+        }
+        long time = Math.max(1, System.currentTimeMillis() - start);
+
+        IoUtils.delete(ROOT_DIR);
+        return time;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class GroupCommitterTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final int THREADS = 8;
+
+    protected void setUp() throws Exception {
+        TEST_TMP_DIR.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        IoUtils.delete(TEST_TMP_DIR);
+    }
+
+    public void testCommit() throws Exception {
+        GroupCommitter committer = new GroupCommitter();
+
+        RandomAccessFile raf = new RandomAccessFile(new File(TEST_TMP_DIR,
+                "commit.bin"), "rw");
+        try {
+            raf.write(new byte[100]);
+            committer.commit(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(1, committer.getCommitCount());
+        assertEquals(1, committer.getBatchCount());
+    }
+
+    public void testConcurrentCommits() throws Exception {
+        final GroupCommitter committer = new GroupCommitter();
+        final IOException[] failures = new IOException[THREADS];
+
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10; j++) {
+                            RandomAccessFile raf = new RandomAccessFile(
+                                    new File(TEST_TMP_DIR, "commit" + index
+                                            + ".bin"), "rw");
+                            try {
+                                raf.write(new byte[1000]);
+                                committer.commit(raf.getChannel());
+                            } finally {
+                                raf.close();
+                            }
+                        }
+                    } catch (IOException e) {
+                        failures[index] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].join();
+            assertNull(failures[i]);
+        }
+
+        assertEquals(THREADS * 10, committer.getCommitCount());
+        assertTrue(committer.getBatchCount() <= committer.getCommitCount());
+    }
+
+    public void testCommitClosedFile() throws Exception {
+        GroupCommitter committer = new GroupCommitter();
+
+        RandomAccessFile raf = new RandomAccessFile(new File(TEST_TMP_DIR,
+                "closed.bin"), "rw");
+        raf.close();
+
+        try {
+            committer.commit(raf.getChannel());
+            fail("Must fail on closed file");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testSameFileSyncedOncePerBatch() throws Exception {
+        final GroupCommitter committer = new GroupCommitter(2);
+        final IOException[] failures = new IOException[THREADS];
+
+        final RandomAccessFile raf = new RandomAccessFile(new File(
+                TEST_TMP_DIR, "shared.bin"), "rw");
+        try {
+            raf.write(new byte[1000]);
+
+            Thread[] threads = new Thread[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                final int index = i;
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            committer.commit(raf.getChannel());
+                        } catch (IOException e) {
+                            failures[index] = e;
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (int i = 0; i < THREADS; i++) {
+                threads[i].join();
+                assertNull(failures[i]);
+            }
+        } finally {
+            raf.close();
+        }
+
+        assertEquals(THREADS, committer.getCommitCount());
+    }
+
+    public void testInvalidSyncWorkers() {
+        try {
+            new GroupCommitter(0);
+            fail("Must fail on non-positive number of sync workers");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+}
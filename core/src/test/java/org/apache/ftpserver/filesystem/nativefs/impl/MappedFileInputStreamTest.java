@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class MappedFileInputStreamTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File TEST_FILE = new File(TEST_TMP_DIR, "mapped.bin");
+
+    private byte[] testData;
+
+    protected void setUp() throws Exception {
+        TEST_TMP_DIR.mkdirs();
+
+        testData = new byte[10000];
+        new Random().nextBytes(testData);
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+    }
+
+    protected void tearDown() throws Exception {
+        IoUtils.delete(TEST_TMP_DIR);
+    }
+
+    private byte[] readAll(final MappedFileInputStream in, final int bufferSize)
+            throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            baos.write(buffer, 0, count);
+        }
+        in.close();
+        return baos.toByteArray();
+    }
+
+    public void testReadMultipleWindows() throws Exception {
+        MappedFileInputStream in = new MappedFileInputStream(
+                new RandomAccessFile(TEST_FILE, "r"), 0, 4096);
+
+        TestUtil.assertArraysEqual(testData, readAll(in, 1000));
+    }
+
+    public void testReadFromOffset() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "r");
+        raf.seek(5000);
+        MappedFileInputStream in = new MappedFileInputStream(raf, 5000, 4096);
+
+        assertEquals(5000, in.getChannel().position());
+        assertEquals(5000, in.available());
+
+        byte[] expected = new byte[5000];
+        System.arraycopy(testData, 5000, expected, 0, expected.length);
+        TestUtil.assertArraysEqual(expected, readAll(in, 3000));
+    }
+
+    public void testReadSingleBytes() throws Exception {
+        MappedFileInputStream in = new MappedFileInputStream(
+                new RandomAccessFile(TEST_FILE, "r"), 9998, 4096);
+
+        assertEquals(testData[9998] & 0xFF, in.read());
+        assertEquals(testData[9999] & 0xFF, in.read());
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    public void testSkip() throws Exception {
+        MappedFileInputStream in = new MappedFileInputStream(
+                new RandomAccessFile(TEST_FILE, "r"), 0, 4096);
+
+        assertEquals(10, in.read(new byte[10]));
+        assertEquals(9000, in.skip(9000));
+        assertEquals(testData[9010] & 0xFF, in.read());
+        assertEquals(989, in.skip(5000));
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    private void truncateTestFile(final long length) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void testTruncatedBeforeNextWindow() throws Exception {
+        MappedFileInputStream in = new MappedFileInputStream(
+                new RandomAccessFile(TEST_FILE, "r"), 0, 4096);
+
+        assertEquals(4096, in.read(new byte[4096]));
+        truncateTestFile(5000);
+
+        // the stream ends at the new end of the file
+        assertEquals(904, in.read(new byte[4096]));
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    public void testTruncatedWithinWindow() throws Exception {
+        MappedFileInputStream in = new MappedFileInputStream(
+                new RandomAccessFile(TEST_FILE, "r"), 0, 8192);
+
+        assertEquals(10, in.read(new byte[10]));
+        truncateTestFile(100);
+
+        // the window is not read beyond the new end of the file
+        assertEquals(90, in.read(new byte[8192]));
+        assertEquals(-1, in.read());
+        in.close();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.nativefs.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.filesystem.nativefs.DurabilityPolicy;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class SyncingFileOutputStreamTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File TEST_FILE = new File(TEST_TMP_DIR, "synced.bin");
+
+    private static class CountingFileSyncer extends FileSyncer {
+        private int syncs = 0;
+
+        private int closeSyncs = 0;
+
+        public CountingFileSyncer(DurabilityPolicy policy, long syncInterval) {
+            super(policy, syncInterval, new GroupCommitter());
+        }
+
+        void sync(FileChannel channel) throws IOException {
+            syncs++;
+            super.sync(channel);
+        }
+
+        void syncOnClose(FileChannel channel) throws IOException {
+            closeSyncs++;
+            super.syncOnClose(channel);
+        }
+    }
+
+    protected void setUp() throws Exception {
+        TEST_TMP_DIR.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        IoUtils.delete(TEST_TMP_DIR);
+    }
+
+    public void testPeriodicSync() throws Exception {
+        CountingFileSyncer syncer = new CountingFileSyncer(
+                DurabilityPolicy.PERIODIC_SYNC, 1000);
+
+        SyncingFileOutputStream out = new SyncingFileOutputStream(
+                new RandomAccessFile(TEST_FILE, "rw"), syncer);
+        out.write(new byte[600]);
+        assertEquals(0, syncer.syncs);
+        out.write(new byte[600]);
+        assertEquals(1, syncer.syncs);
+        out.write(new byte[10], 0, 10);
+        out.write(1);
+        assertEquals(1, syncer.syncs);
+        out.write(new byte[1000]);
+        assertEquals(2, syncer.syncs);
+
+        out.close();
+        assertEquals(1, syncer.closeSyncs);
+        assertEquals(2211, TEST_FILE.length());
+    }
+
+    public void testSyncOnClose() throws Exception {
+        CountingFileSyncer syncer = new CountingFileSyncer(
+                DurabilityPolicy.SYNC_ON_CLOSE, 1000);
+
+        SyncingFileOutputStream out = new SyncingFileOutputStream(
+                new RandomAccessFile(TEST_FILE, "rw"), syncer);
+        out.write(new byte[5000]);
+        assertEquals(0, syncer.syncs);
+
+        out.close();
+        out.close();
+        assertEquals(1, syncer.closeSyncs);
+        assertEquals(5000, TEST_FILE.length());
+    }
+
+    public void testGroupCommit() throws Exception {
+        CountingFileSyncer syncer = new CountingFileSyncer(
+                DurabilityPolicy.GROUP_COMMIT, 1000);
+
+        SyncingFileOutputStream out = new SyncingFileOutputStream(
+                new RandomAccessFile(TEST_FILE, "rw"), syncer);
+        out.write(new byte[5000]);
+        out.close();
+
+        assertEquals(0, syncer.syncs);
+        assertEquals(1, syncer.closeSyncs);
+        assertEquals(5000, TEST_FILE.length());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class AsciiLineConverterTest extends TestCase {
+
+    private static final byte[] EOL = "<EOL>".getBytes();
+
+    private String convert(boolean toClient, String... buffers)
+            throws Exception {
+        AsciiLineConverter converter = new AsciiLineConverter(toClient, EOL);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (String buffer : buffers) {
+            // surround the data with garbage to verify offset handling
+            byte[] data = ("xx" + buffer + "yy").getBytes("ASCII");
+            converter.convert(data, 2, data.length - 4, out);
+        }
+
+        return new String(out.toByteArray(), "ASCII");
+    }
+
+    public void testToClientNoLineEnding() throws Exception {
+        assertEquals("foo bar", convert(true, "foo bar"));
+    }
+
+    public void testToClientLf() throws Exception {
+        assertEquals("foo\r\nbar\r\n", convert(true, "foo\nbar\n"));
+    }
+
+    public void testToClientCrLf() throws Exception {
+        assertEquals("foo\r\nbar", convert(true, "foo\r\nbar"));
+    }
+
+    public void testToClientConsecutiveLf() throws Exception {
+        assertEquals("\r\n\r\nfoo", convert(true, "\n\nfoo"));
+    }
+
+    public void testToClientCrLfSpanningBuffers() throws Exception {
+        assertEquals("foo\r\nbar", convert(true, "foo\r", "\nbar"));
+    }
+
+    public void testToClientLfFirstInBuffer() throws Exception {
+        assertEquals("foo\r\nbar", convert(true, "foo", "\nbar"));
+    }
+
+    public void testToClientEmptyBuffer() throws Exception {
+        assertEquals("foo\r\nbar", convert(true, "foo\r", "", "\nbar"));
+    }
+
+    public void testFromClientNoLineEnding() throws Exception {
+        assertEquals("foo bar", convert(false, "foo bar"));
+    }
+
+    public void testFromClientCrLf() throws Exception {
+        assertEquals("foo<EOL>bar<EOL>", convert(false, "foo\r\nbar\r\n"));
+    }
+
+    public void testFromClientCrLfSpanningBuffers() throws Exception {
+        assertEquals("foo<EOL>bar", convert(false, "foo\r", "\nbar"));
+    }
+
+    public void testFromClientLfIgnored() throws Exception {
+        assertEquals("foobar", convert(false, "foo\nbar"));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class BlockInputStreamTest extends TestCase {
+
+    private static byte[] toBytes(final int[] values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static int readAll(final InputStream in, final byte[] data)
+            throws Exception {
+        int length = 0;
+        int count;
+        while ((count = in.read(data, length, data.length - length)) != -1) {
+            length += count;
+        }
+        return length;
+    }
+
+    public void testReadsBlocksUpToEndOfFile() throws Exception {
+        InputStream underlying = new ByteArrayInputStream(toBytes(new int[] {
+                0, 0, 2, 1, 2, 64, 0, 1, 3, 0, 0, 1, 4 }));
+        BlockInputStream in = new BlockInputStream(underlying);
+
+        byte[] data = new byte[10];
+        assertEquals(3, readAll(in, data));
+        assertEquals(1, data[0]);
+        assertEquals(2, data[1]);
+        assertEquals(3, data[2]);
+        assertTrue(in.isEndOfFile());
+        assertEquals(-1, in.read());
+
+        // the data of the next file is left on the connection
+        assertEquals(4, underlying.available());
+    }
+
+    public void testSingleByteReads() throws Exception {
+        BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(
+                toBytes(new int[] { 0, 0, 1, 7, 0, 0, 0, 64, 0, 1, 8 })));
+
+        assertEquals(7, in.read());
+        assertEquals(8, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    public void testLargeBlockCount() throws Exception {
+        byte[] block = new byte[3 + 300];
+        block[0] = 64;
+        block[1] = 1;
+        block[2] = 44;
+        BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(
+                block));
+
+        assertEquals(300, readAll(in, new byte[400]));
+    }
+
+    public void testRoundTrip() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BlockOutputStream out = new BlockOutputStream(baos, 4096);
+        out.write(data);
+        out.finish();
+
+        BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(
+                baos.toByteArray()));
+        byte[] read = new byte[data.length + 1];
+        assertEquals(data.length, readAll(in, read));
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i], read[i]);
+        }
+    }
+
+    public void testRestartMarker() throws Exception {
+        final List<String> markers = new ArrayList<String>();
+        BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(
+                toBytes(new int[] { 0, 0, 2, 1, 2, 16, 0, 2, 'a', 'b', 64, 0,
+                        1, 3 }))) {
+            protected void restartMarker(String marker, long position) {
+                markers.add(marker + "=" + position);
+            }
+        };
+
+        assertEquals(3, readAll(in, new byte[10]));
+        assertEquals(1, markers.size());
+        assertEquals("ab=2", markers.get(0));
+    }
+
+    public void testClosedBeforeEndOfFile() throws Exception {
+        BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(
+                toBytes(new int[] { 0, 0, 1, 1 })));
+
+        assertEquals(1, in.read());
+        try {
+            in.read();
+            fail("Must throw EOFException");
+        } catch (EOFException e) {
+            // ok
+        }
+        assertFalse(in.isEndOfFile());
+    }
+
+    public void testClosedWithinBlock() throws Exception {
+        BlockInputStream in = new BlockInputStream(new ByteArrayInputStream(
+                toBytes(new int[] { 64, 0, 3, 1 })));
+
+        try {
+            readAll(in, new byte[10]);
+            fail("Must throw EOFException");
+        } catch (EOFException e) {
+            // ok
+        }
+        assertFalse(in.isEndOfFile());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class BlockOutputStreamTest extends TestCase {
+
+    private ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    public void testFramesBlocks() throws Exception {
+        BlockOutputStream out = new BlockOutputStream(baos, 4);
+        out.write(new byte[] { 1, 2, 3, 4, 5, 6 });
+        out.finish();
+
+        assertEquals(new byte[] { 0, 0, 4, 1, 2, 3, 4, 64, 0, 2, 5, 6 }, baos
+                .toByteArray());
+        assertTrue(out.isFinished());
+    }
+
+    public void testCollectsSmallWrites() throws Exception {
+        BlockOutputStream out = new BlockOutputStream(baos, 100);
+        out.write(1);
+        out.write(new byte[] { 2, 3 });
+        assertEquals(0, baos.size());
+
+        out.flush();
+        assertEquals(new byte[] { 0, 0, 3, 1, 2, 3 }, baos.toByteArray());
+    }
+
+    public void testEmptyFile() throws Exception {
+        BlockOutputStream out = new BlockOutputStream(baos, 100);
+        out.finish();
+
+        assertEquals(new byte[] { 64, 0, 0 }, baos.toByteArray());
+    }
+
+    public void testLargeBlockCount() throws Exception {
+        BlockOutputStream out = new BlockOutputStream(baos,
+                BlockOutputStream.MAX_BLOCK_SIZE);
+        out.write(new byte[300]);
+        out.finish();
+
+        byte[] written = baos.toByteArray();
+        assertEquals(303, written.length);
+        assertEquals(64, written[0]);
+        assertEquals(1, written[1]);
+        assertEquals(44, written[2]);
+    }
+
+    public void testRestartMarker() throws Exception {
+        BlockOutputStream out = new BlockOutputStream(baos, 100);
+        out.write(new byte[] { 1, 2 });
+        out.writeRestartMarker("2");
+        out.finish();
+
+        assertEquals(new byte[] { 0, 0, 2, 1, 2, 16, 0, 1, '2', 64, 0, 0 },
+                baos.toByteArray());
+    }
+
+    public void testCloseDoesNotMarkEndOfFile() throws Exception {
+        BlockOutputStream out = new BlockOutputStream(baos, 100);
+        out.write(new byte[] { 1, 2 });
+        out.close();
+
+        assertEquals(0, baos.size());
+        assertFalse(out.isFinished());
+    }
+
+    public void testWriteAfterFinish() throws Exception {
+        BlockOutputStream out = new BlockOutputStream(baos, 100);
+        out.finish();
+
+        try {
+            out.write(1);
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testInvalidBlockSize() {
+        try {
+            new BlockOutputStream(baos, BlockOutputStream.MAX_BLOCK_SIZE + 1);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    private void assertEquals(final byte[] expected, final byte[] actual) {
+        assertEquals(toString(expected), toString(actual));
+    }
+
+    private String toString(final byte[] bytes) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < bytes.length; i++) {
+            sb.append(bytes[i]).append(' ');
+        }
+        return sb.toString();
+    }
+}
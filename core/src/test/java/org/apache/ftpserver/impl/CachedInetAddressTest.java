@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.DataConnectionException;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class CachedInetAddressTest extends TestCase {
+
+    private static final InetAddress ADDRESS1;
+
+    private static final InetAddress ADDRESS2;
+
+    static {
+        try {
+            ADDRESS1 = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+            ADDRESS2 = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+        } catch (UnknownHostException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the addresses in turn, the lookups after the first one taking
+     * some time
+     */
+    private static class SlowResolver implements CachedInetAddress.Resolver {
+        private final InetAddress[] addresses;
+
+        private final long delay;
+
+        private volatile int lookups = 0;
+
+        public SlowResolver(final InetAddress[] addresses, final long delay) {
+            this.addresses = addresses;
+            this.delay = delay;
+        }
+
+        public InetAddress resolve(final String host)
+                throws UnknownHostException {
+            int lookup = lookups++;
+            if (lookup > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    // continue
+                }
+            }
+
+            InetAddress address = addresses[Math.min(lookup,
+                    addresses.length - 1)];
+            if (address == null) {
+                throw new UnknownHostException(host);
+            }
+            return address;
+        }
+    }
+
+    private void waitForLookups(final SlowResolver resolver, final int lookups)
+            throws Exception {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (resolver.lookups < lookups
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+    }
+
+    public void testResolvedOnCreation() throws Exception {
+        SlowResolver resolver = new SlowResolver(new InetAddress[] { ADDRESS1 },
+                0);
+        CachedInetAddress address = new CachedInetAddress("foo", 60000,
+                resolver);
+
+        assertEquals(1, resolver.lookups);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ADDRESS1, address.getAddress());
+        }
+        assertEquals(1, resolver.lookups);
+        assertEquals("foo", address.getHost());
+    }
+
+    public void testRefreshDoesNotWait() throws Exception {
+        SlowResolver resolver = new SlowResolver(new InetAddress[] { ADDRESS1,
+                ADDRESS2 }, 1000);
+        CachedInetAddress address = new CachedInetAddress("foo", 1, resolver);
+        Thread.sleep(10);
+
+        // the expired address is used while refreshing
+        long start = System.currentTimeMillis();
+        assertEquals(ADDRESS1, address.getAddress());
+        assertEquals(ADDRESS1, address.getAddress());
+        assertTrue(System.currentTimeMillis() - start < 500);
+
+        // only one refresh at a time
+        waitForLookups(resolver, 2);
+        assertEquals(2, resolver.lookups);
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (address.getAddress() != ADDRESS2
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(ADDRESS2, address.getAddress());
+    }
+
+    public void testNoRefreshWithoutTtl() throws Exception {
+        SlowResolver resolver = new SlowResolver(new InetAddress[] { ADDRESS1,
+                ADDRESS2 }, 0);
+        CachedInetAddress address = new CachedInetAddress("foo", 0, resolver);
+        Thread.sleep(10);
+
+        assertEquals(ADDRESS1, address.getAddress());
+        Thread.sleep(100);
+        assertEquals(1, resolver.lookups);
+    }
+
+    public void testLiteralNotRefreshed() throws Exception {
+        SlowResolver resolver = new SlowResolver(new InetAddress[] { ADDRESS1,
+                ADDRESS2 }, 0);
+        CachedInetAddress address = new CachedInetAddress("10.0.0.1", 1,
+                resolver);
+        Thread.sleep(10);
+
+        assertEquals(ADDRESS1, address.getAddress());
+        Thread.sleep(100);
+        assertEquals(ADDRESS1, address.getAddress());
+        assertEquals(1, resolver.lookups);
+    }
+
+    public void testFailedRefreshKeepsAddress() throws Exception {
+        SlowResolver resolver = new SlowResolver(new InetAddress[] { ADDRESS1,
+                null }, 0);
+        CachedInetAddress address = new CachedInetAddress("foo", 1, resolver);
+        Thread.sleep(10);
+
+        assertEquals(ADDRESS1, address.getAddress());
+        waitForLookups(resolver, 2);
+        Thread.sleep(100);
+        assertEquals(ADDRESS1, address.getAddress());
+    }
+
+    public void testUnresolvable() throws Exception {
+        SlowResolver resolver = new SlowResolver(new InetAddress[] { null,
+                ADDRESS1 }, 0);
+        CachedInetAddress address = new CachedInetAddress("foo", 60000,
+                resolver);
+
+        try {
+            address.getAddress();
+            fail("Must throw DataConnectionException");
+        } catch (DataConnectionException e) {
+            // ok
+        }
+
+        // resolving is retried in the background
+        waitForLookups(resolver, 2);
+        long timeout = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < timeout) {
+            try {
+                assertEquals(ADDRESS1, address.getAddress());
+                return;
+            } catch (DataConnectionException e) {
+                Thread.sleep(10);
+            }
+        }
+        fail("Address not resolved");
+    }
+}
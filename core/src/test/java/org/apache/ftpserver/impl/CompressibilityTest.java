@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class CompressibilityTest extends TestCase {
+
+    public void testCompressedFileNames() {
+        assertTrue(Compressibility.isCompressedFileName("foo.zip"));
+        assertTrue(Compressibility.isCompressedFileName("/dir/foo.tar.GZ"));
+        assertTrue(Compressibility.isCompressedFileName("foo.JPG"));
+    }
+
+    public void testUncompressedFileNames() {
+        assertFalse(Compressibility.isCompressedFileName("foo.txt"));
+        assertFalse(Compressibility.isCompressedFileName("foo"));
+        assertFalse(Compressibility.isCompressedFileName("/dir.zip/foo"));
+        assertFalse(Compressibility.isCompressedFileName("foo.zip.txt"));
+        assertFalse(Compressibility.isCompressedFileName(null));
+    }
+
+    public void testEntropyOfConstantData() {
+        byte[] sample = new byte[1000];
+        Arrays.fill(sample, (byte) 'a');
+
+        assertEquals(0.0, Compressibility.getEntropy(sample, 0, 1000), 0.001);
+        assertFalse(Compressibility.isIncompressible(sample, 0, 1000));
+    }
+
+    public void testEntropyOfUniformData() {
+        byte[] sample = new byte[256 * 16];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = (byte) i;
+        }
+
+        assertEquals(8.0, Compressibility.getEntropy(sample, 0, sample.length),
+                0.001);
+        assertTrue(Compressibility.isIncompressible(sample, 0, sample.length));
+    }
+
+    public void testRandomDataIncompressible() {
+        byte[] sample = new byte[Compressibility.SAMPLE_SIZE];
+        new Random().nextBytes(sample);
+
+        assertTrue(Compressibility.isIncompressible(sample, 0, sample.length));
+    }
+
+    public void testTextCompressible() throws Exception {
+        StringBuffer text = new StringBuffer();
+        while (text.length() < Compressibility.SAMPLE_SIZE) {
+            text.append("The quick brown fox jumps over the lazy dog. ");
+        }
+        byte[] sample = text.toString().getBytes("US-ASCII");
+
+        assertFalse(Compressibility.isIncompressible(sample, 0, sample.length));
+    }
+
+    public void testShortSampleCompressible() {
+        byte[] sample = new byte[100];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = (byte) i;
+        }
+
+        assertFalse(Compressibility.isIncompressible(sample, 0, sample.length));
+    }
+}
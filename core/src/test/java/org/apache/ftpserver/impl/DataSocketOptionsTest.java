@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class DataSocketOptionsTest extends TestCase {
+
+    private static final long MILLISECOND = 1000000L;
+
+    public void testAutoTunedBufferSize() {
+        // 10 MB/s with 100 ms round trip time
+        assertEquals(1000000, DataSocketOptions.getAutoTunedBufferSize(
+                10000000, 100 * MILLISECOND, 0));
+    }
+
+    public void testAutoTunedBufferSizeLowerBound() {
+        assertEquals(DataSocketOptions.MIN_AUTO_TUNED_BUFFER_SIZE,
+                DataSocketOptions.getAutoTunedBufferSize(10000000,
+                        MILLISECOND / 10, 0));
+    }
+
+    public void testAutoTunedBufferSizeConfiguredLowerBound() {
+        assertEquals(256 * 1024, DataSocketOptions.getAutoTunedBufferSize(
+                10000000, MILLISECOND / 10, 256 * 1024));
+    }
+
+    public void testAutoTunedBufferSizeUpperBound() {
+        assertEquals(DataSocketOptions.MAX_AUTO_TUNED_BUFFER_SIZE,
+                DataSocketOptions.getAutoTunedBufferSize(1000000000,
+                        1000 * MILLISECOND, 0));
+    }
+
+    public void testConfigure() throws Exception {
+        DataConnectionConfigurationFactory factory = new DataConnectionConfigurationFactory();
+        factory.setTcpNoDelay(true);
+        factory.setSoLinger(5);
+        DataConnectionConfiguration config = factory
+                .createDataConnectionConfiguration();
+
+        Socket socket = new Socket();
+        try {
+            DataSocketOptions.configure(socket, config);
+
+            assertTrue(socket.getTcpNoDelay());
+            assertEquals(5, socket.getSoLinger());
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testConfigureDefaults() throws Exception {
+        DataConnectionConfiguration config = new DataConnectionConfigurationFactory()
+                .createDataConnectionConfiguration();
+
+        Socket socket = new Socket();
+        try {
+            DataSocketOptions.configure(socket, config);
+
+            assertFalse(socket.getTcpNoDelay());
+            assertEquals(-1, socket.getSoLinger());
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testNoAutoTuningWithoutRoundTripTime() throws Exception {
+        DataConnectionConfigurationFactory factory = new DataConnectionConfigurationFactory();
+        factory.setAutoTuneBandwidth(1000000000);
+        DataConnectionConfiguration config = factory
+                .createDataConnectionConfiguration();
+
+        Socket socket = new Socket();
+        try {
+            int sendBufferSize = socket.getSendBufferSize();
+            DataSocketOptions.autoTune(socket, config, -1);
+
+            assertEquals(sendBufferSize, socket.getSendBufferSize());
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testNoServerSocketAutoTuningWithoutRoundTripTime()
+            throws Exception {
+        DataConnectionConfigurationFactory factory = new DataConnectionConfigurationFactory();
+        factory.setAutoTuneBandwidth(1000000000);
+        DataConnectionConfiguration config = factory
+                .createDataConnectionConfiguration();
+
+        ServerSocket socket = new ServerSocket();
+        try {
+            int receiveBufferSize = socket.getReceiveBufferSize();
+            DataSocketOptions.autoTune(socket, config, -1);
+
+            assertEquals(receiveBufferSize, socket.getReceiveBufferSize());
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testNoSendBufferAutoTuningWithoutBandwidth() throws Exception {
+        DataConnectionConfiguration config = new DataConnectionConfigurationFactory()
+                .createDataConnectionConfiguration();
+
+        Socket socket = new Socket();
+        try {
+            int sendBufferSize = socket.getSendBufferSize();
+            DataSocketOptions.autoTuneSendBuffer(socket, config,
+                    100 * MILLISECOND);
+
+            assertEquals(sendBufferSize, socket.getSendBufferSize());
+        } finally {
+            socket.close();
+        }
+    }
+}
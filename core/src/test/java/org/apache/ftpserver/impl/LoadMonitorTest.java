@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class LoadMonitorTest extends TestCase {
+
+    private List<Boolean> changes = new ArrayList<Boolean>();
+
+    private long now;
+
+    private LoadMonitor createMonitor(int maxQueueDepth, long maxLatency) {
+        LoadMonitor monitor = new LoadMonitor(maxQueueDepth, maxLatency) {
+            protected void overloadChanged(boolean overloaded) {
+                changes.add(Boolean.valueOf(overloaded));
+            }
+        };
+        now = System.currentTimeMillis();
+        return monitor;
+    }
+
+    private boolean nextPeriod(LoadMonitor monitor) {
+        now += 1000;
+        return monitor.isOverloaded(now);
+    }
+
+    public void testNotOverloaded() throws Exception {
+        LoadMonitor monitor = createMonitor(10, 100);
+
+        monitor.eventQueued();
+        monitor.sessionStarted(5);
+
+        assertFalse(nextPeriod(monitor));
+        assertEquals(1, monitor.getQueueDepth());
+        assertTrue(changes.isEmpty());
+    }
+
+    public void testOverloadedByQueueDepth() throws Exception {
+        LoadMonitor monitor = createMonitor(10, 0);
+
+        for (int i = 0; i < 10; i++) {
+            monitor.eventQueued();
+        }
+
+        // only evaluated once per period
+        assertFalse(monitor.isOverloaded(now + 500));
+        assertTrue(nextPeriod(monitor));
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).booleanValue());
+    }
+
+    public void testRecoversBelowHalfQueueDepth() throws Exception {
+        LoadMonitor monitor = createMonitor(10, 0);
+
+        for (int i = 0; i < 10; i++) {
+            monitor.eventQueued();
+        }
+        assertTrue(nextPeriod(monitor));
+
+        // below the maximum, but not below half of it
+        for (int i = 0; i < 5; i++) {
+            monitor.eventPolled();
+        }
+        assertTrue(nextPeriod(monitor));
+
+        monitor.eventPolled();
+        assertFalse(nextPeriod(monitor));
+        assertEquals(2, changes.size());
+        assertFalse(changes.get(1).booleanValue());
+    }
+
+    public void testEventsNoLongerWaiting() throws Exception {
+        LoadMonitor monitor = createMonitor(10, 0);
+
+        for (int i = 0; i < 10; i++) {
+            monitor.eventQueued();
+        }
+
+        // queued behind a running event of their session
+        monitor.eventsPolled(9);
+        assertEquals(1, monitor.getQueueDepth());
+        assertFalse(nextPeriod(monitor));
+    }
+
+    public void testOverloadedByLatencyPercentile() throws Exception {
+        LoadMonitor monitor = createMonitor(0, 100);
+
+        // 1 of 100 commands slow is below the 99th percentile
+        for (int i = 0; i < 99; i++) {
+            monitor.sessionStarted(1);
+        }
+        monitor.sessionStarted(1000);
+        assertFalse(nextPeriod(monitor));
+        assertEquals(1, monitor.getLatencyPercentile());
+
+        for (int i = 0; i < 98; i++) {
+            monitor.sessionStarted(1);
+        }
+        monitor.sessionStarted(1000);
+        monitor.sessionStarted(1000);
+        assertTrue(nextPeriod(monitor));
+        assertEquals(1023, monitor.getLatencyPercentile());
+    }
+
+    public void testLatencyCountedPerPeriod() throws Exception {
+        LoadMonitor monitor = createMonitor(0, 100);
+
+        monitor.sessionStarted(1000);
+        assertTrue(nextPeriod(monitor));
+
+        // no commands since, the latency has dropped
+        assertFalse(nextPeriod(monitor));
+        assertEquals(0, monitor.getLatencyPercentile());
+    }
+}
@@ -19,6 +19,12 @@
 
 package org.apache.ftpserver.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import junit.framework.TestCase;
 
 /**
@@ -204,4 +210,115 @@ public class PassivePortsTest extends TestCase {
         assertEquals(-1, ports.reserveNextPort());
     }
 
+    public void testRandomizedReservesAllPorts() {
+        PassivePorts ports = new PassivePorts("1000-1199", true);
+
+        Set<Integer> reserved = new HashSet<Integer>();
+        for (int i = 0; i < 200; i++) {
+            int port = ports.reserveNextPort();
+            assertTrue(port >= 1000 && port <= 1199);
+            assertTrue(reserved.add(port));
+        }
+        assertEquals(-1, ports.reserveNextPort());
+
+        ports.releasePort(1150);
+        assertEquals(1150, ports.reserveNextPort());
+    }
+
+    public void testRandomizedNotSequential() {
+        PassivePorts ports = new PassivePorts("1000-1999", true);
+
+        int sequential = 0;
+        int last = ports.reserveNextPort();
+        for (int i = 0; i < 20; i++) {
+            int port = ports.reserveNextPort();
+            if (port == last + 1) {
+                sequential++;
+            }
+            last = port;
+        }
+
+        assertTrue(sequential < 20);
+    }
+
+    public void testExhaustedCount() {
+        PassivePorts ports = new PassivePorts("123");
+
+        assertEquals(123, ports.reserveNextPort());
+        assertEquals(-1, ports.reserveNextPort());
+        assertEquals(-1, ports.reservePort(0));
+
+        assertEquals(2, ports.getExhaustedCount());
+        assertEquals(0, ports.getTimeoutCount());
+    }
+
+    public void testReserveTimeout() {
+        PassivePorts ports = new PassivePorts("123");
+
+        assertEquals(123, ports.reserveNextPort());
+
+        long start = System.currentTimeMillis();
+        assertEquals(-1, ports.reservePort(100));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+
+        assertEquals(1, ports.getTimeoutCount());
+    }
+
+    public void testReserveWaitsForRelease() throws Exception {
+        final PassivePorts ports = new PassivePorts("123");
+
+        assertEquals(123, ports.reserveNextPort());
+
+        Thread releaser = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                ports.releasePort(123);
+            }
+        };
+        releaser.start();
+
+        assertEquals(123, ports.reservePort(10000));
+        assertEquals(0, ports.getTimeoutCount());
+
+        releaser.join();
+    }
+
+    public void testConcurrentReserveAndRelease() throws Exception {
+        final PassivePorts ports = new PassivePorts("1000-1063", true);
+        final Set<Integer> reserved = Collections
+                .synchronizedSet(new HashSet<Integer>());
+        final List<String> errors = Collections
+                .synchronizedList(new ArrayList<String>());
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        int port = ports.reservePort(10000);
+                        if (port == -1) {
+                            errors.add("No port reserved");
+                            continue;
+                        }
+                        if (!reserved.add(port)) {
+                            errors.add("Port reserved twice: " + port);
+                        }
+                        reserved.remove(port);
+                        ports.releasePort(port);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class SharedPassiveListenerTest extends TestCase {
+
+    private static final InetAddress LOCALHOST;
+
+    static {
+        try {
+            LOCALHOST = InetAddress.getByName("localhost");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private InetSocketAddress address;
+
+    protected void setUp() throws Exception {
+        address = new InetSocketAddress(LOCALHOST, TestUtil
+                .findFreePort(12555));
+    }
+
+    private SharedPassiveListener.Registration register(InetAddress client)
+            throws Exception {
+        return SharedPassiveListener.register(address, client,
+                new DataConnectionConfigurationFactory()
+                        .createDataConnectionConfiguration());
+    }
+
+    public void testDeliverByClientAddress() throws Exception {
+        SharedPassiveListener.Registration registration = register(LOCALHOST);
+        assertEquals(address.getPort(), registration.getPort());
+
+        Socket client = new Socket(LOCALHOST, address.getPort());
+        try {
+            Socket accepted = registration.accept(5000);
+            assertEquals(client.getLocalPort(), accepted.getPort());
+            accepted.close();
+        } finally {
+            client.close();
+            registration.cancel();
+        }
+    }
+
+    public void testAmbiguousRegistration() throws Exception {
+        SharedPassiveListener.Registration registration = register(LOCALHOST);
+        try {
+            assertNull(register(LOCALHOST));
+        } finally {
+            registration.cancel();
+        }
+
+        // can register again once the first registration is gone
+        registration = register(LOCALHOST);
+        assertNotNull(registration);
+        registration.cancel();
+    }
+
+    public void testRegisterAgainAfterDelivery() throws Exception {
+        SharedPassiveListener.Registration registration = register(LOCALHOST);
+
+        Socket client = new Socket(LOCALHOST, address.getPort());
+        try {
+            registration.accept(5000).close();
+        } finally {
+            client.close();
+        }
+
+        SharedPassiveListener.Registration second = register(LOCALHOST);
+        assertNotNull(second);
+        second.cancel();
+        registration.cancel();
+    }
+
+    public void testUnexpectedConnectionClosed() throws Exception {
+        SharedPassiveListener.Registration registration = register(InetAddress
+                .getByName("10.11.12.13"));
+
+        Socket client = new Socket(LOCALHOST, address.getPort());
+        try {
+            client.setSoTimeout(5000);
+            assertEquals(-1, client.getInputStream().read());
+        } finally {
+            client.close();
+            registration.cancel();
+        }
+    }
+
+    public void testAcceptTimeout() throws Exception {
+        SharedPassiveListener.Registration registration = register(LOCALHOST);
+        try {
+            registration.accept(100);
+            fail("Must time out");
+        } catch (SocketTimeoutException e) {
+            // ok
+        } finally {
+            registration.cancel();
+        }
+    }
+
+    public void testCancelWakesUpAccept() throws Exception {
+        final SharedPassiveListener.Registration registration = register(LOCALHOST);
+
+        Thread canceller = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                registration.cancel();
+            }
+        };
+        canceller.start();
+
+        try {
+            registration.accept(10000);
+            fail("Must fail");
+        } catch (SocketTimeoutException e) {
+            // ok
+        }
+        canceller.join();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class TimerWheelTest extends TestCase {
+
+    private TimerWheel wheel = new TimerWheel("TimerWheelTest", 10, 8);
+
+    private List<String> expired = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    private TimerWheel.Task task(final String name) {
+        return new TimerWheel.Task() {
+            public void expired(TimerWheel.Timeout timeout) {
+                expired.add(name);
+            }
+        };
+    }
+
+    private void waitForExpired(final int count) throws Exception {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (expired.size() < count && System.currentTimeMillis() < timeout) {
+            Thread.sleep(5);
+        }
+    }
+
+    public void testExpires() throws Exception {
+        long start = System.currentTimeMillis();
+        TimerWheel.Timeout timeout = wheel.newTimeout(task("foo"), 50);
+        assertEquals(1, wheel.size());
+
+        waitForExpired(1);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(1, expired.size());
+        assertTrue(timeout.isExpired());
+        assertTrue("Expired after " + elapsed + " ms", elapsed >= 50);
+        assertEquals(0, wheel.size());
+
+        // too late to cancel
+        assertFalse(timeout.cancel());
+    }
+
+    public void testExpiresInOrder() throws Exception {
+        wheel.newTimeout(task("third"), 300);
+        wheel.newTimeout(task("first"), 20);
+        wheel.newTimeout(task("second"), 150);
+
+        waitForExpired(3);
+
+        assertEquals("first", expired.get(0));
+        assertEquals("second", expired.get(1));
+        assertEquals("third", expired.get(2));
+    }
+
+    public void testExpiresAfterSeveralRounds() throws Exception {
+        // the wheel covers 80 ms per round
+        long start = System.currentTimeMillis();
+        wheel.newTimeout(task("foo"), 250);
+
+        Thread.sleep(150);
+        assertEquals(0, expired.size());
+
+        waitForExpired(1);
+        assertTrue(System.currentTimeMillis() - start >= 250);
+    }
+
+    public void testCancel() throws Exception {
+        TimerWheel.Timeout timeout = wheel.newTimeout(task("cancelled"), 50);
+        wheel.newTimeout(task("expired"), 50);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(1, wheel.size());
+
+        waitForExpired(1);
+        Thread.sleep(100);
+
+        assertEquals(1, expired.size());
+        assertEquals("expired", expired.get(0));
+        assertFalse(timeout.isExpired());
+    }
+
+    public void testManyTimeouts() throws Exception {
+        List<TimerWheel.Timeout> timeouts = new ArrayList<TimerWheel.Timeout>();
+        for (int i = 0; i < 1000; i++) {
+            timeouts.add(wheel.newTimeout(task("t" + i), 200 + i % 100));
+        }
+
+        // cancel every other timeout
+        for (int i = 0; i < timeouts.size(); i += 2) {
+            assertTrue(timeouts.get(i).cancel());
+        }
+        assertEquals(500, wheel.size());
+
+        waitForExpired(500);
+        Thread.sleep(50);
+
+        assertEquals(500, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    public void testScheduleFromTask() throws Exception {
+        wheel.newTimeout(new TimerWheel.Task() {
+            public void expired(TimerWheel.Timeout timeout) {
+                wheel.newTimeout(task("rescheduled"), 10);
+            }
+        }, 10);
+
+        waitForExpired(1);
+        assertEquals("rescheduled", expired.get(0));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class TransferAccountingTest extends TestCase {
+
+    /**
+     * Accounting with a fake clock, starting at 0
+     */
+    private static class TestAccounting extends TransferAccounting {
+        private long now;
+
+        public TestAccounting(boolean upload, String fileName,
+                long expectedBytes) {
+            super(null, upload, fileName, expectedBytes);
+        }
+
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    /**
+     * Session recording the increments of the read bytes
+     */
+    private static class TestSession extends FtpIoSession {
+        private long readBytes;
+
+        private int increments;
+
+        public TestSession() {
+            super(null, null);
+        }
+
+        public void increaseReadDataBytes(int increment) {
+            assertTrue(increment > 0);
+            readBytes += increment;
+            increments++;
+        }
+
+        public void updateLastAccessTime() {
+            // no wrapped session to update
+        }
+    }
+
+    public void testPublishMoreThanIntegerRange() {
+        TestSession session = new TestSession();
+        TransferAccounting accounting = new TransferAccounting(session, true,
+                "/foo", -1) {
+            protected long currentTimeMillis() {
+                return 0;
+            }
+        };
+
+        long count = 5L * Integer.MAX_VALUE + 3;
+        accounting.add(count);
+        accounting.complete();
+
+        assertEquals(count, session.readBytes);
+        assertEquals(6, session.increments);
+        assertEquals(count, accounting.getTransferredBytes());
+    }
+
+    public void testNotPublishedWithinInterval() {
+        TestAccounting accounting = new TestAccounting(false, "/foo", 1000);
+
+        accounting.now = TransferAccounting.PUBLISH_INTERVAL - 1;
+        accounting.add(100);
+
+        assertEquals(0, accounting.getTransferredBytes());
+        assertEquals(0, accounting.getBytesPerSecond());
+    }
+
+    public void testPublishAfterInterval() {
+        TestAccounting accounting = new TestAccounting(false, "/foo", 1000);
+
+        accounting.add(100);
+        accounting.now = 200;
+        accounting.add(100);
+
+        assertEquals(200, accounting.getTransferredBytes());
+        assertEquals(1000, accounting.getBytesPerSecond());
+        assertEquals(20, accounting.getProgress());
+        assertEquals(800, accounting.getEstimatedTimeRemaining());
+    }
+
+    public void testRateSmoothed() {
+        TestAccounting accounting = new TestAccounting(true, "/foo", -1);
+
+        accounting.now = 200;
+        accounting.add(200);
+        assertEquals(1000, accounting.getBytesPerSecond());
+
+        accounting.now = 400;
+        accounting.add(600);
+        assertEquals(2000, accounting.getBytesPerSecond());
+    }
+
+    public void testComplete() {
+        TestAccounting accounting = new TestAccounting(false, "/foo", 1000);
+
+        accounting.add(1000);
+        accounting.now = 100;
+        accounting.complete();
+
+        assertEquals(1000, accounting.getTransferredBytes());
+        assertEquals(100, accounting.getProgress());
+        assertEquals(0, accounting.getEstimatedTimeRemaining());
+    }
+
+    public void testUnknownSize() {
+        TestAccounting accounting = new TestAccounting(true, "/foo", -1);
+
+        accounting.now = 200;
+        accounting.add(200);
+
+        assertEquals(-1, accounting.getProgress());
+        assertEquals(-1, accounting.getEstimatedTimeRemaining());
+    }
+
+    public void testToString() {
+        TestAccounting accounting = new TestAccounting(false, "/foo", 1000);
+
+        accounting.now = 200;
+        accounting.add(500);
+
+        assertEquals(
+                "Sending /foo 500 of 1000 bytes (50%), 2500 bytes/s, 1 s remaining",
+                accounting.toString());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class TransferBufferPoolTest extends TestCase {
+
+    public void testAcquireAllocates() {
+        TransferBufferPool pool = new TransferBufferPool(100, 2);
+
+        byte[] buffer = pool.acquire();
+        assertEquals(100, buffer.length);
+        assertEquals(1, pool.getActiveBuffers());
+        assertEquals(0, pool.getIdleBuffers());
+        assertEquals(1, pool.getAllocatedBuffers());
+    }
+
+    public void testReleasedBufferReused() {
+        TransferBufferPool pool = new TransferBufferPool(100, 2);
+
+        byte[] buffer = pool.acquire();
+        pool.release(buffer);
+        assertEquals(0, pool.getActiveBuffers());
+        assertEquals(1, pool.getIdleBuffers());
+
+        assertSame(buffer, pool.acquire());
+        assertEquals(1, pool.getActiveBuffers());
+        assertEquals(0, pool.getIdleBuffers());
+        assertEquals(1, pool.getAllocatedBuffers());
+    }
+
+    public void testMaxIdleBuffers() {
+        TransferBufferPool pool = new TransferBufferPool(100, 2);
+
+        byte[] buffer1 = pool.acquire();
+        byte[] buffer2 = pool.acquire();
+        byte[] buffer3 = pool.acquire();
+        assertEquals(3, pool.getActiveBuffers());
+
+        pool.release(buffer1);
+        pool.release(buffer2);
+        pool.release(buffer3);
+
+        assertEquals(0, pool.getActiveBuffers());
+        assertEquals(2, pool.getIdleBuffers());
+    }
+
+    public void testForeignBufferNotPooled() {
+        TransferBufferPool pool = new TransferBufferPool(100, 2);
+
+        pool.acquire();
+        pool.release(new byte[50]);
+
+        assertEquals(0, pool.getIdleBuffers());
+        assertEquals(100, pool.acquire().length);
+    }
+
+    public void testInvalidBufferSize() {
+        try {
+            new TransferBufferPool(0, 2);
+            fail("Must fail on non-positive buffer size");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+}
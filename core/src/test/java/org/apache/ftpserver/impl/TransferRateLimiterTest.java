@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class TransferRateLimiterTest extends TestCase {
+
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Limiter with a fake clock, sleeping advances the clock
+     */
+    private static class TestRateLimiter extends TransferRateLimiter {
+        private long now = 0;
+
+        private long slept = 0;
+
+        public TestRateLimiter(int maxRate, int burst) {
+            super(maxRate, burst);
+        }
+
+        protected long nanoTime() {
+            return now;
+        }
+
+        protected void sleep(long nanos) {
+            slept += nanos;
+            now += nanos;
+        }
+    }
+
+    public void testNoBurst() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter(1000, 0);
+
+        limiter.acquire(500);
+        assertEquals(SECOND / 2, limiter.slept);
+
+        limiter.acquire(1000);
+        assertEquals(SECOND + SECOND / 2, limiter.slept);
+    }
+
+    public void testNoBurstKeepsTransferTime() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter(1000, 0);
+
+        limiter.acquire(500);
+        assertEquals(SECOND / 2, limiter.slept);
+
+        // writing the chunk took 0.3 seconds, which counts towards the wait
+        // for the next chunk
+        limiter.now += 3 * SECOND / 10;
+
+        limiter.acquire(500);
+        assertEquals(SECOND / 2 + SECOND / 5, limiter.slept);
+
+        // slow I/O alone keeps the transfer below the maximum rate
+        limiter.now += SECOND;
+
+        limiter.acquire(500);
+        assertEquals(SECOND / 2 + SECOND / 5, limiter.slept);
+    }
+
+    public void testIdleNoBurstLimitedToChunk() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter(1000, 0);
+
+        limiter.acquire(500);
+
+        // idle for a long time, only a single chunk can be sent at full speed
+        limiter.now += 100 * SECOND;
+
+        limiter.acquire(500);
+        assertEquals(SECOND / 2, limiter.slept);
+
+        limiter.acquire(500);
+        assertEquals(SECOND, limiter.slept);
+    }
+
+    public void testBurst() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter(1000, 2000);
+
+        // the bucket starts full
+        limiter.acquire(2000);
+        assertEquals(0, limiter.slept);
+
+        limiter.acquire(500);
+        assertEquals(SECOND / 2, limiter.slept);
+    }
+
+    public void testRefillWhileIdle() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter(1000, 2000);
+
+        limiter.acquire(2000);
+
+        // idle for half a second, refills 500 tokens
+        limiter.now += SECOND / 2;
+
+        limiter.acquire(500);
+        assertEquals(0, limiter.slept);
+    }
+
+    public void testRefillLimitedByBurst() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter(1000, 2000);
+
+        // idle for a long time, but the bucket can not hold more than the
+        // burst
+        limiter.now += 100 * SECOND;
+
+        limiter.acquire(3000);
+        assertEquals(SECOND, limiter.slept);
+    }
+
+    public void testInvalidRate() {
+        try {
+            new TransferRateLimiter(0, 0);
+            fail("Must fail on non-positive rate");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+}
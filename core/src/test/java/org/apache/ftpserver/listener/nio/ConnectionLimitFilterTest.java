@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class ConnectionLimitFilterTest extends TestCase {
+
+    private RecordingNextFilter nextFilter = new RecordingNextFilter();
+
+    private DummySession connect(ConnectionLimitFilter filter, String ip)
+            throws Exception {
+        DummySession session = new DummySession();
+        session.setRemoteAddress(new InetSocketAddress(ip, 1234));
+        filter.sessionCreated(nextFilter, session);
+        return session;
+    }
+
+    private String getReply(IoSession session) throws Exception {
+        WriteRequest request = nextFilter.written.get(session);
+        IoBuffer buffer = (IoBuffer) request.getMessage();
+        return buffer.getString(Charset.forName("US-ASCII").newDecoder());
+    }
+
+    public void testUnderLimits() throws Exception {
+        ConnectionLimitFilter filter = new ConnectionLimitFilter(2, 2, 2);
+
+        DummySession session1 = connect(filter, "10.0.0.1");
+        DummySession session2 = connect(filter, "10.0.0.1");
+
+        assertEquals(2, nextFilter.created.size());
+        assertTrue(nextFilter.written.isEmpty());
+        assertEquals(2, filter.getConnectionCount());
+        assertFalse(session1.getCloseFuture().isClosed());
+        assertFalse(session2.getCloseFuture().isClosed());
+    }
+
+    public void testMaxConnections() throws Exception {
+        ConnectionLimitFilter filter = new ConnectionLimitFilter(2, 0, 0);
+
+        connect(filter, "10.0.0.1");
+        DummySession session2 = connect(filter, "10.0.0.2");
+        DummySession session3 = connect(filter, "10.0.0.3");
+
+        assertEquals(2, nextFilter.created.size());
+        assertEquals(2, filter.getConnectionCount());
+        assertTrue(getReply(session3).startsWith("421 "));
+
+        filter.sessionClosed(nextFilter, session2);
+        assertEquals(1, filter.getConnectionCount());
+
+        connect(filter, "10.0.0.3");
+        assertEquals(3, nextFilter.created.size());
+    }
+
+    public void testMaxConnectionsPerIp() throws Exception {
+        ConnectionLimitFilter filter = new ConnectionLimitFilter(0, 1, 0);
+
+        DummySession session1 = connect(filter, "10.0.0.1");
+        DummySession session2 = connect(filter, "10.0.0.1");
+        connect(filter, "10.0.0.2");
+
+        assertEquals(2, nextFilter.created.size());
+        assertTrue(getReply(session2).startsWith("421 "));
+
+        filter.sessionClosed(nextFilter, session1);
+        connect(filter, "10.0.0.1");
+        assertEquals(3, nextFilter.created.size());
+    }
+
+    public void testMaxConnectionRatePerIp() throws Exception {
+        ConnectionLimitFilter filter = new ConnectionLimitFilter(0, 0, 2);
+
+        filter.sessionClosed(nextFilter, connect(filter, "10.0.0.1"));
+        filter.sessionClosed(nextFilter, connect(filter, "10.0.0.1"));
+        DummySession session3 = connect(filter, "10.0.0.1");
+        connect(filter, "10.0.0.2");
+
+        assertEquals(3, nextFilter.created.size());
+        assertTrue(getReply(session3).startsWith("421 "));
+
+        // the rate is counted per second
+        Thread.sleep(1100);
+        connect(filter, "10.0.0.1");
+        assertEquals(4, nextFilter.created.size());
+    }
+
+    public void testEventsOfRejectedSessionAreDropped() throws Exception {
+        ConnectionLimitFilter filter = new ConnectionLimitFilter(1, 0, 0);
+
+        connect(filter, "10.0.0.1");
+        DummySession rejected = connect(filter, "10.0.0.2");
+
+        filter.sessionOpened(nextFilter, rejected);
+        filter.messageReceived(nextFilter, rejected, "NOOP");
+        filter.sessionIdle(nextFilter, rejected, IdleStatus.BOTH_IDLE);
+        filter.sessionClosed(nextFilter, rejected);
+
+        assertEquals(0, nextFilter.events);
+        assertEquals(1, filter.getConnectionCount());
+    }
+
+    private static class RecordingNextFilter implements NextFilter {
+
+        private List<IoSession> created = new ArrayList<IoSession>();
+
+        private Map<IoSession, WriteRequest> written = new HashMap<IoSession, WriteRequest>();
+
+        private int events;
+
+        public void sessionCreated(IoSession session) {
+            created.add(session);
+        }
+
+        public void filterWrite(IoSession session, WriteRequest writeRequest) {
+            written.put(session, writeRequest);
+
+            // queued for the session as by the head of the filter chain
+            session.getWriteRequestQueue().offer(session, writeRequest);
+        }
+
+        public void sessionOpened(IoSession session) {
+            events++;
+        }
+
+        public void sessionClosed(IoSession session) {
+            events++;
+        }
+
+        public void sessionIdle(IoSession session, IdleStatus status) {
+            events++;
+        }
+
+        public void exceptionCaught(IoSession session, Throwable cause) {
+            events++;
+        }
+
+        public void messageReceived(IoSession session, Object message) {
+            events++;
+        }
+
+        public void messageSent(IoSession session, WriteRequest writeRequest) {
+            events++;
+        }
+
+        public void filterClose(IoSession session) {
+        }
+    }
+}
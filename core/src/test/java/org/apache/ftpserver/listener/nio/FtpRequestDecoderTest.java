@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.net.InetSocketAddress;
+import java.util.Queue;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.DefaultTransportMetadata;
+import org.apache.mina.filter.codec.ProtocolCodecSession;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.transport.socket.SocketSessionConfig;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class FtpRequestDecoderTest extends TestCase {
+
+    private FtpRequestDecoder decoder = new FtpRequestDecoder(32);
+
+    private ProtocolCodecSession session = new ProtocolCodecSession();
+
+    protected void setUp() throws Exception {
+        // a fragmenting transport, like TCP
+        session.setTransportMetadata(new DefaultTransportMetadata("nio",
+                "socket", false, true, InetSocketAddress.class,
+                SocketSessionConfig.class, Object.class));
+    }
+
+    private Queue<Object> decode(final String data) throws Exception {
+        IoBuffer buffer = IoBuffer.wrap(data.getBytes("UTF-8"));
+        decoder.decode(session, buffer, session.getDecoderOutput());
+        return session.getDecoderOutputQueue();
+    }
+
+    private FtpRequest decodeOne(final String data) throws Exception {
+        Queue<Object> requests = decode(data);
+        assertEquals(1, requests.size());
+        return (FtpRequest) requests.poll();
+    }
+
+    public void testCommandOnly() throws Exception {
+        FtpRequest request = decodeOne("NOOP\r\n");
+
+        assertEquals("NOOP", request.getRequestLine());
+        assertEquals("NOOP", request.getCommand());
+        assertFalse(request.hasArgument());
+        assertNull(request.getArgument());
+    }
+
+    public void testKnownCommandIsNotCopied() throws Exception {
+        assertSame("NOOP", decodeOne("noop\r\n").getCommand());
+    }
+
+    public void testLowerCaseCommand() throws Exception {
+        FtpRequest request = decodeOne("retr foo bar\r\n");
+
+        assertEquals("retr foo bar", request.getRequestLine());
+        assertEquals("RETR", request.getCommand());
+        assertEquals("foo bar", request.getArgument());
+    }
+
+    public void testLineFeedOnly() throws Exception {
+        FtpRequest request = decodeOne("CWD foo\n");
+
+        assertEquals("CWD", request.getCommand());
+        assertEquals("foo", request.getArgument());
+    }
+
+    public void testWhitespaceTrimmed() throws Exception {
+        FtpRequest request = decodeOne(" USER  admin \r\n");
+
+        assertEquals("USER  admin", request.getRequestLine());
+        assertEquals("USER", request.getCommand());
+        assertEquals(" admin", request.getArgument());
+    }
+
+    public void testXPrefix() throws Exception {
+        assertEquals("MKD", decodeOne("XMKD foo\r\n").getCommand());
+        assertEquals("PWD", decodeOne("xpwd\r\n").getCommand());
+    }
+
+    public void testUnknownCommand() throws Exception {
+        FtpRequest request = decodeOne("foobar baz\r\n");
+
+        assertEquals("FOOBAR", request.getCommand());
+        assertEquals("baz", request.getArgument());
+    }
+
+    public void testNonAsciiArgument() throws Exception {
+        FtpRequest request = decodeOne("STOR åäö\r\n");
+
+        assertEquals("STOR", request.getCommand());
+        assertEquals("åäö", request.getArgument());
+    }
+
+    public void testPipelinedCommands() throws Exception {
+        Queue<Object> requests = decode("TYPE I\r\nPASV\r\nRETR foo\r\n");
+
+        assertEquals(3, requests.size());
+        assertEquals("TYPE", ((FtpRequest) requests.poll()).getCommand());
+        assertEquals("PASV", ((FtpRequest) requests.poll()).getCommand());
+        assertEquals("RETR", ((FtpRequest) requests.poll()).getCommand());
+    }
+
+    public void testCommandSplitOverBuffers() throws Exception {
+        assertEquals(0, decode("RE").size());
+        assertEquals(0, decode("TR fo").size());
+
+        FtpRequest request = decodeOne("o\r\nNO");
+        assertEquals("RETR", request.getCommand());
+        assertEquals("foo", request.getArgument());
+
+        assertEquals("NOOP", decodeOne("OP\r\n").getCommand());
+    }
+
+    public void testMaxLineLength() throws Exception {
+        String line = "RETR 12345678901234567890123456";
+        assertEquals(32, line.length() + 1);
+
+        assertEquals("RETR", decodeOne(line + "\r\n").getCommand());
+    }
+
+    public void testTooLongLine() throws Exception {
+        try {
+            decode("RETR 12345678901234567890123456789\r\n");
+            fail("Must throw ProtocolDecoderException");
+        } catch (ProtocolDecoderException e) {
+            // ok
+        }
+    }
+
+    public void testTooLongPartialLine() throws Exception {
+        try {
+            decode("RETR 12345678901234567890123456789");
+            fail("Must throw ProtocolDecoderException");
+        } catch (ProtocolDecoderException e) {
+            // ok
+        }
+    }
+}
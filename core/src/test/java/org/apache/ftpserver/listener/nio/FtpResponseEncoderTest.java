@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpServerContext;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.message.MessageResource;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.filter.codec.ProtocolCodecSession;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class FtpResponseEncoderTest extends TestCase {
+
+    private static final String PASV_TEMPLATE = "Entering Passive Mode ({output.msg})";
+
+    private FtpResponseEncoder encoder = new FtpResponseEncoder();
+
+    private DefaultFtpServerContext context;
+
+    private FtpIoSession ftpSession;
+
+    protected void setUp() throws Exception {
+        // the message of each reply is looked up by passing the template as
+        // the sub id, so that the replies share the template instance
+        context = new DefaultFtpServerContext();
+        context.setMessageResource(new MessageResource() {
+            public List<String> getAvailableLanguages() {
+                return null;
+            }
+
+            public String getMessage(int code, String subId, String language) {
+                return subId;
+            }
+
+            public Map<String, String> getMessages(String language) {
+                return null;
+            }
+        });
+        ftpSession = new FtpIoSession(new DummySession(), context);
+    }
+
+    /**
+     * Translate a reply from the template as done by the commands
+     */
+    private LocalizedFtpReply translate(final int code, final String template,
+            final String request, final String message) {
+        return LocalizedFtpReply.translate(ftpSession, new DefaultFtpRequest(
+                request), context, code, template, message);
+    }
+
+    private byte[] encode(final FtpReply reply) throws Exception {
+        ProtocolCodecSession session = new ProtocolCodecSession();
+        encoder.encode(session, reply, session.getEncoderOutput());
+
+        IoBuffer buffer = (IoBuffer) session.getEncoderOutputQueue().poll();
+        byte[] encoded = new byte[buffer.remaining()];
+        buffer.get(encoded);
+        return encoded;
+    }
+
+    private void assertEncoded(final FtpReply reply) throws Exception {
+        assertEquals(reply.toString(), new String(encode(reply), "UTF-8"));
+    }
+
+    public void testSingleLine() throws Exception {
+        assertEncoded(new DefaultFtpReply(200, "Command TYPE okay."));
+    }
+
+    public void testMultiLine() throws Exception {
+        assertEncoded(new DefaultFtpReply(211, new String[] { "Features:",
+                "MDTM", "End" }));
+    }
+
+    public void testNonAscii() throws Exception {
+        assertEncoded(new DefaultFtpReply(257, "\"/åäö\" is current directory."));
+    }
+
+    public void testFixedLocalizedReply() throws Exception {
+        String template = "Transfer complete.";
+        LocalizedFtpReply reply = translate(226, template, "RETR foo", null);
+
+        assertEncoded(reply);
+        // encoded from the cache
+        assertEncoded(reply);
+        assertEncoded(translate(226, template, "RETR foo", null));
+    }
+
+    public void testLocalizedReplyWithVariables() throws Exception {
+        LocalizedFtpReply reply = translate(227, PASV_TEMPLATE, "PASV",
+                "127,0,0,1,4,1");
+        assertEncoded(reply);
+
+        reply = translate(227, PASV_TEMPLATE, "PASV", "127,0,0,1,4,2");
+        assertEncoded(reply);
+    }
+
+    public void testLocalizedReplyWithNonAsciiVariable() throws Exception {
+        assertEncoded(translate(257, "\"{request.arg}\" created.",
+                "MKD /åäö", null));
+    }
+
+    public void testLocalizedReplyWithMultiLineVariable() throws Exception {
+        assertEncoded(translate(200, "{output.msg}", "SITE", "foo\nbar"));
+    }
+
+    public void testMultiLineLocalizedReply() throws Exception {
+        String template = "SITE Commands\nHELP : display this message.\nEnd.";
+        assertEncoded(translate(200, template, "SITE HELP", null));
+    }
+
+    public void testTemplateUsedWithDifferentCodes() throws Exception {
+        String template = "Requested action not taken.";
+        assertEncoded(translate(450, template, "DELE foo", null));
+        assertEncoded(translate(550, template, "DELE foo", null));
+    }
+
+    public void testConcurrentEncoding() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 1000; j++) {
+                            FtpReply reply = new DefaultFtpReply(200, "åäö "
+                                    + id + " " + j);
+                            byte[] expected = reply.toString()
+                                    .getBytes("UTF-8");
+                            if (!Arrays.equals(expected, encode(reply))) {
+                                throw new AssertionError("Wrong encoding of "
+                                        + reply);
+                            }
+
+                            LocalizedFtpReply localized = translate(227,
+                                    PASV_TEMPLATE, "PASV", id + "," + j);
+                            expected = localized.toString().getBytes("UTF-8");
+                            if (!Arrays.equals(expected, encode(localized))) {
+                                throw new AssertionError("Wrong encoding of "
+                                        + localized);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ssl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+
+/**
+ * Measures the time taken by LIST over a protected data channel, comparing an
+ * SSL context created for each connection, as done before contexts were
+ * cached, with a cached context with and without the client offering to
+ * resume the TLS session of the control connection. Not run as part of the
+ * test suite, run it from the command line:
+ * 
+ * <pre>
+ * java org.apache.ftpserver.ssl.TlsHandshakeBenchmark [lists] [keystore] [keystore password] [protocol]
+ * </pre>
+ * 
+ * The protocol defaults to TLSv1.2, the SSL filter of the MINA version in use
+ * does not reliably handle the post-handshake messages of TLSv1.3.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public class TlsHandshakeBenchmark {
+
+    private static final File USERS_FILE = new File(TestUtil.getBaseDir(),
+            "src/test/resources/users.properties");
+
+    private static final File ROOT_DIR = new File("test-tmp/ftproot");
+
+    /**
+     * Creates a new SSL context every time, like the configuration did
+     * before caching contexts
+     */
+    private static class UncachedSslConfiguration implements SslConfiguration {
+        private final KeyManagerFactory keyManagerFactory;
+
+        private final TrustManagerFactory trustManagerFactory;
+
+        public UncachedSslConfiguration(KeyManagerFactory keyManagerFactory,
+                TrustManagerFactory trustManagerFactory) {
+            this.keyManagerFactory = keyManagerFactory;
+            this.trustManagerFactory = trustManagerFactory;
+        }
+
+        public SSLContext getSSLContext() throws GeneralSecurityException {
+            return getSSLContext("TLS");
+        }
+
+        public SSLContext getSSLContext(String protocol)
+                throws GeneralSecurityException {
+            SSLContext ctx = SSLContext.getInstance(protocol != null ? protocol
+                    : "TLS");
+            ctx.init(keyManagerFactory.getKeyManagers(), trustManagerFactory
+                    .getTrustManagers(), null);
+            return ctx;
+        }
+
+        public String[] getEnabledCipherSuites() {
+            return null;
+        }
+
+        public ClientAuth getClientAuth() {
+            return ClientAuth.NONE;
+        }
+    }
+
+    /**
+     * Socket reporting a different peer port than connected to
+     */
+    private static class PeerPortSocket extends Socket {
+        private final int peerPort;
+
+        public PeerPortSocket(int peerPort) {
+            this.peerPort = peerPort;
+        }
+
+        public int getPort() {
+            return peerPort;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int lists = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        File keystore = new File(args.length > 1 ? args[1]
+                : "src/test/resources/ftpserver.jks");
+        String password = args.length > 2 ? args[2] : "password";
+        String protocol = args.length > 3 ? args[3] : "TLSv1.2";
+
+        ROOT_DIR.mkdirs();
+
+        KeyStore store = KeyStore.getInstance("JKS");
+        FileInputStream fin = new FileInputStream(keystore);
+        try {
+            store.load(fin, password.toCharArray());
+        } finally {
+            fin.close();
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory
+                .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(store, password.toCharArray());
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory
+                .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(store);
+
+        SslConfigurationFactory sslConfigFactory = new SslConfigurationFactory();
+        sslConfigFactory.setKeystoreFile(keystore);
+        sslConfigFactory.setKeystorePassword(password);
+        sslConfigFactory.setKeyPassword(password);
+
+        System.out.println("LIST commands: " + lists + ", protocol: "
+                + protocol);
+
+        run("uncached context", new UncachedSslConfiguration(
+                keyManagerFactory, trustManagerFactory), false, lists,
+                protocol);
+        run("cached context, no resumption", sslConfigFactory
+                .createSslConfiguration(), false, lists, protocol);
+        run("cached context, resumption", sslConfigFactory
+                .createSslConfiguration(), true, lists, protocol);
+    }
+
+    private static void run(final String name, final SslConfiguration ssl,
+            final boolean resume, final int lists, final String protocol)
+            throws Exception {
+        int port = TestUtil.findFreePort();
+
+        FtpServerFactory serverFactory = new FtpServerFactory();
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(port);
+        listenerFactory.setSslConfiguration(ssl);
+
+        // avoid delayed ACKs of small writes dominating the timings
+        DataConnectionConfigurationFactory dataConfigFactory = new DataConnectionConfigurationFactory();
+        dataConfigFactory.setTcpNoDelay(true);
+        listenerFactory.setDataConnectionConfiguration(dataConfigFactory
+                .createDataConnectionConfiguration());
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        PropertiesUserManagerFactory umFactory = new PropertiesUserManagerFactory();
+        umFactory.setAdminName("admin");
+        umFactory.setPasswordEncryptor(new ClearTextPasswordEncryptor());
+        umFactory.setFile(USERS_FILE);
+        serverFactory.setUserManager(umFactory.createUserManager());
+
+        FtpServer server = serverFactory.createServer();
+        server.start();
+        try {
+            SSLContext clientContext = SSLContext.getInstance(protocol);
+            clientContext.init(null, new TrustManager[] { new X509TrustManager() {
+                public void checkClientTrusted(X509Certificate[] chain,
+                        String authType) {
+                }
+
+                public void checkServerTrusted(X509Certificate[] chain,
+                        String authType) {
+                }
+
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+            } }, null);
+
+            // warm up
+            list(clientContext, port, resume, lists / 10 + 1, new long[2]);
+
+            // handshake time and number of resumed sessions
+            long[] handshakes = new long[2];
+
+            long start = System.nanoTime();
+            list(clientContext, port, resume, lists, handshakes);
+            long time = System.nanoTime() - start;
+
+            System.out.println(name + ": "
+                    + toMillis(time / lists) + " ms per LIST, "
+                    + toMillis(handshakes[0] / lists) + " ms handshake, "
+                    + handshakes[1] + " of " + lists
+                    + " data connections resumed the control session");
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Log in over explicit TLS and list the root directory over protected
+     * data connections
+     * 
+     * @param handshakes
+     *            Updated with the total handshake time in nanoseconds and the
+     *            number of data connections resuming the control session
+     */
+    private static void list(final SSLContext clientContext, final int port,
+            final boolean resume, final int lists, final long[] handshakes)
+            throws IOException {
+        SSLSocketFactory factory = clientContext.getSocketFactory();
+
+        Socket plain = new Socket("localhost", port);
+        plain.setTcpNoDelay(true);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                plain.getInputStream(), "UTF-8"));
+        readReply(reader);
+        command(plain.getOutputStream(), reader, "AUTH TLS");
+
+        SSLSocket control = (SSLSocket) factory.createSocket(plain,
+                "localhost", port, true);
+        control.startHandshake();
+        reader = new BufferedReader(new InputStreamReader(control
+                .getInputStream(), "UTF-8"));
+        OutputStream out = control.getOutputStream();
+
+        command(out, reader, "USER admin");
+        command(out, reader, "PASS admin");
+        command(out, reader, "PBSZ 0");
+        command(out, reader, "PROT P");
+
+        SSLSession controlSession = control.getSession();
+        try {
+            for (int i = 0; i < lists; i++) {
+                String reply = command(out, reader, "PASV");
+                int dataPort = parsePasvPort(reply);
+
+                // the client session cache is keyed by the host and port of
+                // the socket, report the control port for the data
+                // connection to offer resuming the control session
+                Socket dataPlain = resume ? new PeerPortSocket(port)
+                        : new Socket();
+                dataPlain.setTcpNoDelay(true);
+                dataPlain.connect(new InetSocketAddress("localhost", dataPort));
+
+                SSLSocket data = (SSLSocket) factory.createSocket(dataPlain,
+                        "localhost", dataPlain.getPort(), true);
+
+                out.write("LIST\r\n".getBytes("UTF-8"));
+                out.flush();
+                readReply(reader);
+
+                long handshakeStart = System.nanoTime();
+                data.startHandshake();
+                handshakes[0] += System.nanoTime() - handshakeStart;
+                if (isResumed(controlSession, data.getSession())) {
+                    handshakes[1]++;
+                }
+
+                InputStream in = data.getInputStream();
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // discard the listing
+                }
+                data.close();
+
+                readReply(reader);
+            }
+
+            command(out, reader, "QUIT");
+        } finally {
+            control.close();
+        }
+    }
+
+    private static double toMillis(final long nanos) {
+        return Math.round((double) nanos / 1000) / 1000.0;
+    }
+
+    /**
+     * A resumed session has the same creation time, its id might however be
+     * different if resumed using a session ticket
+     */
+    private static boolean isResumed(final SSLSession controlSession,
+            final SSLSession dataSession) {
+        return Arrays.equals(controlSession.getId(), dataSession.getId())
+                || controlSession.getCreationTime() == dataSession
+                        .getCreationTime();
+    }
+
+    private static String command(final OutputStream out,
+            final BufferedReader reader, final String command)
+            throws IOException {
+        out.write((command + "\r\n").getBytes("UTF-8"));
+        out.flush();
+        return readReply(reader);
+    }
+
+    private static String readReply(final BufferedReader reader)
+            throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("Connection closed");
+        }
+
+        // skip multi-line replies
+        String code = line.substring(0, 3);
+        while (line.length() > 3 && line.charAt(3) == '-') {
+            do {
+                line = reader.readLine();
+            } while (line != null && !line.startsWith(code + " "));
+        }
+
+        if (line.charAt(0) == '4' || line.charAt(0) == '5') {
+            throw new IOException("Unexpected reply: " + line);
+        }
+        return line;
+    }
+
+    private static int parsePasvPort(final String reply) {
+        String address = reply.substring(reply.indexOf('(') + 1, reply
+                .indexOf(')'));
+        String[] parts = address.split(",");
+        return Integer.parseInt(parts[4].trim()) * 256
+                + Integer.parseInt(parts[5].trim());
+    }
+}
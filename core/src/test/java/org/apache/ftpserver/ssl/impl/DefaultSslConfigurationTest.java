@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ssl.impl;
+
+import java.io.File;
+
+import javax.net.ssl.SSLContext;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ssl.SslConfiguration;
+import org.apache.ftpserver.ssl.SslConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class DefaultSslConfigurationTest extends TestCase {
+
+    private static final File FTPSERVER_KEYSTORE = new File(TestUtil
+            .getBaseDir(), "src/test/resources/ftpserver.jks");
+
+    private SslConfiguration ssl;
+
+    protected void setUp() throws Exception {
+        SslConfigurationFactory sslConfigFactory = new SslConfigurationFactory();
+        sslConfigFactory.setKeystoreFile(FTPSERVER_KEYSTORE);
+        sslConfigFactory.setKeystorePassword("password");
+        sslConfigFactory.setKeyPassword("password");
+
+        ssl = sslConfigFactory.createSslConfiguration();
+    }
+
+    public void testContextCached() throws Exception {
+        SSLContext ctx = ssl.getSSLContext();
+
+        assertSame(ctx, ssl.getSSLContext());
+        assertSame(ctx, ssl.getSSLContext(null));
+        assertSame(ctx, ssl.getSSLContext("TLS"));
+    }
+
+    public void testContextPerProtocol() throws Exception {
+        SSLContext tls = ssl.getSSLContext("TLS");
+        SSLContext tls12 = ssl.getSSLContext("TLSv1.2");
+
+        assertNotSame(tls, tls12);
+        assertEquals("TLSv1.2", tls12.getProtocol());
+        assertSame(tls12, ssl.getSSLContext("TLSv1.2"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.util;
+
+import java.net.InetAddress;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author The Apache MINA Project (dev@mina.apache.org)
+* @version $Rev$, $Date$
+*
+*/
+public class InetAddressParserTest extends TestCase {
+
+    private static void assertAddress(String expected, InetAddress address)
+            throws Exception {
+        assertNotNull(address);
+        assertEquals(InetAddress.getByName(expected), address);
+    }
+
+    public void testIpv4() throws Exception {
+        assertAddress("1.2.3.4", InetAddressParser.parseIpv4("1.2.3.4"));
+        assertAddress("0.0.0.0", InetAddressParser.parseIpv4("0.0.0.0"));
+        assertAddress("255.255.255.255", InetAddressParser
+                .parseIpv4("255.255.255.255"));
+    }
+
+    public void testInvalidIpv4() {
+        String[] invalid = new String[] { "", "999.1.1.1", "256.1.1.1",
+                "1..2", "....", "1.2.3", "1.2.3.4.5", "1.2.3.", ".1.2.3",
+                "01.2.3.4", "1.2.3.a", "1.2.3.-1", "1.2.3.1000", "localhost",
+                "1.2.3.4 " };
+        for (int i = 0; i < invalid.length; i++) {
+            assertNull(invalid[i], InetAddressParser.parseIpv4(invalid[i]));
+        }
+    }
+
+    public void testIpv6() throws Exception {
+        assertAddress("1:2:3:4:5:6:7:8", InetAddressParser
+                .parseIpv6("1:2:3:4:5:6:7:8"));
+        assertAddress("::1", InetAddressParser.parseIpv6("::1"));
+        assertAddress("::", InetAddressParser.parseIpv6("::"));
+        assertAddress("fe80::1", InetAddressParser.parseIpv6("FE80::1"));
+        assertAddress("1::8", InetAddressParser.parseIpv6("1::8"));
+        assertAddress("1:2:3:4:5:6:7::", InetAddressParser
+                .parseIpv6("1:2:3:4:5:6:7::"));
+        assertAddress("::ffff:1.2.3.4", InetAddressParser
+                .parseIpv6("::ffff:1.2.3.4"));
+        assertAddress("1:2:3:4:5:6:1.2.3.4", InetAddressParser
+                .parseIpv6("1:2:3:4:5:6:1.2.3.4"));
+    }
+
+    public void testInvalidIpv6() {
+        String[] invalid = new String[] { "", ":", ":::", "1:::2", "1::2::3",
+                "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7:8::",
+                "::1:2:3:4:5:6:7:8", ":1::", "1:", "12345::", "g::1",
+                "::1.2.3", "::999.1.1.1", "1:2:3:4:5:6:7:1.2.3.4",
+                "fe80::1%eth0", "1.2.3.4" };
+        for (int i = 0; i < invalid.length; i++) {
+            assertNull(invalid[i], InetAddressParser.parseIpv6(invalid[i]));
+        }
+    }
+
+    public void testLiteral() throws Exception {
+        assertAddress("1.2.3.4", InetAddressParser.parseLiteral("1.2.3.4"));
+        assertAddress("::1", InetAddressParser.parseLiteral("::1"));
+        assertNull(InetAddressParser.parseLiteral("localhost"));
+        assertNull(InetAddressParser.parseLiteral("...."));
+    }
+}
@@ -203,4 +203,11 @@ public interface FtpSession {
      */
     public UUID getSessionId();
 
+    /**
+     * Get the status of the data transfer currently running in this session.
+     * @return The {@link TransferStatus}, or null if no data transfer is
+     *         running
+     */
+    TransferStatus getCurrentTransfer();
+
 }
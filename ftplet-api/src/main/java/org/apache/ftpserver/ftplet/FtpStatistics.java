@@ -120,6 +120,20 @@ public interface FtpStatistics {
      */
     int getCurrentAnonymousLoginNumber();
 
+    /**
+     * Get the number of data connections requested by PORT or PASV that
+     * expired, because no transfer was started or the client did not connect
+     * within the data connection idle time.
+     * @return The total number of expired data connections
+     */
+    int getTotalExpiredDataConnectionNumber();
+
+    /**
+     * Get the number of passive ports released by expired data connections.
+     * @return The total number of passive ports released on expiry
+     */
+    int getTotalReleasedPassivePortNumber();
+
     /**
      * Get the login number for the specific user
      * @param user The {@link User} for which to retrieve the number of logins
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ftplet;
+
+/**
+ * Live status of a data transfer in progress. The status is updated a few
+ * times per second while the transfer is running, reading it does not slow
+ * down the transfer.
+ *
+ * @author The Apache MINA Project (dev@mina.apache.org)
+ * @version $Rev$, $Date$
+ */
+public interface TransferStatus {
+
+    /**
+     * Is the data transferred from the client to the server?
+     * @return true for uploads, false for downloads and listings
+     */
+    boolean isUpload();
+
+    /**
+     * Get the name of the file being transferred.
+     * @return The file name, or null if the transfer is not for a file, e.g. a
+     *         directory listing
+     */
+    String getFileName();
+
+    /**
+     * Get the time the transfer started.
+     * @return The start time in milliseconds since the epoch
+     */
+    long getStartTime();
+
+    /**
+     * Get the number of bytes transferred so far.
+     * @return The number of bytes transferred
+     */
+    long getTransferredBytes();
+
+    /**
+     * Get the number of bytes expected to be transferred in total.
+     * @return The expected size in bytes, or -1 if not known, e.g. for 
+     *         uploads
+     */
+    long getExpectedBytes();
+
+    /**
+     * Get the current transfer rate.
+     * @return The rate in bytes per second
+     */
+    long getBytesPerSecond();
+
+    /**
+     * Get the progress of the transfer.
+     * @return The progress in percent, or -1 if the expected size is not 
+     *         known
+     */
+    int getProgress();
+
+    /**
+     * Get the estimated time until the transfer completes, based on the 
+     * current transfer rate.
+     * @return The estimated time remaining in milliseconds, or -1 if not known
+     */
+    long getEstimatedTimeRemaining();
+}